@@ -0,0 +1,53 @@
+package com.trynocs.tryLibs.benchmarks;
+
+import com.trynocs.tryLibs.utils.database.DatabaseHandler;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates DatabaseHandlers on temporary SQLite files for the benchmarks.
+ */
+final class BenchmarkDatabase {
+    static final String TABLE = "bench";
+
+    private final File file;
+    private final DatabaseHandler handler;
+
+    private BenchmarkDatabase(File file, DatabaseHandler handler) {
+        this.file = file;
+        this.handler = handler;
+    }
+
+    /**
+     * @param cache Whether the read cache is enabled.
+     * @return A handler on a new temporary SQLite file with the benchmark table.
+     */
+    static BenchmarkDatabase open(boolean cache) throws IOException {
+        File file = Files.createTempFile("trylibs-bench", ".db").toFile();
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.sqlite.path", file.getAbsolutePath());
+        config.set("database.cache.enabled", cache);
+        config.set("database.main-thread.enabled", false);
+
+        Logger logger = Logger.getLogger("TryLibsBenchmark");
+        logger.setLevel(Level.WARNING);
+        DatabaseHandler handler = new DatabaseHandler(config, logger);
+        handler.createTable(TABLE);
+        return new BenchmarkDatabase(file, handler);
+    }
+
+    DatabaseHandler handler() {
+        return handler;
+    }
+
+    void close() {
+        handler.closeConnection();
+        file.delete();
+    }
+}
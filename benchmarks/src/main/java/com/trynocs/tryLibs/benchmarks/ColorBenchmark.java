@@ -0,0 +1,46 @@
+package com.trynocs.tryLibs.benchmarks;
+
+import com.trynocs.tryLibs.TryLibs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TryLibs#staticTranslateColors} on a single string and on a lore-sized list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColorBenchmark {
+    private final String text = "&6Willkommen &7auf &bTrynocs&7! &aViel Spaß &c&lbeim Spielen";
+    private final List<String> lore = new ArrayList<>();
+
+    public ColorBenchmark() {
+        for (int i = 0; i < 10; i++) {
+            lore.add("&7Zeile &e" + i + " &7der &aBeschreibung");
+        }
+    }
+
+    @Benchmark
+    public String translateString() {
+        return TryLibs.staticTranslateColors(text);
+    }
+
+    @Benchmark
+    public List<String> translateList() {
+        return TryLibs.staticTranslateColors(lore);
+    }
+}
@@ -0,0 +1,85 @@
+package com.trynocs.tryLibs.benchmarks;
+
+import com.trynocs.tryLibs.utils.database.DatabaseHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save/load round trips through the DatabaseHandler on a temporary SQLite file, with the read cache
+ * disabled so every load queries the database.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+    private static final int KEYS = 64;
+
+    private BenchmarkDatabase database;
+    private DatabaseHandler handler;
+
+    /**
+     * Every benchmark thread writes its own player.
+     */
+    @State(Scope.Thread)
+    public static class Player {
+        final UUID uuid = UUID.randomUUID();
+        int next;
+
+        String nextKey() {
+            return "key" + (next++ & (KEYS - 1));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open(false);
+        handler = database.handler();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String roundTrip(Player player) {
+        return saveAndLoad(player);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String roundTripContended(Player player) {
+        return saveAndLoad(player);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String load(Player player) {
+        return handler.loadData(BenchmarkDatabase.TABLE, player.uuid, player.nextKey());
+    }
+
+    private String saveAndLoad(Player player) {
+        String key = player.nextKey();
+        handler.saveData(BenchmarkDatabase.TABLE, player.uuid, key, "value-" + player.next);
+        return handler.loadData(BenchmarkDatabase.TABLE, player.uuid, key);
+    }
+}
@@ -0,0 +1,58 @@
+package com.trynocs.tryLibs.benchmarks;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.trynocs.tryLibs.utils.gui.ItemBuilder;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemFlag;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ItemBuilder#build()} on a MockBukkit server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemBuilderBenchmark {
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockBukkit.mock();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public ItemStack buildPlain() {
+        return new ItemBuilder(Material.STONE).build();
+    }
+
+    @Benchmark
+    public ItemStack buildWithMeta() {
+        return new ItemBuilder(Material.DIAMOND_SWORD)
+                .setName("§bSchwert")
+                .setLore("§7Zeile 1", "§7Zeile 2", "§7Zeile 3")
+                .setUnbreakable(true)
+                .addItemFlags(ItemFlag.HIDE_ATTRIBUTES, ItemFlag.HIDE_UNBREAKABLE)
+                .build();
+    }
+}
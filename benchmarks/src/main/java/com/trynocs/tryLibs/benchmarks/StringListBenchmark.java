@@ -0,0 +1,62 @@
+package com.trynocs.tryLibs.benchmarks;
+
+import com.trynocs.tryLibs.utils.database.DatabaseHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code loadStringList} with the read cache enabled, so the benchmark measures the Gson decoding
+ * of the cached value rather than the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringListBenchmark {
+    @Param({"5", "50"})
+    public int size;
+
+    private final UUID uuid = UUID.randomUUID();
+    private BenchmarkDatabase database;
+    private DatabaseHandler handler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open(true);
+        handler = database.handler();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add("&7Eintrag Nummer " + i);
+        }
+        handler.saveStringList(BenchmarkDatabase.TABLE, uuid, "list", list);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<String> loadStringList() {
+        return handler.loadStringList(BenchmarkDatabase.TABLE, uuid, "list");
+    }
+}
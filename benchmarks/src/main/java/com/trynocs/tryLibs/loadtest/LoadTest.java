@@ -0,0 +1,326 @@
+package com.trynocs.tryLibs.loadtest;
+
+import com.trynocs.tryLibs.utils.database.DatabaseHandler;
+import com.trynocs.tryLibs.utils.database.LatencyHistogram;
+import com.trynocs.tryLibs.utils.database.OperationStats;
+import com.trynocs.tryLibs.utils.economy.EconomyManager;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simulates players joining, playing and quitting against the DatabaseHandler and EconomyManager
+ * and reports throughput, tail latency and lock wait over time.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar com.trynocs.tryLibs.loadtest.LoadTest --players=500 --join-rate=50}.
+ * See {@link LoadTestOptions} for all options.
+ */
+public final class LoadTest {
+    private static final String TABLE = "loadtest_users";
+    private static final String ECONOMY_TABLE = "loadtest_economy";
+    private static final double START_BALANCE = 1000;
+
+    /**
+     * The simulated operations.
+     */
+    enum Operation {
+        /** Joining: economy account check and loading all keys of the player. */
+        JOIN,
+        /** Loading one key. */
+        READ,
+        /** Saving one key. */
+        WRITE,
+        /** Withdrawing from one player and depositing to another. */
+        TRANSFER,
+        /** Quitting: saving all keys of the player. */
+        QUIT
+    }
+
+    private final LoadTestOptions options;
+    private final DatabaseHandler handler;
+    private final EconomyManager economy;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ConcurrentLinkedQueue<Long> threadIds = new ConcurrentLinkedQueue<>();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final AtomicReferenceArray<UUID> online;
+    private final AtomicInteger onlineCount = new AtomicInteger();
+    private final AtomicInteger joined = new AtomicInteger();
+    private volatile LatencyHistogram[] histograms = newHistograms();
+    private volatile LatencyHistogram tickLag = new LatencyHistogram();
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+        this.online = new AtomicReferenceArray<>(options.players);
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", options.database);
+        config.set("database.sqlite.path", options.sqlitePath);
+        config.set("database.mysql.host", options.mysqlHost);
+        config.set("database.mysql.port", options.mysqlPort);
+        config.set("database.mysql.database", options.mysqlDatabase);
+        config.set("database.mysql.username", options.mysqlUsername);
+        config.set("database.mysql.password", options.mysqlPassword);
+        config.set("database.cache.enabled", options.cache);
+        config.set("database.main-thread.enabled", false);
+        Logger logger = Logger.getLogger("TryLibsLoadTest");
+        logger.setLevel(Level.WARNING);
+        this.handler = new DatabaseHandler(config, logger);
+        this.handler.createTable(TABLE);
+        this.economy = new EconomyManager(handler, ECONOMY_TABLE);
+
+        this.executor = new ScheduledThreadPoolExecutor(options.threads, runnable -> {
+            Thread thread = new Thread(runnable, "LoadTest-Player-" + threadIds.size());
+            thread.setDaemon(true);
+            threadIds.add(thread.getId());
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+        if (threadBean.isThreadContentionMonitoringSupported()) {
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws InterruptedException, IOException {
+        System.out.println("Load test: " + options);
+        long joinPeriodMicros = Math.max(1, (long) (1_000_000 / options.joinRate));
+        executor.scheduleAtFixedRate(this::joinNext, 0, joinPeriodMicros, TimeUnit.MICROSECONDS);
+
+        try (PrintWriter csv = options.csv != null ? new PrintWriter(Files.newBufferedWriter(Paths.get(options.csv))) : null) {
+            if (csv != null) csv.println(csvHeader());
+            System.out.println(header());
+
+            long start = System.nanoTime();
+            long lastReport = start;
+            long lastBlockedMillis = blockedMillis();
+            while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(options.durationSeconds)) {
+                Thread.sleep(options.reportSeconds * 1000L);
+                long now = System.nanoTime();
+                LatencyHistogram[] interval = histograms;
+                LatencyHistogram lag = tickLag;
+                histograms = newHistograms();
+                tickLag = new LatencyHistogram();
+                long blocked = blockedMillis();
+
+                double seconds = (now - lastReport) / 1e9;
+                double lockWait = (blocked - lastBlockedMillis) / (seconds * 1000 * options.threads) * 100;
+                int elapsed = (int) Math.round((now - start) / 1e9);
+                System.out.println(row(elapsed, interval, lag, seconds, lockWait));
+                if (csv != null) {
+                    csv.println(csvRow(elapsed, interval, lag, seconds, lockWait));
+                    csv.flush();
+                }
+                lastReport = now;
+                lastBlockedMillis = blocked;
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            printHandlerStats();
+            handler.closeConnection();
+        }
+    }
+
+    private void joinNext() {
+        if (onlineCount.get() >= options.players) return;
+        for (int slot = 0; slot < options.players; slot++) {
+            UUID uuid = UUID.randomUUID();
+            if (online.compareAndSet(slot, null, uuid)) {
+                onlineCount.incrementAndGet();
+                joined.incrementAndGet();
+                new Session(slot, uuid).start();
+                return;
+            }
+        }
+    }
+
+    /**
+     * One simulated player, ticking once per second until it quits.
+     */
+    private final class Session implements Runnable {
+        private final int slot;
+        private final UUID uuid;
+        private final long quitAt;
+        private long lastTick;
+        private ScheduledFuture<?> future;
+
+        private Session(int slot, UUID uuid) {
+            this.slot = slot;
+            this.uuid = uuid;
+            double sessionFactor = 0.5 + ThreadLocalRandom.current().nextDouble();
+            this.quitAt = System.nanoTime() + (long) (options.sessionSeconds * sessionFactor * 1e9);
+        }
+
+        private void start() {
+            timed(Operation.JOIN, () -> {
+                if (!handler.hasData(ECONOMY_TABLE, uuid, "balance")) {
+                    economy.setBalance(uuid, START_BALANCE);
+                }
+                for (int i = 0; i < options.keysPerPlayer; i++) {
+                    handler.loadData(TABLE, uuid, "key" + i);
+                }
+            });
+            lastTick = System.nanoTime();
+            long initialDelay = ThreadLocalRandom.current().nextLong(1000);
+            future = executor.scheduleAtFixedRate(this, initialDelay, 1000, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            tickLag.record(Math.max(0, (now - lastTick) / 1000 - 1_000_000));
+            lastTick = now;
+
+            if (now >= quitAt) {
+                quit();
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = count(options.readsPerSecond); i > 0; i--) {
+                String key = "key" + random.nextInt(options.keysPerPlayer);
+                timed(Operation.READ, () -> handler.loadData(TABLE, uuid, key));
+            }
+            for (int i = count(options.writesPerSecond); i > 0; i--) {
+                String key = "key" + random.nextInt(options.keysPerPlayer);
+                String value = Long.toString(random.nextLong());
+                timed(Operation.WRITE, () -> handler.saveData(TABLE, uuid, key, value));
+            }
+            for (int i = count(options.transfersPerSecond); i > 0; i--) {
+                UUID target = online.get(random.nextInt(options.players));
+                if (target != null && !target.equals(uuid)) {
+                    double amount = 1 + random.nextInt(50);
+                    timed(Operation.TRANSFER, () -> {
+                        if (economy.withdraw(uuid, amount)) {
+                            economy.deposit(target, amount);
+                        }
+                    });
+                }
+            }
+        }
+
+        private void quit() {
+            future.cancel(false);
+            timed(Operation.QUIT, () -> {
+                for (int i = 0; i < options.keysPerPlayer; i++) {
+                    handler.saveData(TABLE, uuid, "key" + i, Integer.toString(i));
+                }
+            });
+            online.set(slot, null);
+            onlineCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return The whole part of the rate, plus one with the probability of the fractional part.
+     */
+    private static int count(double perSecond) {
+        int whole = (int) perSecond;
+        return whole + (ThreadLocalRandom.current().nextDouble() < perSecond - whole ? 1 : 0);
+    }
+
+    private void timed(Operation operation, Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        histograms[operation.ordinal()].record((System.nanoTime() - start) / 1000);
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * @return The total time all player threads spent blocked on monitors, in milliseconds.
+     */
+    private long blockedMillis() {
+        long total = 0;
+        for (Long id : threadIds) {
+            ThreadInfo info = threadBean.getThreadInfo(id);
+            if (info != null && info.getBlockedTime() > 0) {
+                total += info.getBlockedTime();
+            }
+        }
+        return total;
+    }
+
+    private String header() {
+        StringBuilder header = new StringBuilder(String.format("%6s %7s", "time", "online"));
+        for (Operation operation : Operation.values()) {
+            header.append(String.format(" | %-8s %7s %7s %7s", operation.name().toLowerCase(), "p50ms", "p99ms", "maxms"));
+        }
+        return header.append(String.format(" | %8s %9s", "lock%", "lagp99ms")).toString();
+    }
+
+    private String row(int elapsed, LatencyHistogram[] interval, LatencyHistogram lag, double seconds, double lockWait) {
+        StringBuilder row = new StringBuilder(String.format("%5ds %7d", elapsed, onlineCount.get()));
+        for (LatencyHistogram histogram : interval) {
+            row.append(String.format(" | %6.0f/s %7.2f %7.2f %7.2f", histogram.getCount() / seconds,
+                    histogram.getPercentile(50) / 1000.0, histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0));
+        }
+        return row.append(String.format(" | %7.1f%% %9.1f", lockWait, lag.getPercentile(99) / 1000.0)).toString();
+    }
+
+    private static String csvHeader() {
+        StringBuilder header = new StringBuilder("time_s,online");
+        for (Operation operation : Operation.values()) {
+            String name = operation.name().toLowerCase();
+            header.append(',').append(name).append("_per_s,").append(name).append("_p50_us,")
+                    .append(name).append("_p99_us,").append(name).append("_max_us");
+        }
+        return header.append(",lock_wait_percent,tick_lag_p99_us").toString();
+    }
+
+    private String csvRow(int elapsed, LatencyHistogram[] interval, LatencyHistogram lag, double seconds, double lockWait) {
+        StringBuilder row = new StringBuilder().append(elapsed).append(',').append(onlineCount.get());
+        for (LatencyHistogram histogram : interval) {
+            row.append(',').append(String.format("%.1f", histogram.getCount() / seconds))
+                    .append(',').append(histogram.getPercentile(50))
+                    .append(',').append(histogram.getPercentile(99))
+                    .append(',').append(histogram.getMax());
+        }
+        return row.append(',').append(String.format("%.2f", lockWait)).append(',').append(lag.getPercentile(99)).toString();
+    }
+
+    private void printHandlerStats() {
+        System.out.println();
+        System.out.println("Joined players: " + joined.get());
+        System.out.println("DatabaseHandler metrics for the whole run (latencies in ms):");
+        List<OperationStats> stats = handler.getMetrics().getTableStats();
+        for (OperationStats stat : stats) {
+            System.out.println(String.format("  %-8s %-18s %9d calls, p50 %7.2f, p99 %7.2f, max %8.2f, %d errors",
+                    stat.getOperation(), stat.getScope(), stat.getCount(), stat.getP50() / 1000.0,
+                    stat.getP99() / 1000.0, stat.getMax() / 1000.0, stat.getErrors()));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.trynocs.tryLibs.loadtest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of a load test run, parsed from {@code --name=value} arguments.
+ */
+final class LoadTestOptions {
+    /** Number of players online at the peak. */
+    final int players;
+    /** Players joining per second until the peak is reached. */
+    final double joinRate;
+    /** Mean time a player stays online, in seconds. Players leaving are replaced by new ones. */
+    final int sessionSeconds;
+    /** Loads per player per second. */
+    final double readsPerSecond;
+    /** Saves per player per second. */
+    final double writesPerSecond;
+    /** Economy transfers per player per second. */
+    final double transfersPerSecond;
+    /** Keys each player reads and writes. */
+    final int keysPerPlayer;
+    /** Total run time in seconds. */
+    final int durationSeconds;
+    /** Seconds between two report lines. */
+    final int reportSeconds;
+    /** Threads executing the simulated players. */
+    final int threads;
+    /** Whether the DatabaseHandler read cache is enabled. */
+    final boolean cache;
+    /** {@code sqlite}, {@code mysql}, {@code local} or {@code memory}. */
+    final String database;
+    final String sqlitePath;
+    final String mysqlHost;
+    final int mysqlPort;
+    final String mysqlDatabase;
+    final String mysqlUsername;
+    final String mysqlPassword;
+    /** File the report is additionally written to as CSV, or null. */
+    final String csv;
+
+    private LoadTestOptions(Map<String, String> values) {
+        players = Integer.parseInt(values.getOrDefault("players", "500"));
+        joinRate = Double.parseDouble(values.getOrDefault("join-rate", "50"));
+        sessionSeconds = Integer.parseInt(values.getOrDefault("session", "600"));
+        readsPerSecond = Double.parseDouble(values.getOrDefault("reads", "4"));
+        writesPerSecond = Double.parseDouble(values.getOrDefault("writes", "1"));
+        transfersPerSecond = Double.parseDouble(values.getOrDefault("transfers", "0.05"));
+        keysPerPlayer = Integer.parseInt(values.getOrDefault("keys", "20"));
+        durationSeconds = Integer.parseInt(values.getOrDefault("duration", "120"));
+        reportSeconds = Integer.parseInt(values.getOrDefault("report", "5"));
+        threads = Integer.parseInt(values.getOrDefault("threads", "16"));
+        cache = Boolean.parseBoolean(values.getOrDefault("cache", "false"));
+        database = values.getOrDefault("database", "sqlite");
+        sqlitePath = values.getOrDefault("sqlite-path", "loadtest.db");
+        mysqlHost = values.getOrDefault("mysql-host", "localhost");
+        mysqlPort = Integer.parseInt(values.getOrDefault("mysql-port", "3306"));
+        mysqlDatabase = values.getOrDefault("mysql-database", "trylibs_loadtest");
+        mysqlUsername = values.getOrDefault("mysql-username", "root");
+        mysqlPassword = values.getOrDefault("mysql-password", "");
+        csv = values.get("csv");
+    }
+
+    /**
+     * @param args The command-line arguments.
+     * @return The parsed options.
+     * @throws IllegalArgumentException if an argument is malformed or unknown.
+     */
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid argument '" + arg + "', expected --name=value");
+            }
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        LoadTestOptions options = new LoadTestOptions(values);
+        values.keySet().removeAll(Arrays.asList("players", "join-rate", "session", "reads", "writes", "transfers",
+                "keys", "duration", "report", "threads", "cache", "database", "sqlite-path", "mysql-host",
+                "mysql-port", "mysql-database", "mysql-username", "mysql-password", "csv"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d players (join %.0f/s, session %ds), per player %.2f reads/s, %.2f writes/s, "
+                        + "%.3f transfers/s, %s%s, %d threads, %ds",
+                players, joinRate, sessionSeconds, readsPerSecond, writesPerSecond, transfersPerSecond,
+                database, cache ? " with cache" : "", threads, durationSeconds);
+    }
+}
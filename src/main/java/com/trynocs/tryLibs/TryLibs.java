@@ -2,8 +2,11 @@ package com.trynocs.tryLibs;
 
 import com.google.gson.JsonObject;
 import com.trynocs.tryLibs.api.TryLibsAPI;
+import com.trynocs.tryLibs.commands.TryLibsCommand;
 import com.trynocs.tryLibs.utils.config.Configmanager;
 import com.trynocs.tryLibs.utils.database.DatabaseHandler;
+import com.trynocs.tryLibs.utils.database.DatabaseMetrics;
+import com.trynocs.tryLibs.utils.database.ExpiringDataListener;
 import com.trynocs.tryLibs.utils.economy.VaultSetup;
 import com.trynocs.tryLibs.utils.gui.ItemBuilder;
 import org.bukkit.Bukkit;
@@ -121,6 +124,11 @@ public final class TryLibs extends JavaPlugin implements TryLibsAPI {
             initializationState = "Creating DatabaseHandler";
             // Corrected instantiation: Pass 'this' (as TryLibsAPI) and the plugin's logger
             databaseHandler = new DatabaseHandler(this, getLogger());
+            getServer().getPluginManager().registerEvents(new ExpiringDataListener(databaseHandler), this);
+
+            TryLibsCommand command = new TryLibsCommand(this);
+            getCommand("trylibs").setExecutor(command);
+            getCommand("trylibs").setTabCompleter(command);
 
             initializationState = "Loading economy table name from config";
             economyDatabaseName = configManager.getConfig().getString("database.economytable", "economy");
@@ -369,6 +377,16 @@ public final class TryLibs extends JavaPlugin implements TryLibsAPI {
         return databaseHandler;
     }
 
+    /**
+     * Gibt die Metriken des DatabaseHandlers zurück.
+     * @return DatabaseMetrics Instanz
+     */
+    @Override
+    public DatabaseMetrics getDatabaseMetrics() {
+        DatabaseHandler handler = getDatabaseHandler();
+        return handler != null ? handler.getMetrics() : null;
+    }
+
     /**
      * Translates alternate color codes using '&amp;' character in the given text.
      * This method is static and can be used directly, but also provided via API for consistency.
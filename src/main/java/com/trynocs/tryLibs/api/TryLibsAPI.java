@@ -2,6 +2,7 @@ package com.trynocs.tryLibs.api;
 
 import com.trynocs.tryLibs.utils.config.Configmanager;
 import com.trynocs.tryLibs.utils.database.DatabaseHandler;
+import com.trynocs.tryLibs.utils.database.DatabaseMetrics;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.List;
@@ -38,6 +39,13 @@ public interface TryLibsAPI {
      */
     DatabaseHandler getDatabaseHandler();
 
+    /**
+     * Gets the latency, error and in-flight metrics of the database, per table and per calling plugin.
+     *
+     * @return The DatabaseMetrics instance.
+     */
+    DatabaseMetrics getDatabaseMetrics();
+
     /**
      * Translates alternate color codes using '&amp;' character in the given text.
      *
@@ -0,0 +1,91 @@
+package com.trynocs.tryLibs.commands;
+
+import com.trynocs.tryLibs.api.TryLibsAPI;
+import com.trynocs.tryLibs.utils.database.DatabaseMetrics;
+import com.trynocs.tryLibs.utils.database.OperationStats;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Handles the {@code /trylibs} command.
+ * <ul>
+ *     <li>{@code /trylibs stats} shows the database metrics per table and per plugin.</li>
+ *     <li>{@code /trylibs stats reset} resets the database metrics.</li>
+ * </ul>
+ */
+public class TryLibsCommand implements CommandExecutor, TabCompleter {
+    private static final int MAX_LINES = 10;
+
+    private final TryLibsAPI api;
+
+    /**
+     * @param api The TryLibsAPI instance.
+     */
+    public TryLibsCommand(TryLibsAPI api) {
+        this.api = api;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0 || !args[0].equalsIgnoreCase("stats")) {
+            sender.sendMessage(api.translateColors("&cVerwendung: /" + label + " stats [reset]"));
+            return true;
+        }
+
+        DatabaseMetrics metrics = api.getDatabaseMetrics();
+        if (metrics == null) {
+            sender.sendMessage(api.translateColors("&cDie Datenbank ist nicht verfügbar."));
+            return true;
+        }
+
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            metrics.reset();
+            sender.sendMessage(api.translateColors("&aDatenbank-Statistiken wurden zurückgesetzt."));
+            return true;
+        }
+
+        long seconds = Math.max(1, (System.currentTimeMillis() - metrics.getSince()) / 1000);
+        sender.sendMessage(api.translateColors("&6Datenbank-Statistiken &7(seit " + seconds + "s, Latenzen in ms)"));
+        sender.sendMessage(api.translateColors("&eNach Tabelle:"));
+        sendStats(sender, metrics.getTableStats(), seconds);
+        sender.sendMessage(api.translateColors("&eNach Plugin:"));
+        sendStats(sender, metrics.getPluginStats(), seconds);
+        return true;
+    }
+
+    private void sendStats(CommandSender sender, List<OperationStats> stats, long seconds) {
+        if (stats.isEmpty()) {
+            sender.sendMessage(api.translateColors("&7  Keine Daten."));
+            return;
+        }
+        for (OperationStats stat : stats.subList(0, Math.min(MAX_LINES, stats.size()))) {
+            sender.sendMessage(api.translateColors(String.format("&7  %s &f%s&7: %d (%.1f/s), p50 %s, p99 %s, max %s, Fehler %s%d&7, aktiv %d",
+                    stat.getOperation(), stat.getScope(), stat.getCount(), (double) stat.getCount() / seconds,
+                    millis(stat.getP50()), millis(stat.getP99()), millis(stat.getMax()),
+                    stat.getErrors() > 0 ? "&c" : "&7", stat.getErrors(), stat.getInFlight())));
+        }
+        if (stats.size() > MAX_LINES) {
+            sender.sendMessage(api.translateColors("&7  ... und " + (stats.size() - MAX_LINES) + " weitere"));
+        }
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        List<String> options = args.length == 1 ? Arrays.asList("stats")
+                : args.length == 2 && args[0].equalsIgnoreCase("stats") ? Arrays.asList("reset")
+                : new ArrayList<>();
+        String prefix = args.length > 0 ? args[args.length - 1].toLowerCase() : "";
+        return options.stream().filter(option -> option.startsWith(prefix)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,47 @@
+package com.trynocs.tryLibs.utils.database;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Finds the plugin that called into TryLibs by walking the stack up to the first class outside
+ * of TryLibs and the JDK. The plugin of each class is resolved once and cached.
+ */
+final class CallerResolver {
+    /** Name used for calls that did not come from a plugin, e.g. from TryLibs' own worker thread. */
+    static final String TRYLIBS = "TryLibs";
+    /** Name used for calls from classes that do not belong to a plugin. */
+    static final String UNKNOWN = "unknown";
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private static final ClassValue<String> PLUGIN_NAMES = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            try {
+                return JavaPlugin.getProvidingPlugin(type).getName();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                return UNKNOWN;
+            }
+        }
+    };
+
+    private CallerResolver() {
+    }
+
+    /**
+     * @return The name of the calling plugin, {@link #TRYLIBS} or {@link #UNKNOWN}.
+     */
+    static String resolvePlugin() {
+        Class<?> caller = WALKER.walk(frames -> frames
+                .map(StackWalker.StackFrame::getDeclaringClass)
+                .filter(type -> !isInternal(type.getName()))
+                .findFirst()
+                .orElse(null));
+        return caller == null ? TRYLIBS : PLUGIN_NAMES.get(caller);
+    }
+
+    private static boolean isInternal(String className) {
+        return className.startsWith("com.trynocs.tryLibs.") || className.startsWith("java.")
+                || className.startsWith("jdk.") || className.startsWith("sun.");
+    }
+}
@@ -0,0 +1,204 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the caches of several servers sharing one database coherent without an external broker.
+ * <p>
+ * Every write appends {@code (table, uuid, key)} to the {@value #TABLE} table, whose auto-increment
+ * {@code Version} orders all changes. Each server polls the rows above the last version it has seen,
+ * which is a range scan on the primary key, and invalidates its cached entries for them.
+ * <p>
+ * With MySQL, versions can become visible out of order when concurrent inserts commit in a different
+ * order than they were numbered. Skipped versions are therefore remembered for a few seconds and
+ * queried again until they show up.
+ */
+class ChangeLog {
+    /** The name of the change-log table. */
+    static final String TABLE = "trylibs_changelog";
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_GAPS = 1000;
+    private static final long GAP_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * A change written by another server. {@code key} is null if all keys of the player in the table changed.
+     */
+    static final class Change {
+        final long version;
+        final String table;
+        final UUID uuid;
+        final String key;
+
+        private Change(long version, String table, UUID uuid, String key) {
+            this.version = version;
+            this.table = table;
+            this.uuid = uuid;
+            this.key = key;
+        }
+    }
+
+    private final String nodeId;
+    private final boolean mysql;
+    private boolean initialized = false;
+    private long lastVersion;
+    // Skipped versions and when they were first noticed
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+
+    /**
+     * @param nodeId The id of this server, changes written with it are not reported by {@link #poll}.
+     * @param mysql Whether the MySQL dialect is used.
+     */
+    ChangeLog(String nodeId, boolean mysql) {
+        this.nodeId = nodeId;
+        this.mysql = mysql;
+    }
+
+    /**
+     * Creates the change-log table if necessary and starts reading at its current end.
+     * @param connection The connection to use.
+     * @throws SQLException if a database access error occurs.
+     */
+    synchronized void initialize(Connection connection) throws SQLException {
+        if (initialized) return;
+        try (Statement stmt = connection.createStatement()) {
+            if (mysql) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        "Version BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                        "TableName VARCHAR(255) NOT NULL," +
+                        "UUID VARCHAR(36) NOT NULL," +
+                        "KeyName VARCHAR(255) NULL," +
+                        "NodeId VARCHAR(36) NOT NULL," +
+                        "ChangedAt BIGINT NOT NULL," +
+                        "INDEX idx_changed (ChangedAt)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;");
+            } else {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        "Version INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "TableName TEXT NOT NULL," +
+                        "UUID TEXT NOT NULL," +
+                        "KeyName TEXT," +
+                        "NodeId TEXT NOT NULL," +
+                        "ChangedAt INTEGER NOT NULL" +
+                        ");");
+                stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + TABLE + "_changed ON " + TABLE + " (ChangedAt)");
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(Version) FROM " + TABLE)) {
+                lastVersion = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+        initialized = true;
+    }
+
+    /**
+     * Records a change.
+     * @param connection The connection to use.
+     * @param table The changed table.
+     * @param uuid The changed player.
+     * @param key The changed key, or null if all keys of the player changed.
+     * @throws SQLException if a database access error occurs.
+     */
+    void append(Connection connection, String table, UUID uuid, String key) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " (TableName, UUID, KeyName, NodeId, ChangedAt) VALUES (?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, uuid.toString());
+            pstmt.setString(3, key);
+            pstmt.setString(4, nodeId);
+            pstmt.setLong(5, System.currentTimeMillis());
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads the changes of other servers written since the last poll.
+     * @param connection The connection to use.
+     * @return The new changes of other servers, in version order.
+     * @throws SQLException if a database access error occurs.
+     */
+    synchronized List<Change> poll(Connection connection) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(firstSeen -> now - firstSeen > GAP_TIMEOUT_MILLIS);
+        Set<Long> filled = pollGaps(connection, changes);
+
+        // Kept aside until the whole poll succeeded, so a failed poll reads the same changes again
+        long version = lastVersion;
+        Map<Long, Long> newGaps = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT Version, TableName, UUID, KeyName, NodeId FROM " + TABLE + " WHERE Version > ? ORDER BY Version LIMIT " + BATCH_SIZE)) {
+            pstmt.setLong(1, version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long rowVersion = rs.getLong("Version");
+                    for (long missing = version + 1; missing < rowVersion && gaps.size() + newGaps.size() < MAX_GAPS; missing++) {
+                        newGaps.put(missing, now);
+                    }
+                    version = rowVersion;
+                    addChange(changes, rs);
+                }
+            }
+        }
+
+        lastVersion = version;
+        gaps.keySet().removeAll(filled);
+        gaps.putAll(newGaps);
+        return changes;
+    }
+
+    /**
+     * Reads the changes that filled a gap since the last poll.
+     * @return The versions of the filled gaps.
+     */
+    private Set<Long> pollGaps(Connection connection, List<Change> changes) throws SQLException {
+        Set<Long> filled = new HashSet<>();
+        if (gaps.isEmpty()) return filled;
+        StringBuilder sql = new StringBuilder("SELECT Version, TableName, UUID, KeyName, NodeId FROM ")
+                .append(TABLE).append(" WHERE Version IN (");
+        Iterator<Long> iterator = gaps.keySet().iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            sql.append(i == 0 ? "" : ",").append(iterator.next());
+        }
+        sql.append(')');
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql.toString())) {
+            while (rs.next()) {
+                filled.add(rs.getLong("Version"));
+                addChange(changes, rs);
+            }
+        }
+        return filled;
+    }
+
+    private void addChange(List<Change> changes, ResultSet rs) throws SQLException {
+        if (!nodeId.equals(rs.getString("NodeId"))) {
+            changes.add(new Change(rs.getLong("Version"), rs.getString("TableName"),
+                    UUID.fromString(rs.getString("UUID")), rs.getString("KeyName")));
+        }
+    }
+
+    /**
+     * Deletes changes older than the given time.
+     * @param connection The connection to use.
+     * @param olderThan The time in milliseconds.
+     * @return The number of deleted changes.
+     * @throws SQLException if a database access error occurs.
+     */
+    int prune(Connection connection, long olderThan) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE ChangedAt < ?")) {
+            pstmt.setLong(1, olderThan);
+            return pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Stops database accesses after repeated connection failures, so calls during an outage fail
+ * immediately instead of each waiting for a connect timeout.
+ * <p>
+ * The breaker opens after {@code failureThreshold} connection failures in a row. While it is open,
+ * {@link #allowRequest()} returns false and only the owner tries to reconnect, at {@link #getProbeAt()}.
+ * Each failed attempt doubles the wait up to {@code maxOpenMillis}.
+ * Thread-safe.
+ */
+final class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long maxOpenMillis;
+    private State state = State.CLOSED;
+    private int failures;
+    private long currentOpenMillis;
+    private long probeAt;
+
+    CircuitBreaker(int failureThreshold, long openMillis, long maxOpenMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(1, openMillis);
+        this.maxOpenMillis = Math.max(this.openMillis, maxOpenMillis);
+        this.currentOpenMillis = this.openMillis;
+    }
+
+    /**
+     * @return true if an error means the database cannot be reached, as opposed to an error of the statement.
+     */
+    static boolean isConnectionFailure(SQLException e) {
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException) return true;
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    /**
+     * @return true if the database may be accessed.
+     */
+    synchronized boolean allowRequest() {
+        return state == State.CLOSED;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The time of the next reconnect attempt in milliseconds, or 0 if the breaker is closed.
+     */
+    synchronized long getProbeAt() {
+        return state == State.OPEN ? probeAt : 0L;
+    }
+
+    /**
+     * Records a successful connect and closes the breaker.
+     */
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        currentOpenMillis = openMillis;
+    }
+
+    /**
+     * Records a connection failure of an access. Accesses rejected while the breaker is open do not count.
+     * @return true if the breaker has just opened.
+     */
+    synchronized boolean onFailure(long now) {
+        if (state == State.OPEN || ++failures < failureThreshold) return false;
+        state = State.OPEN;
+        probeAt = now + currentOpenMillis;
+        return true;
+    }
+
+    /**
+     * Records a failed reconnect attempt and doubles the wait for the next one.
+     */
+    synchronized void onProbeFailure(long now) {
+        currentOpenMillis = Math.min(maxOpenMillis, currentOpenMillis * 2);
+        probeAt = now + currentOpenMillis;
+    }
+}
@@ -3,37 +3,177 @@ package com.trynocs.tryLibs.utils.database;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.trynocs.tryLibs.api.TryLibsAPI; // Changed
-import org.bukkit.configuration.file.FileConfiguration; // Keep for now, but ideally config access is through API
+import com.trynocs.tryLibs.utils.database.codec.CodecRegistry;
+import com.trynocs.tryLibs.utils.database.codec.ValueCodec;
+import org.bukkit.configuration.ConfigurationSection;
 
 import java.io.File;
-import java.sql.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Handles all database interactions for TryLibs, supporting SQLite and MySQL.
+ * Handles all database interactions for TryLibs, supporting SQLite, MySQL, a local log-structured store
+ * and an in-memory backend.
  * This class manages connections, table creation, and data persistence.
+ * <p>
+ * With {@code database.quotas} enabled, reads, deletes and conditional saves throw a
+ * {@link RejectedExecutionException} if the calling plugin gets no slot within the maximum wait, so a
+ * rejection cannot be mistaken for missing data. Plain saves are queued instead and never dropped.
  */
 public class DatabaseHandler {
-    private Connection connection;
+    private StorageBackend backend;
     private final Logger logger;
     private final TryLibsAPI api; // Changed: To access config and other API features if needed
+    private final ConfigurationSection configSection; // Used instead of the API config when set
 
     private String dbType;
-    private String sqlitePath; // Default path should be TryLibs specific
-    private String mysqlHost;
-    private int mysqlPort;
-    private String mysqlDatabase;
-    private String mysqlUsername;
-    private String mysqlPassword;
     private final Gson gson = new Gson();
+    private final CodecRegistry codecRegistry = new CodecRegistry(gson);
+    private static final TypeToken<List<String>> STRING_LIST_TYPE = new TypeToken<List<String>>(){};
+    private static final TypeToken<String[]> STRING_ARRAY_TYPE = TypeToken.get(String[].class);
+    /** Prefix of the {@code Type} column for values written with {@link #saveObject}, followed by the codec id. */
+    private static final String OBJECT_TYPE_PREFIX = "obj:";
     private UUID dummyUUID = UUID.fromString("00000000-0000-0000-0000-000000000000");
     private boolean configLoaded = false;
     private int initAttempts = 0;
     private final int MAX_INIT_ATTEMPTS = 3;
+    private ValueCompressor compressor;
+    private ScheduledExecutorService worker;
+    private static final long EXPIRY_TICK_MILLIS = 1000;
+    private long expirySweepIntervalMillis;
+    private long lastExpirySweep = System.currentTimeMillis();
+    private ScheduledFuture<?> expirySweeper;
+    // Expiry times of keys written with a TTL or preloaded for online players
+    private final Map<EntryKey, Long> expiries = new ConcurrentHashMap<>();
+    private final Set<UUID> preloadedPlayers = ConcurrentHashMap.newKeySet();
+    private final ExpiryWheel<EntryKey> expiryWheel = new ExpiryWheel<>(EXPIRY_TICK_MILLIS, System.currentTimeMillis());
+    private ValueCache cache;
+    // Tables created by createTable with one row per player
+    private Set<String> wideTables = Collections.emptySet();
+    private ChangeLog changeLog;
+    private long coherencePollMillis;
+    private long changeLogRetentionMillis;
+    private long lastChangeLogPrune = System.currentTimeMillis();
+    private ScheduledFuture<?> coherencePoller;
+    private final DatabaseMetrics metrics = new DatabaseMetrics();
+    private MainThreadMonitor mainThreadMonitor;
+    private PluginScheduler scheduler;
+    private ScheduledFuture<?> mainThreadReporter;
+    private static final long KEY_MIGRATION_DELAY_MILLIS = 50;
+    private boolean migrateKeys;
+    private int keyMigrationBatchSize;
+    // Tables whose key names are converted to key ids, processed in order by the worker
+    private Deque<String> keyMigrationTables;
+    private ScheduledFuture<?> keyMigration;
+    // Writes running on the worker thread or a calling thread, keyed by table, UUID and key. Reads of these keys wait for them.
+    private final Map<String, CompletableFuture<Void>> pendingWrites = new ConcurrentHashMap<>();
+    private int scanPageSize = 500;
+    // Delivers published scans, so slow subscribers do not hold up the write worker
+    private ExecutorService scanExecutor;
+    private static final long SPILL_RETRY_MILLIS = 1000;
+    private static final long SPILL_MAX_RETRY_MILLIS = 30000;
+    private CircuitBreaker breaker;
+    // Writes made while the database was unreachable, replayed when it is back
+    private SpillJournal spill;
+    private int spillBatchSize;
+    private int spillMaxAttempts;
+    private int spillAttempts;
+    private final AtomicBoolean spillReplayScheduled = new AtomicBoolean();
+    // Reconnects and replays the spill journal, so neither holds up the write worker
+    private ScheduledExecutorService recovery;
+    /**
+     * Applied migration versions and the migration lock, one row per {@link SchemaMigrations} name,
+     * and the tables created through this class in the row {@link #TABLE_REGISTRY}.
+     */
+    private static final String SCHEMA_TABLE = "trylibs_schema";
+    private static final UUID TABLE_REGISTRY = UUID.nameUUIDFromBytes("trylibs-tables".getBytes(StandardCharsets.UTF_8));
+    /** Tables of older versions, purged if they exist although they were never registered. */
+    private static final List<String> LEGACY_TABLES = Arrays.asList("users", "currency", "info");
+    private static final String INTERNAL_TABLE_PREFIX = "trylibs_";
+    private static final String SCHEMA_LOCK_KEY = "lock";
+    private static final String SCHEMA_VERSION_PREFIX = "v";
+    private static final long SCHEMA_LOCK_POLL_MILLIS = 500;
+    private long migrationLockTimeoutMillis = 60000;
+    private long migrationLockLeaseMillis = 600000;
+    // Applied versions by migration name, so repeated migrate calls do not query the database
+    private final Map<String, Set<Integer>> appliedMigrations = new ConcurrentHashMap<>();
+    // Tables known to exist, so createTable and tableExists do not query the database again
+    private final Set<String> knownTables = ConcurrentHashMap.newKeySet();
+    // Statements with IF NOT EXISTS already run by executeTableStatement
+    private final Set<String> executedStatements = ConcurrentHashMap.newKeySet();
+    // Tables whose players are deleted by wipeAllData and purgePlayers
+    private final Set<String> registeredTables = ConcurrentHashMap.newKeySet();
+    private volatile boolean registeredTablesLoaded;
+    private int purgeBatchSize = 500;
+    private long purgeDelayMillis = 100;
+    private long purgeReportMillis = 10000;
+    private int bulkChunkSize = 5000;
+    private long bulkReportMillis = 10000;
+    // Runs purge jobs, so they do not hold up the write worker
+    private ScheduledExecutorService purgeExecutor;
+    private final Set<PurgeJob> purgeJobs = ConcurrentHashMap.newKeySet();
+    private static final DateTimeFormatter BACKUP_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private Path backupDirectory;
+    private long backupIntervalMillis;
+    private int backupRetain;
+    private int backupPagesPerStep;
+    private long backupStepDelayMillis;
+    private ScheduledFuture<?> backupSchedule;
+    private final AtomicBoolean backupRunning = new AtomicBoolean();
+    // In-memory indexes of hot keys by table and key, see createIndex
+    private final Map<String, ValueIndex> valueIndexes = new ConcurrentHashMap<>();
     // private boolean classloaderWarningShown = false; // No longer needed here with direct API/Logger passing
 
     /**
@@ -46,10 +186,26 @@ public class DatabaseHandler {
      */
     public DatabaseHandler(TryLibsAPI api, Logger pluginLogger) {
         this.api = api;
+        this.configSection = null;
         this.logger = pluginLogger; // Use the logger from the main TryLibs plugin instance
         loadConfig(); // Load configuration immediately on construction
     }
 
+    /**
+     * Creates a new DatabaseHandler that reads its settings from the given configuration instead of
+     * the TryLibs config, e.g. for benchmarks or tools running without a server.
+     * Tables are NOT automatically created.
+     *
+     * @param config A configuration containing the {@code database} section.
+     * @param logger The Logger instance to use.
+     */
+    public DatabaseHandler(ConfigurationSection config, Logger logger) {
+        this.api = null;
+        this.configSection = Objects.requireNonNull(config, "config");
+        this.logger = logger;
+        loadConfig();
+    }
+
     /**
      * Loads the database configuration from the plugin's config file.
      * This method is called during the construction of the DatabaseHandler.
@@ -57,7 +213,7 @@ public class DatabaseHandler {
     private synchronized void loadConfig() {
         if (configLoaded) return;
 
-        if (this.api == null) {
+        if (this.api == null && this.configSection == null) {
             // This should ideally not happen if DatabaseHandler is constructed correctly by TryLibs
             logger.log(Level.SEVERE, "TryLibsAPI instance is null in DatabaseHandler. Cannot load database configuration.");
             throw new IllegalStateException("TryLibsAPI not provided to DatabaseHandler.");
@@ -68,25 +224,145 @@ public class DatabaseHandler {
         // for ConfigManager to be ready.
 
         try {
-            FileConfiguration config = api.getConfigManager().getConfig(); // Use API to get config
+            ConfigurationSection config = configSection != null ? configSection : api.getConfigManager().getConfig(); // Use API to get config
             this.dbType = config.getString("database.type", "sqlite").toLowerCase();
             logger.info("Using database type: " + dbType);
 
-            // Default SQLite path changed to be TryLibs specific
-            this.sqlitePath = config.getString("database.sqlite.path", "plugins/TryLibs/database.db");
-            File dbFile = new File(this.sqlitePath);
-            File dataFolder = dbFile.getParentFile();
-            if (!dataFolder.exists()) {
-                if (!dataFolder.mkdirs()) {
-                    logger.warning("Could not create data folder for SQLite database: " + dataFolder.getAbsolutePath());
+            boolean encodeKeys = config.getBoolean("database.key-dictionary.enabled", true);
+            this.migrateKeys = encodeKeys && config.getBoolean("database.key-dictionary.migrate", false);
+            this.keyMigrationBatchSize = Math.max(1, config.getInt("database.key-dictionary.batch-size", 1000));
+            switch (dbType) {
+                case "mysql":
+                    MysqlBackend mysql = new MysqlBackend(
+                            config.getString("database.mysql.host", "localhost"),
+                            config.getInt("database.mysql.port", 3306),
+                            config.getString("database.mysql.database", "trylibs"), // Default DB name changed
+                            config.getString("database.mysql.username", "root"),
+                            config.getString("database.mysql.password", "password"),
+                            encodeKeys);
+                    List<String> replicaAddresses = config.getStringList("database.mysql.replicas");
+                    if (!replicaAddresses.isEmpty()) {
+                        Map<String, MysqlBackend> replicas = new LinkedHashMap<>();
+                        for (String address : replicaAddresses) {
+                            int colon = address.lastIndexOf(':');
+                            String host = colon > 0 ? address.substring(0, colon) : address;
+                            int port = colon > 0 ? Integer.parseInt(address.substring(colon + 1).trim()) : 3306;
+                            replicas.put(address, mysql.replica(host.trim(), port));
+                        }
+                        mysql.setReplicas(new ReplicaRouter(replicas,
+                                (long) (config.getDouble("database.mysql.replica-max-lag", 5) * 1000),
+                                (long) (config.getDouble("database.mysql.read-your-writes", 10) * 1000),
+                                (long) (config.getDouble("database.mysql.replica-check-interval", 2) * 1000),
+                                logger));
+                    }
+                    this.backend = mysql;
+                    break;
+                case "sharded":
+                    ConfigurationSection shardsSection = config.getConfigurationSection("database.sharding.shards");
+                    if (shardsSection == null || shardsSection.getKeys(false).isEmpty()) {
+                        throw new IllegalStateException("database.sharding.shards enthält keine Shards");
+                    }
+                    Map<String, StorageBackend> shards = new LinkedHashMap<>();
+                    for (String name : shardsSection.getKeys(false)) {
+                        shards.put(name, createShardBackend(name, shardsSection.getConfigurationSection(name), config, encodeKeys));
+                    }
+                    this.backend = new ShardedBackend(shards, config.getInt("database.sharding.virtual-nodes", 128));
+                    break;
+                case "memory":
+                    this.backend = new MemoryBackend();
+                    break;
+                case "local":
+                    this.backend = new LocalBackend(
+                            Paths.get(config.getString("database.local.path", "plugins/TryLibs/local")),
+                            Math.max(1, config.getInt("database.local.segment-size", 64)) * 1024 * 1024,
+                            config.getDouble("database.local.compaction-threshold", 0.5),
+                            config.getBoolean("database.local.sync", false),
+                            logger);
+                    break;
+                default:
+                    // Default SQLite path changed to be TryLibs specific
+                    String sqlitePath = config.getString("database.sqlite.path", "plugins/TryLibs/database.db");
+                    File dataFolder = new File(sqlitePath).getAbsoluteFile().getParentFile();
+                    if (!dataFolder.exists()) {
+                        if (!dataFolder.mkdirs()) {
+                            logger.warning("Could not create data folder for SQLite database: " + dataFolder.getAbsolutePath());
+                        }
+                    }
+                    this.backend = new SqliteBackend(sqlitePath, encodeKeys, config.getBoolean("database.sqlite.wal", true));
+                    break;
+            }
+
+            Set<String> wide = new HashSet<>();
+            for (String table : config.getStringList("database.wide-tables")) {
+                wide.add(table.toLowerCase());
+            }
+            this.wideTables = wide;
+            this.scanPageSize = Math.max(1, config.getInt("database.scan.page-size", 500));
+            this.purgeBatchSize = Math.max(1, config.getInt("database.purge.batch-size", 500));
+            this.purgeDelayMillis = Math.max(0, config.getLong("database.purge.delay", 100));
+            this.purgeReportMillis = Math.max(1, config.getLong("database.purge.report-interval", 10)) * 1000L;
+            this.bulkChunkSize = Math.max(1, config.getInt("database.bulk.chunk-size", 5000));
+            this.bulkReportMillis = Math.max(1, config.getLong("database.bulk.report-interval", 10)) * 1000L;
+            this.backupDirectory = Paths.get(config.getString("database.sqlite.backup.directory", "plugins/TryLibs/backups"));
+            this.backupIntervalMillis = Math.max(0, config.getLong("database.sqlite.backup.interval", 360)) * 60000L;
+            this.backupRetain = Math.max(1, config.getInt("database.sqlite.backup.retain", 4));
+            this.backupPagesPerStep = Math.max(1, config.getInt("database.sqlite.backup.pages-per-step", 100));
+            this.backupStepDelayMillis = Math.max(0, config.getLong("database.sqlite.backup.step-delay", 5));
+            this.migrationLockTimeoutMillis = config.getLong("database.migrations.lock-timeout", 60) * 1000L;
+            this.migrationLockLeaseMillis = Math.max(1, config.getLong("database.migrations.lock-lease", 600)) * 1000L;
+
+            int compressionThreshold = config.getBoolean("database.compression.enabled", false)
+                    ? config.getInt("database.compression.threshold", 4096) : 0;
+            this.compressor = new ValueCompressor(compressionThreshold,
+                    config.getBoolean("database.compression.dictionary", true), new DictionaryStore());
+            this.expirySweepIntervalMillis = config.getLong("database.ttl.sweep-interval", 300) * 1000L;
+
+            if (config.getBoolean("database.cache.enabled", false)) {
+                OffHeapCache offHeap = null;
+                if (config.getBoolean("database.cache.off-heap.enabled", false)) {
+                    long size = Math.max(1, Math.min(2047, config.getLong("database.cache.off-heap.size", 256)));
+                    offHeap = new OffHeapCache(size << 20, Math.max(1, config.getInt("database.cache.off-heap.max-entries", 1000000)));
                 }
+                this.cache = new ValueCache(config.getInt("database.cache.max-entries", 10000), offHeap);
+            }
+            if (config.getBoolean("database.coherence.enabled", false) && !(backend instanceof JdbcBackend)) {
+                logger.warning("Cache-Kohärenz benötigt eine SQL-Datenbank und ist für '" + dbType + "' deaktiviert.");
+            } else if (config.getBoolean("database.coherence.enabled", false)) {
+                this.changeLog = new ChangeLog(UUID.randomUUID().toString(), "mysql".equals(dbType));
+                this.coherencePollMillis = Math.max(50, config.getLong("database.coherence.poll-interval", 1000));
+                this.changeLogRetentionMillis = config.getLong("database.coherence.retention", 3600) * 1000L;
+            }
+
+            if (config.getBoolean("database.circuit-breaker.enabled", true) && backend instanceof JdbcBackend) {
+                this.breaker = new CircuitBreaker(config.getInt("database.circuit-breaker.failure-threshold", 3),
+                        config.getLong("database.circuit-breaker.open-duration", 5) * 1000L,
+                        config.getLong("database.circuit-breaker.max-open-duration", 60) * 1000L);
+                this.spillBatchSize = Math.max(1, config.getInt("database.circuit-breaker.replay-batch-size", 500));
+                this.spillMaxAttempts = Math.max(1, config.getInt("database.circuit-breaker.max-attempts", 5));
+                String spillPath = config.getString("database.circuit-breaker.spill-file", "plugins/TryLibs/spill.log");
+                try {
+                    this.spill = SpillJournal.open(Paths.get(spillPath),
+                            config.getBoolean("database.circuit-breaker.sync", false));
+                    if (!spill.isEmpty()) {
+                        logger.warning(spill.getBacklogBytes() + " Bytes ausgelagerte Schreibvorgänge gefunden, sie werden jetzt nachgeholt.");
+                        scheduleSpillReplay(0);
+                    }
+                } catch (IOException e) {
+                    logger.severe("Auslagerungsdatei '" + spillPath + "' konnte nicht geöffnet werden, Schreibvorgänge während eines Ausfalls gehen verloren: " + e.getMessage());
+                }
+            }
+
+            if (config.getBoolean("database.main-thread.enabled", true)) {
+                this.mainThreadMonitor = new MainThreadMonitor(logger,
+                        (long) (config.getDouble("database.main-thread.threshold", 5.0) * 1000),
+                        config.getBoolean("database.main-thread.strict", false),
+                        Math.max(1, config.getLong("database.main-thread.report-interval", 1200)) * 50L);
+                metrics.setMainThreadMonitor(mainThreadMonitor);
             }
 
-            this.mysqlHost = config.getString("database.mysql.host", "localhost");
-            this.mysqlPort = config.getInt("database.mysql.port", 3306);
-            this.mysqlDatabase = config.getString("database.mysql.database", "trylibs"); // Default DB name changed
-            this.mysqlUsername = config.getString("database.mysql.username", "root");
-            this.mysqlPassword = config.getString("database.mysql.password", "password");
+            if (config.getBoolean("database.quotas.enabled", false)) {
+                this.scheduler = loadQuotas(config);
+            }
 
             configLoaded = true;
             logger.info("Database configuration successfully loaded for TryLibs.");
@@ -97,7 +373,71 @@ public class DatabaseHandler {
         }
     }
 
-    private synchronized void ensureConnection() {
+    /**
+     * Creates the scheduler for the per-plugin quotas from the {@code database.quotas} section.
+     */
+    private PluginScheduler loadQuotas(ConfigurationSection config) {
+        PluginScheduler.Quota defaultQuota = new PluginScheduler.Quota(
+                config.getInt("database.quotas.default.max-concurrent", 4),
+                config.getDouble("database.quotas.default.ops-per-second", 0),
+                config.getInt("database.quotas.default.weight", 1));
+        Map<String, PluginScheduler.Quota> quotas = new HashMap<>();
+        ConfigurationSection plugins = config.getConfigurationSection("database.quotas.plugins");
+        if (plugins != null) {
+            for (String plugin : plugins.getKeys(false)) {
+                ConfigurationSection quota = plugins.getConfigurationSection(plugin);
+                if (quota == null) continue;
+                quotas.put(plugin, new PluginScheduler.Quota(
+                        quota.getInt("max-concurrent", defaultQuota.maxConcurrent),
+                        quota.getDouble("ops-per-second", defaultQuota.opsPerSecond),
+                        quota.getInt("weight", defaultQuota.weight)));
+            }
+        }
+        return new PluginScheduler(config.getInt("database.quotas.max-concurrent", 8),
+                config.getLong("database.quotas.max-wait", 5000), defaultQuota, quotas);
+    }
+
+    /**
+     * Creates the backend of one shard. Settings a shard does not set are taken from the
+     * {@code database.mysql} and {@code database.local} sections.
+     */
+    private StorageBackend createShardBackend(String name, ConfigurationSection shard, ConfigurationSection config,
+                                              boolean encodeKeys) {
+        switch (shard.getString("type", "sqlite").toLowerCase()) {
+            case "mysql":
+                return new MysqlBackend(
+                        shard.getString("host", config.getString("database.mysql.host", "localhost")),
+                        shard.getInt("port", config.getInt("database.mysql.port", 3306)),
+                        shard.getString("database", name),
+                        shard.getString("username", config.getString("database.mysql.username", "root")),
+                        shard.getString("password", config.getString("database.mysql.password", "password")),
+                        encodeKeys);
+            case "memory":
+                return new MemoryBackend();
+            case "local":
+                return new LocalBackend(
+                        Paths.get(shard.getString("path", "plugins/TryLibs/" + name)),
+                        Math.max(1, config.getInt("database.local.segment-size", 64)) * 1024 * 1024,
+                        config.getDouble("database.local.compaction-threshold", 0.5),
+                        config.getBoolean("database.local.sync", false),
+                        logger);
+            default:
+                String sqlitePath = shard.getString("path", "plugins/TryLibs/" + name + ".db");
+                File dataFolder = new File(sqlitePath).getAbsoluteFile().getParentFile();
+                if (!dataFolder.exists() && !dataFolder.mkdirs()) {
+                    logger.warning("Could not create data folder for SQLite database: " + dataFolder.getAbsolutePath());
+                }
+                return new SqliteBackend(sqlitePath, encodeKeys, config.getBoolean("database.sqlite.wal", true));
+        }
+    }
+
+    private void ensureConnection() throws SQLException {
+        if (breaker != null && !breaker.allowRequest()) {
+            // Only the recovery thread reconnects, so callers do not wait for connect timeouts
+            throw new SQLTransientConnectionException("Datenbank nicht erreichbar, nächster Verbindungsversuch in "
+                    + Math.max(0, breaker.getProbeAt() - System.currentTimeMillis()) + " ms", "08000");
+        }
+        if (backend != null && backend.isConnected()) return;
         // Config should be loaded by constructor. If not, something is wrong.
         if (!configLoaded) {
             logger.severe("Database configuration not loaded. Cannot establish connection.");
@@ -108,32 +448,38 @@ public class DatabaseHandler {
             }
         }
 
-        try {
-            if (connection == null || connection.isClosed()) {
-                if ("mysql".equals(dbType)) {
-                    connectToMysql();
-                } else {
-                    connectToSqlite();
-                }
-                connection.setAutoCommit(true);
-                logger.info("Datenbankverbindung hergestellt! (" + dbType + ")");
-            }
-        } catch (Exception e) {
-            logger.severe("Fehler beim Verbindungsaufbau: " + e.getMessage());
-            e.printStackTrace();
+        connect();
+        if (breaker != null && !backend.isConnected()) {
+            throw new SQLTransientConnectionException("Keine Datenbankverbindung", "08000");
         }
     }
 
-    private void connectToSqlite() throws ClassNotFoundException, SQLException {
-        Class.forName("org.sqlite.JDBC");
-        connection = DriverManager.getConnection("jdbc:sqlite:" + sqlitePath);
-    }
-
-    private void connectToMysql() throws ClassNotFoundException, SQLException {
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        String url = "jdbc:mysql://" + mysqlHost + ":" + mysqlPort + "/" + mysqlDatabase +
-                "?useSSL=false&allowPublicKeyRetrieval=true&useUnicode=true&characterEncoding=utf8";
-        connection = DriverManager.getConnection(url, mysqlUsername, mysqlPassword);
+    private synchronized void connect() {
+        try (DatabaseMetrics.Sample sample = metrics.start("connect", null)) {
+            try {
+                // A failure is counted by the circuit breaker when the caller gets "Keine Datenbankverbindung"
+                boolean connected = backend.connect();
+                if (breaker != null) breaker.onSuccess();
+                if (!connected) return;
+                logger.info("Datenbankverbindung hergestellt! (" + dbType + ")");
+                discoverExpiryTables();
+                if (changeLog != null) {
+                    ((JdbcBackend) backend).withConnection(connection -> {
+                        changeLog.initialize(connection);
+                        return null;
+                    });
+                    ensureCoherencePoller();
+                }
+                ensureMainThreadReporter();
+                ensureBackupSchedule();
+                ensureKeyMigration();
+                if (spill != null && !spill.isEmpty()) scheduleSpillReplay(0);
+            } catch (Exception e) {
+                sample.failed();
+                logger.severe("Fehler beim Verbindungsaufbau: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -141,15 +487,25 @@ public class DatabaseHandler {
      * Der Entwickler ist selbst für das Statement verantwortlich!
      * Beispiel:
      *   handler.executeTableStatement("CREATE TABLE IF NOT EXISTS users (UUID TEXT PRIMARY KEY, Name TEXT);");
+     * Statements with {@code IF NOT EXISTS} are only run once per handler. Prefer {@link #migrate(SchemaMigrations)},
+     * which runs each change once per database.
      * @param sql The SQL statement to execute.
      */
     public void executeTableStatement(String sql) {
+        String statement = sql.trim();
+        boolean idempotent = statement.toUpperCase(Locale.ROOT).contains("IF NOT EXISTS");
+        if (idempotent && executedStatements.contains(statement)) return;
         try {
             ensureConnection();
-            try (Statement stmt = connection.createStatement()) {
-                stmt.executeUpdate(sql);
-                logger.info("Tabellen-Statement erfolgreich ausgeführt.");
+            backend.executeStatement(sql);
+            if (idempotent) {
+                executedStatements.add(statement);
+            } else {
+                // The statement may have dropped or renamed tables
+                knownTables.clear();
+                executedStatements.clear();
             }
+            logger.info("Tabellen-Statement erfolgreich ausgeführt.");
         } catch (SQLException e) {
             logger.severe("Fehler beim Ausführen des Tabellen-Statements: " + e.getMessage());
             e.printStackTrace();
@@ -160,75 +516,396 @@ public class DatabaseHandler {
      * Führt ein beliebiges CREATE TABLE-Statement aus.
      * Beispiel:
      *   databaseHandler.createTable("CREATE TABLE IF NOT EXISTS users (UUID TEXT PRIMARY KEY, Name TEXT);");
+     * Tables listed under {@code database.wide-tables} are created with {@link #createWideTable(String)}.
+     * Tables this handler already created or found are not created again.
      * @param name The name of the table to create.
      */
     public void createTable(String name) {
+        if (wideTables.contains(name.toLowerCase())) {
+            createWideTable(name);
+            return;
+        }
+        if (knownTables.contains(name.toLowerCase())) return;
         try {
             ensureConnection();
-            String sql;
-            if ("mysql".equals(dbType)) {
-                sql = "CREATE TABLE IF NOT EXISTS " + name + " (" +
-                        "UUID VARCHAR(36)," +
-                        "KeyName VARCHAR(255)," +
-                        "Value TEXT," +
-                        "Type VARCHAR(20)," +
-                        "PRIMARY KEY (UUID, KeyName)" +
-                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
-            } else {
-                sql = "CREATE TABLE IF NOT EXISTS " + name + " (" +
-                        "UUID TEXT," +
-                        "Key TEXT," +
-                        "Value TEXT," +
-                        "Type TEXT," +
-                        "PRIMARY KEY (UUID, Key)" +
-                        ");";
-            }
-            try (Statement stmt = connection.createStatement()) {
-                stmt.executeUpdate(sql);
-                logger.info("Tabelle '" + name + "' erfolgreich erstellt oder bereits vorhanden.");
-            }
+            backend.createTable(name);
+            knownTables.add(name.toLowerCase());
+            registerTable(name.toLowerCase());
+            logger.info("Tabelle '" + name + "' erfolgreich erstellt oder bereits vorhanden.");
         } catch (SQLException e) {
             logger.severe("Fehler beim Erstellen der Tabelle '" + name + "': " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private synchronized void saveGeneric(String tableName, UUID uuid, String key, Object value, String type) {
+    /**
+     * Creates a table that stores all keys of a player in one row instead of one row per key.
+     * Loading a player's profile then reads a single row, and with the cache enabled all keys of the
+     * row are cached by the first load. Keys are still saved and loaded one by one with the same methods.
+     * Keys must not contain {@code "} or {@code \}. Existing tables are not converted.
+     * @param name The name of the table to create.
+     */
+    public void createWideTable(String name) {
+        if (knownTables.contains(name.toLowerCase())) return;
         try {
             ensureConnection();
-            tableName = tableName.toLowerCase();
+            backend.createWideTable(name);
+            knownTables.add(name.toLowerCase());
+            registerTable(name.toLowerCase());
+            logger.info("Tabelle '" + name + "' (eine Zeile pro Spieler) erfolgreich erstellt oder bereits vorhanden.");
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Erstellen der Tabelle '" + name + "': " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            String serializedValue;
-            if (value instanceof String) {
-                serializedValue = (String) value;
-            } else {
-                serializedValue = gson.toJson(value);
+    private void saveGeneric(String tableName, UUID uuid, String key, String serializedValue, String type) {
+        saveGeneric(tableName, uuid, key, serializedValue, type, 0L);
+    }
+
+    /**
+     * @param expiresAt The time in milliseconds after which the value is treated as deleted, or 0 to keep it forever.
+     */
+    private void saveGeneric(String tableName, UUID uuid, String key, String serializedValue, String type, long expiresAt) {
+        String table = tableName.toLowerCase();
+        try (DatabaseMetrics.Sample sample = metrics.startCall("save", table)) {
+            // Saves are never dropped: without a slot in time they are queued and wait for one on the worker
+            boolean admitted = admit(sample, false);
+            String pendingKey = pendingKey(table, uuid, key);
+            boolean compress = compressor != null && compressor.shouldCompress(serializedValue);
+            EntryKey entryKey = new EntryKey(table, uuid, key);
+            CompletableFuture<Void> direct = new CompletableFuture<>();
+            // The cache and the order of the writes of a key are updated together, so both end with the same value
+            synchronized (pendingWrites) {
+                boolean queued = !admitted || compress || pendingWrites.containsKey(pendingKey);
+                // Queued saves do their I/O on the worker, all others are checked before anything is changed
+                if (!queued) checkMainThreadIo("save", table);
+                trackExpiry(entryKey, expiresAt);
+                if (cache != null) cache.put(entryKey, new StoredValue(serializedValue, type));
+                indexValue(table, uuid, key, serializedValue, type);
+                if (queued) {
+                    submitWrite(table, uuid, key, serializedValue, type, expiresAt, compress, pendingKey, sample.attribute());
+                    return;
+                }
+                // Later saves of the key are queued behind this write until it has finished
+                pendingWrites.put(pendingKey, direct);
             }
+            try {
+                if (!writeValue(table, uuid, key, serializedValue, type, expiresAt)) {
+                    sample.failed();
+                }
+            } finally {
+                pendingWrites.remove(pendingKey, direct);
+                direct.complete(null);
+            }
+        }
+    }
 
-            String sql;
-            if ("mysql".equals(dbType)) {
-                sql = "INSERT INTO " + tableName + " (UUID, KeyName, Value, Type) VALUES (?, ?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE Value = ?, Type = ?";
-            } else {
-                sql = "INSERT OR REPLACE INTO " + tableName + " (UUID, Key, Value, Type) VALUES (?, ?, ?, ?)";
+    /**
+     * Runs a write on the worker thread, compressing the value first if requested.
+     * Must be called while holding the lock on {@code pendingWrites}.
+     * @param plugin The plugin whose quota the write counts against.
+     */
+    private void submitWrite(String table, UUID uuid, String key, String serializedValue, String type, long expiresAt,
+                             boolean compress, String pendingKey, String plugin) {
+        // Large values are compressed on the worker thread. Later writes of the same key are queued
+        // behind them, and they start after a write of the key still running on the calling thread,
+        // so they cannot be overwritten by an older value.
+        CompletableFuture<Void> previous = pendingWrites.get(pendingKey);
+        Runnable task = () -> {
+            // The slot of the caller is already freed, so the write takes its own while it runs
+            Runnable release = null;
+            if (scheduler != null) {
+                try {
+                    release = scheduler.acquireSlot(plugin);
+                } catch (RejectedExecutionException e) {
+                    // Interrupted while shutting down, the write still has to reach the database
+                }
+            }
+            try {
+                StoredValue stored = compress ? compressor.compress(table, type, serializedValue) : new StoredValue(serializedValue, type);
+                writeValue(table, uuid, key, stored.getValue(), stored.getType(), expiresAt);
+            } finally {
+                if (release != null) release.run();
+            }
+        };
+        CompletableFuture<Void> write = previous == null || previous.isDone()
+                ? CompletableFuture.runAsync(task, getWorker())
+                : previous.handle((result, error) -> null).thenRunAsync(task, getWorker());
+        pendingWrites.put(pendingKey, write);
+        write.whenComplete((result, error) -> {
+            pendingWrites.remove(pendingKey, write);
+            if (error != null) {
+                logger.severe("Fehler beim Komprimieren von Daten für '" + key + "': " + error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @return false if the write failed.
+     */
+    private boolean writeValue(String tableName, UUID uuid, String key, String serializedValue, String type, long expiresAt) {
+        try (DatabaseMetrics.Sample sample = metrics.start("write", tableName)) {
+            try {
+                if (spillChange(SpillJournal.WRITE, tableName, uuid, key, serializedValue, type, expiresAt, false)) return true;
+                ensureConnection();
+                backend.write(tableName, uuid, key, serializedValue, type, expiresAt);
+                appendChange(tableName, uuid, key);
+                return true;
+            } catch (SQLException e) {
+                if (onBackendFailure(e)
+                        && spillChange(SpillJournal.WRITE, tableName, uuid, key, serializedValue, type, expiresAt, true)) {
+                    return true;
+                }
+                sample.failed();
+                logger.severe("Fehler beim Speichern von Daten: " + e.getMessage());
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Appends a change to the spill journal instead of the database while the circuit breaker is open,
+     * or while older spilled changes are waiting for replay, so changes reach the database in order.
+     * @param force Spill even if the breaker is closed, for a change that just failed with a connection error.
+     * @return true if the change was spilled.
+     */
+    private boolean spillChange(byte op, String tableName, UUID uuid, String key, String value, String type,
+                                long expiresAt, boolean force) {
+        if (spill == null) return false;
+        boolean onlyIfPending = !force && breaker.allowRequest();
+        try {
+            if (!spill.append(op, tableName, uuid, key, value, type, expiresAt, onlyIfPending)) return false;
+        } catch (IOException e) {
+            logger.severe("Fehler beim Auslagern eines Schreibvorgangs für '" + key + "': " + e.getMessage());
+            return false;
+        }
+        if (breaker.allowRequest()) scheduleSpillReplay(0);
+        return true;
+    }
+
+    /**
+     * @return true if spilled changes are waiting for replay. Changes that bypass the journal must wait
+     *         until they are replayed, or the replay would overwrite them with older values.
+     */
+    private boolean hasSpilledChanges() {
+        return spill != null && !spill.isEmpty();
+    }
+
+    /**
+     * Records an error of the backend. Connection errors count towards opening the circuit breaker.
+     * @return true if the error is a connection error and the breaker is enabled.
+     */
+    private boolean onBackendFailure(SQLException e) {
+        if (breaker == null || !CircuitBreaker.isConnectionFailure(e)) return false;
+        if (breaker.onFailure(System.currentTimeMillis())) {
+            logger.warning("Datenbank nicht erreichbar, Zugriffe werden bis zum nächsten erfolgreichen Verbindungsversuch abgelehnt"
+                    + (spill != null ? " und Schreibvorgänge ausgelagert." : "."));
+            scheduleProbe();
+        }
+        return true;
+    }
+
+    private ScheduledExecutorService getRecovery() {
+        synchronized (pendingWrites) {
+            if (recovery == null) {
+                recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "TryLibs-Database-Recovery");
+                    thread.setDaemon(true);
+                    return thread;
+                });
             }
+            return recovery;
+        }
+    }
 
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, uuid.toString());
-                pstmt.setString(2, key);
-                pstmt.setString(3, serializedValue);
-                pstmt.setString(4, type);
+    private void scheduleProbe() {
+        long delay = Math.max(0, breaker.getProbeAt() - System.currentTimeMillis());
+        getRecovery().schedule(this::probeConnection, delay, TimeUnit.MILLISECONDS);
+    }
 
-                if ("mysql".equals(dbType)) {
-                    pstmt.setString(5, serializedValue);
-                    pstmt.setString(6, type);
+    /**
+     * Runs on the recovery thread while the circuit breaker is open. Opens a new connection and closes
+     * the breaker if it succeeds, otherwise schedules the next attempt.
+     */
+    private void probeConnection() {
+        if (breaker.getState() != CircuitBreaker.State.OPEN) return;
+        try (DatabaseMetrics.Sample sample = metrics.start("connect", null)) {
+            try {
+                synchronized (this) {
+                    // The old connection may still look open after the server went away
+                    try {
+                        backend.close();
+                    } catch (SQLException ignored) {
+                    }
+                    backend.connect();
                 }
+            } catch (SQLException e) {
+                sample.failed();
+                breaker.onProbeFailure(System.currentTimeMillis());
+                scheduleProbe();
+                return;
+            }
+        }
+        breaker.onSuccess();
+        logger.info("Datenbank wieder erreichbar.");
+        if (spill != null && !spill.isEmpty()) scheduleSpillReplay(0);
+    }
+
+    private void scheduleSpillReplay(long delayMillis) {
+        if (spillReplayScheduled.compareAndSet(false, true)) {
+            getRecovery().schedule(this::replaySpill, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
 
-                pstmt.executeUpdate();
+    /**
+     * Runs on the recovery thread. Replays one batch of the spill journal and schedules the next one.
+     * A change that fails with an error other than a connection error is retried with backoff
+     * and dropped after {@code spillMaxAttempts} attempts. Connection errors pause the replay until the
+     * database is reachable again.
+     */
+    private void replaySpill() {
+        spillReplayScheduled.set(false);
+        if (!breaker.allowRequest()) return; // Resumed by the probe
+        List<SpillJournal.Record> batch;
+        try {
+            batch = spill.readBatch(spillBatchSize);
+        } catch (IOException e) {
+            logger.severe("Fehler beim Lesen der Auslagerungsdatei: " + e.getMessage());
+            return;
+        }
+        if (batch.isEmpty()) return; // Replayed by an earlier run
+        for (SpillJournal.Record record : batch) {
+            try (DatabaseMetrics.Sample sample = metrics.start("replay", record.table)) {
+                try {
+                    ensureConnection();
+                    if (record.op == SpillJournal.WRITE) {
+                        backend.write(record.table, record.uuid, record.key, record.value, record.type, record.expiresAt);
+                    } else {
+                        backend.delete(record.table, record.uuid, record.key);
+                    }
+                    appendChange(record.table, record.uuid, record.key);
+                    spillAttempts = 0;
+                } catch (SQLException e) {
+                    sample.failed();
+                    if (onBackendFailure(e)) {
+                        if (breaker.allowRequest()) scheduleSpillReplay(SPILL_RETRY_MILLIS);
+                        return;
+                    }
+                    if (++spillAttempts < spillMaxAttempts) {
+                        long backoff = Math.min(SPILL_MAX_RETRY_MILLIS, SPILL_RETRY_MILLIS << Math.min(20, spillAttempts - 1));
+                        logger.warning("Ausgelagerter Schreibvorgang für '" + record.key + "' fehlgeschlagen (Versuch "
+                                + spillAttempts + "/" + spillMaxAttempts + "): " + e.getMessage());
+                        scheduleSpillReplay(backoff);
+                        return;
+                    }
+                    logger.severe("Ausgelagerter Schreibvorgang für '" + record.key + "' in Tabelle '" + record.table
+                            + "' wird nach " + spillAttempts + " Versuchen verworfen: " + e.getMessage());
+                    spillAttempts = 0;
+                }
             }
-        } catch (SQLException e) {
-            logger.severe("Fehler beim Speichern von Daten: " + e.getMessage());
-            e.printStackTrace();
+            try {
+                spill.acknowledge(record);
+            } catch (IOException e) {
+                logger.severe("Fehler beim Kürzen der Auslagerungsdatei: " + e.getMessage());
+                return;
+            }
+        }
+        if (!spill.isEmpty()) {
+            scheduleSpillReplay(0);
+        } else {
+            logger.info("Alle ausgelagerten Schreibvorgänge wurden nachgeholt.");
+        }
+    }
+
+    private static String pendingKey(String tableName, UUID uuid, String key) {
+        return tableName + '\u0000' + uuid + '\u0000' + key;
+    }
+
+    private ExecutorService getScanExecutor() {
+        synchronized (pendingWrites) {
+            if (scanExecutor == null) {
+                AtomicInteger threads = new AtomicInteger();
+                scanExecutor = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "TryLibs-Database-Scan-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return scanExecutor;
+        }
+    }
+
+    private ScheduledExecutorService getWorker() {
+        synchronized (pendingWrites) {
+            if (worker == null) {
+                worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "TryLibs-Database-Worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return worker;
+        }
+    }
+
+    /**
+     * Waits until a write of the given key running on the worker thread has finished.
+     */
+    private void awaitPendingWrite(String tableName, UUID uuid, String key) {
+        CompletableFuture<Void> pending = pendingWrites.get(pendingKey(tableName, uuid, key));
+        if (pending != null) {
+            try {
+                pending.join();
+            } catch (CompletionException ignored) {
+                // Already logged by the write itself
+            }
+        }
+    }
+
+    /**
+     * Waits until all writes of a table running on the worker thread have finished.
+     */
+    private void awaitPendingWrites(String tableName) {
+        String prefix = tableName + '\u0000';
+        for (Map.Entry<String, CompletableFuture<Void>> pending : pendingWrites.entrySet()) {
+            if (!pending.getKey().startsWith(prefix)) continue;
+            try {
+                pending.getValue().join();
+            } catch (CompletionException ignored) {
+                // Already logged by the write itself
+            }
+        }
+    }
+
+    /**
+     * @return The unfinished writes of a player in any table.
+     */
+    private List<CompletableFuture<Void>> pendingWritesOf(UUID uuid) {
+        String infix = '\u0000' + uuid.toString() + '\u0000';
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Void>> pending : pendingWrites.entrySet()) {
+            if (pending.getKey().contains(infix) && !pending.getValue().isDone()) writes.add(pending.getValue());
+        }
+        return writes;
+    }
+
+    /**
+     * Waits until all writes running on the worker thread have finished.
+     * @param timeoutMillis The maximum time to wait.
+     */
+    private void flushPendingWrites(long timeoutMillis) {
+        CompletableFuture<?>[] pending = pendingWrites.values().toArray(new CompletableFuture<?>[0]);
+        if (pending.length == 0) return;
+        try {
+            CompletableFuture.allOf(pending).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // Already logged by the write itself
+        } catch (TimeoutException e) {
+            logger.warning(pending.length + " ausstehende Schreibvorgänge wurden nicht rechtzeitig abgeschlossen.");
         }
     }
 
@@ -261,7 +938,7 @@ public class DatabaseHandler {
      * @param value The integer value to save.
      */
     public void saveInt(String tableName, UUID uuid, String key, int value) {
-        saveGeneric(tableName, uuid, key, value, "int");
+        saveGeneric(tableName, uuid, key, String.valueOf(value), "int");
     }
 
     /**
@@ -282,7 +959,7 @@ public class DatabaseHandler {
      * @param value The double value to save.
      */
     public void saveDouble(String tableName, UUID uuid, String key, double value) {
-        saveGeneric(tableName, uuid, key, value, "double");
+        saveGeneric(tableName, uuid, key, String.valueOf(value), "double");
     }
 
     /**
@@ -303,7 +980,7 @@ public class DatabaseHandler {
      * @param value The boolean value to save.
      */
     public void saveBoolean(String tableName, UUID uuid, String key, boolean value) {
-        saveGeneric(tableName, uuid, key, value, "boolean");
+        saveGeneric(tableName, uuid, key, String.valueOf(value), "boolean");
     }
 
     /**
@@ -324,7 +1001,7 @@ public class DatabaseHandler {
      * @param value The long value to save.
      */
     public void saveLong(String tableName, UUID uuid, String key, long value) {
-        saveGeneric(tableName, uuid, key, value, "long");
+        saveGeneric(tableName, uuid, key, String.valueOf(value), "long");
     }
 
     /**
@@ -345,7 +1022,7 @@ public class DatabaseHandler {
      * @param value The float value to save.
      */
     public void saveFloat(String tableName, UUID uuid, String key, float value) {
-        saveGeneric(tableName, uuid, key, value, "float");
+        saveGeneric(tableName, uuid, key, String.valueOf(value), "float");
     }
 
     /**
@@ -366,7 +1043,7 @@ public class DatabaseHandler {
      * @param value The string array to save.
      */
     public void saveStringArray(String tableName, UUID uuid, String key, String[] value) {
-        saveGeneric(tableName, uuid, key, value, "string_array");
+        saveGeneric(tableName, uuid, key, codecRegistry.getJsonCodec(STRING_ARRAY_TYPE).encode(value), "string_array");
     }
 
     /**
@@ -387,7 +1064,7 @@ public class DatabaseHandler {
      * @param value The list of strings to save.
      */
     public void saveStringList(String tableName, UUID uuid, String key, List<String> value) {
-        saveGeneric(tableName, uuid, key, value, "string_list");
+        saveGeneric(tableName, uuid, key, codecRegistry.getJsonCodec(STRING_LIST_TYPE).encode(value), "string_list");
     }
 
     /**
@@ -401,172 +1078,560 @@ public class DatabaseHandler {
     }
 
     /**
-     * Loads raw data from the database.
+     * Saves an arbitrary object to the database.
+     * The value is encoded with the codec registered for its type in {@link #getCodecRegistry()},
+     * or as JSON if no codec is registered.
      * @param tableName The name of the table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @return ResultSet containing the raw data, or null if an error occurs.
+     * @param value The object to save.
+     * @param type The class of the object.
+     * @param <T> The type of the object.
      */
-    private synchronized ResultSet loadRawData(String tableName, UUID uuid, String key) {
-        try {
-            ensureConnection();
-            tableName = tableName.toLowerCase();
-
-            String sql;
-            if ("mysql".equals(dbType)) {
-                sql = "SELECT Value, Type FROM " + tableName + " WHERE UUID = ? AND KeyName = ?";
-            } else {
-                sql = "SELECT Value, Type FROM " + tableName + " WHERE UUID = ? AND Key = ?";
-            }
-
-            PreparedStatement pstmt = connection.prepareStatement(sql);
-            pstmt.setString(1, uuid.toString());
-            pstmt.setString(2, key);
-
-            return pstmt.executeQuery();
-        } catch (SQLException e) {
-            logger.severe("Fehler beim Laden der Daten: " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        }
+    public <T> void saveObject(String tableName, UUID uuid, String key, T value, Class<T> type) {
+        saveObject(tableName, uuid, key, value, TypeToken.get(type));
     }
 
     /**
-     * Loads a string value from the database.
+     * Saves an arbitrary object of a generic type to the database.
+     * Beispiel:
+     *   handler.saveObject("cooldowns", uuid, "kits", cooldowns, new TypeToken&lt;Map&lt;String, Long&gt;&gt;(){});
      * @param tableName The name of the table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @return The string value, or null if not found or an error occurs.
+     * @param value The object to save.
+     * @param type The type of the object.
+     * @param <T> The type of the object.
      */
-    public String loadData(String tableName, UUID uuid, String key) {
+    public <T> void saveObject(String tableName, UUID uuid, String key, T value, TypeToken<T> type) {
+        ValueCodec<T> codec = codecRegistry.getCodec(type);
+        String encoded;
         try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String value = rs.getString("Value");
-                rs.close();
-                return value;
-            }
-            if (rs != null) rs.close();
-        } catch (SQLException e) {
-            logger.severe("Fehler beim Laden von String-Daten: " + e.getMessage());
+            encoded = codec.encode(value);
+        } catch (RuntimeException e) {
+            logger.severe("Fehler beim Kodieren von Objekt-Daten (" + type + "): " + e.getMessage());
+            return;
         }
-        return null;
+        saveGeneric(tableName, uuid, key, encoded, OBJECT_TYPE_PREFIX + codec.getId());
     }
 
     /**
-     * Loads a string value from the "users" table.
+     * Saves an arbitrary object to the "users" table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @return The string value, or null if not found or an error occurs.
+     * @param value The object to save.
+     * @param type The class of the object.
+     * @param <T> The type of the object.
      */
-    public String loadData(UUID uuid, String key) {
-        return loadData("users", uuid, key);
+    public <T> void saveObject(UUID uuid, String key, T value, Class<T> type) {
+        saveObject("users", uuid, key, value, type);
     }
 
     /**
-     * Loads a string value from the "users" table, returning a default value if not found.
+     * Saves a value that is deleted automatically after the given duration.
+     * Expired values are invisible to all load methods and {@link #hasData(String, UUID, String)} immediately
+     * and are removed from the table in batched background deletes.
+     * Strings, numbers, booleans, string arrays and string lists keep their usual type, so they can be read
+     * with the matching load method. Other objects are stored like {@link #saveObject(String, UUID, String, Object, Class)}.
+     * Beispiel:
+     *   handler.saveWithTtl("cooldowns", uuid, "kit.daily", System.currentTimeMillis(), Duration.ofHours(24));
+     * @param tableName The name of the table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @param defaultValue The default value to return if data is not found.
-     * @return The string value, or the default value.
+     * @param value The value to save.
+     * @param ttl How long the value lives.
      */
-    public String loadData(UUID uuid, String key, String defaultValue) {
-        String value = loadData(uuid, key);
-        return value != null ? value : defaultValue;
+    public void saveWithTtl(String tableName, UUID uuid, String key, Object value, Duration ttl) {
+        Objects.requireNonNull(value, "value");
+        if (ttl.isNegative() || ttl.isZero()) {
+            deleteData(tableName, uuid, key);
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        String table = tableName.toLowerCase();
+        ensureExpiryColumn(table);
+
+        StoredValue serialized;
+        try {
+            serialized = serializeValue(value);
+        } catch (RuntimeException e) {
+            logger.severe("Fehler beim Kodieren von Objekt-Daten (" + value.getClass().getName() + "): " + e.getMessage());
+            return;
+        }
+        saveGeneric(table, uuid, key, serialized.getValue(), serialized.getType(), expiresAt);
     }
 
     /**
-     * Loads a string value from the database, returning a default value if not found.
-     * @param tableName The name of the table.
-     * @param uuid The UUID of the player.
-     * @param key The key for the data.
-     * @param defaultValue The default value to return if data is not found.
-     * @return The string value, or the default value.
+     * Serializes a value of any type as the matching save method does, so it can be read with the matching load method.
+     * @return The serialized value with its type.
+     * @throws RuntimeException if the codec of an object fails.
      */
-    public String loadData(String tableName, UUID uuid, String key, String defaultValue) {
-        String value = loadData(tableName, uuid, key);
-        return value != null ? value : defaultValue;
+    @SuppressWarnings("unchecked")
+    private StoredValue serializeValue(Object value) {
+        if (value instanceof String) {
+            return new StoredValue((String) value, "string");
+        } else if (value instanceof Integer) {
+            return new StoredValue(String.valueOf(value), "int");
+        } else if (value instanceof Long) {
+            return new StoredValue(String.valueOf(value), "long");
+        } else if (value instanceof Double) {
+            return new StoredValue(String.valueOf(value), "double");
+        } else if (value instanceof Float) {
+            return new StoredValue(String.valueOf(value), "float");
+        } else if (value instanceof Boolean) {
+            return new StoredValue(String.valueOf(value), "boolean");
+        } else if (value instanceof String[]) {
+            return new StoredValue(codecRegistry.getJsonCodec(STRING_ARRAY_TYPE).encode((String[]) value), "string_array");
+        } else if (value instanceof List && ((List<?>) value).stream().allMatch(element -> element == null || element instanceof String)) {
+            return new StoredValue(codecRegistry.getJsonCodec(STRING_LIST_TYPE).encode((List<String>) value), "string_list");
+        }
+        ValueCodec<Object> codec = (ValueCodec<Object>) codecRegistry.getCodec(value.getClass());
+        return new StoredValue(codec.encode(value), OBJECT_TYPE_PREFIX + codec.getId());
     }
 
     /**
-     * Loads an integer value from the database.
-     * @param tableName The name of the table.
-     * @param uuid The UUID of the player.
-     * @param key The key for the data.
-     * @param defaultValue The default value to return if data is not found or type mismatch.
-     * @return The integer value, or the default value.
+     * Saves many values at once, e.g. to import or seed data. The values are written in chunks of
+     * {@code database.bulk.chunk-size} values, each chunk in one transaction with multi-row statements,
+     * which is much faster than one {@code save} call per value. Values are serialized by their type as
+     * {@link #saveWithTtl(String, UUID, String, Object, Duration)} does and replace existing values and
+     * their TTL. Progress and the rate in values per second are logged every {@code database.bulk.report-interval}
+     * seconds. A failed chunk stops the import; the chunks before it stay written. While spilled writes wait
+     * for replay, the values are spilled behind them.
+     * The map must not be changed until the returned future completes.
+     * Beispiel:
+     *   handler.saveAll("shop", imported).thenAccept(rows -&gt; getLogger().info(rows + " Werte importiert"));
+     * @param tableName The name of the table, which must exist.
+     * @param values The values by player and key.
+     * @return A future with the number of written values, completed exceptionally if a chunk failed or a value cannot be serialized.
      */
-    public int loadInt(String tableName, UUID uuid, String key, int defaultValue) {
-        try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
+    public CompletableFuture<Long> saveAll(String tableName, Map<UUID, ? extends Map<String, ?>> values) {
+        String table = tableName.toLowerCase();
+        return CompletableFuture.supplyAsync(() -> {
+            long total = 0;
+            for (Map<String, ?> player : values.values()) {
+                total += player.size();
+            }
+            // Queued writes of the same keys must not overwrite the imported values
+            awaitPendingWrites(table);
+            long start = System.nanoTime();
+            long lastReport = start;
+            long written = 0;
+            List<TableEntry> chunk = new ArrayList<>(Math.min(bulkChunkSize, (int) Math.min(total, Integer.MAX_VALUE)));
+            for (Map.Entry<UUID, ? extends Map<String, ?>> player : values.entrySet()) {
+                for (Map.Entry<String, ?> entry : player.getValue().entrySet()) {
+                    StoredValue serialized;
+                    try {
+                        serialized = serializeValue(Objects.requireNonNull(entry.getValue(), "value"));
+                    } catch (RuntimeException e) {
+                        logger.severe("Fehler beim Kodieren des Werts '" + entry.getKey() + "' von " + player.getKey() + ": " + e.getMessage());
+                        throw new CompletionException(e);
+                    }
+                    chunk.add(new TableEntry(player.getKey(), entry.getKey(), serialized.getValue(), serialized.getType()));
+                    if (chunk.size() < bulkChunkSize) continue;
+                    written += saveChunk(table, chunk, written, total);
+                    chunk.clear();
+                    long now = System.nanoTime();
+                    if (now - lastReport >= bulkReportMillis * 1000000L) {
+                        logger.info("Import in '" + table + "': " + written + "/" + total + " Werte, "
+                                + rate(written, now - start) + " Werte/s.");
+                        lastReport = now;
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) written += saveChunk(table, chunk, written, total);
+            logger.info("Import in '" + table + "' abgeschlossen: " + written + " Werte in "
+                    + (System.nanoTime() - start) / 1000000 + " ms, " + rate(written, System.nanoTime() - start) + " Werte/s.");
+            return written;
+        }, getScanExecutor());
+    }
 
-                if ("int".equals(type)) {
-                    return Integer.parseInt(value);
+    /**
+     * Writes one chunk of {@link #saveAll} in one transaction and updates the cache, the indexes and the change log.
+     * @return The number of written values.
+     * @throws CompletionException if the chunk cannot be written.
+     */
+    private int saveChunk(String table, List<TableEntry> chunk, long written, long total) {
+        List<TableEntry> rows = chunk;
+        if (compressor != null) {
+            rows = new ArrayList<>(chunk.size());
+            for (TableEntry row : chunk) {
+                StoredValue stored = compressor.shouldCompress(row.getValue())
+                        ? compressor.compress(table, row.getType(), row.getValue()) : new StoredValue(row.getValue(), row.getType());
+                rows.add(new TableEntry(row.getUuid(), row.getKey(), stored.getValue(), stored.getType()));
+            }
+        }
+        try (DatabaseMetrics.Sample sample = metrics.start("bulk-write", table)) {
+            try {
+                if (hasSpilledChanges() || isDatabaseUnavailable()) {
+                    // Queued behind the spilled changes, so their replay cannot overwrite the imported values
+                    List<TableEntry> direct = new ArrayList<>();
+                    for (TableEntry row : rows) {
+                        if (!spillChange(SpillJournal.WRITE, table, row.getUuid(), row.getKey(), row.getValue(), row.getType(), 0L, false)) {
+                            direct.add(row);
+                        }
+                    }
+                    rows = direct;
                 }
+                if (!rows.isEmpty()) {
+                    ensureConnection();
+                    backend.writeAll(table, rows);
+                }
+            } catch (SQLException e) {
+                sample.failed();
+                onBackendFailure(e);
+                logger.severe("Fehler beim Import in '" + table + "' nach " + written + "/" + total + " Werten: " + e.getMessage());
+                throw new CompletionException(e);
             }
-            if (rs != null) rs.close();
-        } catch (SQLException | NumberFormatException e) {
-            logger.warning("Fehler beim Laden von Integer-Daten: " + e.getMessage());
         }
-        return defaultValue;
+        Set<UUID> players = new LinkedHashSet<>();
+        for (TableEntry row : chunk) {
+            EntryKey entryKey = new EntryKey(table, row.getUuid(), row.getKey());
+            trackExpiry(entryKey, 0L);
+            // Dropped instead of cached, a large import would push everything else out of the cache
+            if (cache != null) cache.invalidate(entryKey);
+            indexValue(table, row.getUuid(), row.getKey(), row.getValue(), row.getType());
+            players.add(row.getUuid());
+        }
+        for (UUID uuid : players) {
+            appendChange(table, uuid, null);
+        }
+        return chunk.size();
+    }
+
+    private static long rate(long count, long nanos) {
+        return nanos > 0 ? count * 1000000000L / nanos : count;
     }
 
     /**
-     * Loads an integer value from the "users" table.
+     * Saves a value to the "users" table that is deleted automatically after the given duration.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @param defaultValue The default value to return if data is not found or type mismatch.
-     * @return The integer value, or the default value.
+     * @param value The value to save.
+     * @param ttl How long the value lives.
      */
-    public int loadInt(UUID uuid, String key, int defaultValue) {
-        return loadInt("users", uuid, key, defaultValue);
+    public void saveWithTtl(UUID uuid, String key, Object value, Duration ttl) {
+        saveWithTtl("users", uuid, key, value, ttl);
     }
 
     /**
-     * Loads a double value from the database.
+     * Gets the remaining lifetime of a value saved with {@link #saveWithTtl(String, UUID, String, Object, Duration)}.
+     * For players whose expiring data has been preloaded (all online players) this is answered from memory,
+     * which makes it suitable for cooldown checks on the main thread.
      * @param tableName The name of the table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @param defaultValue The default value to return if data is not found or type mismatch.
-     * @return The double value, or the default value.
+     * @return The remaining time in milliseconds, or 0 if the key does not exist, has expired or has no TTL.
      */
-    public double loadDouble(String tableName, UUID uuid, String key, double defaultValue) {
-        try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
-
-                if ("double".equals(type)) {
-                    return Double.parseDouble(value);
-                }
+    public long getRemainingTtl(String tableName, UUID uuid, String key) {
+        String table = tableName.toLowerCase();
+        EntryKey entryKey = new EntryKey(table, uuid, key);
+        long now = System.currentTimeMillis();
+        Long expiresAt = expiries.get(entryKey);
+        if (expiresAt == null && !preloadedPlayers.contains(uuid)) {
+            awaitPendingWrite(table, uuid, key);
+            expiresAt = loadExpiry(table, uuid, key);
+            if (expiresAt != null && expiresAt > now) {
+                trackExpiry(entryKey, expiresAt);
             }
-            if (rs != null) rs.close();
-        } catch (SQLException | NumberFormatException e) {
-            logger.warning("Fehler beim Laden von Double-Daten: " + e.getMessage());
         }
-        return defaultValue;
+        return expiresAt != null ? Math.max(0, expiresAt - now) : 0;
     }
 
     /**
-     * Loads a double value from the "users" table.
+     * Gets the remaining lifetime of a value in the "users" table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
-     * @param defaultValue The default value to return if data is not found or type mismatch.
-     * @return The double value, or the default value.
+     * @return The remaining time in milliseconds, or 0 if the key does not exist, has expired or has no TTL.
      */
-    public double loadDouble(UUID uuid, String key, double defaultValue) {
-        return loadDouble("users", uuid, key, defaultValue);
+    public long getRemainingTtl(UUID uuid, String key) {
+        return getRemainingTtl("users", uuid, key);
     }
 
     /**
-     * Loads a boolean value from the database.
-     * @param tableName The name of the table.
+     * Loads the expiry times of all keys of a player into memory, so TTL checks for that player
+     * do not hit the database. Called by TryLibs when a player logs in.
+     * @param uuid The UUID of the player.
+     */
+    public void preloadExpiringData(UUID uuid) {
+        long now = System.currentTimeMillis();
+        for (String table : discoverExpiryTables()) {
+            for (Map.Entry<String, Long> entry : loadExpiries(table, uuid, now).entrySet()) {
+                trackExpiry(new EntryKey(table, uuid, entry.getKey()), entry.getValue());
+            }
+        }
+        preloadedPlayers.add(uuid);
+    }
+
+    /**
+     * Removes the preloaded expiry times of a player from memory. Called by TryLibs when a player quits.
+     * Keys that expire later are still removed by the periodic sweep.
+     * @param uuid The UUID of the player.
+     */
+    public void unloadExpiringData(UUID uuid) {
+        preloadedPlayers.remove(uuid);
+        expiries.keySet().removeIf(entryKey -> entryKey.uuid.equals(uuid));
+    }
+
+    /**
+     * Loads a value from the database and decompresses it if necessary.
+     * Waits for a pending write of the same key first, so callers always see their own writes.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @return The stored value with its type, or null if not found or an error occurs.
+     * @throws IllegalArgumentException if the stored value cannot be decompressed.
+     */
+    private StoredValue loadValue(String tableName, UUID uuid, String key) {
+        String table = tableName.toLowerCase();
+        try (DatabaseMetrics.Sample sample = metrics.startCall("load", table)) {
+            EntryKey entryKey = new EntryKey(table, uuid, key);
+            if (isExpired(entryKey)) {
+                return null;
+            }
+            long cacheEpoch = 0;
+            if (cache != null) {
+                StoredValue cached = cache.get(entryKey);
+                if (cached != null) {
+                    return cached == ValueCache.ABSENT ? null : cached;
+                }
+                cacheEpoch = cache.epoch();
+            }
+            checkMainThreadIo("load", table);
+            // The slot is taken after the wait, the queued write needs one of its own
+            awaitPendingWrite(table, uuid, key);
+            admit(sample);
+            StoredValue stored;
+            Map<String, StoredValue> row = null;
+            Set<String> pendingKeys = null;
+            try (DatabaseMetrics.Sample query = metrics.start("query", table)) {
+                try {
+                    SpillJournal.Pending spilled = spill != null ? spill.lookup(entryKey) : null;
+                    if (spilled != null) {
+                        // Not replayed yet, so the database still has an older value
+                        stored = spilled.value;
+                    } else if (cache != null && (spill == null || spill.isEmpty()) && backend.isWideTable(table)) {
+                        // Keys written on the worker may not be in the row yet, their cached values are newer
+                        pendingKeys = pendingKeys(table, uuid);
+                        row = loadRow(table, uuid);
+                        stored = row.get(key);
+                    } else {
+                        stored = loadRawData(table, uuid, key);
+                    }
+                } catch (SQLException e) {
+                    query.failed();
+                    sample.failed();
+                    // While the breaker is open every read fails alike, which is logged once when it opens
+                    if (!onBackendFailure(e) || !isDatabaseUnavailable()) {
+                        logger.severe("Fehler beim Laden der Daten: " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                    return null;
+                }
+            }
+            if (stored != null && ValueCompressor.isCompressed(stored.getType())) {
+                try {
+                    stored = compressor.decompress(table, stored);
+                } catch (IllegalArgumentException e) {
+                    sample.failed();
+                    throw e;
+                }
+            }
+            if (cache != null) {
+                cache.putIfUnchanged(entryKey, stored, cacheEpoch);
+                if (row != null) cacheRow(table, uuid, key, row, pendingKeys, cacheEpoch);
+            }
+            return stored;
+        }
+    }
+
+    /**
+     * Loads all keys of a player in a wide table with one query.
+     * @return The stored values by key.
+     * @throws SQLException if a database access error occurs.
+     */
+    private Map<String, StoredValue> loadRow(String tableName, UUID uuid) throws SQLException {
+        ensureConnection();
+        Map<String, StoredValue> row = backend.readAll(tableName, uuid, System.currentTimeMillis());
+        for (Map.Entry<String, StoredValue> field : row.entrySet()) {
+            if (field.getValue().getExpiresAt() > 0) {
+                trackExpiry(new EntryKey(tableName, uuid, field.getKey()), field.getValue().getExpiresAt());
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Caches the keys of a wide row other than the loaded one.
+     * @param pendingKeys Keys with writes on the worker when the row was read, which are skipped.
+     */
+    private void cacheRow(String table, UUID uuid, String loadedKey, Map<String, StoredValue> row,
+                          Set<String> pendingKeys, long cacheEpoch) {
+        Map<EntryKey, StoredValue> values = new HashMap<>();
+        for (Map.Entry<String, StoredValue> field : row.entrySet()) {
+            if (field.getKey().equals(loadedKey) || pendingKeys.contains(field.getKey())) continue;
+            StoredValue stored = field.getValue();
+            if (ValueCompressor.isCompressed(stored.getType())) {
+                try {
+                    stored = compressor.decompress(table, stored);
+                } catch (IllegalArgumentException e) {
+                    // Reported when the key itself is loaded
+                    continue;
+                }
+            }
+            values.put(new EntryKey(table, uuid, field.getKey()), stored);
+        }
+        cache.putAllIfUnchanged(values, cacheEpoch);
+    }
+
+    /**
+     * @return The keys of a player in a table with writes running on the worker thread.
+     */
+    private Set<String> pendingKeys(String tableName, UUID uuid) {
+        String prefix = pendingKey(tableName, uuid, "");
+        Set<String> keys = new HashSet<>();
+        for (String pendingKey : pendingWrites.keySet()) {
+            if (pendingKey.startsWith(prefix)) keys.add(pendingKey.substring(prefix.length()));
+        }
+        return keys;
+    }
+
+    /**
+     * Loads raw data from the database.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @return The stored value with its type, or null if not found.
+     * @throws SQLException if a database access error occurs.
+     */
+    private StoredValue loadRawData(String tableName, UUID uuid, String key) throws SQLException {
+        ensureConnection();
+        StoredValue stored = backend.read(tableName, uuid, key, System.currentTimeMillis());
+        if (stored != null && stored.getExpiresAt() > 0) {
+            // Remember the expiry, so cached copies of the value expire as well
+            trackExpiry(new EntryKey(tableName, uuid, key), stored.getExpiresAt());
+        }
+        return stored;
+    }
+
+    /**
+     * Loads a string value from the database.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @return The string value, or null if not found or an error occurs.
+     */
+    public String loadData(String tableName, UUID uuid, String key) {
+        try {
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null) {
+                return stored.getValue();
+            }
+        } catch (IllegalArgumentException e) {
+            logger.severe("Fehler beim Laden von String-Daten: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Loads a string value from the "users" table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @return The string value, or null if not found or an error occurs.
+     */
+    public String loadData(UUID uuid, String key) {
+        return loadData("users", uuid, key);
+    }
+
+    /**
+     * Loads a string value from the "users" table, returning a default value if not found.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The default value to return if data is not found.
+     * @return The string value, or the default value.
+     */
+    public String loadData(UUID uuid, String key, String defaultValue) {
+        String value = loadData(uuid, key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Loads a string value from the database, returning a default value if not found.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The default value to return if data is not found.
+     * @return The string value, or the default value.
+     */
+    public String loadData(String tableName, UUID uuid, String key, String defaultValue) {
+        String value = loadData(tableName, uuid, key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Loads an integer value from the database.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The default value to return if data is not found or type mismatch.
+     * @return The integer value, or the default value.
+     */
+    public int loadInt(String tableName, UUID uuid, String key, int defaultValue) {
+        try {
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "int".equals(stored.getType())) {
+                return Integer.parseInt(stored.getValue());
+            }
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            logger.warning("Fehler beim Laden von Integer-Daten: " + e.getMessage());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Loads an integer value from the "users" table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The default value to return if data is not found or type mismatch.
+     * @return The integer value, or the default value.
+     */
+    public int loadInt(UUID uuid, String key, int defaultValue) {
+        return loadInt("users", uuid, key, defaultValue);
+    }
+
+    /**
+     * Loads a double value from the database.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The default value to return if data is not found or type mismatch.
+     * @return The double value, or the default value.
+     */
+    public double loadDouble(String tableName, UUID uuid, String key, double defaultValue) {
+        try {
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "double".equals(stored.getType())) {
+                return Double.parseDouble(stored.getValue());
+            }
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            logger.warning("Fehler beim Laden von Double-Daten: " + e.getMessage());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Loads a double value from the "users" table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The default value to return if data is not found or type mismatch.
+     * @return The double value, or the default value.
+     */
+    public double loadDouble(UUID uuid, String key, double defaultValue) {
+        return loadDouble("users", uuid, key, defaultValue);
+    }
+
+    /**
+     * Loads a boolean value from the database.
+     * @param tableName The name of the table.
      * @param uuid The UUID of the player.
      * @param key The key for the data.
      * @param defaultValue The default value to return if data is not found or type mismatch.
@@ -574,18 +1639,11 @@ public class DatabaseHandler {
      */
     public boolean loadBoolean(String tableName, UUID uuid, String key, boolean defaultValue) {
         try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
-
-                if ("boolean".equals(type)) {
-                    return Boolean.parseBoolean(value);
-                }
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "boolean".equals(stored.getType())) {
+                return Boolean.parseBoolean(stored.getValue());
             }
-            if (rs != null) rs.close();
-        } catch (SQLException e) {
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
             logger.warning("Fehler beim Laden von Boolean-Daten: " + e.getMessage());
         }
         return defaultValue;
@@ -612,18 +1670,11 @@ public class DatabaseHandler {
      */
     public long loadLong(String tableName, UUID uuid, String key, long defaultValue) {
         try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
-
-                if ("long".equals(type)) {
-                    return Long.parseLong(value);
-                }
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "long".equals(stored.getType())) {
+                return Long.parseLong(stored.getValue());
             }
-            if (rs != null) rs.close();
-        } catch (SQLException | NumberFormatException e) {
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
             logger.warning("Fehler beim Laden von Long-Daten: " + e.getMessage());
         }
         return defaultValue;
@@ -650,18 +1701,11 @@ public class DatabaseHandler {
      */
     public float loadFloat(String tableName, UUID uuid, String key, float defaultValue) {
         try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
-
-                if ("float".equals(type)) {
-                    return Float.parseFloat(value);
-                }
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "float".equals(stored.getType())) {
+                return Float.parseFloat(stored.getValue());
             }
-            if (rs != null) rs.close();
-        } catch (SQLException | NumberFormatException e) {
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
             logger.warning("Fehler beim Laden von Float-Daten: " + e.getMessage());
         }
         return defaultValue;
@@ -687,18 +1731,11 @@ public class DatabaseHandler {
      */
     public String[] loadStringArray(String tableName, UUID uuid, String key) {
         try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
-
-                if ("string_array".equals(type)) {
-                    return gson.fromJson(value, String[].class);
-                }
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "string_array".equals(stored.getType())) {
+                return codecRegistry.getJsonCodec(STRING_ARRAY_TYPE).decode(stored.getValue());
             }
-            if (rs != null) rs.close();
-        } catch (SQLException e) {
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
             logger.warning("Fehler beim Laden von String-Array: " + e.getMessage());
         }
         return new String[0];
@@ -723,18 +1760,11 @@ public class DatabaseHandler {
      */
     public List<String> loadStringList(String tableName, UUID uuid, String key) {
         try {
-            ResultSet rs = loadRawData(tableName, uuid, key);
-            if (rs != null && rs.next()) {
-                String type = rs.getString("Type");
-                String value = rs.getString("Value");
-                rs.close();
-
-                if ("string_list".equals(type)) {
-                    return gson.fromJson(value, new TypeToken<List<String>>(){}.getType());
-                }
+            StoredValue stored = loadValue(tableName, uuid, key);
+            if (stored != null && "string_list".equals(stored.getType())) {
+                return codecRegistry.getJsonCodec(STRING_LIST_TYPE).decode(stored.getValue());
             }
-            if (rs != null) rs.close();
-        } catch (SQLException e) {
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
             logger.warning("Fehler beim Laden von String-Liste: " + e.getMessage());
         }
         return new ArrayList<>();
@@ -751,134 +1781,1278 @@ public class DatabaseHandler {
     }
 
     /**
-     * Deletes a specific data entry from the database.
+     * Loads an object saved with {@link #saveObject(String, UUID, String, Object, Class)}.
      * @param tableName The name of the table.
      * @param uuid The UUID of the player.
-     * @param key The key of the data to delete.
-     * @return true if data was deleted, false otherwise.
+     * @param key The key for the data.
+     * @param type The class of the object.
+     * @param <T> The type of the object.
+     * @return The object, or null if not found, type mismatch or the value cannot be decoded.
      */
-    public boolean deleteData(String tableName, UUID uuid, String key) {
-        try {
-            ensureConnection();
-
-            String sql;
-            if ("mysql".equals(dbType)) {
-                sql = "DELETE FROM " + tableName.toLowerCase() + " WHERE UUID = ? AND KeyName = ?";
-            } else {
-                sql = "DELETE FROM " + tableName.toLowerCase() + " WHERE UUID = ? AND Key = ?";
-            }
+    public <T> T loadObject(String tableName, UUID uuid, String key, Class<T> type) {
+        return loadObject(tableName, uuid, key, TypeToken.get(type));
+    }
 
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, uuid.toString());
-                pstmt.setString(2, key);
-                return pstmt.executeUpdate() > 0;
+    /**
+     * Loads an object of a generic type saved with {@link #saveObject(String, UUID, String, Object, TypeToken)}.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param type The type of the object.
+     * @param <T> The type of the object.
+     * @return The object, or null if not found, type mismatch or the value cannot be decoded.
+     */
+    public <T> T loadObject(String tableName, UUID uuid, String key, TypeToken<T> type) {
+        try {
+            StoredValue stored = loadValue(tableName, uuid, key);
+            String storedType = stored != null ? stored.getType() : null;
+            if (storedType != null && storedType.startsWith(OBJECT_TYPE_PREFIX)) {
+                ValueCodec<T> codec = codecRegistry.getCodec(type, storedType.substring(OBJECT_TYPE_PREFIX.length()));
+                if (codec != null) {
+                    return codec.decode(stored.getValue());
+                }
+                logger.warning("Kein Codec '" + storedType + "' für " + type + " registriert.");
             }
-        } catch (SQLException e) {
-            logger.severe("Fehler beim Löschen von Daten: " + e.getMessage());
-            return false;
+        } catch (IllegalArgumentException e) {
+            logger.warning("Fehler beim Laden von Objekt-Daten: " + e.getMessage());
         }
+        return null;
     }
 
     /**
-     * Deletes a specific data entry from the "users" table.
+     * Loads an object from the "users" table.
      * @param uuid The UUID of the player.
-     * @param key The key of the data to delete.
-     * @return true if data was deleted, false otherwise.
+     * @param key The key for the data.
+     * @param type The class of the object.
+     * @param <T> The type of the object.
+     * @return The object, or null if not found, type mismatch or the value cannot be decoded.
      */
-    public boolean deleteData(UUID uuid, String key) {
-        return deleteData("users", uuid, key);
+    public <T> T loadObject(UUID uuid, String key, Class<T> type) {
+        return loadObject("users", uuid, key, type);
     }
 
     /**
-     * Wipes all data associated with a specific UUID from predefined tables ("users", "currency", "info").
-     * @param uuid The UUID of the player whose data to wipe.
-     * @return true if any data was wiped, false otherwise.
+     * Loads a string value with the version of its row. Versioned loads always read the table,
+     * so the version is current. The table gets a version column on first use.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @return The value and its version, with a null value and version 0 if not found, or null if an error occurs.
      */
-    public boolean wipeAllData(UUID uuid) {
-        boolean isWiped = false;
-        try {
-            ensureConnection();
-            isWiped = wipeDataFromTable("users", uuid) |
-                    wipeDataFromTable("currency", uuid) |
-                    wipeDataFromTable("info", uuid);
-        } catch (SQLException e) {
-            logger.severe("Fehler beim Löschen aller Daten: " + e.getMessage());
-        }
-        return isWiped;
+    public VersionedValue<String> loadDataVersioned(String tableName, UUID uuid, String key) {
+        return loadVersioned(tableName, uuid, key, null, value -> value, null, "String");
     }
 
     /**
-     * Wipes data for a specific UUID from a given table.
+     * Loads an integer value with the version of its row.
      * @param tableName The name of the table.
      * @param uuid The UUID of the player.
-     * @return true if data was wiped, false otherwise.
-     * @throws SQLException if a database access error occurs.
+     * @param key The key for the data.
+     * @param defaultValue The value used if data is not found or type mismatch.
+     * @return The value and its version, with version 0 if not found, or null if an error occurs.
      */
-    private boolean wipeDataFromTable(String tableName, UUID uuid) throws SQLException {
-        String sql = "DELETE FROM " + tableName.toLowerCase() + " WHERE UUID = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, uuid.toString());
-            return pstmt.executeUpdate() > 0;
-        }
+    public VersionedValue<Integer> loadIntVersioned(String tableName, UUID uuid, String key, int defaultValue) {
+        return loadVersioned(tableName, uuid, key, "int", Integer::parseInt, defaultValue, "Integer");
     }
 
     /**
-     * Wipes all data associated with a specific UUID. This is an alias for {@link #wipeAllData(UUID)}.
-     * @param uuid The UUID of the player whose data to wipe.
-     * @return true if any data was wiped, false otherwise.
+     * Loads a long value with the version of its row.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param defaultValue The value used if data is not found or type mismatch.
+     * @return The value and its version, with version 0 if not found, or null if an error occurs.
      */
-    public boolean wipeData(UUID uuid) {
-        return wipeAllData(uuid);
+    public VersionedValue<Long> loadLongVersioned(String tableName, UUID uuid, String key, long defaultValue) {
+        return loadVersioned(tableName, uuid, key, "long", Long::parseLong, defaultValue, "Long");
     }
 
     /**
-     * Checks if a specific data entry exists in the database.
+     * Loads a double value with the version of its row.
      * @param tableName The name of the table.
      * @param uuid The UUID of the player.
-     * @param key The key of the data.
-     * @return true if data exists, false otherwise.
+     * @param key The key for the data.
+     * @param defaultValue The value used if data is not found or type mismatch.
+     * @return The value and its version, with version 0 if not found, or null if an error occurs.
      */
-    public boolean hasData(String tableName, UUID uuid, String key) {
-        try {
-            ensureConnection();
-
-            String sql;
-            if ("mysql".equals(dbType)) {
-                sql = "SELECT 1 FROM " + tableName.toLowerCase() + " WHERE UUID = ? AND KeyName = ? LIMIT 1";
-            } else {
-                sql = "SELECT 1 FROM " + tableName.toLowerCase() + " WHERE UUID = ? AND Key = ? LIMIT 1";
-            }
+    public VersionedValue<Double> loadDoubleVersioned(String tableName, UUID uuid, String key, double defaultValue) {
+        return loadVersioned(tableName, uuid, key, "double", Double::parseDouble, defaultValue, "Double");
+    }
 
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, uuid.toString());
-                pstmt.setString(2, key);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    return rs.next();
+    /**
+     * Loads an object with the version of its row.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param type The class of the object.
+     * @param <T> The type of the object.
+     * @return The object and its version, with a null object if not found or type mismatch, or null if an error occurs.
+     */
+    public <T> VersionedValue<T> loadObjectVersioned(String tableName, UUID uuid, String key, Class<T> type) {
+        try {
+            StoredValue stored = loadVersionedValue(tableName, uuid, key);
+            if (stored == null) return new VersionedValue<>(null, 0L);
+            String storedType = stored.getType();
+            T value = null;
+            if (storedType != null && storedType.startsWith(OBJECT_TYPE_PREFIX)) {
+                ValueCodec<T> codec = codecRegistry.getCodec(TypeToken.get(type), storedType.substring(OBJECT_TYPE_PREFIX.length()));
+                if (codec != null) {
+                    value = codec.decode(stored.getValue());
+                } else {
+                    logger.warning("Kein Codec '" + storedType + "' für " + type + " registriert.");
                 }
             }
+            return new VersionedValue<>(value, stored.getVersion());
         } catch (SQLException e) {
-            logger.severe("Fehler beim Überprüfen der Datenexistenz: " + e.getMessage());
-            return false;
+            logger.severe("Fehler beim Laden der Daten: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Fehler beim Laden von Objekt-Daten: " + e.getMessage());
         }
+        return null;
     }
 
     /**
-     * Checks if a specific data entry exists in the "users" table.
-     * @param uuid The UUID of the player.
-     * @param key The key of the data.
-     * @return true if data exists, false otherwise.
+     * @param type The expected type, or null to accept every type.
+     * @param label The name of the type in log messages.
+     */
+    private <T> VersionedValue<T> loadVersioned(String tableName, UUID uuid, String key, String type,
+                                                Function<String, T> parser, T defaultValue, String label) {
+        try {
+            StoredValue stored = loadVersionedValue(tableName, uuid, key);
+            if (stored == null) return new VersionedValue<>(defaultValue, 0L);
+            T value = type == null || type.equals(stored.getType()) ? parser.apply(stored.getValue()) : defaultValue;
+            return new VersionedValue<>(value, stored.getVersion());
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Laden der Daten: " + e.getMessage());
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            logger.warning("Fehler beim Laden von " + label + "-Daten: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Loads a value and its version from the table, bypassing the cache. Like {@link #loadValue},
+     * expired keys are not found and spilled changes that are not replayed yet are returned.
+     * @return The stored value, or null if not found.
+     * @throws SQLException if a database access error occurs.
+     * @throws IllegalArgumentException if the stored value cannot be decompressed.
+     */
+    private StoredValue loadVersionedValue(String tableName, UUID uuid, String key) throws SQLException {
+        String table = tableName.toLowerCase();
+        try (DatabaseMetrics.Sample sample = metrics.startCall("load", table)) {
+            EntryKey entryKey = new EntryKey(table, uuid, key);
+            if (isExpired(entryKey)) {
+                return null;
+            }
+            checkMainThreadIo("load", table);
+            awaitPendingWrite(table, uuid, key);
+            admit(sample);
+            long cacheEpoch = cache != null ? cache.epoch() : 0;
+            StoredValue stored;
+            try (DatabaseMetrics.Sample query = metrics.start("query", table)) {
+                try {
+                    SpillJournal.Pending spilled = spill != null ? spill.lookup(entryKey) : null;
+                    if (spilled != null) {
+                        // Not replayed yet, so the database still has an older value and version
+                        stored = spilled.value;
+                    } else {
+                        ensureVersionColumn(table);
+                        stored = loadRawData(table, uuid, key);
+                    }
+                } catch (SQLException e) {
+                    query.failed();
+                    sample.failed();
+                    throw e;
+                }
+            }
+            if (stored != null && ValueCompressor.isCompressed(stored.getType())) {
+                try {
+                    StoredValue decompressed = compressor.decompress(table, stored);
+                    stored = new StoredValue(decompressed.getValue(), decompressed.getType(), stored.getExpiresAt(), stored.getVersion());
+                } catch (IllegalArgumentException e) {
+                    sample.failed();
+                    throw e;
+                }
+            }
+            if (cache != null) {
+                cache.putIfUnchanged(entryKey, stored, cacheEpoch);
+            }
+            return stored;
+        }
+    }
+
+    /**
+     * Saves a string value only if its row still has the given version, i.e. nobody else wrote it since
+     * it was loaded with {@link #loadDataVersioned(String, UUID, String)}. The check and the write are
+     * one atomic statement, also across servers sharing a database. The save runs immediately on the
+     * calling thread, after writes of the same key that are still queued.
+     * Versions restart at 1 when a key is deleted and saved again.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param value The string value to save.
+     * @param expectedVersion The loaded version, or 0 if the key must not exist.
+     * @return true if the value was saved, false on a version conflict or an error.
+     */
+    public boolean saveDataIfVersion(String tableName, UUID uuid, String key, String value, long expectedVersion) {
+        return saveGenericIfVersion(tableName, uuid, key, value, "string", expectedVersion);
+    }
+
+    /**
+     * Saves an integer value only if its row still has the given version.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param value The integer value to save.
+     * @param expectedVersion The loaded version, or 0 if the key must not exist.
+     * @return true if the value was saved, false on a version conflict or an error.
+     * @see #saveDataIfVersion(String, UUID, String, String, long)
+     */
+    public boolean saveIntIfVersion(String tableName, UUID uuid, String key, int value, long expectedVersion) {
+        return saveGenericIfVersion(tableName, uuid, key, String.valueOf(value), "int", expectedVersion);
+    }
+
+    /**
+     * Saves a long value only if its row still has the given version.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param value The long value to save.
+     * @param expectedVersion The loaded version, or 0 if the key must not exist.
+     * @return true if the value was saved, false on a version conflict or an error.
+     * @see #saveDataIfVersion(String, UUID, String, String, long)
+     */
+    public boolean saveLongIfVersion(String tableName, UUID uuid, String key, long value, long expectedVersion) {
+        return saveGenericIfVersion(tableName, uuid, key, String.valueOf(value), "long", expectedVersion);
+    }
+
+    /**
+     * Saves a double value only if its row still has the given version.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param value The double value to save.
+     * @param expectedVersion The loaded version, or 0 if the key must not exist.
+     * @return true if the value was saved, false on a version conflict or an error.
+     * @see #saveDataIfVersion(String, UUID, String, String, long)
+     */
+    public boolean saveDoubleIfVersion(String tableName, UUID uuid, String key, double value, long expectedVersion) {
+        return saveGenericIfVersion(tableName, uuid, key, String.valueOf(value), "double", expectedVersion);
+    }
+
+    /**
+     * Saves an object only if its row still has the given version.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key for the data.
+     * @param value The object to save.
+     * @param type The class of the object.
+     * @param expectedVersion The loaded version, or 0 if the key must not exist.
+     * @param <T> The type of the object.
+     * @return true if the value was saved, false on a version conflict or an error.
+     * @see #saveDataIfVersion(String, UUID, String, String, long)
+     */
+    public <T> boolean saveObjectIfVersion(String tableName, UUID uuid, String key, T value, Class<T> type, long expectedVersion) {
+        ValueCodec<T> codec = codecRegistry.getCodec(TypeToken.get(type));
+        String encoded;
+        try {
+            encoded = codec.encode(value);
+        } catch (RuntimeException e) {
+            logger.severe("Fehler beim Kodieren von Objekt-Daten (" + type + "): " + e.getMessage());
+            return false;
+        }
+        return saveGenericIfVersion(tableName, uuid, key, encoded, OBJECT_TYPE_PREFIX + codec.getId(), expectedVersion);
+    }
+
+    /**
+     * @return false on a version conflict or an error.
+     */
+    private boolean saveGenericIfVersion(String tableName, UUID uuid, String key, String serializedValue, String type,
+                                         long expectedVersion) {
+        String table = tableName.toLowerCase();
+        try (DatabaseMetrics.Sample sample = metrics.startCall("save", table)) {
+            EntryKey entryKey = new EntryKey(table, uuid, key);
+            checkMainThreadIo("save", table);
+            // Queued writes of the key must reach the table before the version is compared
+            awaitPendingWrite(table, uuid, key);
+            admit(sample);
+            if (spill != null && spill.lookup(entryKey) != null) {
+                // The version in the database is outdated until the spilled write is replayed
+                return false;
+            }
+            try (DatabaseMetrics.Sample write = metrics.start("write", table)) {
+                try {
+                    ensureVersionColumn(table);
+                    StoredValue stored = compressor != null && compressor.shouldCompress(serializedValue)
+                            ? compressor.compress(table, type, serializedValue) : new StoredValue(serializedValue, type);
+                    if (!backend.writeIfVersion(table, uuid, key, stored.getValue(), stored.getType(), 0L,
+                            expectedVersion, System.currentTimeMillis())) {
+                        // Someone else wrote the key, so the cached value is outdated
+                        if (cache != null) cache.invalidate(entryKey);
+                        return false;
+                    }
+                } catch (SQLException e) {
+                    write.failed();
+                    sample.failed();
+                    logger.severe("Fehler beim Speichern von Daten: " + e.getMessage());
+                    e.printStackTrace();
+                    return false;
+                }
+            }
+            trackExpiry(entryKey, 0L);
+            if (cache != null) cache.put(entryKey, new StoredValue(serializedValue, type));
+            indexValue(table, uuid, key, serializedValue, type);
+            appendChange(table, uuid, key);
+            return true;
+        }
+    }
+
+    /**
+     * Declares a secondary index on a key, so {@link #findByValue(String, String, String)} finds the players
+     * holding a value without reading the whole table, e.g. to resolve a linked Discord id to its player.
+     * The database index is only created if it does not exist yet, so this can be called on every start.
+     * SQLite indexes every key separately, MySQL uses one index over all indexed keys of a table. MySQL
+     * tables created with {@link #createWideTable(String)} cannot be indexed and are read completely.
+     * @param tableName The name of the table, which must exist.
+     * @param key The key to index.
+     * @return true if the index was created or exists, false if an error occurs.
+     */
+    public boolean createIndex(String tableName, String key) {
+        return createIndex(tableName, key, false);
+    }
+
+    /**
+     * Declares a secondary index on a key, see {@link #createIndex(String, String)}.
+     * @param tableName The name of the table, which must exist.
+     * @param key The key to index.
+     * @param inMemory Whether to also keep a hash index of the values in memory, for keys looked up often.
+     *                 It is filled by a scan in the background and then answers lookups without a database
+     *                 access. It sees the writes of this server and, with the change log enabled, those of
+     *                 other servers; without the change log, only use it if this server is the only writer.
+     *                 Values with a TTL set by other servers may be found until they are deleted.
+     * @return true if the index was created or exists, false if an error occurs.
+     */
+    public boolean createIndex(String tableName, String key, boolean inMemory) {
+        String table = tableName.toLowerCase();
+        try {
+            ensureConnection();
+            if (!backend.createValueIndex(table, key)) {
+                logger.info("Kein Datenbankindex für '" + key + "' in Tabelle '" + table + "' möglich, Suchen lesen die ganze Tabelle"
+                        + (inMemory ? ", bis der Index im Speicher aufgebaut ist." : "."));
+            }
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Erstellen des Index für '" + key + "' in Tabelle '" + table + "': " + e.getMessage());
+            return false;
+        }
+        if (inMemory) buildValueIndex(table, key);
+        return true;
+    }
+
+    /**
+     * Finds the players holding a string value under a key, e.g. the player a Discord id is linked to.
+     * Uses the index declared with {@link #createIndex(String, String)}; without one the whole table is read.
+     * Values are compared exactly and with their type, so a value saved with {@link #saveInt} is not found
+     * as a string. Values the database stores compressed ({@code database.compression}) are only found by
+     * the in-memory index. Call this on an async thread unless the key has an in-memory index.
+     * @param tableName The name of the table.
+     * @param key The key to search.
+     * @param value The value to find.
+     * @return The players holding the value, or null if an error occurs.
+     */
+    public List<UUID> findByValue(String tableName, String key, String value) {
+        return findValue(tableName, key, value, "string");
+    }
+
+    /**
+     * Finds the players holding an integer value under a key, see {@link #findByValue(String, String, String)}.
+     * @param tableName The name of the table.
+     * @param key The key to search.
+     * @param value The value to find.
+     * @return The players holding the value, or null if an error occurs.
+     */
+    public List<UUID> findByValue(String tableName, String key, int value) {
+        return findValue(tableName, key, String.valueOf(value), "int");
+    }
+
+    /**
+     * Finds the players holding a long value under a key, see {@link #findByValue(String, String, String)}.
+     * @param tableName The name of the table.
+     * @param key The key to search.
+     * @param value The value to find.
+     * @return The players holding the value, or null if an error occurs.
+     */
+    public List<UUID> findByValue(String tableName, String key, long value) {
+        return findValue(tableName, key, String.valueOf(value), "long");
+    }
+
+    /**
+     * Finds the players holding a boolean value under a key, see {@link #findByValue(String, String, String)}.
+     * @param tableName The name of the table.
+     * @param key The key to search.
+     * @param value The value to find.
+     * @return The players holding the value, or null if an error occurs.
+     */
+    public List<UUID> findByValue(String tableName, String key, boolean value) {
+        return findValue(tableName, key, String.valueOf(value), "boolean");
+    }
+
+    private List<UUID> findValue(String tableName, String key, String value, String type) {
+        String table = tableName.toLowerCase();
+        Objects.requireNonNull(value, "value");
+        try (DatabaseMetrics.Sample sample = metrics.startCall("find", table)) {
+            ValueIndex index = valueIndexes.get(indexKey(table, key));
+            if (index != null && index.isReady()) {
+                List<UUID> players = index.find(value, type);
+                players.removeIf(uuid -> isExpired(new EntryKey(table, uuid, key)));
+                return players;
+            }
+            checkMainThreadIo("find", table);
+            // Queued writes are visible to a search started after them
+            awaitPendingWrites(table);
+            admit(sample);
+            try (DatabaseMetrics.Sample query = metrics.start("query", table)) {
+                try {
+                    ensureConnection();
+                    return backend.findByValue(table, key, value, type, System.currentTimeMillis());
+                } catch (SQLException e) {
+                    query.failed();
+                    sample.failed();
+                    if (!onBackendFailure(e) || !isDatabaseUnavailable()) {
+                        logger.severe("Fehler beim Suchen nach '" + key + "' in Tabelle '" + table + "': " + e.getMessage());
+                    }
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes an in-memory index and fills it from a scan of the table on the scan executor.
+     * Writes from the moment it is published are applied to it, so the scan cannot miss one.
+     */
+    private void buildValueIndex(String table, String key) {
+        ValueIndex index = new ValueIndex(table, key);
+        if (valueIndexes.putIfAbsent(indexKey(table, key), index) != null) return;
+        try {
+            getScanExecutor().execute(() -> {
+                ScanIterator entries = new ScanIterator(table, null, key);
+                int count = 0;
+                while (entries.hasNext()) {
+                    TableEntry entry = entries.next();
+                    if (!entry.getKey().equals(key)) continue;
+                    index.load(entry.getUuid(), entry.getValue(), entry.getType());
+                    count++;
+                }
+                if (entries.failure != null) {
+                    // Lookups keep using the database, the next createIndex tries again
+                    valueIndexes.remove(indexKey(table, key), index);
+                    return;
+                }
+                index.finishBuild();
+                logger.info("Index für '" + key + "' in Tabelle '" + table + "' mit " + count + " Einträgen im Speicher aufgebaut.");
+            });
+        } catch (RejectedExecutionException e) {
+            valueIndexes.remove(indexKey(table, key), index);
+        }
+    }
+
+    /**
+     * Updates the in-memory index of a key, if it has one.
+     * @param value The new value, or null if the key was deleted.
+     */
+    private void indexValue(String table, UUID uuid, String key, String value, String type) {
+        if (valueIndexes.isEmpty()) return;
+        ValueIndex index = valueIndexes.get(indexKey(table, key));
+        if (index == null) return;
+        if (value != null) {
+            index.put(uuid, value, type);
+        } else {
+            index.remove(uuid);
+        }
+    }
+
+    /**
+     * Removes a player from the in-memory indexes of a table.
+     * @param table The table, or null for all tables.
+     */
+    private void unindexPlayer(String table, UUID uuid) {
+        for (ValueIndex index : valueIndexes.values()) {
+            if (table == null || index.table.equals(table)) index.remove(uuid);
+        }
+    }
+
+    /**
+     * Reads the value of a player again after another server changed it.
+     */
+    private void reindexValue(ValueIndex index, UUID uuid) {
+        try {
+            StoredValue stored = loadValue(index.table, uuid, index.key);
+            indexValue(index.table, uuid, index.key, stored != null ? stored.getValue() : null, stored != null ? stored.getType() : null);
+        } catch (IllegalArgumentException e) {
+            index.remove(uuid);
+        }
+    }
+
+    private static String indexKey(String table, String key) {
+        return table + '\u0000' + key;
+    }
+
+    /**
+     * Iterates over all entries of a table, e.g. for admin tools, exports or leaderboards.
+     * The entries are read lazily in pages of {@code database.scan.page-size} rows, and each page continues
+     * after the last row of the previous one, so a page costs the same at the end of a large table as at its start.
+     * Entries written during the scan may or may not be returned. Expired entries are skipped.
+     * If the database fails during the scan, the error is logged and the stream ends early.
+     * Close or fully consume the stream on an async thread; every page is a database access.
+     * @param tableName The name of the table.
+     * @return The entries, grouped by player in UUID order. The order of the keys of a player depends on the backend.
+     */
+    public Stream<TableEntry> scan(String tableName) {
+        return scanEntries(tableName, null, null);
+    }
+
+    /**
+     * Iterates over all entries of a player in a table, see {@link #scan(String)}.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @return The entries.
+     */
+    public Stream<TableEntry> scan(String tableName, UUID uuid) {
+        return scanEntries(tableName, Objects.requireNonNull(uuid, "uuid"), null);
+    }
+
+    /**
+     * Iterates over the entries of a table whose key starts with a prefix, e.g. {@code "home."} for all homes,
+     * see {@link #scan(String)}.
+     * @param tableName The name of the table.
+     * @param keyPrefix The prefix of the keys.
+     * @return The entries, grouped by player in UUID order.
+     */
+    public Stream<TableEntry> scanPrefix(String tableName, String keyPrefix) {
+        return scanEntries(tableName, null, Objects.requireNonNull(keyPrefix, "keyPrefix"));
+    }
+
+    /**
+     * Iterates over the entries of a player whose key starts with a prefix, see {@link #scan(String)}.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param keyPrefix The prefix of the keys.
+     * @return The entries.
+     */
+    public Stream<TableEntry> scanPrefix(String tableName, UUID uuid, String keyPrefix) {
+        return scanEntries(tableName, Objects.requireNonNull(uuid, "uuid"), Objects.requireNonNull(keyPrefix, "keyPrefix"));
+    }
+
+    /**
+     * Publishes all entries of a table to a reactive subscriber, e.g. for analytics jobs over large tables.
+     * Pages are read only while the subscriber has requested entries, so a slow subscriber pauses the scan
+     * instead of filling a buffer; at most one page is held per subscription. Cancelling drops the page.
+     * No connection or cursor stays open between pages, see {@link #scan(String)}.
+     * Entries are delivered on a TryLibs scan thread. Database errors are signalled with {@code onError}.
+     * @param tableName The name of the table.
+     * @return A publisher that starts a new scan for every subscriber.
+     */
+    public Flow.Publisher<TableEntry> publish(String tableName) {
+        String table = tableName.toLowerCase();
+        return subscriber -> subscribeScan(subscriber, table, null);
+    }
+
+    /**
+     * Publishes the entries of a table whose key starts with a prefix, see {@link #publish(String)}.
+     * @param tableName The name of the table.
+     * @param keyPrefix The prefix of the keys.
+     * @return A publisher that starts a new scan for every subscriber.
+     */
+    public Flow.Publisher<TableEntry> publishPrefix(String tableName, String keyPrefix) {
+        String table = tableName.toLowerCase();
+        Objects.requireNonNull(keyPrefix, "keyPrefix");
+        return subscriber -> subscribeScan(subscriber, table, keyPrefix);
+    }
+
+    private void subscribeScan(Flow.Subscriber<? super TableEntry> subscriber, String table, String keyPrefix) {
+        ScanSubscription subscription = new ScanSubscription(Objects.requireNonNull(subscriber, "subscriber"),
+                new ScanIterator(table, null, keyPrefix));
+        subscriber.onSubscribe(subscription);
+    }
+
+    private Stream<TableEntry> scanEntries(String tableName, UUID uuid, String keyPrefix) {
+        Iterator<TableEntry> pages = new ScanIterator(tableName.toLowerCase(), uuid, keyPrefix);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Holds one page of a scan and reads the next one when it is used up.
+     */
+    private final class ScanIterator implements Iterator<TableEntry> {
+        private final String table;
+        private final UUID uuid;
+        private final String keyPrefix;
+        private List<TableEntry> page = Collections.emptyList();
+        private int position;
+        // The last row read from the backend, where the next page continues
+        private TableEntry last;
+        private boolean started;
+        private boolean finished;
+        // The error that ended the scan early, if any
+        private SQLException failure;
+
+        ScanIterator(String table, UUID uuid, String keyPrefix) {
+            this.table = table;
+            this.uuid = uuid;
+            this.keyPrefix = keyPrefix;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position >= page.size() && !finished) {
+                page = nextPage();
+                position = 0;
+            }
+            return position < page.size();
+        }
+
+        @Override
+        public TableEntry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return page.get(position++);
+        }
+
+        private List<TableEntry> nextPage() {
+            try (DatabaseMetrics.Sample sample = metrics.startCall("scan", table)) {
+                checkMainThreadIo("scan", table);
+                if (!started) {
+                    // Queued writes are visible to a scan started after them
+                    awaitPendingWrites(table);
+                    started = true;
+                }
+                try {
+                    admit(sample);
+                } catch (RejectedExecutionException e) {
+                    failure = new SQLTransientException(e.getMessage(), e);
+                    finished = true;
+                    return Collections.emptyList();
+                }
+                List<TableEntry> rows;
+                try (DatabaseMetrics.Sample query = metrics.start("query", table)) {
+                    try {
+                        ensureConnection();
+                        rows = backend.scan(table, uuid, keyPrefix, last, scanPageSize, System.currentTimeMillis());
+                    } catch (SQLException e) {
+                        query.failed();
+                        sample.failed();
+                        logger.severe("Fehler beim Durchsuchen der Tabelle '" + table + "': " + e.getMessage());
+                        e.printStackTrace();
+                        failure = e;
+                        finished = true;
+                        return Collections.emptyList();
+                    }
+                }
+                if (rows.isEmpty()) {
+                    finished = true;
+                    return rows;
+                }
+                last = rows.get(rows.size() - 1);
+                List<TableEntry> entries = new ArrayList<>(rows.size());
+                for (TableEntry row : rows) {
+                    if (!ValueCompressor.isCompressed(row.getType())) {
+                        entries.add(row);
+                        continue;
+                    }
+                    try {
+                        StoredValue stored = compressor.decompress(table, new StoredValue(row.getValue(), row.getType()));
+                        entries.add(new TableEntry(row.getUuid(), row.getKey(), stored.getValue(), stored.getType()));
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("Eintrag '" + row.getKey() + "' von " + row.getUuid() + " in Tabelle '" + table
+                                + "' konnte nicht entpackt werden: " + e.getMessage());
+                    }
+                }
+                return entries;
+            }
+        }
+    }
+
+    /**
+     * Delivers a scan to a subscriber on the scan executor, one drain loop at a time.
+     * Pages are only read while there is outstanding demand.
+     */
+    private final class ScanSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super TableEntry> subscriber;
+        private ScanIterator entries;
+        private final AtomicLong demand = new AtomicLong();
+        // Number of pending drain requests; the loop runs while it is not zero
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        ScanSubscription(Flow.Subscriber<? super TableEntry> subscriber, ScanIterator entries) {
+            this.subscriber = subscriber;
+            this.entries = entries;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Die Anzahl angeforderter Einträge muss positiv sein: " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    getScanExecutor().execute(this);
+                } catch (RuntimeException e) {
+                    // The handler was closed
+                    cancelled = true;
+                    entries = null;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (entries != null) deliver();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            try {
+                while (!cancelled) {
+                    if (invalidRequest != null) {
+                        cancelled = true;
+                        subscriber.onError(invalidRequest);
+                        break;
+                    }
+                    if (demand.get() == 0) return;
+                    if (!entries.hasNext()) {
+                        cancelled = true;
+                        if (entries.failure != null) {
+                            subscriber.onError(entries.failure);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                        break;
+                    }
+                    TableEntry entry = entries.next();
+                    if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                    subscriber.onNext(entry);
+                }
+            } catch (RuntimeException e) {
+                // A failing subscriber cancels its subscription
+                cancelled = true;
+                logger.warning("Abonnent einer Tabellen-Abfrage hat einen Fehler geworfen: " + e);
+            }
+            // Release the buffered page
+            entries = null;
+        }
+    }
+
+    /**
+     * Gets the registry of codecs used by {@code saveObject}/{@code loadObject}.
+     * Register a {@link com.trynocs.tryLibs.utils.database.codec.BinaryValueCodec} for hot types
+     * to store them without JSON reflection.
+     * @return The codec registry.
+     */
+    public CodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    /**
+     * Gets the latency, error and in-flight metrics of this handler.
+     * @return The metrics.
+     */
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks whether the database is treated as unreachable after repeated connection failures.
+     * While it is, reads that miss the cache fail immediately and writes are spilled to the local
+     * spill file, which is replayed once a reconnect succeeds.
+     * @return true if the circuit breaker is open.
+     */
+    public boolean isDatabaseUnavailable() {
+        return breaker != null && !breaker.allowRequest();
+    }
+
+    /**
+     * Moves players to the shard they belong to, e.g. after a shard was added to
+     * {@code database.sharding.shards}. Reads and writes keep working while it runs. Until all tables have
+     * been rebalanced, reads that miss on the shard of a player
+     * also look on the other shards, on every server.
+     * @param tableNames The tables to rebalance, or none for all tables.
+     * @return A future with the number of moved players, completed exceptionally if
+     *         the database is not sharded or a table could not be rebalanced.
+     */
+    public CompletableFuture<Long> rebalanceShards(String... tableNames) {
+        if (!(backend instanceof ShardedBackend)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Die Datenbank ist nicht auf Shards verteilt."));
+        }
+        ShardedBackend sharded = (ShardedBackend) backend;
+        return CompletableFuture.supplyAsync(() -> {
+            long moved = 0;
+            Set<String> remaining;
+            try {
+                ensureConnection();
+                remaining = new HashSet<>(purgeTables(true));
+                // Its rows belong to a fixed id, which may have moved as well
+                remaining.add(SCHEMA_TABLE);
+            } catch (SQLException e) {
+                logger.severe("Fehler beim Verteilen auf die Shards: " + e.getMessage());
+                throw new CompletionException(e);
+            }
+            List<String> tables = new ArrayList<>(remaining);
+            if (tableNames.length > 0) {
+                tables.clear();
+                for (String tableName : tableNames) {
+                    tables.add(tableName.toLowerCase());
+                }
+            }
+            for (String table : tables) {
+                try {
+                    ensureConnection();
+                    remaining.remove(table);
+                    if (!backend.tableExists(table)) continue;
+                    awaitPendingWrites(table);
+                    long tableMoved = sharded.rebalance(table, scanPageSize);
+                    logger.info(tableMoved + " Spieler der Tabelle '" + table + "' auf ihren Shard verschoben.");
+                    moved += tableMoved;
+                } catch (SQLException e) {
+                    logger.severe("Fehler beim Verteilen der Tabelle '" + table + "' auf die Shards: " + e.getMessage());
+                    throw new CompletionException(e);
+                }
+            }
+            if (remaining.isEmpty() && sharded.needsRebalance()) {
+                try {
+                    sharded.finishRebalance();
+                    logger.info("Alle Tabellen sind auf ihre Shards verteilt.");
+                } catch (SQLException e) {
+                    logger.severe("Fehler beim Abschließen der Verteilung auf die Shards: " + e.getMessage());
+                    throw new CompletionException(e);
+                }
+            }
+            return moved;
+        }, getScanExecutor());
+    }
+
+    /**
+     * Deletes a specific data entry from the database.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key of the data to delete.
+     * @return true if data was deleted, or if the delete was spilled because the database is not reachable, false otherwise.
+     */
+    public boolean deleteData(String tableName, UUID uuid, String key) {
+        String table = tableName.toLowerCase();
+        try (DatabaseMetrics.Sample sample = metrics.startCall("delete", table)) {
+            checkMainThreadIo("delete", table);
+            EntryKey entryKey = new EntryKey(table, uuid, key);
+            awaitPendingWrite(table, uuid, key);
+            admit(sample);
+            expiries.remove(entryKey);
+            try {
+                if (spillChange(SpillJournal.DELETE, table, uuid, key, null, null, 0L, false)) {
+                    if (cache != null) cache.put(entryKey, null);
+                    indexValue(table, uuid, key, null, null);
+                    return true;
+                }
+                ensureConnection();
+                boolean deleted = backend.delete(table, uuid, key);
+                if (cache != null) cache.put(entryKey, null);
+                indexValue(table, uuid, key, null, null);
+                if (deleted) appendChange(table, uuid, key);
+                return deleted;
+            } catch (SQLException e) {
+                if (onBackendFailure(e) && spillChange(SpillJournal.DELETE, table, uuid, key, null, null, 0L, true)) {
+                    if (cache != null) cache.put(entryKey, null);
+                    indexValue(table, uuid, key, null, null);
+                    return true;
+                }
+                sample.failed();
+                logger.severe("Fehler beim Löschen von Daten: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Deletes a specific data entry from the "users" table.
+     * @param uuid The UUID of the player.
+     * @param key The key of the data to delete.
+     * @return true if data was deleted, false otherwise.
+     */
+    public boolean deleteData(UUID uuid, String key) {
+        return deleteData("users", uuid, key);
+    }
+
+    /**
+     * Wipes all data associated with a specific UUID from the tables {@link #purgePlayers(Collection)} covers,
+     * in one transaction. To delete many players, use {@link #purgePlayers(Collection)} instead.
+     * @param uuid The UUID of the player whose data to wipe.
+     * @return true if any data was wiped, false otherwise, while spilled writes wait for replay, or on the
+     *         server main thread while writes of the player are still queued.
+     */
+    public boolean wipeAllData(UUID uuid) {
+        checkMainThreadIo("wipe", null);
+        boolean isWiped = false;
+        List<CompletableFuture<Void>> pending = pendingWritesOf(uuid);
+        if (!pending.isEmpty() && MainThreadMonitor.isPrimaryThread()) {
+            // Waiting for them would block the server
+            logger.warning("Daten von " + uuid + " nicht gelöscht, es werden noch Schreibvorgänge ausgeführt.");
+            return false;
+        }
+        for (CompletableFuture<Void> write : pending) {
+            try {
+                write.join();
+            } catch (CompletionException ignored) {
+                // Already logged by the write itself
+            }
+        }
+        if (hasSpilledChanges()) {
+            // The replay would restore the wiped data
+            logger.warning("Daten von " + uuid + " nicht gelöscht, ausgelagerte Schreibvorgänge werden noch nachgeholt.");
+            return false;
+        }
+        expiries.keySet().removeIf(entryKey -> entryKey.uuid.equals(uuid));
+        if (cache != null) cache.invalidate(uuid);
+        unindexPlayer(null, uuid);
+        try {
+            ensureConnection();
+            List<String> tables = purgeTables(false);
+            isWiped = backend.deletePlayers(tables, Collections.singletonList(uuid)) > 0;
+            if (isWiped) {
+                for (String table : tables) {
+                    appendChange(table, uuid, null);
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Löschen aller Daten: " + e.getMessage());
+        }
+        return isWiped;
+    }
+
+    /**
+     * Deletes all data of many players in the background, e.g. to clean up inactive accounts.
+     * Covers every table created with {@link #createTable(String)}, {@link #createWideTable(String)} or
+     * a migration, on any server using this database, but not tables created with
+     * {@link #executeTableStatement(String)}. Players are deleted in batches of
+     * {@code database.purge.batch-size}, each batch in one transaction, with a pause of
+     * {@code database.purge.delay} milliseconds between batches. Progress is logged every
+     * {@code database.purge.report-interval} seconds and available from the returned job. The job pauses while
+     * spilled writes wait for replay.
+     * @param uuids The players to delete.
+     * @return The running job.
+     */
+    public PurgeJob purgePlayers(Collection<UUID> uuids) {
+        List<UUID> players = new ArrayList<>(new LinkedHashSet<>(uuids));
+        PurgeJob job = new PurgeJob(players.size());
+        purgeJobs.add(job);
+        job.getCompletion().whenComplete((rows, error) -> purgeJobs.remove(job));
+        getPurgeExecutor().execute(() -> {
+            try {
+                ensureConnection();
+                List<String> tables = purgeTables(true);
+                logger.info("Lösche " + players.size() + " Spieler aus " + tables.size() + " Tabellen " + tables + "...");
+                runPurgeBatch(job, tables, players, 0, System.currentTimeMillis());
+            } catch (SQLException e) {
+                logger.severe("Fehler beim Löschen von Spielern: " + e.getMessage());
+                job.fail(e);
+            }
+        });
+        return job;
+    }
+
+    private void runPurgeBatch(PurgeJob job, List<String> tables, List<UUID> players, int from, long lastReport) {
+        if (job.isCancelled() || from >= players.size()) {
+            logger.info("Löschen " + (job.isCancelled() ? "abgebrochen" : "abgeschlossen") + ": " + job.getProcessed()
+                    + "/" + job.getTotal() + " Spieler, " + job.getDeletedRows() + " Zeilen.");
+            job.complete();
+            return;
+        }
+        if (hasSpilledChanges()) {
+            // Paused until the spilled changes are replayed, which would restore deleted players
+            long reported = lastReport;
+            try {
+                getPurgeExecutor().schedule(() -> runPurgeBatch(job, tables, players, from, reported),
+                        SPILL_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                job.complete();
+            }
+            return;
+        }
+        List<UUID> batch = players.subList(from, Math.min(players.size(), from + purgeBatchSize));
+        try (DatabaseMetrics.Sample sample = metrics.start("purge", null)) {
+            try {
+                job.addBatch(batch.size(), purgeBatch(tables, batch));
+            } catch (SQLException e) {
+                sample.failed();
+                logger.severe("Fehler beim Löschen von Spielern nach " + job.getProcessed() + "/" + job.getTotal() + ": " + e.getMessage());
+                job.fail(e);
+                return;
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= purgeReportMillis) {
+            logger.info("Löschen: " + job.getProcessed() + "/" + job.getTotal() + " Spieler, " + job.getDeletedRows() + " Zeilen.");
+            lastReport = now;
+        }
+        long reported = lastReport;
+        try {
+            getPurgeExecutor().schedule(() -> runPurgeBatch(job, tables, players, from + batch.size(), reported),
+                    purgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The handler was closed
+            job.complete();
+        }
+    }
+
+    /**
+     * Deletes a batch of players from all tables in one transaction.
+     * @return The number of deleted rows.
+     */
+    private long purgeBatch(List<String> tables, List<UUID> batch) throws SQLException {
+        for (String table : tables) {
+            awaitPendingWrites(table);
+        }
+        ensureConnection();
+        int deleted = backend.deletePlayers(tables, batch);
+        Set<UUID> purged = new HashSet<>(batch);
+        expiries.keySet().removeIf(entryKey -> purged.contains(entryKey.uuid));
+        for (UUID uuid : batch) {
+            if (cache != null) cache.invalidate(uuid);
+            unindexPlayer(null, uuid);
+            for (String table : tables) {
+                appendChange(table, uuid, null);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Copies the SQLite database into {@code database.sqlite.backup.directory} while the server keeps
+     * writing to it. The copy is taken in small steps from a consistent snapshot, and with the write-ahead
+     * log ({@code database.sqlite.wal}) writes are not blocked. Only the newest
+     * {@code database.sqlite.backup.retain} copies are kept. Also runs every
+     * {@code database.sqlite.backup.interval} minutes.
+     * @return A future with the written file, completed exceptionally if the database is not SQLite,
+     *         another backup is running or the copy failed.
+     */
+    public CompletableFuture<Path> backupNow() {
+        if (!(backend instanceof SqliteBackend)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Sicherungen sind nur für SQLite verfügbar."));
+        }
+        if (!backupRunning.compareAndSet(false, true)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Eine Sicherung läuft bereits."));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try (DatabaseMetrics.Sample sample = metrics.start("backup", null)) {
+                    try {
+                        return runBackup((SqliteBackend) backend);
+                    } catch (SQLException | IOException e) {
+                        sample.failed();
+                        logger.severe("Fehler bei der Sicherung der Datenbank: " + e.getMessage());
+                        throw new CompletionException(e);
+                    }
+                } finally {
+                    backupRunning.set(false);
+                }
+            }, getScanExecutor());
+        } catch (RejectedExecutionException e) {
+            backupRunning.set(false);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Path runBackup(SqliteBackend sqlite) throws SQLException, IOException {
+        ensureConnection();
+        String name = Paths.get(sqlite.getPath()).getFileName().toString();
+        String base = name.endsWith(".db") ? name.substring(0, name.length() - 3) : name;
+        Files.createDirectories(backupDirectory);
+        Path target = backupDirectory.resolve(base + "-" + LocalDateTime.now().format(BACKUP_TIMESTAMP) + ".db");
+        // Written under another name first, so an interrupted copy is never taken for a complete one
+        Path partial = backupDirectory.resolve(target.getFileName() + ".part");
+        long start = System.nanoTime();
+        try {
+            long pages = sqlite.backup(partial, backupPagesPerStep, backupStepDelayMillis);
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Datenbank gesichert nach " + target + ": " + Files.size(target) / 1024 + " KB ("
+                    + pages + " Seiten) in " + millis + " ms.");
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        rotateBackups(base);
+        return target;
+    }
+
+    /**
+     * Deletes the oldest backups of a database beyond {@code database.sqlite.backup.retain}.
+     */
+    private void rotateBackups(String base) throws IOException {
+        List<Path> backups = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(backupDirectory, base + "-*.db")) {
+            for (Path file : files) {
+                backups.add(file);
+            }
+        }
+        // The timestamp in the name sorts by age
+        Collections.sort(backups);
+        for (int i = 0; i < backups.size() - backupRetain; i++) {
+            Files.deleteIfExists(backups.get(i));
+            logger.info("Alte Sicherung gelöscht: " + backups.get(i));
+        }
+    }
+
+    private void ensureBackupSchedule() {
+        if (backupIntervalMillis <= 0 || !(backend instanceof SqliteBackend)) return;
+        synchronized (pendingWrites) {
+            if (backupSchedule == null) {
+                backupSchedule = getWorker().scheduleAtFixedRate(this::backupNow,
+                        backupIntervalMillis, backupIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private ScheduledExecutorService getPurgeExecutor() {
+        synchronized (pendingWrites) {
+            if (purgeExecutor == null) {
+                purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "TryLibs-Database-Purge");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return purgeExecutor;
+        }
+    }
+
+    /**
+     * Wipes all data associated with a specific UUID. This is an alias for {@link #wipeAllData(UUID)}.
+     * @param uuid The UUID of the player whose data to wipe.
+     * @return true if any data was wiped, false otherwise.
+     */
+    public boolean wipeData(UUID uuid) {
+        return wipeAllData(uuid);
+    }
+
+    /**
+     * Checks if a specific data entry exists in the database.
+     * @param tableName The name of the table.
+     * @param uuid The UUID of the player.
+     * @param key The key of the data.
+     * @return true if data exists, false otherwise.
+     */
+    public boolean hasData(String tableName, UUID uuid, String key) {
+        String table = tableName.toLowerCase();
+        try (DatabaseMetrics.Sample sample = metrics.startCall("has", table)) {
+            EntryKey entryKey = new EntryKey(table, uuid, key);
+            Long expiresAt = expiries.get(entryKey);
+            if (expiresAt != null) {
+                // Keys with a known TTL are answered from memory
+                return expiresAt > System.currentTimeMillis();
+            }
+            StoredValue cached = cache != null ? cache.get(entryKey) : null;
+            if (cached != null) {
+                return cached != ValueCache.ABSENT;
+            }
+            checkMainThreadIo("has", table);
+            awaitPendingWrite(table, uuid, key);
+            admit(sample);
+            try {
+                ensureConnection();
+                return backend.exists(table, uuid, key, System.currentTimeMillis());
+            } catch (SQLException e) {
+                sample.failed();
+                logger.severe("Fehler beim Überprüfen der Datenexistenz: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Checks if a specific data entry exists in the "users" table.
+     * @param uuid The UUID of the player.
+     * @param key The key of the data.
+     * @return true if data exists, false otherwise.
      */
     public boolean hasData(UUID uuid, String key) {
         return hasData("users", uuid, key);
     }
 
     /**
-     * Closes the database connection if it is open.
+     * Closes the database connection if it is open, after the queued writes. On the server main thread
+     * with writes still queued, this happens on a separate thread, so the server is not blocked.
      */
     public void closeConnection() {
+        if (MainThreadMonitor.isPrimaryThread() && !pendingWrites.isEmpty()) {
+            // No daemon, so the JVM still waits for the queued writes before it exits
+            new Thread(this::flushAndClose, "TryLibs-Database-Close").start();
+            return;
+        }
+        flushAndClose();
+    }
+
+    private void flushAndClose() {
+        flushPendingWrites(10000);
+        synchronized (pendingWrites) {
+            if (recovery != null) {
+                recovery.shutdownNow();
+                recovery = null;
+            }
+            if (scanExecutor != null) {
+                scanExecutor.shutdownNow();
+                scanExecutor = null;
+            }
+            // Changes of other servers are not seen while closed, so the indexes would go stale
+            valueIndexes.clear();
+            if (purgeExecutor != null) {
+                // Deleted players stay deleted, the rest can be purged again after a restart
+                purgeExecutor.shutdownNow();
+                purgeExecutor = null;
+                for (PurgeJob job : purgeJobs) {
+                    job.cancel();
+                    job.complete();
+                }
+            }
+            if (worker != null) {
+                worker.shutdown();
+                worker = null;
+                expirySweeper = null;
+                coherencePoller = null;
+                mainThreadReporter = null;
+                backupSchedule = null;
+                keyMigration = null;
+                keyMigrationTables = null;
+            }
+        }
+        if (mainThreadMonitor != null) mainThreadMonitor.report();
+        if (spill != null) {
+            if (!spill.isEmpty()) {
+                logger.warning(spill.getBacklogBytes() + " Bytes ausgelagerte Schreibvorgänge werden beim nächsten Start nachgeholt.");
+            }
+            try {
+                spill.close();
+            } catch (IOException e) {
+                logger.severe("Fehler beim Schließen der Auslagerungsdatei: " + e.getMessage());
+            }
+        }
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            if (backend != null && backend.isConnected()) {
+                backend.close();
                 logger.info("Datenbankverbindung geschlossen");
             }
         } catch (SQLException e) {
@@ -886,31 +3060,600 @@ public class DatabaseHandler {
         }
     }
 
+    private boolean isExpired(EntryKey entryKey) {
+        Long expiresAt = expiries.get(entryKey);
+        return expiresAt != null && expiresAt <= System.currentTimeMillis();
+    }
+
+    private void trackExpiry(EntryKey entryKey, long expiresAt) {
+        if (expiresAt <= 0) {
+            expiries.remove(entryKey);
+            return;
+        }
+        expiries.put(entryKey, expiresAt);
+        expiryWheel.schedule(entryKey, expiresAt);
+        ensureExpirySweeper();
+    }
+
+    /**
+     * Checks whether a table has the ExpiresAt column. The result is cached per table by the backend.
+     */
+    private boolean hasExpiryColumn(String tableName) {
+        try {
+            ensureConnection();
+            return backend.hasExpiryColumn(tableName);
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Prüfen der Spalten von '" + tableName + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Adds the Version column to a table on its first versioned load or save.
+     * @throws SQLException if the column cannot be added.
+     */
+    private void ensureVersionColumn(String tableName) throws SQLException {
+        ensureConnection();
+        if (backend.hasVersionColumn(tableName)) return;
+        try {
+            backend.addVersionColumn(tableName);
+            logger.info("Spalte 'Version' zu Tabelle '" + tableName + "' hinzugefügt.");
+        } catch (SQLException e) {
+            // Another server may have added it at the same time
+            if (!backend.hasVersionColumn(tableName)) throw e;
+        }
+    }
+
+    /**
+     * Adds the ExpiresAt column and its index to a table created before TTL support.
+     */
+    private void ensureExpiryColumn(String tableName) {
+        if (hasExpiryColumn(tableName)) return;
+        try {
+            backend.addExpiryColumn(tableName);
+            ensureExpirySweeper();
+            logger.info("Spalte 'ExpiresAt' zu Tabelle '" + tableName + "' hinzugefügt.");
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Hinzufügen der Spalte 'ExpiresAt' zu '" + tableName + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds all tables with an ExpiresAt column, so rows from earlier runs are swept as well.
+     * @return The tables, or an empty set if they cannot be determined.
+     */
+    private Set<String> discoverExpiryTables() {
+        try {
+            ensureConnection();
+            Set<String> tables = backend.getExpiryTables();
+            if (!tables.isEmpty()) ensureExpirySweeper();
+            return tables;
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Suchen von Tabellen mit Ablaufzeit: " + e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    private Long loadExpiry(String tableName, UUID uuid, String key) {
+        try {
+            ensureConnection();
+            return backend.readExpiry(tableName, uuid, key);
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Laden der Ablaufzeit: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, Long> loadExpiries(String tableName, UUID uuid, long now) {
+        try {
+            ensureConnection();
+            return backend.readExpiries(tableName, uuid, now);
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Laden der Ablaufzeiten aus '" + tableName + "': " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private void ensureExpirySweeper() {
+        synchronized (pendingWrites) {
+            if (expirySweeper == null) {
+                expirySweeper = getWorker().scheduleAtFixedRate(this::sweepExpiredKeys,
+                        EXPIRY_TICK_MILLIS, EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs on the worker thread every tick. Deletes the keys that expired in the timing wheel in one
+     * batch per table and periodically deletes all expired rows, including those not tracked in memory.
+     */
+    private void sweepExpiredKeys() {
+        try {
+            long now = System.currentTimeMillis();
+            Map<String, List<EntryKey>> expiredByTable = new HashMap<>();
+            for (ExpiryWheel.Entry<EntryKey> entry : expiryWheel.advance(now)) {
+                // Skip keys that were rewritten or deleted after they had been scheduled
+                if (expiries.remove(entry.key, entry.deadline)) {
+                    expiredByTable.computeIfAbsent(entry.key.table, t -> new ArrayList<>()).add(entry.key);
+                    indexValue(entry.key.table, entry.key.uuid, entry.key.key, null, null);
+                }
+            }
+            // Spilled writes may give the keys a new value, the next full sweep deletes them once they are replayed
+            if (hasSpilledChanges()) return;
+            for (Map.Entry<String, List<EntryKey>> table : expiredByTable.entrySet()) {
+                deleteExpiredKeys(table.getKey(), table.getValue(), now);
+            }
+
+            if (now - lastExpirySweep >= expirySweepIntervalMillis) {
+                lastExpirySweep = now;
+                for (String table : discoverExpiryTables()) {
+                    deleteExpiredRows(table, now);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.severe("Fehler beim Entfernen abgelaufener Daten: " + e.getMessage());
+        }
+    }
+
+    private void deleteExpiredKeys(String tableName, List<EntryKey> keys, long now) {
+        try {
+            ensureConnection();
+            backend.deleteExpired(tableName, keys, now);
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Löschen abgelaufener Daten aus '" + tableName + "': " + e.getMessage());
+        }
+    }
+
+    private void deleteExpiredRows(String tableName, long now) {
+        try {
+            ensureConnection();
+            int deleted = backend.deleteExpiredRows(tableName, now);
+            if (deleted > 0) {
+                logger.info(deleted + " abgelaufene Einträge aus '" + tableName + "' entfernt.");
+            }
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Löschen abgelaufener Daten aus '" + tableName + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a change in the change log, so other servers drop their cached copy of the key.
+     * @param key The changed key, or null if all keys of the player changed.
+     */
+    private void appendChange(String tableName, UUID uuid, String key) {
+        if (changeLog == null) return;
+        try {
+            ((JdbcBackend) backend).withConnection(connection -> {
+                changeLog.append(connection, tableName, uuid, key);
+                return null;
+            });
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Schreiben des Änderungsprotokolls: " + e.getMessage());
+        }
+    }
+
+    private void ensureMainThreadReporter() {
+        if (mainThreadMonitor == null) return;
+        synchronized (pendingWrites) {
+            if (mainThreadReporter == null) {
+                long interval = mainThreadMonitor.getReportIntervalMillis();
+                mainThreadReporter = getWorker().scheduleAtFixedRate(mainThreadMonitor::report,
+                        interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Rejects blocking I/O on the main thread if the main-thread monitor runs in strict mode.
+     * @throws IllegalStateException in strict mode on the main thread.
+     */
+    private void checkMainThreadIo(String operation, String table) {
+        if (mainThreadMonitor != null) {
+            mainThreadMonitor.checkIo(operation, table);
+        }
+    }
+
+    /**
+     * Attributes a call to its plugin and waits for a slot of the plugin quota, right before the database I/O
+     * of the call. The slot is freed when the sample of the call is closed.
+     * @throws RejectedExecutionException if the plugin got no slot within the maximum wait.
+     */
+    private void admit(DatabaseMetrics.Sample call) {
+        admit(call, true);
+    }
+
+    /**
+     * @param reject Whether to throw if the plugin got no slot within the maximum wait.
+     * @return false if the plugin got no slot within the maximum wait and {@code reject} is false.
+     * @throws RejectedExecutionException if the plugin got no slot within the maximum wait and {@code reject} is true.
+     */
+    private boolean admit(DatabaseMetrics.Sample call, boolean reject) {
+        if (scheduler == null) {
+            call.attribute();
+            return true;
+        }
+        Runnable release;
+        try (DatabaseMetrics.Sample wait = metrics.startWait(call)) {
+            try {
+                release = scheduler.acquire(call.attribute());
+            } catch (RejectedExecutionException e) {
+                wait.failed();
+                logger.warning(e.getMessage());
+                if (!reject) return false;
+                call.failed();
+                throw e;
+            }
+        }
+        if (release != null) call.releaseOnClose(release);
+        return true;
+    }
+
+    private void ensureKeyMigration() {
+        if (!migrateKeys || !(backend instanceof JdbcBackend)) return;
+        synchronized (pendingWrites) {
+            if (keyMigration == null) {
+                keyMigration = getWorker().scheduleWithFixedDelay(this::migrateKeys,
+                        KEY_MIGRATION_DELAY_MILLIS, KEY_MIGRATION_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs on the worker thread. Converts one batch of rows of the next table that still stores key names,
+     * so other database work is only blocked for a short time.
+     */
+    private void migrateKeys() {
+        JdbcBackend jdbc = (JdbcBackend) backend;
+        try {
+            if (keyMigrationTables == null) {
+                keyMigrationTables = new ArrayDeque<>(jdbc.getLegacyTables());
+                if (!keyMigrationTables.isEmpty()) {
+                    logger.info(keyMigrationTables.size() + " Tabellen werden im Hintergrund auf Schlüssel-IDs umgestellt: "
+                            + keyMigrationTables);
+                }
+            }
+            String table = keyMigrationTables.peek();
+            if (table == null) {
+                synchronized (pendingWrites) {
+                    if (keyMigration != null) keyMigration.cancel(false);
+                }
+                return;
+            }
+            if (jdbc.hasVersionColumn(table)) {
+                // Versions are not copied, so the table keeps its key names
+                keyMigrationTables.poll();
+                jdbc.abortKeyMigration(table);
+                logger.info("Tabelle '" + table + "' hat Versionen und behält ihre Schlüsselnamen.");
+            } else if (jdbc.migrateKeys(table, keyMigrationBatchSize)) {
+                keyMigrationTables.poll();
+                logger.info("Tabelle '" + table + "' auf Schlüssel-IDs umgestellt.");
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Not retried until the next start, the table keeps working with key names
+            String table = keyMigrationTables != null ? keyMigrationTables.poll() : null;
+            logger.severe("Fehler beim Umstellen von '" + table + "' auf Schlüssel-IDs: " + e.getMessage());
+            if (table != null) {
+                try {
+                    jdbc.abortKeyMigration(table);
+                } catch (SQLException abortError) {
+                    logger.severe("Fehler beim Abbrechen der Umstellung von '" + table + "': " + abortError.getMessage());
+                }
+            }
+        }
+    }
+
+    private void ensureCoherencePoller() {
+        synchronized (pendingWrites) {
+            if (coherencePoller == null) {
+                coherencePoller = getWorker().scheduleWithFixedDelay(this::pollChanges,
+                        coherencePollMillis, coherencePollMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs on the worker thread. Applies the changes other servers have written since the last poll
+     * to the local cache and expiry tracking.
+     */
+    private void pollChanges() {
+        try {
+            ensureConnection();
+            List<ChangeLog.Change> changes = ((JdbcBackend) backend).withConnection(connection -> {
+                List<ChangeLog.Change> polled = changeLog.poll(connection);
+                long now = System.currentTimeMillis();
+                if (changeLogRetentionMillis > 0 && now - lastChangeLogPrune >= changeLogRetentionMillis / 10) {
+                    lastChangeLogPrune = now;
+                    changeLog.prune(connection, now - changeLogRetentionMillis);
+                }
+                return polled;
+            });
+            for (ChangeLog.Change change : changes) {
+                applyRemoteChange(change);
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.severe("Fehler beim Lesen des Änderungsprotokolls: " + e.getMessage());
+        }
+    }
+
+    private void applyRemoteChange(ChangeLog.Change change) {
+        // Until the change has reached the replicas, the cache is refilled from the primary
+        if (backend instanceof MysqlBackend) ((MysqlBackend) backend).recordWrite(change.table, change.uuid);
+        if (change.key == null) {
+            if (cache != null) cache.invalidate(change.table, change.uuid);
+            expiries.keySet().removeIf(entryKey -> entryKey.uuid.equals(change.uuid) && entryKey.table.equals(change.table));
+            for (ValueIndex index : valueIndexes.values()) {
+                if (index.table.equals(change.table)) reindexValue(index, change.uuid);
+            }
+            return;
+        }
+        EntryKey entryKey = new EntryKey(change.table, change.uuid, change.key);
+        if (cache != null) cache.invalidate(entryKey);
+        ValueIndex index = valueIndexes.get(indexKey(change.table, change.key));
+        if (index != null) reindexValue(index, change.uuid);
+        // Refresh the expiry of online players, their TTL checks are answered from memory only
+        if (expiries.remove(entryKey) != null || preloadedPlayers.contains(change.uuid)) {
+            Long expiresAt = loadExpiry(change.table, change.uuid, change.key);
+            if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+                trackExpiry(entryKey, expiresAt);
+            }
+        }
+    }
+
+    /**
+     * Stores the compression dictionaries of all tables in the backend.
+     */
+    private class DictionaryStore implements ValueCompressor.DictionaryStore {
+        @Override
+        public ValueCompressor.Dictionary load(String table, int id) {
+            try {
+                ensureConnection();
+                return backend.loadDictionary(table, id);
+            } catch (SQLException e) {
+                logger.severe("Fehler beim Laden des Kompressions-Wörterbuchs für '" + table + "': " + e.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        public ValueCompressor.Dictionary save(String table, ValueCompressor.Dictionary dictionary) {
+            try {
+                ensureConnection();
+                backend.saveDictionary(table, dictionary);
+                logger.info("Kompressions-Wörterbuch " + dictionary.id + " für Tabelle '" + table + "' trainiert ("
+                        + dictionary.data.length + " Bytes).");
+                return dictionary;
+            } catch (SQLException e) {
+                // Another server may have saved a dictionary with the same id first, which is used instead
+                ValueCompressor.Dictionary stored = load(table, dictionary.id);
+                if (stored != null) {
+                    logger.info("Kompressions-Wörterbuch " + dictionary.id + " für Tabelle '" + table
+                            + "' wurde von einem anderen Server gespeichert und wird übernommen.");
+                    return stored;
+                }
+                logger.severe("Fehler beim Speichern des Kompressions-Wörterbuchs für '" + table + "': " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
     /**
      * Prüft, ob eine Tabelle bereits existiert.
+     * Existing tables are remembered, so only missing tables are looked up again.
      * @param tableName Name der Tabelle
      * @return true, wenn die Tabelle existiert, sonst false
      */
     public boolean tableExists(String tableName) {
-        ensureConnection();
+        if (knownTables.contains(tableName.toLowerCase())) return true;
         try {
-            if ("mysql".equals(dbType)) {
-                DatabaseMetaData meta = connection.getMetaData();
-                try (ResultSet rs = meta.getTables(null, null, tableName, null)) {
-                    return rs.next();
+            ensureConnection();
+            boolean exists = backend.tableExists(tableName);
+            if (exists) knownTables.add(tableName.toLowerCase());
+            return exists;
+        } catch (SQLException e) {
+            logger.severe("Fehler beim Überprüfen der Tabellenvorhandensein: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Applies the migrations that are not yet recorded in the database, in ascending order.
+     * While they run, other servers on the same database wait for them (up to
+     * {@code database.migrations.lock-timeout}) instead of applying them again. Once all versions
+     * are applied, further calls return without accessing the database.
+     * @param migrations The migrations of a plugin.
+     * @return true if all migrations are applied, false if one failed or the lock was not acquired in time.
+     */
+    public boolean migrate(SchemaMigrations migrations) {
+        String name = migrations.getName();
+        Set<Integer> applied = appliedMigrations.get(name);
+        if (applied != null && applied.containsAll(migrations.getSteps().keySet())) return true;
+        UUID id = UUID.nameUUIDFromBytes(("trylibs-schema:" + name).getBytes(StandardCharsets.UTF_8));
+        synchronized (appliedMigrations) {
+            try {
+                ensureConnection();
+                ensureSchemaTable();
+                applied = readAppliedMigrations(id);
+                appliedMigrations.put(name, applied);
+                if (applied.containsAll(migrations.getSteps().keySet())) return true;
+
+                String owner = UUID.randomUUID().toString();
+                if (!acquireSchemaLock(id, owner)) {
+                    logger.severe("Migrationen von '" + name + "' nicht ausgeführt: Die Sperre wird seit "
+                            + migrationLockTimeoutMillis / 1000 + " s von einem anderen Server gehalten.");
+                    return false;
                 }
-            } else {
-                String sql = "SELECT name FROM sqlite_master WHERE type='table' AND name=?;";
-                try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                    pstmt.setString(1, tableName);
-                    try (ResultSet rs = pstmt.executeQuery()) {
-                        return rs.next();
+                try {
+                    // Another server may have applied them while this one waited for the lock
+                    applied = readAppliedMigrations(id);
+                    appliedMigrations.put(name, applied);
+                    Schema schema = new Schema();
+                    for (Map.Entry<Integer, SchemaMigrations.Step> step : migrations.getSteps().entrySet()) {
+                        int version = step.getKey();
+                        if (applied.contains(version)) continue;
+                        logger.info("Migration " + name + " v" + version + " (" + step.getValue().description + ") wird ausgeführt...");
+                        try {
+                            step.getValue().migration.migrate(schema);
+                        } catch (SQLException e) {
+                            logger.severe("Migration " + name + " v" + version + " fehlgeschlagen: " + e.getMessage());
+                            return false;
+                        }
+                        long now = System.currentTimeMillis();
+                        backend.write(SCHEMA_TABLE, id, SCHEMA_VERSION_PREFIX + version,
+                                String.valueOf(step.getValue().description), "string", 0L);
+                        applied.add(version);
+                        // Extends the lease for the next migration
+                        backend.write(SCHEMA_TABLE, id, SCHEMA_LOCK_KEY, owner, "string", now + migrationLockLeaseMillis);
                     }
+                    logger.info("Schema von '" + name + "' ist auf Version " + migrations.getLatestVersion() + ".");
+                    return true;
+                } finally {
+                    releaseSchemaLock(id, owner);
                 }
+            } catch (SQLException e) {
+                logger.severe("Fehler bei den Migrationen von '" + name + "': " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Creates the table of applied migrations with the columns needed for the lock.
+     */
+    private void ensureSchemaTable() throws SQLException {
+        if (knownTables.contains(SCHEMA_TABLE)) return;
+        backend.createTable(SCHEMA_TABLE);
+        if (!backend.hasExpiryColumn(SCHEMA_TABLE)) backend.addExpiryColumn(SCHEMA_TABLE);
+        ensureVersionColumn(SCHEMA_TABLE);
+        knownTables.add(SCHEMA_TABLE);
+    }
+
+    /**
+     * Records a table created through this class, so its players are deleted by {@link #wipeAllData(UUID)}
+     * and {@link #purgePlayers(Collection)}.
+     */
+    private void registerTable(String table) throws SQLException {
+        if (table.startsWith(INTERNAL_TABLE_PREFIX)) return;
+        loadRegisteredTables(false);
+        if (registeredTables.contains(table)) return;
+        backend.write(SCHEMA_TABLE, TABLE_REGISTRY, table, String.valueOf(System.currentTimeMillis()), "long", 0L);
+        registeredTables.add(table);
+    }
+
+    /**
+     * @param reload Read the registry again, e.g. for tables registered by other servers.
+     */
+    private void loadRegisteredTables(boolean reload) throws SQLException {
+        if (registeredTablesLoaded && !reload) return;
+        ensureSchemaTable();
+        registeredTables.addAll(backend.readAll(SCHEMA_TABLE, TABLE_REGISTRY, System.currentTimeMillis()).keySet());
+        registeredTablesLoaded = true;
+    }
+
+    /**
+     * @return The registered tables and the tables of older versions that exist.
+     */
+    private List<String> purgeTables(boolean reload) throws SQLException {
+        loadRegisteredTables(reload);
+        Set<String> candidates = new TreeSet<>(registeredTables);
+        candidates.addAll(LEGACY_TABLES);
+        List<String> tables = new ArrayList<>();
+        for (String table : candidates) {
+            if (knownTables.contains(table) || backend.tableExists(table)) {
+                knownTables.add(table);
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    private Set<Integer> readAppliedMigrations(UUID id) throws SQLException {
+        Set<Integer> applied = ConcurrentHashMap.newKeySet();
+        for (String key : backend.readAll(SCHEMA_TABLE, id, System.currentTimeMillis()).keySet()) {
+            if (!key.startsWith(SCHEMA_VERSION_PREFIX)) continue;
+            try {
+                applied.add(Integer.parseInt(key.substring(SCHEMA_VERSION_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+                // Not written by migrate
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Takes the migration lock of a name, waiting up to the lock timeout for another holder.
+     * The lock expires after the lease, so a crashed server does not block migrations forever.
+     */
+    private boolean acquireSchemaLock(UUID id, String owner) throws SQLException {
+        long deadline = System.currentTimeMillis() + migrationLockTimeoutMillis;
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (backend.writeIfVersion(SCHEMA_TABLE, id, SCHEMA_LOCK_KEY, owner, "string",
+                    now + migrationLockLeaseMillis, 0, now)) {
+                return true;
+            }
+            if (now >= deadline) return false;
+            try {
+                Thread.sleep(SCHEMA_LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
+        }
+    }
+
+    private void releaseSchemaLock(UUID id, String owner) {
+        try {
+            StoredValue lock = backend.read(SCHEMA_TABLE, id, SCHEMA_LOCK_KEY, System.currentTimeMillis());
+            if (lock != null && owner.equals(lock.getValue())) backend.delete(SCHEMA_TABLE, id, SCHEMA_LOCK_KEY);
         } catch (SQLException e) {
-            logger.severe("Fehler beim Überprüfen der Tabellenvorhandensein: " + e.getMessage());
-            return false;
+            // Expires after the lease
+            logger.warning("Migrationssperre konnte nicht freigegeben werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The database access of migrations. Errors are thrown instead of logged, so the migration stops.
+     */
+    private final class Schema implements SchemaMigrations.Schema {
+        @Override
+        public void createTable(String name) throws SQLException {
+            if (wideTables.contains(name.toLowerCase())) {
+                createWideTable(name);
+                return;
+            }
+            ensureConnection();
+            backend.createTable(name);
+            knownTables.add(name.toLowerCase());
+            registerTable(name.toLowerCase());
+        }
+
+        @Override
+        public void createWideTable(String name) throws SQLException {
+            ensureConnection();
+            backend.createWideTable(name);
+            knownTables.add(name.toLowerCase());
+            registerTable(name.toLowerCase());
+        }
+
+        @Override
+        public boolean tableExists(String name) throws SQLException {
+            ensureConnection();
+            boolean exists = backend.tableExists(name);
+            if (exists) knownTables.add(name.toLowerCase());
+            return exists;
+        }
+
+        @Override
+        public void execute(String sql) throws SQLException {
+            ensureConnection();
+            backend.executeStatement(sql);
+            knownTables.clear();
+            executedStatements.clear();
+        }
+
+        @Override
+        public String getDatabaseType() {
+            return dbType;
         }
     }
 
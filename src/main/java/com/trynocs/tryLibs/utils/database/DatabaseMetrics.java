@@ -0,0 +1,216 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, error and in-flight metrics of the {@link DatabaseHandler}, per operation and table
+ * and per operation and calling plugin.
+ * <p>
+ * Calls are attributed to a plugin only when they reach the database or block the main thread, as finding
+ * the plugin walks the stack. Calls answered from memory only count for their table.
+ * <p>
+ * Recording is lock-free and allocation-free apart from the {@link Sample} itself, so the metrics
+ * are always enabled. Use {@link #getTableStats()} and {@link #getPluginStats()} to read them.
+ */
+public class DatabaseMetrics {
+    /** Scope used for operations that do not belong to a table. */
+    static final String NO_TABLE = "-";
+
+    private final Map<String, Map<String, Recorder>> tables = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Recorder>> plugins = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+    private volatile MainThreadMonitor mainThreadMonitor;
+
+    private static final class Recorder {
+        private volatile LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+    }
+
+    /**
+     * A running operation. Closing it records its latency.
+     */
+    public static final class Sample implements AutoCloseable {
+        private final String operation;
+        private final String tableName;
+        private final Recorder table;
+        private final Map<String, Map<String, Recorder>> plugins;
+        private final MainThreadMonitor monitor;
+        private String pluginName;
+        private Recorder plugin;
+        private final long start = System.nanoTime();
+        private boolean failed;
+        private Runnable release;
+
+        /**
+         * @param plugins The recorders to attribute the operation to a plugin, or null for internal operations.
+         */
+        private Sample(String operation, String tableName, Recorder table, Map<String, Map<String, Recorder>> plugins,
+                       MainThreadMonitor monitor) {
+            this.operation = operation;
+            this.tableName = tableName;
+            this.table = table;
+            this.plugins = plugins;
+            this.monitor = monitor;
+            table.inFlight.incrementAndGet();
+        }
+
+        /**
+         * Marks the operation as failed.
+         */
+        public void failed() {
+            failed = true;
+        }
+
+        /**
+         * Attributes the operation to the calling plugin, determined from the stack on the first call.
+         * Must be called on the thread that started the operation.
+         * @return The calling plugin, or null for internal operations.
+         */
+        String attribute() {
+            if (pluginName == null && plugins != null) {
+                attribute(CallerResolver.resolvePlugin());
+            }
+            return pluginName;
+        }
+
+        private void attribute(String name) {
+            pluginName = name;
+            plugin = recorder(plugins, operation, name);
+            plugin.inFlight.incrementAndGet();
+        }
+
+        /**
+         * Sets a task run when the operation is done, e.g. to free its slot of the plugin quota.
+         */
+        void releaseOnClose(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void close() {
+            if (release != null) release.run();
+            long micros = (System.nanoTime() - start) / 1000;
+            // Slow main-thread calls are reported with their plugin, even if answered from memory
+            String reported = monitor != null && monitor.isSlow(micros) ? attribute() : null;
+            finish(table, micros);
+            if (plugin != null) finish(plugin, micros);
+            if (reported != null) monitor.record(operation, tableName, reported, micros);
+        }
+
+        private void finish(Recorder recorder, long micros) {
+            recorder.inFlight.decrementAndGet();
+            recorder.histogram.record(micros);
+            if (failed) recorder.errors.increment();
+        }
+    }
+
+    /**
+     * Starts timing an internal operation that is not attributed to a plugin.
+     * @param operation The operation name.
+     * @param table The table, or null.
+     * @return The running sample, to be closed when the operation is done.
+     */
+    Sample start(String operation, String table) {
+        String scope = table != null ? table : NO_TABLE;
+        return new Sample(operation, scope, recorder(tables, operation, scope), null, null);
+    }
+
+    /**
+     * Starts timing an operation called by a plugin. The calling plugin is determined from the stack
+     * once {@link Sample#attribute()} is called, when the operation does database I/O.
+     * @param operation The operation name.
+     * @param table The table, or null.
+     * @return The running sample, to be closed when the operation is done.
+     */
+    Sample startCall(String operation, String table) {
+        String scope = table != null ? table : NO_TABLE;
+        MainThreadMonitor monitor = mainThreadMonitor;
+        return new Sample(operation, scope, recorder(tables, operation, scope), plugins,
+                monitor != null && MainThreadMonitor.isPrimaryThread() ? monitor : null);
+    }
+
+    /**
+     * Starts timing the wait of a call for a slot of its plugin quota, recorded as the operation {@code wait}.
+     * A rejected call is recorded as an error.
+     * @param call The waiting call, started with {@link #startCall}.
+     * @return The running sample, to be closed when the call got a slot or was rejected.
+     */
+    Sample startWait(Sample call) {
+        Sample wait = new Sample("wait", call.tableName, recorder(tables, "wait", call.tableName), plugins, null);
+        wait.attribute(call.attribute());
+        return wait;
+    }
+
+    /**
+     * Sets the monitor that is told about calls made on the main thread.
+     * @param monitor The monitor, or null to disable main-thread monitoring.
+     */
+    void setMainThreadMonitor(MainThreadMonitor monitor) {
+        this.mainThreadMonitor = monitor;
+    }
+
+    private static Recorder recorder(Map<String, Map<String, Recorder>> recorders, String operation, String scope) {
+        Map<String, Recorder> byScope = recorders.get(operation);
+        if (byScope == null) {
+            byScope = recorders.computeIfAbsent(operation, k -> new ConcurrentHashMap<>());
+        }
+        Recorder recorder = byScope.get(scope);
+        return recorder != null ? recorder : byScope.computeIfAbsent(scope, k -> new Recorder());
+    }
+
+    /**
+     * @return The statistics per operation and table, most frequent first.
+     */
+    public List<OperationStats> getTableStats() {
+        return snapshot(tables);
+    }
+
+    /**
+     * @return The statistics per operation and calling plugin, most frequent first.
+     */
+    public List<OperationStats> getPluginStats() {
+        return snapshot(plugins);
+    }
+
+    private static List<OperationStats> snapshot(Map<String, Map<String, Recorder>> recorders) {
+        List<OperationStats> stats = new ArrayList<>();
+        recorders.forEach((operation, byScope) -> byScope.forEach((scope, recorder) -> {
+            LatencyHistogram histogram = recorder.histogram;
+            stats.add(new OperationStats(operation, scope, histogram.getCount(), recorder.errors.sum(),
+                    recorder.inFlight.get(), histogram.getMean(), histogram.getPercentile(50),
+                    histogram.getPercentile(99), histogram.getMax()));
+        }));
+        stats.sort(Comparator.comparingLong(OperationStats::getCount).reversed());
+        return stats;
+    }
+
+    /**
+     * @return The time the metrics were created or last reset, in milliseconds.
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Resets all latencies and error counters. In-flight gauges are kept.
+     */
+    public void reset() {
+        resetAll(tables);
+        resetAll(plugins);
+        since = System.currentTimeMillis();
+    }
+
+    private static void resetAll(Map<String, Map<String, Recorder>> recorders) {
+        recorders.values().forEach(byScope -> byScope.values().forEach(recorder -> {
+            recorder.histogram = new LatencyHistogram();
+            recorder.errors.reset();
+        }));
+    }
+}
@@ -0,0 +1,31 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.UUID;
+
+/**
+ * Identifies the value of a key of a player in a table, used by the in-memory caches of the {@link DatabaseHandler}.
+ */
+final class EntryKey {
+    final String table;
+    final UUID uuid;
+    final String key;
+
+    EntryKey(String table, UUID uuid, String key) {
+        this.table = table;
+        this.uuid = uuid;
+        this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EntryKey)) return false;
+        EntryKey other = (EntryKey) o;
+        return table.equals(other.table) && uuid.equals(other.uuid) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return (table.hashCode() * 31 + uuid.hashCode()) * 31 + key.hashCode();
+    }
+}
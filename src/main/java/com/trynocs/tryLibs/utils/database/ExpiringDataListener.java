@@ -0,0 +1,44 @@
+package com.trynocs.tryLibs.utils.database;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Keeps the expiry times of online players in memory, so TTL and cooldown checks
+ * of the {@link DatabaseHandler} do not hit the database while the player is online.
+ */
+public class ExpiringDataListener implements Listener {
+    private final DatabaseHandler databaseHandler;
+
+    /**
+     * Creates the listener.
+     * @param databaseHandler The DatabaseHandler to preload data into.
+     */
+    public ExpiringDataListener(DatabaseHandler databaseHandler) {
+        this.databaseHandler = databaseHandler;
+    }
+
+    /**
+     * Preloads the expiring data of a player. The pre-login event runs asynchronously,
+     * so the database queries do not block the main thread.
+     * @param event The pre-login event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            databaseHandler.preloadExpiringData(event.getUniqueId());
+        }
+    }
+
+    /**
+     * Drops the preloaded expiring data of a player.
+     * @param event The quit event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        databaseHandler.unloadExpiringData(event.getPlayer().getUniqueId());
+    }
+}
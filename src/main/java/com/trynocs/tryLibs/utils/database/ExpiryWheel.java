@@ -0,0 +1,131 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel used to find expired keys without scanning all of them.
+ * <p>
+ * The wheel has four levels of 64 slots. Level 0 slots are one tick wide, every higher level is
+ * 64 times wider than the one below. Entries further away than the last level are kept in an
+ * overflow list. Scheduling and expiring an entry are O(1); entries move down one level at most
+ * three times before they expire.
+ * <p>
+ * The wheel does not support removal. Callers keep the current deadline of each key elsewhere
+ * and ignore expired entries whose deadline no longer matches.
+ *
+ * @param <K> The key type.
+ */
+class ExpiryWheel<K> {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * An expired entry.
+     * @param <K> The key type.
+     */
+    static final class Entry<K> {
+        final K key;
+        final long deadline;
+        private final long deadlineTick;
+
+        private Entry(K key, long deadline, long deadlineTick) {
+            this.key = key;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<List<Entry<K>>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private List<Entry<K>> overflow = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis The width of a level 0 slot in milliseconds.
+     * @param now The current time in milliseconds.
+     */
+    ExpiryWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules a key to expire at the given time.
+     * @param key The key.
+     * @param deadline The expiry time in milliseconds.
+     */
+    synchronized void schedule(K key, long deadline) {
+        // Round up so an entry is never reported before its deadline. The current slot has already
+        // been processed, so entries that are already due expire on the next tick.
+        long deadlineTick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        insert(new Entry<>(key, deadline, deadlineTick));
+        size++;
+    }
+
+    private void insert(Entry<K> entry) {
+        long delta = entry.deadlineTick - currentTick;
+        if (delta <= 0) {
+            // Cascaded into the current tick, which is processed right after cascading
+            slots.get((int) (currentTick & SLOT_MASK)).add(entry);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                int slot = (int) ((entry.deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                slots.get(level * SLOTS + slot).add(entry);
+                return;
+            }
+        }
+        overflow.add(entry);
+    }
+
+    /**
+     * Advances the wheel to the given time and returns all entries that expired on the way.
+     * @param now The current time in milliseconds.
+     * @return The expired entries, possibly including keys that have been rescheduled since.
+     */
+    synchronized List<Entry<K>> advance(long now) {
+        List<Entry<K>> expired = new ArrayList<>();
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            if ((currentTick & ((1L << (SLOT_BITS * (LEVELS - 1))) - 1)) == 0 && !overflow.isEmpty()) {
+                List<Entry<K>> pending = overflow;
+                overflow = new ArrayList<>();
+                pending.forEach(this::insert);
+            }
+            // Move entries of the higher levels whose slot starts now down, highest level first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                    List<Entry<K>> cascading = slots.get(level * SLOTS + slot);
+                    if (!cascading.isEmpty()) {
+                        slots.set(level * SLOTS + slot, new ArrayList<>());
+                        cascading.forEach(this::insert);
+                    }
+                }
+            }
+            List<Entry<K>> due = slots.get((int) (currentTick & SLOT_MASK));
+            if (!due.isEmpty()) {
+                slots.set((int) (currentTick & SLOT_MASK), new ArrayList<>());
+                expired.addAll(due);
+            }
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return The number of scheduled entries, including outdated ones.
+     */
+    synchronized int size() {
+        return size;
+    }
+}
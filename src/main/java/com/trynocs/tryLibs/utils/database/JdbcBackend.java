@@ -0,0 +1,1241 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link StorageBackend} storing rows in a SQL database over a single JDBC connection.
+ * All access to the connection is synchronized on the backend. Subclasses provide the dialect.
+ * <p>
+ * Tables store their keys either as text ({@code Key}/{@code KeyName}) or, if created with key
+ * encoding enabled, as ids from the {@link KeyDictionary} in a {@code KeyId} column. The layout is
+ * detected per table. Tables with text keys can be converted with {@link #migrateKeys(String, int)}.
+ * Wide tables created with {@link #createWideTable(String)} keep all keys of a player in one row,
+ * see {@link WideRows}. Tables with a {@code Version} column increase it with every write, see
+ * {@link #writeIfVersion}.
+ */
+abstract class JdbcBackend implements StorageBackend {
+    static final String DICTIONARY_TABLE = "trylibs_dictionaries";
+    /** Suffix of the copy a table is converted into by {@link #migrateKeys(String, int)}. */
+    private static final String MIGRATION_SUFFIX = "__kv";
+    /** Suffix of a converted table before it is dropped, if the dialect needs one. */
+    static final String REPLACED_SUFFIX = "__old";
+    /** Players per statement of {@link #deletePlayers(Collection, Collection)}. */
+    private static final int DELETE_CHUNK_SIZE = 500;
+    /** Approximate size of a statement of {@link #writeAll(String, List)}, well below the MySQL default max_allowed_packet. */
+    private static final int BULK_STATEMENT_BYTES = 1 << 20;
+
+    private Connection connection;
+    final boolean encodeKeys;
+    final KeyDictionary keyDictionary;
+    // Detected layout per table
+    private final Map<String, TableLayout> layouts = new ConcurrentHashMap<>();
+    private boolean tablesDiscovered = false;
+    private boolean dictionaryTableCreated = false;
+    // Tables being converted, with the progress of the copy
+    private final Map<String, Migration> migrations = new HashMap<>();
+    // Keys with a value index per table, indexed again when the table is converted
+    private final Map<String, Set<String>> valueIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * The columns of a table that matter to the backend.
+     */
+    private static final class TableLayout {
+        final boolean expiring;
+        final boolean encoded;
+        final boolean keyValue;
+        final boolean wide;
+        final boolean versioned;
+
+        TableLayout(boolean expiring, boolean encoded, boolean keyValue, boolean wide, boolean versioned) {
+            this.expiring = expiring;
+            this.encoded = encoded;
+            this.keyValue = keyValue;
+            this.wide = wide;
+            this.versioned = versioned;
+        }
+    }
+
+    /**
+     * A table with text keys being copied into {@code target} with encoded keys.
+     */
+    private static final class Migration {
+        final String target;
+        final boolean expiring;
+        String lastUuid;
+        String lastKey;
+
+        Migration(String target, boolean expiring) {
+            this.target = target;
+            this.expiring = expiring;
+        }
+    }
+
+    /**
+     * Code that runs with the connection of the backend, e.g. the change log.
+     */
+    interface ConnectionFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * @param mysql Whether the MySQL dialect is used.
+     * @param encodeKeys Whether new tables store key ids instead of key names.
+     */
+    protected JdbcBackend(boolean mysql, boolean encodeKeys) {
+        this(encodeKeys, new KeyDictionary(mysql));
+    }
+
+    /**
+     * @param keyDictionary The key ids, shared by backends of replicated databases.
+     */
+    protected JdbcBackend(boolean encodeKeys, KeyDictionary keyDictionary) {
+        this.encodeKeys = encodeKeys;
+        this.keyDictionary = keyDictionary;
+    }
+
+    /**
+     * Opens a new connection.
+     * @throws SQLException if the connection cannot be established.
+     */
+    protected abstract Connection openConnection() throws SQLException;
+
+    /**
+     * @return The name of the text key column.
+     */
+    protected abstract String keyColumn();
+
+    /**
+     * @param encoded Whether the table stores key ids in a {@code KeyId} column.
+     * @return The statement creating a key-value table.
+     */
+    protected abstract String createTableSql(String table, boolean encoded);
+
+    /**
+     * @return The statement creating a wide table of {@code (UUID, Data, ExpiresAt)}.
+     */
+    protected abstract String createWideTableSql(String table);
+
+    /**
+     * @return Statements run after {@link #createTableSql(String, boolean)} and {@link #createWideTableSql(String)},
+     * e.g. to create indexes.
+     */
+    protected abstract String[] createIndexSql(String table);
+
+    /**
+     * @return The statement creating {@value #DICTIONARY_TABLE}.
+     */
+    protected abstract String createDictionaryTableSql();
+
+    /**
+     * @param keyColumn The key column of the table.
+     * @param expiring Whether the statement also writes the ExpiresAt column.
+     * @param versioned Whether the statement increases the Version column of an existing row.
+     * @return An insert-or-replace statement for {@code (UUID, key, Value, Type[, ExpiresAt])}.
+     */
+    protected abstract String upsertSql(String table, String keyColumn, boolean expiring, boolean versioned);
+
+    /**
+     * @return true if the values of {@link #upsertSql(String, String, boolean, boolean)} are bound a second time for the update.
+     */
+    protected abstract boolean upsertRepeatsValues();
+
+    /**
+     * @param keyColumn The key column of the table.
+     * @param expiring Whether the statement also writes the ExpiresAt column.
+     * @param versioned Whether the statement increases the Version column of existing rows.
+     * @param rows The number of rows.
+     * @return An insert-or-replace statement for {@code rows} rows of {@code (UUID, key, Value, Type[, ExpiresAt])},
+     * with the values bound once.
+     */
+    protected abstract String bulkUpsertSql(String table, String keyColumn, boolean expiring, boolean versioned, int rows);
+
+    /**
+     * @return The maximum number of parameters of one statement.
+     */
+    protected abstract int maxParameters();
+
+    /**
+     * Sets one key of a wide row, inserting the row if it does not exist. {@code ExpiresAt} of an existing
+     * row is only ever lowered. The parameters are {@code UUID, key, value, type, expiresAt, expiresAt}
+     * for the insert and {@code path, value, type, expiresAt} for the update.
+     * @return The statement for {@link WideRows#write}.
+     */
+    protected abstract String wideUpsertSql(String table);
+
+    /**
+     * @param keyColumn The key column of the table.
+     * @param expiring Whether the statement also writes the ExpiresAt column.
+     * @return A statement inserting {@code (UUID, key, Value, Type[, ExpiresAt])} unless the row exists.
+     */
+    protected abstract String insertIgnoreSql(String table, String keyColumn, boolean expiring);
+
+    /**
+     * @return The statements replacing {@code table} with {@code replacement}, run in one transaction.
+     */
+    protected abstract String[] replaceTableSql(String table, String replacement);
+
+    /**
+     * @return The name of the index over the values of a key. Dialects with one index for all keys
+     * return the same name for every key.
+     */
+    protected abstract String valueIndexName(String table, String key);
+
+    /**
+     * @param index The name from {@link #valueIndexName(String, String)}.
+     * @param keyColumn The key column of the table.
+     * @param keyLiteral The key as SQL literal, a quoted name or a key id. Queries of
+     *                   {@link #findByValue} contain the same {@code keyColumn = keyLiteral} condition.
+     * @return The statement creating an index over the values of one key of a key-value table.
+     */
+    protected abstract String valueIndexSql(String table, String index, String keyColumn, String keyLiteral);
+
+    /**
+     * @param pathLiteral The JSON path of the value as SQL literal.
+     * @return The expression reading the value of a key from the {@code Data} of a wide row as text.
+     */
+    protected abstract String wideValueSql(String pathLiteral);
+
+    /**
+     * @param expression The expression from {@link #wideValueSql(String)}.
+     * @return The statement creating an index over the values of one key of a wide table,
+     * or null if the dialect cannot index them.
+     */
+    protected abstract String wideValueIndexSql(String table, String index, String expression);
+
+    @Override
+    public synchronized boolean isConnected() {
+        try {
+            return connection != null && !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean connect() throws SQLException {
+        if (isConnected()) return false;
+        connection = openConnection();
+        connection.setAutoCommit(true);
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        if (isConnected()) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Runs code with the connection of the backend, connecting first if necessary.
+     * @param function The code to run.
+     * @return The result of the code.
+     * @throws SQLException if a database access error occurs.
+     */
+    synchronized <T> T withConnection(ConnectionFunction<T> function) throws SQLException {
+        connect();
+        return function.apply(connection);
+    }
+
+    @Override
+    public synchronized void executeStatement(String sql) throws SQLException {
+        connect();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    @Override
+    public synchronized void createTable(String table) throws SQLException {
+        connect();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(createTableSql(table, encodeKeys));
+            for (String sql : createIndexSql(table)) {
+                stmt.executeUpdate(sql);
+            }
+        }
+        layouts.remove(table);
+    }
+
+    @Override
+    public synchronized void createWideTable(String table) throws SQLException {
+        connect();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(createWideTableSql(table));
+            for (String sql : createIndexSql(table)) {
+                stmt.executeUpdate(sql);
+            }
+        }
+        layouts.remove(table);
+    }
+
+    @Override
+    public boolean isWideTable(String table) throws SQLException {
+        return layout(table).wide;
+    }
+
+    @Override
+    public synchronized boolean tableExists(String table) throws SQLException {
+        connect();
+        DatabaseMetaData meta = connection.getMetaData();
+        try (ResultSet rs = meta.getTables(connection.getCatalog(), null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    @Override
+    public boolean hasExpiryColumn(String table) throws SQLException {
+        return layout(table).expiring;
+    }
+
+    /**
+     * Gets the layout of a table. The result is cached per table.
+     */
+    private TableLayout layout(String table) throws SQLException {
+        TableLayout cached = layouts.get(table);
+        if (cached != null) return cached;
+        synchronized (this) {
+            connect();
+            Set<String> columns = new HashSet<>();
+            try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, table, null)) {
+                while (rs.next()) {
+                    if (table.equalsIgnoreCase(rs.getString("TABLE_NAME"))) {
+                        columns.add(rs.getString("COLUMN_NAME").toLowerCase());
+                    }
+                }
+            }
+            TableLayout layout = layout(columns);
+            layouts.put(table, layout);
+            return layout;
+        }
+    }
+
+    private TableLayout layout(Set<String> columns) {
+        boolean encoded = columns.contains("keyid");
+        boolean keyValue = columns.contains("uuid") && columns.contains("value") && columns.contains("type")
+                && (encoded || columns.contains(keyColumn().toLowerCase()));
+        boolean wide = columns.contains("uuid") && columns.contains("data") && !columns.contains("value");
+        return new TableLayout(columns.contains("expiresat"), encoded, keyValue, wide, keyValue && columns.contains("version"));
+    }
+
+    /**
+     * Detects the layout of all tables once, so tables from earlier runs are known as well.
+     */
+    private void discoverTables() throws SQLException {
+        if (tablesDiscovered) return;
+        connect();
+        Map<String, Set<String>> columns = new HashMap<>();
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, "%", "%")) {
+            while (rs.next()) {
+                columns.computeIfAbsent(rs.getString("TABLE_NAME"), t -> new HashSet<>())
+                        .add(rs.getString("COLUMN_NAME").toLowerCase());
+            }
+        }
+        for (Map.Entry<String, Set<String>> table : columns.entrySet()) {
+            layouts.putIfAbsent(table.getKey(), layout(table.getValue()));
+        }
+        tablesDiscovered = true;
+    }
+
+    @Override
+    public synchronized void addExpiryColumn(String table) throws SQLException {
+        connect();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN ExpiresAt BIGINT NULL");
+            stmt.executeUpdate("CREATE INDEX idx_" + table + "_expires ON " + table + " (ExpiresAt)");
+        }
+        layouts.remove(table);
+    }
+
+    @Override
+    public boolean hasVersionColumn(String table) throws SQLException {
+        return layout(table).versioned;
+    }
+
+    @Override
+    public synchronized void addVersionColumn(String table) throws SQLException {
+        connect();
+        if (layout(table).wide) {
+            throw new SQLFeatureNotSupportedException("Versionen werden in Tabellen mit einer Zeile pro Spieler nicht unterstützt");
+        }
+        // The copy of a running key conversion would lose the versions
+        abortKeyMigration(table);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN Version BIGINT NOT NULL DEFAULT 1");
+        }
+        layouts.remove(table);
+    }
+
+    @Override
+    public synchronized Set<String> getExpiryTables() throws SQLException {
+        discoverTables();
+        Set<String> tables = new HashSet<>();
+        for (Map.Entry<String, TableLayout> table : layouts.entrySet()) {
+            if (table.getValue().expiring && !table.getKey().endsWith(MIGRATION_SUFFIX)) tables.add(table.getKey());
+        }
+        return tables;
+    }
+
+    /**
+     * @param create Whether to assign an id to a key that has none yet.
+     * @return The value bound to the key column, or null if the table stores ids and the key has none.
+     */
+    private Object keyParam(String table, TableLayout layout, String key, boolean create) throws SQLException {
+        return layout.encoded ? keyDictionary.id(connection, table, key, create) : key;
+    }
+
+    private String keyColumn(TableLayout layout) {
+        return layout.encoded ? "KeyId" : keyColumn();
+    }
+
+    /**
+     * @param create Whether to assign an id to a key that has none yet.
+     * @return The key as SQL literal, or null if the table stores ids and the key has none.
+     */
+    private String keyLiteral(String table, TableLayout layout, String key, boolean create) throws SQLException {
+        Object keyParam = keyParam(table, layout, key, create);
+        return keyParam instanceof String ? quote((String) keyParam) : keyParam != null ? keyParam.toString() : null;
+    }
+
+    /**
+     * @return The expression reading the value of a key from a wide row.
+     */
+    private String wideValue(String key) throws SQLException {
+        return wideValueSql(quote(WideRows.path(key) + "[0]"));
+    }
+
+    private static String quote(String text) {
+        return "'" + text.replace("'", "''") + "'";
+    }
+
+    @Override
+    public synchronized void write(String table, UUID uuid, String key, String value, String type, long expiresAt) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            if (layout.wide) {
+                WideRows.write(connection, wideUpsertSql(table), uuid, key, value, type, expiresAt);
+                return;
+            }
+            upsert(table, layout, keyParam(table, layout, key, true), uuid, value, type, expiresAt);
+            Migration migration = migrations.get(table);
+            if (migration != null) {
+                // Rows written during a conversion go into both tables
+                upsert(migration.target, layout(migration.target), keyDictionary.id(connection, table, key, true),
+                        uuid, value, type, expiresAt);
+            }
+        } catch (SQLException e) {
+            // The table may have been converted by another server
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    private void upsert(String table, TableLayout layout, Object keyParam, UUID uuid, String value, String type, long expiresAt) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(upsertSql(table, keyColumn(layout), layout.expiring, layout.versioned))) {
+            Long expiry = expiresAt > 0 ? expiresAt : null;
+            pstmt.setString(1, uuid.toString());
+            pstmt.setObject(2, keyParam);
+            pstmt.setString(3, value);
+            pstmt.setString(4, type);
+            int index = 5;
+            if (layout.expiring) pstmt.setObject(index++, expiry, Types.BIGINT);
+
+            if (upsertRepeatsValues()) {
+                pstmt.setString(index++, value);
+                pstmt.setString(index++, type);
+                if (layout.expiring) pstmt.setObject(index, expiry, Types.BIGINT);
+            }
+
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public synchronized void writeAll(String table, List<TableEntry> rows) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            List<Object> keyParams = new ArrayList<>(rows.size());
+            List<Object> migrationKeyParams = null;
+            Migration migration = migrations.get(table);
+            if (!layout.wide) {
+                // Ids are assigned outside of the transaction, so a rollback cannot undo an id that is cached
+                for (TableEntry row : rows) {
+                    keyParams.add(keyParam(table, layout, row.getKey(), true));
+                }
+                if (migration != null) {
+                    migrationKeyParams = new ArrayList<>(rows.size());
+                    for (TableEntry row : rows) {
+                        migrationKeyParams.add(keyDictionary.id(connection, table, row.getKey(), true));
+                    }
+                }
+            }
+            connection.setAutoCommit(false);
+            try {
+                if (layout.wide) {
+                    WideRows.writeAll(connection, wideUpsertSql(table), rows);
+                } else {
+                    upsertRows(table, layout, rows, keyParams);
+                    // Rows written during a conversion go into both tables
+                    if (migration != null) upsertRows(migration.target, layout(migration.target), rows, migrationKeyParams);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes rows with multi-row statements, each as large as the parameter limit of the dialect
+     * and {@link #BULK_STATEMENT_BYTES} allow.
+     */
+    private void upsertRows(String table, TableLayout layout, List<TableEntry> rows, List<Object> keyParams) throws SQLException {
+        int columns = layout.expiring ? 5 : 4;
+        int maxRows = maxParameters() / columns;
+        int from = 0;
+        while (from < rows.size()) {
+            int to = from;
+            long bytes = 0;
+            while (to < rows.size() && to - from < maxRows && bytes < BULK_STATEMENT_BYTES) {
+                TableEntry row = rows.get(to++);
+                // Characters count up to four bytes in utf8mb4, plus the UUID and some overhead per row
+                bytes += 4L * (row.getValue().length() + row.getKey().length()) + 64;
+            }
+            String sql = bulkUpsertSql(table, keyColumn(layout), layout.expiring, layout.versioned, to - from);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                int index = 1;
+                for (int i = from; i < to; i++) {
+                    TableEntry row = rows.get(i);
+                    pstmt.setString(index++, row.getUuid().toString());
+                    pstmt.setObject(index++, keyParams.get(i));
+                    pstmt.setString(index++, row.getValue());
+                    pstmt.setString(index++, row.getType());
+                    if (layout.expiring) pstmt.setNull(index++, Types.BIGINT);
+                }
+                pstmt.executeUpdate();
+            }
+            from = to;
+        }
+    }
+
+    @Override
+    public synchronized boolean writeIfVersion(String table, UUID uuid, String key, String value, String type, long expiresAt,
+                                               long expectedVersion, long now) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            // Inserting a missing row needs no version
+            if (!layout.versioned && expectedVersion > 0) {
+                throw new SQLException("Tabelle '" + table + "' hat keine Versionsspalte");
+            }
+            Object keyParam = keyParam(table, layout, key, true);
+            Long expiry = expiresAt > 0 ? expiresAt : null;
+            String update = "UPDATE " + table + " SET Value = ?, Type = ?" + (layout.expiring ? ", ExpiresAt = ?" : "")
+                    + (layout.versioned ? ", Version = Version + 1" : "") + " WHERE UUID = ? AND " + keyColumn(layout) + " = ? AND ";
+            if (expectedVersion > 0) {
+                update += "Version = ?" + (layout.expiring ? " AND (ExpiresAt IS NULL OR ExpiresAt > ?)" : "");
+            } else if (layout.expiring) {
+                // An expired row counts as missing and is replaced
+                update += "ExpiresAt <= ?";
+            } else {
+                update = null;
+            }
+            if (update != null) {
+                try (PreparedStatement pstmt = connection.prepareStatement(update)) {
+                    int index = 1;
+                    pstmt.setString(index++, value);
+                    pstmt.setString(index++, type);
+                    if (layout.expiring) pstmt.setObject(index++, expiry, Types.BIGINT);
+                    pstmt.setString(index++, uuid.toString());
+                    pstmt.setObject(index++, keyParam);
+                    if (expectedVersion > 0) pstmt.setLong(index++, expectedVersion);
+                    if (layout.expiring) pstmt.setLong(index, now);
+                    if (pstmt.executeUpdate() > 0) return true;
+                }
+            }
+            if (expectedVersion > 0) return false;
+
+            try (PreparedStatement pstmt = connection.prepareStatement(insertIgnoreSql(table, keyColumn(layout), layout.expiring))) {
+                pstmt.setString(1, uuid.toString());
+                pstmt.setObject(2, keyParam);
+                pstmt.setString(3, value);
+                pstmt.setString(4, type);
+                if (layout.expiring) pstmt.setObject(5, expiry, Types.BIGINT);
+                return pstmt.executeUpdate() > 0;
+            }
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized StoredValue read(String table, UUID uuid, String key, long now) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            if (layout.wide) {
+                StoredValue stored = WideRows.read(connection, table, uuid).get(key);
+                return stored != null && !isExpired(stored, now) ? stored : null;
+            }
+            Object keyParam = keyParam(table, layout, key, false);
+            if (keyParam == null) return null;
+            String sql = "SELECT Value, Type" + (layout.expiring ? ", ExpiresAt" : "") + (layout.versioned ? ", Version" : "") + " FROM " + table
+                    + " WHERE UUID = ? AND " + keyColumn(layout) + " = ?"
+                    + (layout.expiring ? " AND (ExpiresAt IS NULL OR ExpiresAt > ?)" : "");
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, uuid.toString());
+                pstmt.setObject(2, keyParam);
+                if (layout.expiring) pstmt.setLong(3, now);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    long expiresAt = layout.expiring ? rs.getLong("ExpiresAt") : 0L;
+                    long version = layout.versioned ? rs.getLong("Version") : 0L;
+                    return new StoredValue(rs.getString("Value"), rs.getString("Type"), expiresAt, version);
+                }
+            }
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    private static boolean isExpired(StoredValue stored, long now) {
+        return stored.getExpiresAt() > 0 && stored.getExpiresAt() <= now;
+    }
+
+    @Override
+    public synchronized Map<String, StoredValue> readAll(String table, UUID uuid, long now) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            if (layout.wide) {
+                Map<String, StoredValue> fields = WideRows.read(connection, table, uuid);
+                fields.values().removeIf(stored -> isExpired(stored, now));
+                return fields;
+            }
+            Map<String, StoredValue> result = new HashMap<>();
+            String sql = "SELECT " + keyColumn(layout) + ", Value, Type, " + (layout.expiring ? "ExpiresAt" : "0")
+                    + (layout.versioned ? ", Version" : ", 0") + " FROM " + table + " WHERE UUID = ?"
+                    + (layout.expiring ? " AND (ExpiresAt IS NULL OR ExpiresAt > ?)" : "");
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, uuid.toString());
+                if (layout.expiring) pstmt.setLong(2, now);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String key = layout.encoded ? keyDictionary.name(connection, table, rs.getInt(1)) : rs.getString(1);
+                        if (key != null) result.put(key, new StoredValue(rs.getString(2), rs.getString(3), rs.getLong(4), rs.getLong(5)));
+                    }
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized List<TableEntry> scan(String table, UUID uuid, String keyPrefix, TableEntry after, int limit,
+                                              long now) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            if (layout.wide) {
+                if (uuid == null) return WideRows.scan(connection, table, keyPrefix, after != null ? after.getUuid() : null, limit, now);
+                // The single row is returned as a whole by the first page
+                if (after != null) return new ArrayList<>();
+                return WideRows.entries(uuid, WideRows.read(connection, table, uuid), keyPrefix, now);
+            }
+            return scanRows(table, layout, uuid, keyPrefix, after, limit, now);
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized boolean createValueIndex(String table, String key) throws SQLException {
+        connect();
+        TableLayout layout = layout(table);
+        if (!layout.keyValue && !layout.wide) {
+            layouts.remove(table);
+            throw new SQLException("Tabelle '" + table + "' existiert nicht oder ist keine Schlüssel-Wert-Tabelle");
+        }
+        valueIndexes.computeIfAbsent(table, t -> ConcurrentHashMap.newKeySet()).add(key);
+        String index = valueIndexName(table, key);
+        String sql = layout.wide ? wideValueIndexSql(table, index, wideValue(key))
+                : valueIndexSql(table, index, keyColumn(layout), keyLiteral(table, layout, key, true));
+        if (sql == null) return false;
+        // Not every dialect has CREATE INDEX IF NOT EXISTS
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+            }
+        }
+        executeStatement(sql);
+        return true;
+    }
+
+    @Override
+    public synchronized List<UUID> findByValue(String table, String key, String value, String type, long now) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            if (layout.wide) return WideRows.findByValue(connection, table, wideValue(key), key, value, type, now);
+            List<UUID> players = new ArrayList<>();
+            String keyLiteral = keyLiteral(table, layout, key, false);
+            if (keyLiteral == null) return players;
+            // The key is inlined as in the index, a partial index is only used for a query with the same condition
+            String sql = "SELECT UUID, Value FROM " + table + " WHERE " + keyColumn(layout) + " = " + keyLiteral
+                    + " AND Value = ? AND Type = ?" + (layout.expiring ? " AND (ExpiresAt IS NULL OR ExpiresAt > ?)" : "");
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, value);
+                pstmt.setString(2, type);
+                if (layout.expiring) pstmt.setLong(3, now);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        // The comparison of the database may ignore case
+                        if (value.equals(rs.getString(2))) players.add(UUID.fromString(rs.getString(1)));
+                    }
+                }
+            }
+            return players;
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a page of a key-value table in primary key order, so each page is one index range scan.
+     */
+    private List<TableEntry> scanRows(String table, TableLayout layout, UUID uuid, String keyPrefix, TableEntry after,
+                                      int limit, long now) throws SQLException {
+        String keyColumn = keyColumn(layout);
+        Map<Integer, String> names = null;
+        Map<String, Integer> ids = null;
+        String prefixIds = null;
+        if (layout.encoded) {
+            // Loaded per page, so keys added by other servers in the meantime are found
+            names = keyDictionary.names(connection, table);
+            ids = new HashMap<>();
+            StringBuilder matching = new StringBuilder();
+            for (Map.Entry<Integer, String> name : names.entrySet()) {
+                ids.put(name.getValue(), name.getKey());
+                if (keyPrefix != null && name.getValue().startsWith(keyPrefix)) {
+                    matching.append(matching.length() > 0 ? ", " : "").append(name.getKey());
+                }
+            }
+            if (keyPrefix != null) {
+                if (matching.length() == 0) return new ArrayList<>();
+                prefixIds = matching.toString();
+            }
+        }
+
+        String lastUuid = after != null ? after.getUuid().toString() : null;
+        Object lastKey = null;
+        List<TableEntry> entries = new ArrayList<>();
+        if (after != null) {
+            lastKey = layout.encoded ? ids.get(after.getKey()) : after.getKey();
+            // A key this table has never stored, e.g. in the cursor of another shard, continues with the next player
+            if (lastKey == null && uuid != null) return entries;
+        }
+        while (true) {
+            List<Object> params = new ArrayList<>();
+            StringBuilder sql = new StringBuilder("SELECT UUID, ").append(keyColumn).append(", Value, Type FROM ")
+                    .append(table).append(" WHERE 1 = 1");
+            if (uuid != null) {
+                sql.append(" AND UUID = ?");
+                params.add(uuid.toString());
+            }
+            if (lastUuid != null && uuid != null) {
+                sql.append(" AND ").append(keyColumn).append(" > ?");
+                params.add(lastKey);
+            } else if (lastUuid != null && lastKey == null) {
+                sql.append(" AND UUID > ?");
+                params.add(lastUuid);
+            } else if (lastUuid != null) {
+                sql.append(" AND (UUID > ? OR (UUID = ? AND ").append(keyColumn).append(" > ?))");
+                params.add(lastUuid);
+                params.add(lastUuid);
+                params.add(lastKey);
+            }
+            if (prefixIds != null) {
+                sql.append(" AND KeyId IN (").append(prefixIds).append(")");
+            } else if (keyPrefix != null) {
+                // A range instead of LIKE, so the index is used
+                sql.append(" AND ").append(keyColumn).append(" >= ? AND ").append(keyColumn).append(" < ?");
+                params.add(keyPrefix);
+                params.add(keyPrefix + Character.MAX_VALUE);
+            }
+            if (layout.expiring) {
+                sql.append(" AND (ExpiresAt IS NULL OR ExpiresAt > ?)");
+                params.add(now);
+            }
+            sql.append(" ORDER BY UUID, ").append(keyColumn).append(" LIMIT ").append(limit);
+
+            int rows = 0;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setObject(i + 1, params.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastUuid = rs.getString(1);
+                        lastKey = rs.getObject(2);
+                        String key = layout.encoded ? names.get(rs.getInt(2)) : rs.getString(2);
+                        // Collations ignoring case may match more keys than the prefix
+                        if (key == null || (keyPrefix != null && !key.startsWith(keyPrefix))) continue;
+                        entries.add(new TableEntry(UUID.fromString(lastUuid), key, rs.getString(3), rs.getString(4)));
+                    }
+                }
+            }
+            if (!entries.isEmpty() || rows < limit) return entries;
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String table, UUID uuid, String key, long now) throws SQLException {
+        connect();
+        try {
+            TableLayout layout = layout(table);
+            if (layout.wide) return read(table, uuid, key, now) != null;
+            Object keyParam = keyParam(table, layout, key, false);
+            if (keyParam == null) return false;
+            String sql = "SELECT 1 FROM " + table + " WHERE UUID = ? AND " + keyColumn(layout) + " = ?"
+                    + (layout.expiring ? " AND (ExpiresAt IS NULL OR ExpiresAt > ?) LIMIT 1" : " LIMIT 1");
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, uuid.toString());
+                pstmt.setObject(2, keyParam);
+                if (layout.expiring) pstmt.setLong(3, now);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized boolean delete(String table, UUID uuid, String key) throws SQLException {
+        connect();
+        try {
+            Migration migration = migrations.get(table);
+            if (migration != null) {
+                deleteKey(migration.target, keyDictionary.id(connection, table, key, false), uuid);
+            }
+            TableLayout layout = layout(table);
+            if (layout.wide) return WideRows.delete(connection, table, uuid, key);
+            return deleteKey(table, keyParam(table, layout, key, false), uuid);
+        } catch (SQLException e) {
+            layouts.remove(table);
+            throw e;
+        }
+    }
+
+    private boolean deleteKey(String table, Object keyParam, UUID uuid) throws SQLException {
+        if (keyParam == null) return false;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM " + table + " WHERE UUID = ? AND " + keyColumn(layout(table)) + " = ?")) {
+            pstmt.setString(1, uuid.toString());
+            pstmt.setObject(2, keyParam);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteAll(String table, UUID uuid) throws SQLException {
+        connect();
+        Migration migration = migrations.get(table);
+        if (migration != null) {
+            deleteAllRows(migration.target, uuid);
+        }
+        return deleteAllRows(table, uuid);
+    }
+
+    @Override
+    public synchronized int deletePlayers(Collection<String> tables, Collection<UUID> uuids) throws SQLException {
+        connect();
+        if (uuids.isEmpty()) return 0;
+        List<UUID> players = new ArrayList<>(uuids);
+        int deleted = 0;
+        connection.setAutoCommit(false);
+        try {
+            // Split so a statement stays below the parameter limit of SQLite
+            for (int from = 0; from < players.size(); from += DELETE_CHUNK_SIZE) {
+                List<UUID> chunk = players.subList(from, Math.min(players.size(), from + DELETE_CHUNK_SIZE));
+                for (String table : tables) {
+                    Migration migration = migrations.get(table);
+                    if (migration != null) deletePlayerRows(migration.target, chunk);
+                    deleted += deletePlayerRows(table, chunk);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return deleted;
+    }
+
+    private int deletePlayerRows(String table, List<UUID> uuids) throws SQLException {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table).append(" WHERE UUID IN (");
+        for (int i = 0; i < uuids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(sql.append(')').toString())) {
+            for (int i = 0; i < uuids.size(); i++) {
+                pstmt.setString(i + 1, uuids.get(i).toString());
+            }
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private boolean deleteAllRows(String table, UUID uuid) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM " + table + " WHERE UUID = ?")) {
+            pstmt.setString(1, uuid.toString());
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public synchronized Long readExpiry(String table, UUID uuid, String key) throws SQLException {
+        connect();
+        TableLayout layout = layout(table);
+        if (!layout.expiring) return null;
+        if (layout.wide) {
+            StoredValue stored = WideRows.read(connection, table, uuid).get(key);
+            return stored != null && stored.getExpiresAt() > 0 ? stored.getExpiresAt() : null;
+        }
+        Object keyParam = keyParam(table, layout, key, false);
+        if (keyParam == null) return null;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT ExpiresAt FROM " + table + " WHERE UUID = ? AND " + keyColumn(layout) + " = ?")) {
+            pstmt.setString(1, uuid.toString());
+            pstmt.setObject(2, keyParam);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    long expiresAt = rs.getLong("ExpiresAt");
+                    return rs.wasNull() ? null : expiresAt;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Map<String, Long> readExpiries(String table, UUID uuid, long now) throws SQLException {
+        connect();
+        TableLayout layout = layout(table);
+        Map<String, Long> result = new HashMap<>();
+        if (layout.wide) {
+            for (Map.Entry<String, StoredValue> field : WideRows.read(connection, table, uuid).entrySet()) {
+                if (field.getValue().getExpiresAt() > now) result.put(field.getKey(), field.getValue().getExpiresAt());
+            }
+            return result;
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT " + keyColumn(layout) + ", ExpiresAt FROM " + table + " WHERE UUID = ? AND ExpiresAt > ?")) {
+            pstmt.setString(1, uuid.toString());
+            pstmt.setLong(2, now);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String key = layout.encoded ? keyDictionary.name(connection, table, rs.getInt(1)) : rs.getString(1);
+                    if (key != null) result.put(key, rs.getLong(2));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void deleteExpired(String table, List<EntryKey> keys, long now) throws SQLException {
+        connect();
+        TableLayout layout = layout(table);
+        if (layout.wide) {
+            deleteExpiredFields(table, keys, now);
+            return;
+        }
+        // Resolved first, a new key id must not be part of the transaction
+        List<Object> keyParams = new ArrayList<>(keys.size());
+        for (EntryKey entryKey : keys) {
+            keyParams.add(keyParam(table, layout, entryKey.key, false));
+        }
+        String sql = "DELETE FROM " + table + " WHERE UUID = ? AND " + keyColumn(layout) + " = ? AND ExpiresAt <= ?";
+        connection.setAutoCommit(false);
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (keyParams.get(i) == null) continue;
+                pstmt.setString(1, keys.get(i).uuid.toString());
+                pstmt.setObject(2, keyParams.get(i));
+                pstmt.setLong(3, now);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void deleteExpiredFields(String table, List<EntryKey> keys, long now) throws SQLException {
+        Map<UUID, List<String>> keysByPlayer = new HashMap<>();
+        for (EntryKey entryKey : keys) {
+            keysByPlayer.computeIfAbsent(entryKey.uuid, uuid -> new ArrayList<>()).add(entryKey.key);
+        }
+        for (Map.Entry<UUID, List<String>> player : keysByPlayer.entrySet()) {
+            Map<String, StoredValue> fields = WideRows.read(connection, table, player.getKey());
+            Map<String, Long> expired = new HashMap<>();
+            for (String key : player.getValue()) {
+                StoredValue stored = fields.get(key);
+                if (stored != null && isExpired(stored, now)) expired.put(key, stored.getExpiresAt());
+            }
+            WideRows.deleteExpired(connection, table, player.getKey(), expired);
+        }
+    }
+
+    @Override
+    public synchronized int deleteExpiredRows(String table, long now) throws SQLException {
+        connect();
+        if (layout(table).wide) return WideRows.deleteExpiredRows(connection, table, now);
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM " + table + " WHERE ExpiresAt <= ?")) {
+            pstmt.setLong(1, now);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Finds the key-value tables that still store key names. A conversion interrupted after the old
+     * table was dropped is completed here.
+     * @return The tables to convert with {@link #migrateKeys(String, int)}.
+     * @throws SQLException if a database access error occurs.
+     */
+    synchronized List<String> getLegacyTables() throws SQLException {
+        // Layouts dropped after a change or an error are detected again, so no table is missed
+        tablesDiscovered = false;
+        discoverTables();
+        List<String> tables = new ArrayList<>();
+        for (Map.Entry<String, TableLayout> table : new ArrayList<>(layouts.entrySet())) {
+            String name = table.getKey();
+            if (!table.getValue().keyValue || name.startsWith("trylibs_") || name.endsWith(REPLACED_SUFFIX)) continue;
+            if (name.endsWith(MIGRATION_SUFFIX)) {
+                String original = name.substring(0, name.length() - MIGRATION_SUFFIX.length());
+                if (!layouts.containsKey(original)) {
+                    executeStatement("ALTER TABLE " + name + " RENAME TO " + original);
+                    layouts.remove(name);
+                }
+            } else if (!table.getValue().encoded && !table.getValue().versioned) {
+                // Versions are not copied, so versioned tables keep their key names
+                tables.add(name);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Converts a table storing key names into one storing key ids, one batch of rows per call.
+     * The rows are copied into a new table in key order while writes go to both tables. After the
+     * last batch the new table replaces the old one.
+     * Versioned tables are not converted, as the copy has no versions.
+     * @param table The table to convert.
+     * @param batchSize The maximum number of rows copied by this call.
+     * @return true if the table is converted completely or is not converted because it is versioned.
+     * @throws SQLException if a database access error occurs.
+     */
+    synchronized boolean migrateKeys(String table, int batchSize) throws SQLException {
+        connect();
+        TableLayout layout = layout(table);
+        if (layout.versioned) {
+            // Versions were added since the conversion was planned, replacing the table would reset them
+            abortKeyMigration(table);
+            return true;
+        }
+        Migration migration = migrations.get(table);
+        if (migration == null) {
+            if (layout.encoded) return true;
+            migration = new Migration(table + MIGRATION_SUFFIX, layout.expiring);
+            try (Statement stmt = connection.createStatement()) {
+                // A copy left by an interrupted conversion may miss later changes, so it is started over
+                stmt.executeUpdate("DROP TABLE IF EXISTS " + migration.target);
+                stmt.executeUpdate(createTableSql(migration.target, true));
+            }
+            layouts.remove(migration.target);
+            migrations.put(table, migration);
+        }
+
+        String keyColumn = keyColumn();
+        List<Object[]> rows = new ArrayList<>(batchSize);
+        String sql = "SELECT UUID, " + keyColumn + ", Value, Type" + (migration.expiring ? ", ExpiresAt" : "")
+                + " FROM " + table
+                + (migration.lastUuid != null ? " WHERE (UUID, " + keyColumn + ") > (?, ?)" : "")
+                + " ORDER BY UUID, " + keyColumn + " LIMIT " + batchSize;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            if (migration.lastUuid != null) {
+                pstmt.setString(1, migration.lastUuid);
+                pstmt.setString(2, migration.lastKey);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Object expiresAt = migration.expiring ? rs.getObject(5) : null;
+                    rows.add(new Object[] {rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), expiresAt});
+                }
+            }
+        }
+
+        // Ids are assigned outside of the transaction, so a rollback cannot undo an id that is cached
+        List<Integer> keyIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            keyIds.add(keyDictionary.id(connection, table, (String) row[1], true));
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement pstmt = connection.prepareStatement(insertIgnoreSql(migration.target, "KeyId", true))) {
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                pstmt.setString(1, (String) row[0]);
+                pstmt.setInt(2, keyIds.get(i));
+                pstmt.setString(3, (String) row[2]);
+                pstmt.setString(4, (String) row[3]);
+                pstmt.setObject(5, row[4] != null ? ((Number) row[4]).longValue() : null, Types.BIGINT);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        if (!rows.isEmpty()) {
+            Object[] last = rows.get(rows.size() - 1);
+            migration.lastUuid = (String) last[0];
+            migration.lastKey = (String) last[1];
+        }
+        if (rows.size() == batchSize) return false;
+        // Another server may have added versions meanwhile, which the cached layout does not show
+        layouts.remove(table);
+        if (layout(table).versioned) {
+            abortKeyMigration(table);
+            return true;
+        }
+
+        List<String> valueIndexSql = new ArrayList<>();
+        for (String key : valueIndexes.getOrDefault(table, Collections.emptySet())) {
+            valueIndexSql.add(valueIndexSql(table, valueIndexName(table, key), "KeyId",
+                    String.valueOf(keyDictionary.id(connection, table, key, true))));
+        }
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            for (String statement : replaceTableSql(table, migration.target)) {
+                stmt.executeUpdate(statement);
+            }
+            for (String statement : createIndexSql(table)) {
+                stmt.executeUpdate(statement);
+            }
+            // The value indexes were dropped with the old table
+            for (String statement : valueIndexSql) {
+                stmt.executeUpdate(statement);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        migrations.remove(table);
+        layouts.remove(table);
+        layouts.remove(migration.target);
+        return true;
+    }
+
+    /**
+     * Stops the conversion of a table and drops its incomplete copy. The table keeps storing key names.
+     * @throws SQLException if a database access error occurs.
+     */
+    synchronized void abortKeyMigration(String table) throws SQLException {
+        Migration migration = migrations.remove(table);
+        if (migration != null) {
+            executeStatement("DROP TABLE IF EXISTS " + migration.target);
+            layouts.remove(migration.target);
+        }
+    }
+
+    @Override
+    public synchronized ValueCompressor.Dictionary loadDictionary(String table, int id) throws SQLException {
+        ensureDictionaryTable();
+        String sql = id < 0
+                ? "SELECT DictId, Data FROM " + DICTIONARY_TABLE + " WHERE TableName = ? ORDER BY DictId DESC LIMIT 1"
+                : "SELECT DictId, Data FROM " + DICTIONARY_TABLE + " WHERE TableName = ? AND DictId = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            if (id >= 0) pstmt.setInt(2, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new ValueCompressor.Dictionary(rs.getInt("DictId"), Base64.getDecoder().decode(rs.getString("Data")));
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void saveDictionary(String table, ValueCompressor.Dictionary dictionary) throws SQLException {
+        ensureDictionaryTable();
+        String sql = "INSERT INTO " + DICTIONARY_TABLE + " (TableName, DictId, Data) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setInt(2, dictionary.id);
+            pstmt.setString(3, Base64.getEncoder().encodeToString(dictionary.data));
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void ensureDictionaryTable() throws SQLException {
+        connect();
+        if (dictionaryTableCreated) return;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(createDictionaryTableSql());
+        }
+        dictionaryTableCreated = true;
+    }
+}
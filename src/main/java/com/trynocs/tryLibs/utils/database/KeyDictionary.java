@@ -0,0 +1,150 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the key names of each table to small integer ids, stored in {@value #TABLE}.
+ * Key-value tables with a {@code KeyId} column store these ids instead of the names, which keeps
+ * their primary key small. The mapping is cached in memory and never changes once assigned,
+ * so servers sharing a database may cache it as well.
+ */
+final class KeyDictionary {
+    static final String TABLE = "trylibs_keys";
+    private static final int MAX_INSERT_ATTEMPTS = 5;
+
+    private final boolean mysql;
+    private volatile boolean initialized = false;
+    // Table -> key name -> id
+    private final Map<String, Map<String, Integer>> ids = new ConcurrentHashMap<>();
+    // Table -> id -> key name
+    private final Map<String, Map<Integer, String>> names = new ConcurrentHashMap<>();
+
+    /**
+     * @param mysql Whether the MySQL dialect is used.
+     */
+    KeyDictionary(boolean mysql) {
+        this.mysql = mysql;
+    }
+
+    private void initialize(Connection connection) throws SQLException {
+        if (initialized) return;
+        // Replicas receive the table from the primary
+        if (connection.isReadOnly()) return;
+        try (Statement stmt = connection.createStatement()) {
+            if (mysql) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        "TableName VARCHAR(255) NOT NULL," +
+                        "KeyName VARCHAR(255) NOT NULL," +
+                        "KeyId INT NOT NULL," +
+                        "PRIMARY KEY (TableName, KeyName)," +
+                        "UNIQUE KEY idx_key_id (TableName, KeyId)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;");
+            } else {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        "TableName TEXT NOT NULL," +
+                        "KeyName TEXT NOT NULL," +
+                        "KeyId INTEGER NOT NULL," +
+                        "PRIMARY KEY (TableName, KeyName)" +
+                        ");");
+                stmt.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_" + TABLE + "_id ON " + TABLE + " (TableName, KeyId)");
+            }
+        }
+        initialized = true;
+    }
+
+    /**
+     * Gets the id of a key name.
+     * @param connection The connection to use.
+     * @param create Whether to assign a new id if the key has none yet.
+     * @return The id, or null if the key has no id and {@code create} is false.
+     * @throws SQLException if a database access error occurs.
+     */
+    Integer id(Connection connection, String table, String name, boolean create) throws SQLException {
+        Map<String, Integer> tableIds = ids.get(table);
+        Integer id = tableIds != null ? tableIds.get(name) : null;
+        if (id != null) return id;
+
+        initialize(connection);
+        id = select(connection, table, name);
+        if (id != null || !create) return id;
+        for (int attempt = 1; id == null; attempt++) {
+            // The next id is computed in the statement itself. If another server inserts the same
+            // name or id at the same time, one insert fails on the unique keys and is retried.
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO " + TABLE + " (TableName, KeyName, KeyId) " +
+                            "SELECT ?, ?, COALESCE(MAX(KeyId), 0) + 1 FROM " + TABLE + " WHERE TableName = ?")) {
+                pstmt.setString(1, table);
+                pstmt.setString(2, name);
+                pstmt.setString(3, table);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                if (attempt >= MAX_INSERT_ATTEMPTS) throw e;
+            }
+            id = select(connection, table, name);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the name of a key id.
+     * @param connection The connection to use.
+     * @return The name, or null if the id is unknown.
+     * @throws SQLException if a database access error occurs.
+     */
+    String name(Connection connection, String table, int id) throws SQLException {
+        Map<Integer, String> tableNames = names.get(table);
+        String name = tableNames != null ? tableNames.get(id) : null;
+        if (name != null) return name;
+
+        // Ids are usually resolved for many rows at once, so all keys of the table are loaded
+        return names(connection, table).get(id);
+    }
+
+    /**
+     * Loads all keys of a table, including keys added by other servers.
+     * @param connection The connection to use.
+     * @return The names by id.
+     * @throws SQLException if a database access error occurs.
+     */
+    Map<Integer, String> names(Connection connection, String table) throws SQLException {
+        initialize(connection);
+        Map<Integer, String> result = new HashMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT KeyName, KeyId FROM " + TABLE + " WHERE TableName = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    cache(table, rs.getString(1), rs.getInt(2));
+                    result.put(rs.getInt(2), rs.getString(1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Integer select(Connection connection, String table, String name) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT KeyId FROM " + TABLE + " WHERE TableName = ? AND KeyName = ?")) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                int id = rs.getInt(1);
+                cache(table, name, id);
+                return id;
+            }
+        }
+    }
+
+    private void cache(String table, String name, int id) {
+        ids.computeIfAbsent(table, t -> new ConcurrentHashMap<>()).put(name, id);
+        names.computeIfAbsent(table, t -> new ConcurrentHashMap<>()).put(id, name);
+    }
+}
@@ -0,0 +1,724 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Stores rows in an append-only log of memory-mapped {@link LogSegment} files, for single servers.
+ * <p>
+ * Every change is appended as a checksummed record. An in-memory hash index maps each key to the
+ * position of its newest value, so a read is one map lookup, one copy of the value bytes out of the
+ * mapped file and their decoding into a String, without SQL parsing or a system call. On startup the index is rebuilt by replaying the log;
+ * a damaged record at the end of the log, e.g. after a power loss, is discarded.
+ * <p>
+ * Overwritten and deleted records stay in the log until a background compaction moves the live
+ * records of the oldest segment to the end of the log and deletes that segment.
+ * Reads never lock. Writes are serialized on the backend, compaction takes the lock only for short steps.
+ * <p>
+ * Versions of values are kept in the index only and start at 1 again after a restart.
+ */
+class LocalBackend implements StorageBackend {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte DELETE_ALL = 3;
+    private static final byte CREATE_TABLE = 4;
+    private static final byte DICTIONARY = 5;
+    private static final long COMPACTION_CHECK_SECONDS = 30;
+    // Bytes of records copied per step of a compaction, while writes wait
+    private static final int COMPACTION_STEP_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final boolean sync;
+    private final Logger logger;
+
+    // Table -> player -> key -> position of the newest value
+    private final Map<String, Map<UUID, Map<String, Entry>>> tables = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, ValueCompressor.Dictionary>> dictionaries = new ConcurrentHashMap<>();
+    // Oldest first, the last segment is the one appended to. Guarded by this.
+    private final List<LogSegment> segments = new ArrayList<>();
+    private volatile boolean connected = false;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * The position of a value in the log.
+     */
+    private static final class Entry {
+        final LogSegment segment;
+        final int offset;
+        final int length;
+        final int valueOffset;
+        final int valueLength;
+        final String type;
+        final long expiresAt;
+        // Set before the entry is published in the index
+        long version = 1;
+
+        Entry(LogSegment segment, int offset, int length, int valueOffset, int valueLength, String type, long expiresAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.type = type;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+    /**
+     * A decoded record body. The value is not copied, only its position is kept.
+     */
+    private static final class Record {
+        final byte op;
+        final UUID uuid;
+        final long expiresAt;
+        final String table;
+        final String key;
+        final String type;
+        final int valueOffset;
+        final int valueLength;
+
+        Record(ByteBuffer body) {
+            op = body.get(0);
+            uuid = new UUID(body.getLong(1), body.getLong(9));
+            expiresAt = body.getLong(17);
+            int pos = 25;
+            table = readString(body, pos).intern();
+            pos += 2 + body.getShort(pos);
+            key = readString(body, pos);
+            pos += 2 + body.getShort(pos);
+            type = readString(body, pos).intern();
+            pos += 2 + body.getShort(pos);
+            valueLength = body.getInt(pos);
+            valueOffset = pos + 4;
+        }
+
+        private static String readString(ByteBuffer body, int pos) {
+            byte[] bytes = new byte[body.getShort(pos)];
+            body.get(pos + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param directory The directory of the log files.
+     * @param segmentSize The size of each log file in bytes.
+     * @param compactionThreshold The share of dead bytes in the log above which compaction starts.
+     * @param sync Whether every write is forced to disk before it returns.
+     */
+    LocalBackend(Path directory, int segmentSize, double compactionThreshold, boolean sync, Logger logger) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.sync = sync;
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public synchronized boolean connect() throws SQLException {
+        if (connected) return false;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                lockChannel = null;
+                throw new SQLException("Die lokale Datenbank '" + directory + "' wird bereits verwendet.");
+            }
+
+            long start = System.currentTimeMillis();
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(path -> path.getFileName().toString().matches("\\d+\\.log")).sorted().toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                LogSegment segment = LogSegment.open(file, Long.parseLong(name.substring(0, name.length() - 4)));
+                segments.add(segment);
+                if (segment.recover((offset, body) -> replay(segment, offset, body))) {
+                    logger.warning("Beschädigter Eintrag in '" + file + "', der Rest der Datei wurde verworfen.");
+                }
+            }
+            if (segments.isEmpty()) {
+                segments.add(LogSegment.create(directory, 1, segmentSize));
+            }
+            int entries = 0;
+            for (Map<UUID, Map<String, Entry>> players : tables.values()) {
+                for (Map<String, Entry> rows : players.values()) {
+                    entries += rows.size();
+                }
+            }
+            logger.info("Lokale Datenbank geladen: " + entries + " Einträge in " + segments.size() + " Dateien ("
+                    + (System.currentTimeMillis() - start) + " ms).");
+
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TryLibs-Local-Compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+            connected = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            closeFiles();
+            throw new SQLException("Fehler beim Öffnen der lokalen Datenbank: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        if (!connected) return;
+        connected = false;
+        compactor.shutdown();
+        for (LogSegment segment : segments) {
+            segment.force();
+        }
+        closeFiles();
+    }
+
+    private void closeFiles() {
+        for (LogSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warning("Fehler beim Schließen von '" + segment.path + "': " + e.getMessage());
+            }
+        }
+        segments.clear();
+        tables.clear();
+        dictionaries.clear();
+        try {
+            if (lock != null) lock.release();
+            if (lockChannel != null) lockChannel.close();
+        } catch (IOException e) {
+            logger.warning("Fehler beim Freigeben der lokalen Datenbank: " + e.getMessage());
+        }
+        lock = null;
+        lockChannel = null;
+    }
+
+    @Override
+    public void executeStatement(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("SQL-Statements werden von der lokalen Datenbank nicht unterstützt");
+    }
+
+    @Override
+    public synchronized void createTable(String table) throws SQLException {
+        String name = table.toLowerCase();
+        if (tables.containsKey(name)) return;
+        append(CREATE_TABLE, name, null, "", "", new byte[0], 0L);
+        tables.put(name, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void createWideTable(String table) throws SQLException {
+        // Keys are already grouped by player in the index
+        createTable(table);
+    }
+
+    @Override
+    public boolean isWideTable(String table) {
+        return false;
+    }
+
+    @Override
+    public boolean tableExists(String table) {
+        return tables.containsKey(table.toLowerCase());
+    }
+
+    @Override
+    public boolean hasExpiryColumn(String table) {
+        return true;
+    }
+
+    @Override
+    public void addExpiryColumn(String table) {
+    }
+
+    @Override
+    public boolean hasVersionColumn(String table) {
+        return true;
+    }
+
+    @Override
+    public void addVersionColumn(String table) {
+    }
+
+    @Override
+    public Set<String> getExpiryTables() {
+        return new HashSet<>(tables.keySet());
+    }
+
+    @Override
+    public synchronized void write(String table, UUID uuid, String key, String value, String type, long expiresAt) throws SQLException {
+        Map<String, Entry> rows = table(table).computeIfAbsent(uuid, id -> new ConcurrentHashMap<>());
+        Entry entry = append(PUT, table, uuid, key, type, value.getBytes(StandardCharsets.UTF_8), expiresAt);
+        Entry previous = rows.get(key);
+        if (previous != null) entry.version = previous.version + 1;
+        rows.put(key, entry);
+        if (previous != null) markDead(previous);
+    }
+
+    @Override
+    public synchronized boolean writeIfVersion(String table, UUID uuid, String key, String value, String type, long expiresAt,
+                                               long expectedVersion, long now) throws SQLException {
+        Entry previous = entry(table, uuid, key);
+        boolean matches = expectedVersion == 0
+                ? previous == null || previous.isExpired(now)
+                : previous != null && !previous.isExpired(now) && previous.version == expectedVersion;
+        if (!matches) return false;
+        write(table, uuid, key, value, type, expiresAt);
+        return true;
+    }
+
+    @Override
+    public StoredValue read(String table, UUID uuid, String key, long now) throws SQLException {
+        Entry entry = entry(table, uuid, key);
+        if (entry == null || entry.isExpired(now)) return null;
+        String value = entry.segment.readString(entry.valueOffset, entry.valueLength);
+        return new StoredValue(value, entry.type, entry.expiresAt, entry.version);
+    }
+
+    @Override
+    public Map<String, StoredValue> readAll(String table, UUID uuid, long now) throws SQLException {
+        Map<String, StoredValue> result = new HashMap<>();
+        Map<String, Entry> rows = table(table).get(uuid);
+        if (rows == null) return result;
+        for (Map.Entry<String, Entry> row : rows.entrySet()) {
+            Entry entry = row.getValue();
+            if (entry.isExpired(now)) continue;
+            String value = entry.segment.readString(entry.valueOffset, entry.valueLength);
+            result.put(row.getKey(), new StoredValue(value, entry.type, entry.expiresAt, entry.version));
+        }
+        return result;
+    }
+
+    @Override
+    public List<TableEntry> scan(String table, UUID uuid, String keyPrefix, TableEntry after, int limit, long now)
+            throws SQLException {
+        // Without an ordered index every page looks at all rows, but only the values of the page are read
+        List<Map.Entry<TableEntry, Entry>> candidates = new ArrayList<>();
+        for (Map.Entry<UUID, Map<String, Entry>> player : table(table).entrySet()) {
+            if (uuid != null && !uuid.equals(player.getKey())) continue;
+            for (Map.Entry<String, Entry> row : player.getValue().entrySet()) {
+                Entry entry = row.getValue();
+                if (entry.isExpired(now) || (keyPrefix != null && !row.getKey().startsWith(keyPrefix))) continue;
+                if (!TableEntry.isAfter(player.getKey(), row.getKey(), after)) continue;
+                candidates.add(new AbstractMap.SimpleEntry<>(new TableEntry(player.getKey(), row.getKey(), null, entry.type), entry));
+            }
+        }
+        candidates.sort(Map.Entry.comparingByKey(TableEntry.ORDER));
+        List<TableEntry> entries = new ArrayList<>();
+        for (Map.Entry<TableEntry, Entry> candidate : candidates.subList(0, Math.min(limit, candidates.size()))) {
+            TableEntry position = candidate.getKey();
+            Entry entry = candidate.getValue();
+            String value = entry.segment.readString(entry.valueOffset, entry.valueLength);
+            entries.add(new TableEntry(position.getUuid(), position.getKey(), value, entry.type));
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void writeAll(String table, List<TableEntry> rows) throws SQLException {
+        for (TableEntry row : rows) {
+            write(table, row.getUuid(), row.getKey(), row.getValue(), row.getType(), 0L);
+        }
+    }
+
+    @Override
+    public boolean createValueIndex(String table, String key) throws SQLException {
+        table(table);
+        return false;
+    }
+
+    @Override
+    public List<UUID> findByValue(String table, String key, String value, String type, long now) throws SQLException {
+        // Only entries of the right type and length are read from the log
+        byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+        List<UUID> players = new ArrayList<>();
+        for (Map.Entry<UUID, Map<String, Entry>> player : table(table).entrySet()) {
+            Entry entry = player.getValue().get(key);
+            if (entry == null || entry.isExpired(now) || !type.equals(entry.type) || entry.valueLength != expected.length) continue;
+            if (Arrays.equals(expected, entry.segment.read(entry.valueOffset, entry.valueLength))) players.add(player.getKey());
+        }
+        return players;
+    }
+
+    @Override
+    public boolean exists(String table, UUID uuid, String key, long now) throws SQLException {
+        Entry entry = entry(table, uuid, key);
+        return entry != null && !entry.isExpired(now);
+    }
+
+    @Override
+    public synchronized boolean delete(String table, UUID uuid, String key) throws SQLException {
+        Map<String, Entry> rows = table(table).get(uuid);
+        if (rows == null || !rows.containsKey(key)) return false;
+        markDead(append(DELETE, table, uuid, key, "", new byte[0], 0L));
+        markDead(rows.remove(key));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean deleteAll(String table, UUID uuid) throws SQLException {
+        Map<UUID, Map<String, Entry>> players = table(table);
+        Map<String, Entry> rows = players.get(uuid);
+        if (rows == null || rows.isEmpty()) return false;
+        markDead(append(DELETE_ALL, table, uuid, "", "", new byte[0], 0L));
+        players.remove(uuid);
+        for (Entry entry : rows.values()) {
+            markDead(entry);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int deletePlayers(Collection<String> tables, Collection<UUID> uuids) throws SQLException {
+        int deleted = 0;
+        for (String table : tables) {
+            Map<UUID, Map<String, Entry>> players = table(table);
+            for (UUID uuid : uuids) {
+                Map<String, Entry> rows = players.get(uuid);
+                if (rows == null || rows.isEmpty()) continue;
+                deleted += rows.size();
+                deleteAll(table, uuid);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public Long readExpiry(String table, UUID uuid, String key) throws SQLException {
+        Entry entry = entry(table, uuid, key);
+        return entry != null && entry.expiresAt > 0 ? entry.expiresAt : null;
+    }
+
+    @Override
+    public Map<String, Long> readExpiries(String table, UUID uuid, long now) throws SQLException {
+        Map<String, Long> result = new HashMap<>();
+        Map<String, Entry> rows = table(table).get(uuid);
+        if (rows != null) {
+            for (Map.Entry<String, Entry> row : rows.entrySet()) {
+                if (row.getValue().expiresAt > now) {
+                    result.put(row.getKey(), row.getValue().expiresAt);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void deleteExpired(String table, List<EntryKey> keys, long now) throws SQLException {
+        Map<UUID, Map<String, Entry>> players = table(table);
+        for (EntryKey entryKey : keys) {
+            Map<String, Entry> rows = players.get(entryKey.uuid);
+            Entry entry = rows != null ? rows.get(entryKey.key) : null;
+            if (entry != null && entry.isExpired(now)) {
+                delete(table, entryKey.uuid, entryKey.key);
+            }
+        }
+        if (sync) activeSegment().force();
+    }
+
+    @Override
+    public synchronized int deleteExpiredRows(String table, long now) throws SQLException {
+        int deleted = 0;
+        for (Map.Entry<UUID, Map<String, Entry>> player : table(table).entrySet()) {
+            for (Map.Entry<String, Entry> row : new ArrayList<>(player.getValue().entrySet())) {
+                if (row.getValue().isExpired(now) && delete(table, player.getKey(), row.getKey())) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public ValueCompressor.Dictionary loadDictionary(String table, int id) {
+        Map<Integer, ValueCompressor.Dictionary> byId = dictionaries.get(table);
+        if (byId == null) return null;
+        if (id >= 0) return byId.get(id);
+        ValueCompressor.Dictionary newest = null;
+        for (ValueCompressor.Dictionary dictionary : byId.values()) {
+            if (newest == null || dictionary.id > newest.id) newest = dictionary;
+        }
+        return newest;
+    }
+
+    @Override
+    public synchronized void saveDictionary(String table, ValueCompressor.Dictionary dictionary) throws SQLException {
+        append(DICTIONARY, table, null, String.valueOf(dictionary.id), "", dictionary.data, 0L);
+        dictionaries.computeIfAbsent(table, t -> new ConcurrentHashMap<>()).put(dictionary.id, dictionary);
+    }
+
+    private Entry entry(String table, UUID uuid, String key) throws SQLException {
+        Map<String, Entry> rows = table(table).get(uuid);
+        return rows != null ? rows.get(key) : null;
+    }
+
+    private Map<UUID, Map<String, Entry>> table(String table) throws SQLException {
+        Map<UUID, Map<String, Entry>> players = tables.get(table.toLowerCase());
+        if (players == null) {
+            throw new SQLException("Tabelle '" + table + "' existiert nicht");
+        }
+        return players;
+    }
+
+    private static void markDead(Entry entry) {
+        entry.segment.deadBytes.addAndGet(entry.length);
+    }
+
+    private LogSegment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Encodes and appends a record. Must be called while holding the lock of the backend.
+     * @return The position of the record.
+     */
+    private Entry append(byte op, String table, UUID uuid, String key, String type, byte[] value, long expiresAt) throws SQLException {
+        byte[] tableBytes = table.toLowerCase().getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        if (tableBytes.length > Short.MAX_VALUE || keyBytes.length > Short.MAX_VALUE || typeBytes.length > Short.MAX_VALUE) {
+            throw new SQLException("Schlüssel zu lang für die lokale Datenbank");
+        }
+        ByteBuffer body = ByteBuffer.allocate(25 + 6 + tableBytes.length + keyBytes.length + typeBytes.length + 4 + value.length);
+        body.put(op);
+        body.putLong(uuid != null ? uuid.getMostSignificantBits() : 0L);
+        body.putLong(uuid != null ? uuid.getLeastSignificantBits() : 0L);
+        body.putLong(expiresAt);
+        body.putShort((short) tableBytes.length).put(tableBytes);
+        body.putShort((short) keyBytes.length).put(keyBytes);
+        body.putShort((short) typeBytes.length).put(typeBytes);
+        body.putInt(value.length);
+        int valueOffset = body.position();
+        body.put(value);
+        body.flip();
+        return appendBody(body, valueOffset, value.length, type, expiresAt);
+    }
+
+    private Entry appendBody(ByteBuffer body, int valueOffset, int valueLength, String type, long expiresAt) throws SQLException {
+        int length = body.remaining();
+        LogSegment segment = activeSegment();
+        int offset = segment.append(body);
+        try {
+            if (offset < 0) {
+                // The active segment is full, start a new one
+                segment.force();
+                segment = LogSegment.create(directory, segment.id + 1, Math.max(segmentSize, LogSegment.requiredSize(length)));
+                segments.add(segment);
+                offset = segment.append(body);
+            }
+            if (sync) segment.force();
+        } catch (IOException e) {
+            throw new SQLException("Fehler beim Schreiben in die lokale Datenbank: " + e.getMessage(), e);
+        }
+        int recordValueOffset = offset + LogSegment.RECORD_HEADER + valueOffset;
+        return new Entry(segment, offset, LogSegment.RECORD_HEADER + length, recordValueOffset, valueLength, type, expiresAt);
+    }
+
+    /**
+     * Applies a record to the index while the log is replayed on startup.
+     */
+    private void replay(LogSegment segment, int offset, ByteBuffer body) {
+        Record record = new Record(body);
+        int length = LogSegment.RECORD_HEADER + body.limit();
+        switch (record.op) {
+            case PUT: {
+                Entry entry = new Entry(segment, offset, length, offset + LogSegment.RECORD_HEADER + record.valueOffset,
+                        record.valueLength, record.type, record.expiresAt);
+                Entry previous = tables.computeIfAbsent(record.table, t -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(record.uuid, id -> new ConcurrentHashMap<>()).put(record.key, entry);
+                if (previous != null) markDead(previous);
+                break;
+            }
+            case DELETE: {
+                segment.deadBytes.addAndGet(length);
+                Map<UUID, Map<String, Entry>> players = tables.get(record.table);
+                Map<String, Entry> rows = players != null ? players.get(record.uuid) : null;
+                Entry previous = rows != null ? rows.remove(record.key) : null;
+                if (previous != null) markDead(previous);
+                break;
+            }
+            case DELETE_ALL: {
+                segment.deadBytes.addAndGet(length);
+                Map<UUID, Map<String, Entry>> players = tables.get(record.table);
+                Map<String, Entry> rows = players != null ? players.remove(record.uuid) : null;
+                if (rows != null) rows.values().forEach(LocalBackend::markDead);
+                break;
+            }
+            case CREATE_TABLE:
+                tables.computeIfAbsent(record.table, t -> new ConcurrentHashMap<>());
+                break;
+            case DICTIONARY: {
+                byte[] data = new byte[record.valueLength];
+                body.get(record.valueOffset, data);
+                int id = Integer.parseInt(record.key);
+                dictionaries.computeIfAbsent(record.table, t -> new ConcurrentHashMap<>())
+                        .put(id, new ValueCompressor.Dictionary(id, data));
+                break;
+            }
+            default:
+                logger.warning("Unbekannter Eintrag " + record.op + " in '" + segment.path + "' übersprungen.");
+        }
+    }
+
+    /**
+     * Runs on the compactor thread. Rewrites the oldest segments as long as the share of dead bytes
+     * in the full segments is above the threshold. The live records are moved in steps, so writes only wait
+     * for one step at a time, and the moved records are forced to disk without holding the lock.
+     */
+    private void compact() {
+        try {
+            while (true) {
+                LogSegment oldest;
+                synchronized (this) {
+                    if (!connected || !needsCompaction()) return;
+                    oldest = segments.get(0);
+                }
+                long start = System.currentTimeMillis();
+                int moved = moveLiveRecords(oldest);
+                if (moved < 0) return;
+                LogSegment active;
+                synchronized (this) {
+                    // Closed while the records were moved
+                    if (!connected || segments.get(0) != oldest) return;
+                    segments.remove(0);
+                    active = activeSegment();
+                }
+                // Full segments were forced when the next one was started, the old file must only go once the copies are on disk
+                active.force();
+                try {
+                    oldest.delete();
+                } catch (IOException e) {
+                    // Mapped files cannot be deleted on some systems, the records in it are outdated anyway
+                    oldest.path.toFile().deleteOnExit();
+                }
+                logger.info("Lokale Datenbank kompaktiert: '" + oldest.path.getFileName() + "' entfernt, " + moved
+                        + " Einträge verschoben (" + (System.currentTimeMillis() - start) + " ms).");
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.severe("Fehler beim Kompaktieren der lokalen Datenbank: " + e.getMessage());
+        }
+    }
+
+    private boolean needsCompaction() {
+        if (segments.size() < 2) return false;
+        long size = 0;
+        long dead = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            size += segments.get(i).size();
+            dead += segments.get(i).deadBytes.get();
+        }
+        return size > 0 && dead >= size * compactionThreshold;
+    }
+
+    /**
+     * Appends the live records of a segment to the end of the log, in steps of about
+     * {@link #COMPACTION_STEP_BYTES}. The segment is no longer written to, so it is read without the lock.
+     * @return The number of moved values, or -1 if the backend was closed meanwhile.
+     */
+    private int moveLiveRecords(LogSegment segment) throws SQLException {
+        List<Map.Entry<Integer, ByteBuffer>> step = new ArrayList<>();
+        int[] stepBytes = new int[1];
+        int[] moved = new int[1];
+        SQLException[] error = new SQLException[1];
+        segment.forEach((offset, body) -> {
+            if (error[0] != null || moved[0] < 0) return;
+            step.add(new AbstractMap.SimpleEntry<>(offset, body));
+            stepBytes[0] += body.limit();
+            if (stepBytes[0] < COMPACTION_STEP_BYTES) return;
+            try {
+                int stepMoved = moveStep(segment, step);
+                moved[0] = stepMoved < 0 ? -1 : moved[0] + stepMoved;
+            } catch (SQLException e) {
+                error[0] = e;
+            }
+            step.clear();
+            stepBytes[0] = 0;
+        });
+        if (error[0] != null) throw error[0];
+        if (moved[0] < 0 || step.isEmpty()) return moved[0];
+        int stepMoved = moveStep(segment, step);
+        return stepMoved < 0 ? -1 : moved[0] + stepMoved;
+    }
+
+    /**
+     * Appends one step of records of a segment to the end of the log. Deletions are dropped, because
+     * the segment is the oldest one and there is no older value left they could hide. Records overwritten
+     * since the step was read are skipped.
+     * @param records The records by their offset in the segment.
+     * @return The number of moved values, or -1 if the backend was closed meanwhile.
+     */
+    private synchronized int moveStep(LogSegment segment, List<Map.Entry<Integer, ByteBuffer>> records) throws SQLException {
+        if (!connected || segments.get(0) != segment) return -1;
+        long now = System.currentTimeMillis();
+        int moved = 0;
+        for (Map.Entry<Integer, ByteBuffer> step : records) {
+            int offset = step.getKey();
+            ByteBuffer body = step.getValue();
+            Record record = new Record(body);
+            if (record.op == PUT) {
+                Map<UUID, Map<String, Entry>> players = tables.get(record.table);
+                Map<String, Entry> rows = players != null ? players.get(record.uuid) : null;
+                Entry entry = rows != null ? rows.get(record.key) : null;
+                if (entry == null || entry.segment != segment || entry.offset != offset) continue;
+                if (entry.isExpired(now)) {
+                    rows.remove(record.key, entry);
+                    continue;
+                }
+                ByteBuffer copy = ByteBuffer.allocate(body.limit()).put(body.duplicate()).flip();
+                Entry relocated = appendBody(copy, record.valueOffset, record.valueLength, record.type, record.expiresAt);
+                relocated.version = entry.version;
+                rows.replace(record.key, entry, relocated);
+                moved++;
+            } else if (record.op == CREATE_TABLE || record.op == DICTIONARY) {
+                appendBody(ByteBuffer.allocate(body.limit()).put(body.duplicate()).flip(), 0, 0, "", 0L);
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,218 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of the append-only log of the {@link LocalBackend}, mapped into memory as a whole.
+ * <p>
+ * The file starts with a magic number and a version, followed by records of the form
+ * {@code [int length][int crc32c][body]}. The unused rest of the file is zero, so a length of 0
+ * marks the end of the log. Appends are not thread-safe and must be serialized by the caller,
+ * reads at offsets of complete records may run concurrently.
+ */
+final class LogSegment {
+    private static final int MAGIC = 0x544C4B56; // "TLKV"
+    private static final int VERSION = 1;
+    /** Size of the file header. */
+    static final int FILE_HEADER = 8;
+    /** Size of the header of each record. */
+    static final int RECORD_HEADER = 8;
+
+    final long id;
+    final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    /** Bytes of records that have been overwritten or deleted since. */
+    final AtomicLong deadBytes = new AtomicLong();
+
+    private LogSegment(long id, Path path, FileChannel channel, MappedByteBuffer buffer, int position) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.position = position;
+    }
+
+    /**
+     * Creates a new, empty segment.
+     * @param size The size of the file in bytes.
+     * @throws IOException if the file cannot be created.
+     */
+    static LogSegment create(Path directory, long id, int size) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            return new LogSegment(id, path, channel, buffer, FILE_HEADER);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment. The append position is set by {@link #recover(RecordVisitor)}.
+     * @throws IOException if the file cannot be opened or is not a segment.
+     */
+    static LogSegment open(Path path, long id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < FILE_HEADER || size > Integer.MAX_VALUE) {
+                throw new IOException("Ungültige Segmentgröße " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Keine TryLibs-Logdatei");
+            }
+            return new LogSegment(id, path, channel, buffer, FILE_HEADER);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static String fileName(long id) {
+        return String.format("%010d.log", id);
+    }
+
+    /**
+     * Receives the records of a segment during recovery.
+     */
+    interface RecordVisitor {
+        /**
+         * @param offset The offset of the record in the segment.
+         * @param body The body of the record, positioned at its start.
+         */
+        void visit(int offset, ByteBuffer body);
+    }
+
+    /**
+     * Reads all records, verifies their checksums and moves the append position behind the last valid one.
+     * A record with a wrong checksum or length is treated as the end of the log, e.g. after a power loss
+     * during a write. The rest of the file is cleared, so it cannot be mistaken for records later.
+     * @return true if the segment ended with a damaged record.
+     */
+    boolean recover(RecordVisitor visitor) {
+        int pos = FILE_HEADER;
+        int capacity = buffer.capacity();
+        CRC32C crc = new CRC32C();
+        boolean damaged = false;
+        while (pos + RECORD_HEADER <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length == 0) break;
+            if (length < 0 || length > capacity - pos - RECORD_HEADER) {
+                damaged = true;
+                break;
+            }
+            ByteBuffer body = buffer.slice(pos + RECORD_HEADER, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                damaged = true;
+                break;
+            }
+            visitor.visit(pos, body);
+            pos += RECORD_HEADER + length;
+        }
+        if (damaged) {
+            for (int i = pos; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        position = pos;
+        return damaged;
+    }
+
+    /**
+     * Visits all records before the append position. The checksums are not verified again.
+     */
+    void forEach(RecordVisitor visitor) {
+        int pos = FILE_HEADER;
+        while (pos < position) {
+            int length = buffer.getInt(pos);
+            visitor.visit(pos, buffer.slice(pos + RECORD_HEADER, length));
+            pos += RECORD_HEADER + length;
+        }
+    }
+
+    /**
+     * Appends a record.
+     * @param body The body of the record, from its position to its limit.
+     * @return The offset of the record, or -1 if the segment is full.
+     */
+    int append(ByteBuffer body) {
+        int length = body.remaining();
+        if (position + RECORD_HEADER + length > buffer.capacity()) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        int offset = position;
+        buffer.put(offset + RECORD_HEADER, body, body.position(), length);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        // The length is written last, a record becomes visible to recovery only when it is complete
+        buffer.putInt(offset, length);
+        position += RECORD_HEADER + length;
+        return offset;
+    }
+
+    /**
+     * Copies bytes out of the mapped file.
+     */
+    byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies a UTF-8 value out of the mapped file and decodes it. Decoding straight from the mapped
+     * buffer would copy twice as well, into a CharBuffer and then into the String.
+     */
+    String readString(int offset, int length) {
+        return new String(read(offset, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of bytes used by records, including headers.
+     */
+    int size() {
+        return position - FILE_HEADER;
+    }
+
+    static int requiredSize(int bodyLength) {
+        return FILE_HEADER + RECORD_HEADER + bodyLength;
+    }
+
+    /**
+     * Writes changes of the mapped file to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and deletes the file. The mapping stays valid for readers still holding this segment.
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
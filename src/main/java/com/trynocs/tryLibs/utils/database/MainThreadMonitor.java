@@ -0,0 +1,150 @@
+package com.trynocs.tryLibs.utils.database;
+
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Detects database calls that block the server main thread.
+ * <p>
+ * Calls on the main thread that take longer than the threshold are collected per plugin and
+ * reported in one summary per report window, together with the stack of the slowest call.
+ * In strict mode, database I/O on the main thread is rejected instead.
+ */
+class MainThreadMonitor {
+    private static final int STACK_DEPTH = 8;
+
+    private static final class PluginReport {
+        private int calls;
+        private long totalMicros;
+        private long maxMicros;
+        private String slowestCall;
+        private List<StackTraceElement> stack;
+    }
+
+    private final Logger logger;
+    private final long thresholdMicros;
+    private final boolean strict;
+    private final long reportIntervalMillis;
+    private Map<String, PluginReport> reports = new HashMap<>();
+    private long windowStart = System.currentTimeMillis();
+
+    /**
+     * @param logger The logger for the summaries.
+     * @param thresholdMicros Main-thread calls taking at least this long are reported.
+     * @param strict Whether database I/O on the main thread is rejected.
+     * @param reportIntervalMillis The length of a report window.
+     */
+    MainThreadMonitor(Logger logger, long thresholdMicros, boolean strict, long reportIntervalMillis) {
+        this.logger = logger;
+        this.thresholdMicros = thresholdMicros;
+        this.strict = strict;
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    /**
+     * @return true if the current thread is the server main thread.
+     */
+    static boolean isPrimaryThread() {
+        return Bukkit.getServer() != null && Bukkit.isPrimaryThread();
+    }
+
+    /**
+     * @return The length of a report window in milliseconds.
+     */
+    long getReportIntervalMillis() {
+        return reportIntervalMillis;
+    }
+
+    /**
+     * Called right before blocking database I/O. Rejects it in strict mode if called on the main thread.
+     * @param operation The operation.
+     * @param table The table, or null.
+     * @throws IllegalStateException in strict mode on the main thread.
+     */
+    void checkIo(String operation, String table) {
+        if (strict && isPrimaryThread()) {
+            throw new IllegalStateException("Datenbankzugriff '" + operation + "'"
+                    + (table != null ? " auf Tabelle '" + table + "'" : "")
+                    + " im Haupt-Thread ist im strikten Modus nicht erlaubt. Bitte asynchron ausführen.");
+        }
+    }
+
+    /**
+     * @return true if a main-thread call of this duration is reported.
+     */
+    boolean isSlow(long micros) {
+        return micros >= thresholdMicros;
+    }
+
+    /**
+     * Records a completed call made on the main thread.
+     * @param operation The operation.
+     * @param table The table.
+     * @param plugin The calling plugin.
+     * @param micros The duration in microseconds.
+     */
+    void record(String operation, String table, String plugin, long micros) {
+        if (micros < thresholdMicros) return;
+        synchronized (this) {
+            PluginReport report = reports.computeIfAbsent(plugin, k -> new PluginReport());
+            report.calls++;
+            report.totalMicros += micros;
+            if (micros > report.maxMicros) {
+                report.maxMicros = micros;
+                report.slowestCall = operation + " " + table;
+                report.stack = callerStack();
+            }
+        }
+    }
+
+    private static List<StackTraceElement> callerStack() {
+        List<StackTraceElement> stack = new ArrayList<>(STACK_DEPTH);
+        boolean inCaller = false;
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            if (!inCaller && (element.getClassName().startsWith("com.trynocs.tryLibs.")
+                    || element.getClassName().startsWith("java."))) {
+                continue;
+            }
+            inCaller = true;
+            stack.add(element);
+            if (stack.size() == STACK_DEPTH) break;
+        }
+        return stack;
+    }
+
+    /**
+     * Logs and clears the calls collected in the current window, if any.
+     */
+    void report() {
+        Map<String, PluginReport> window;
+        long seconds;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            seconds = Math.max(1, (now - windowStart) / 1000);
+            windowStart = now;
+            if (reports.isEmpty()) return;
+            window = reports;
+            reports = new HashMap<>();
+        }
+
+        StringBuilder summary = new StringBuilder("Datenbankzugriffe haben den Haupt-Thread in den letzten ")
+                .append(seconds).append("s blockiert:");
+        window.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().totalMicros, a.getValue().totalMicros))
+                .forEach(entry -> {
+                    PluginReport report = entry.getValue();
+                    summary.append(String.format("%n  %s: %d Aufrufe, gesamt %.1f ms, max %.1f ms (%s)",
+                            entry.getKey(), report.calls, report.totalMicros / 1000.0, report.maxMicros / 1000.0,
+                            report.slowestCall));
+                    for (StackTraceElement element : report.stack) {
+                        summary.append(System.lineSeparator()).append("    bei ").append(element);
+                    }
+                });
+        logger.warning(summary.toString());
+    }
+}
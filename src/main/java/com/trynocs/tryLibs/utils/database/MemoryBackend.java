@@ -0,0 +1,358 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores rows on the heap only, for servers that are wiped on restart and for tests.
+ * Reads never lock. Writes of a player are atomic per key through {@link ConcurrentHashMap#compute}.
+ * All tables support expiry and versions. Raw SQL statements are not supported.
+ */
+class MemoryBackend implements StorageBackend {
+    // The order of UUID strings in scans: both halves as unsigned numbers, without building the strings
+    private static final Comparator<UUID> SCAN_ORDER = (a, b) -> {
+        int order = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return order != 0 ? order : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    // Table -> player -> key -> row
+    private final Map<String, Map<UUID, Map<String, Row>>> tables = new ConcurrentHashMap<>();
+    // Table -> players in scan order, so a page starts where the last one ended instead of sorting the table
+    private final Map<String, NavigableSet<UUID>> scanOrders = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, ValueCompressor.Dictionary>> dictionaries = new ConcurrentHashMap<>();
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    private static final class Row {
+        final String value;
+        final String type;
+        final long expiresAt;
+        final long version;
+
+        Row(String value, String type, long expiresAt, long version) {
+            this.value = value;
+            this.type = type;
+            this.expiresAt = expiresAt;
+            this.version = version;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected.get();
+    }
+
+    @Override
+    public boolean connect() {
+        return connected.compareAndSet(false, true);
+    }
+
+    @Override
+    public void close() {
+        // The data stays available until the server stops
+        connected.set(false);
+    }
+
+    @Override
+    public void executeStatement(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("SQL-Statements werden vom Speicher-Backend nicht unterstützt");
+    }
+
+    @Override
+    public void createTable(String table) {
+        scanOrders.computeIfAbsent(table.toLowerCase(), t -> new ConcurrentSkipListSet<>(SCAN_ORDER));
+        tables.computeIfAbsent(table.toLowerCase(), t -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void createWideTable(String table) {
+        // Keys are already grouped by player in memory
+        createTable(table);
+    }
+
+    @Override
+    public boolean isWideTable(String table) {
+        return false;
+    }
+
+    @Override
+    public boolean tableExists(String table) {
+        return tables.containsKey(table.toLowerCase());
+    }
+
+    @Override
+    public boolean hasExpiryColumn(String table) {
+        return true;
+    }
+
+    @Override
+    public void addExpiryColumn(String table) {
+    }
+
+    @Override
+    public boolean hasVersionColumn(String table) {
+        return true;
+    }
+
+    @Override
+    public void addVersionColumn(String table) {
+    }
+
+    @Override
+    public Set<String> getExpiryTables() {
+        return tables.keySet();
+    }
+
+    @Override
+    public void write(String table, UUID uuid, String key, String value, String type, long expiresAt) throws SQLException {
+        table(table).compute(uuid, (id, rows) -> {
+            if (rows == null) rows = new ConcurrentHashMap<>();
+            rows.compute(key, (k, previous) -> new Row(value, type, expiresAt, previous != null ? previous.version + 1 : 1));
+            return rows;
+        });
+        scanOrder(table).add(uuid);
+    }
+
+    @Override
+    public boolean writeIfVersion(String table, UUID uuid, String key, String value, String type, long expiresAt,
+                                  long expectedVersion, long now) throws SQLException {
+        boolean[] written = new boolean[1];
+        table(table).compute(uuid, (id, rows) -> {
+            if (rows == null) rows = new ConcurrentHashMap<>();
+            Row previous = rows.get(key);
+            boolean matches = expectedVersion == 0
+                    ? previous == null || previous.isExpired(now)
+                    : previous != null && !previous.isExpired(now) && previous.version == expectedVersion;
+            if (matches) {
+                rows.put(key, new Row(value, type, expiresAt, previous != null ? previous.version + 1 : 1));
+                written[0] = true;
+            }
+            return rows.isEmpty() ? null : rows;
+        });
+        if (written[0]) scanOrder(table).add(uuid);
+        return written[0];
+    }
+
+    @Override
+    public StoredValue read(String table, UUID uuid, String key, long now) throws SQLException {
+        Row row = row(table, uuid, key);
+        if (row == null || row.isExpired(now)) return null;
+        return new StoredValue(row.value, row.type, row.expiresAt, row.version);
+    }
+
+    @Override
+    public Map<String, StoredValue> readAll(String table, UUID uuid, long now) throws SQLException {
+        Map<String, StoredValue> result = new HashMap<>();
+        Map<String, Row> rows = table(table).get(uuid);
+        if (rows == null) return result;
+        for (Map.Entry<String, Row> row : rows.entrySet()) {
+            Row value = row.getValue();
+            if (!value.isExpired(now)) result.put(row.getKey(), new StoredValue(value.value, value.type, value.expiresAt, value.version));
+        }
+        return result;
+    }
+
+    @Override
+    public List<TableEntry> scan(String table, UUID uuid, String keyPrefix, TableEntry after, int limit, long now)
+            throws SQLException {
+        Map<UUID, Map<String, Row>> players = table(table);
+        NavigableSet<UUID> order = scanOrder(table);
+        Collection<UUID> candidates = uuid != null ? Collections.singletonList(uuid)
+                : after != null ? order.tailSet(after.getUuid(), true) : order;
+        List<TableEntry> entries = new ArrayList<>();
+        List<TableEntry> playerEntries = new ArrayList<>();
+        for (UUID player : candidates) {
+            Map<String, Row> rows = players.get(player);
+            if (rows == null) continue;
+            // A player has few keys, so only they are sorted
+            playerEntries.clear();
+            for (Map.Entry<String, Row> row : rows.entrySet()) {
+                Row value = row.getValue();
+                if (value.isExpired(now) || (keyPrefix != null && !row.getKey().startsWith(keyPrefix))) continue;
+                if (!TableEntry.isAfter(player, row.getKey(), after)) continue;
+                playerEntries.add(new TableEntry(player, row.getKey(), value.value, value.type));
+            }
+            playerEntries.sort(TableEntry.ORDER);
+            for (TableEntry entry : playerEntries) {
+                entries.add(entry);
+                if (entries.size() >= limit) return entries;
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void writeAll(String table, List<TableEntry> rows) throws SQLException {
+        for (TableEntry row : rows) {
+            write(table, row.getUuid(), row.getKey(), row.getValue(), row.getType(), 0L);
+        }
+    }
+
+    @Override
+    public boolean createValueIndex(String table, String key) throws SQLException {
+        table(table);
+        return false;
+    }
+
+    @Override
+    public List<UUID> findByValue(String table, String key, String value, String type, long now) throws SQLException {
+        List<UUID> players = new ArrayList<>();
+        for (Map.Entry<UUID, Map<String, Row>> player : table(table).entrySet()) {
+            Row row = player.getValue().get(key);
+            if (row != null && !row.isExpired(now) && value.equals(row.value) && type.equals(row.type)) players.add(player.getKey());
+        }
+        return players;
+    }
+
+    @Override
+    public boolean exists(String table, UUID uuid, String key, long now) throws SQLException {
+        Row row = row(table, uuid, key);
+        return row != null && !row.isExpired(now);
+    }
+
+    @Override
+    public boolean delete(String table, UUID uuid, String key) throws SQLException {
+        boolean[] deleted = new boolean[1];
+        table(table).computeIfPresent(uuid, (id, rows) -> {
+            deleted[0] = rows.remove(key) != null;
+            return rows.isEmpty() ? null : rows;
+        });
+        unorder(table, uuid);
+        return deleted[0];
+    }
+
+    @Override
+    public boolean deleteAll(String table, UUID uuid) throws SQLException {
+        Map<String, Row> rows = table(table).remove(uuid);
+        unorder(table, uuid);
+        return rows != null && !rows.isEmpty();
+    }
+
+    @Override
+    public int deletePlayers(Collection<String> tables, Collection<UUID> uuids) throws SQLException {
+        int deleted = 0;
+        for (String table : tables) {
+            Map<UUID, Map<String, Row>> players = table(table);
+            for (UUID uuid : uuids) {
+                Map<String, Row> rows = players.remove(uuid);
+                if (rows != null) deleted += rows.size();
+                unorder(table, uuid);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public Long readExpiry(String table, UUID uuid, String key) throws SQLException {
+        Row row = row(table, uuid, key);
+        return row != null && row.expiresAt > 0 ? row.expiresAt : null;
+    }
+
+    @Override
+    public Map<String, Long> readExpiries(String table, UUID uuid, long now) throws SQLException {
+        Map<String, Long> result = new HashMap<>();
+        Map<String, Row> rows = table(table).get(uuid);
+        if (rows != null) {
+            for (Map.Entry<String, Row> entry : rows.entrySet()) {
+                if (entry.getValue().expiresAt > now) {
+                    result.put(entry.getKey(), entry.getValue().expiresAt);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteExpired(String table, List<EntryKey> keys, long now) throws SQLException {
+        Map<UUID, Map<String, Row>> players = table(table);
+        for (EntryKey entryKey : keys) {
+            players.computeIfPresent(entryKey.uuid, (id, rows) -> {
+                rows.computeIfPresent(entryKey.key, (key, row) -> row.isExpired(now) ? null : row);
+                return rows.isEmpty() ? null : rows;
+            });
+            unorder(table, entryKey.uuid);
+        }
+    }
+
+    @Override
+    public int deleteExpiredRows(String table, long now) throws SQLException {
+        int[] deleted = new int[1];
+        Map<UUID, Map<String, Row>> players = table(table);
+        for (UUID uuid : players.keySet()) {
+            players.computeIfPresent(uuid, (id, rows) -> {
+                int size = rows.size();
+                rows.values().removeIf(row -> row.isExpired(now));
+                deleted[0] += size - rows.size();
+                return rows.isEmpty() ? null : rows;
+            });
+            unorder(table, uuid);
+        }
+        return deleted[0];
+    }
+
+    @Override
+    public ValueCompressor.Dictionary loadDictionary(String table, int id) {
+        Map<Integer, ValueCompressor.Dictionary> byId = dictionaries.get(table);
+        if (byId == null) return null;
+        if (id >= 0) return byId.get(id);
+        ValueCompressor.Dictionary newest = null;
+        for (ValueCompressor.Dictionary dictionary : byId.values()) {
+            if (newest == null || dictionary.id > newest.id) newest = dictionary;
+        }
+        return newest;
+    }
+
+    @Override
+    public void saveDictionary(String table, ValueCompressor.Dictionary dictionary) {
+        dictionaries.computeIfAbsent(table, t -> new ConcurrentHashMap<>()).put(dictionary.id, dictionary);
+    }
+
+    private Row row(String table, UUID uuid, String key) throws SQLException {
+        Map<String, Row> rows = table(table).get(uuid);
+        return rows != null ? rows.get(key) : null;
+    }
+
+    private NavigableSet<UUID> scanOrder(String table) throws SQLException {
+        NavigableSet<UUID> order = scanOrders.get(table.toLowerCase());
+        if (order == null) {
+            throw new SQLException("Tabelle '" + table + "' existiert nicht");
+        }
+        return order;
+    }
+
+    /**
+     * Removes a player from the scan order once all of its rows are gone.
+     */
+    private void unorder(String table, UUID uuid) throws SQLException {
+        Map<UUID, Map<String, Row>> players = table(table);
+        if (players.containsKey(uuid)) return;
+        NavigableSet<UUID> order = scanOrder(table);
+        order.remove(uuid);
+        // A write adds the player after storing its row, so one that raced the removal is seen here
+        if (players.containsKey(uuid)) order.add(uuid);
+    }
+
+    private Map<UUID, Map<String, Row>> table(String table) throws SQLException {
+        Map<UUID, Map<String, Row>> players = tables.get(table.toLowerCase());
+        if (players == null) {
+            throw new SQLException("Tabelle '" + table + "' existiert nicht");
+        }
+        return players;
+    }
+}
@@ -0,0 +1,354 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores rows in a MySQL database.
+ * <p>
+ * With {@link #setReplicas(ReplicaRouter) replicas}, reads of single players ({@link #read}, {@link #readAll}
+ * and {@link #exists}) are sent to a replica chosen by the router, and all other accesses to the primary.
+ */
+class MysqlBackend extends JdbcBackend {
+    private final String database;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final boolean replica;
+    private volatile ReplicaRouter replicas;
+
+    /**
+     * @param encodeKeys Whether new tables store key ids instead of key names.
+     */
+    MysqlBackend(String host, int port, String database, String username, String password, boolean encodeKeys) {
+        this(host, port, database, username, password, encodeKeys, new KeyDictionary(true), false);
+    }
+
+    private MysqlBackend(String host, int port, String database, String username, String password, boolean encodeKeys,
+                         KeyDictionary keyDictionary, boolean replica) {
+        super(encodeKeys, keyDictionary);
+        this.database = database;
+        this.url = "jdbc:mysql://" + host + ":" + port + "/" + database +
+                "?useSSL=false&allowPublicKeyRetrieval=true&useUnicode=true&characterEncoding=utf8" +
+                // Sends batches such as those of wide tables as multi-row statements
+                "&rewriteBatchedStatements=true";
+        this.username = username;
+        this.password = password;
+        this.replica = replica;
+    }
+
+    /**
+     * Creates a backend for a read-only replica of this database with the same credentials.
+     * Key ids are replicated as well, so the replica shares the key dictionary of this backend.
+     */
+    MysqlBackend replica(String host, int port) {
+        return new MysqlBackend(host, port, database, username, password, encodeKeys, keyDictionary, true);
+    }
+
+    /**
+     * Sends reads of single players to the given replicas from now on.
+     */
+    void setReplicas(ReplicaRouter replicas) {
+        this.replicas = replicas;
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MySQL-Treiber nicht gefunden", e);
+        }
+        Connection connection = DriverManager.getConnection(url, username, password);
+        if (replica) connection.setReadOnly(true);
+        return connection;
+    }
+
+    @Override
+    public boolean connect() throws SQLException {
+        boolean connected = super.connect();
+        ReplicaRouter router = replicas;
+        if (router != null) router.start();
+        return connected;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        ReplicaRouter router = replicas;
+        if (router != null) router.close();
+        super.close();
+    }
+
+    /**
+     * Reads how far this server is behind its primary.
+     * @return The lag in seconds, 0 if the server does not replicate from a primary, or null if replication is stopped.
+     * @throws SQLException if a database access error occurs or the user lacks the REPLICATION CLIENT privilege.
+     */
+    Long readReplicationLag() throws SQLException {
+        return withConnection(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                ResultSet rs;
+                String column;
+                try {
+                    rs = stmt.executeQuery("SHOW REPLICA STATUS");
+                    column = "Seconds_Behind_Source";
+                } catch (SQLException e) {
+                    // Before MySQL 8.0.22
+                    rs = stmt.executeQuery("SHOW SLAVE STATUS");
+                    column = "Seconds_Behind_Master";
+                }
+                try (ResultSet status = rs) {
+                    if (!status.next()) return 0L;
+                    long lag = status.getLong(column);
+                    return status.wasNull() ? null : lag;
+                }
+            }
+        });
+    }
+
+    @Override
+    public StoredValue read(String table, UUID uuid, String key, long now) throws SQLException {
+        MysqlBackend target = replicaFor(table, uuid);
+        if (target != null) {
+            try {
+                return target.read(table, uuid, key, now);
+            } catch (SQLException e) {
+                replicas.failed(target, e);
+            }
+        }
+        return super.read(table, uuid, key, now);
+    }
+
+    @Override
+    public Map<String, StoredValue> readAll(String table, UUID uuid, long now) throws SQLException {
+        MysqlBackend target = replicaFor(table, uuid);
+        if (target != null) {
+            try {
+                return target.readAll(table, uuid, now);
+            } catch (SQLException e) {
+                replicas.failed(target, e);
+            }
+        }
+        return super.readAll(table, uuid, now);
+    }
+
+    @Override
+    public boolean exists(String table, UUID uuid, String key, long now) throws SQLException {
+        MysqlBackend target = replicaFor(table, uuid);
+        if (target != null) {
+            try {
+                return target.exists(table, uuid, key, now);
+            } catch (SQLException e) {
+                replicas.failed(target, e);
+            }
+        }
+        return super.exists(table, uuid, key, now);
+    }
+
+    @Override
+    public void write(String table, UUID uuid, String key, String value, String type, long expiresAt) throws SQLException {
+        recordWrite(table, uuid);
+        super.write(table, uuid, key, value, type, expiresAt);
+    }
+
+    @Override
+    public void writeAll(String table, List<TableEntry> rows) throws SQLException {
+        recordWrites(table, rows);
+        super.writeAll(table, rows);
+        // A large import takes a while, so the window also starts when the rows are committed
+        recordWrites(table, rows);
+    }
+
+    @Override
+    public boolean writeIfVersion(String table, UUID uuid, String key, String value, String type, long expiresAt,
+                                  long expectedVersion, long now) throws SQLException {
+        // Also on a conflict, so the retry reads the current version from the primary
+        recordWrite(table, uuid);
+        return super.writeIfVersion(table, uuid, key, value, type, expiresAt, expectedVersion, now);
+    }
+
+    @Override
+    public boolean delete(String table, UUID uuid, String key) throws SQLException {
+        recordWrite(table, uuid);
+        return super.delete(table, uuid, key);
+    }
+
+    @Override
+    public boolean deleteAll(String table, UUID uuid) throws SQLException {
+        recordWrite(table, uuid);
+        return super.deleteAll(table, uuid);
+    }
+
+    @Override
+    public int deletePlayers(Collection<String> tables, Collection<UUID> uuids) throws SQLException {
+        for (String table : tables) {
+            for (UUID uuid : uuids) {
+                recordWrite(table, uuid);
+            }
+        }
+        return super.deletePlayers(tables, uuids);
+    }
+
+    private MysqlBackend replicaFor(String table, UUID uuid) {
+        ReplicaRouter router = replicas;
+        return router != null ? router.choose(table, uuid, System.currentTimeMillis()) : null;
+    }
+
+    /**
+     * Reads the player from the primary until the write has reached the replicas. Also called for
+     * changes of other servers, so the next cache miss does not read an outdated replica.
+     */
+    void recordWrite(String table, UUID uuid) {
+        ReplicaRouter router = replicas;
+        if (router != null) router.recordWrite(table, uuid, System.currentTimeMillis());
+    }
+
+    private void recordWrites(String table, List<TableEntry> rows) {
+        ReplicaRouter router = replicas;
+        if (router == null) return;
+        long now = System.currentTimeMillis();
+        UUID previous = null;
+        for (TableEntry row : rows) {
+            // Rows of a player usually follow each other
+            if (!row.getUuid().equals(previous)) router.recordWrite(table, row.getUuid(), now);
+            previous = row.getUuid();
+        }
+    }
+
+    @Override
+    protected String keyColumn() {
+        return "KeyName";
+    }
+
+    @Override
+    protected String createTableSql(String table, boolean encoded) {
+        if (encoded) {
+            return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                    "UUID VARCHAR(36)," +
+                    "KeyId INT," +
+                    "Value TEXT," +
+                    "Type VARCHAR(20)," +
+                    "ExpiresAt BIGINT NULL," +
+                    "PRIMARY KEY (UUID, KeyId)," +
+                    "INDEX idx_expires (ExpiresAt)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
+        }
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "UUID VARCHAR(36)," +
+                "KeyName VARCHAR(255)," +
+                "Value TEXT," +
+                "Type VARCHAR(20)," +
+                "ExpiresAt BIGINT NULL," +
+                "PRIMARY KEY (UUID, KeyName)," +
+                "INDEX idx_expires (ExpiresAt)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
+    }
+
+    @Override
+    protected String createWideTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "UUID VARCHAR(36) PRIMARY KEY," +
+                "Data JSON NOT NULL," +
+                "ExpiresAt BIGINT NULL," +
+                "INDEX idx_expires (ExpiresAt)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
+    }
+
+    @Override
+    protected String[] createIndexSql(String table) {
+        return new String[0];
+    }
+
+    @Override
+    protected String createDictionaryTableSql() {
+        return "CREATE TABLE IF NOT EXISTS " + DICTIONARY_TABLE + " (" +
+                "TableName VARCHAR(255)," +
+                "DictId INT," +
+                "Data MEDIUMTEXT," +
+                "PRIMARY KEY (TableName, DictId)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
+    }
+
+    @Override
+    protected String upsertSql(String table, String keyColumn, boolean expiring, boolean versioned) {
+        String version = versioned ? ", Version = Version + 1" : "";
+        return expiring
+                ? "INSERT INTO " + table + " (UUID, " + keyColumn + ", Value, Type, ExpiresAt) VALUES (?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE Value = ?, Type = ?, ExpiresAt = ?" + version
+                : "INSERT INTO " + table + " (UUID, " + keyColumn + ", Value, Type) VALUES (?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE Value = ?, Type = ?" + version;
+    }
+
+    @Override
+    protected String bulkUpsertSql(String table, String keyColumn, boolean expiring, boolean versioned, int rows) {
+        String row = expiring ? "(?, ?, ?, ?, ?)" : "(?, ?, ?, ?)";
+        return "INSERT INTO " + table + " (UUID, " + keyColumn + ", Value, Type" + (expiring ? ", ExpiresAt" : "") + ") VALUES " +
+                String.join(", ", Collections.nCopies(rows, row)) + " " +
+                "ON DUPLICATE KEY UPDATE Value = VALUES(Value), Type = VALUES(Type)" +
+                (expiring ? ", ExpiresAt = VALUES(ExpiresAt)" : "") + (versioned ? ", Version = Version + 1" : "");
+    }
+
+    @Override
+    protected int maxParameters() {
+        // The limit of the binary protocol for server-side prepared statements
+        return 65535;
+    }
+
+    @Override
+    protected String wideUpsertSql(String table) {
+        return "INSERT INTO " + table + " (UUID, Data, ExpiresAt) VALUES (?, JSON_OBJECT(?, JSON_ARRAY(?, ?, ?)), ?) " +
+                "ON DUPLICATE KEY UPDATE Data = JSON_SET(Data, ?, JSON_ARRAY(?, ?, ?)), " +
+                "ExpiresAt = CASE WHEN VALUES(ExpiresAt) IS NULL THEN ExpiresAt WHEN ExpiresAt IS NULL THEN VALUES(ExpiresAt) " +
+                "ELSE LEAST(ExpiresAt, VALUES(ExpiresAt)) END";
+    }
+
+    @Override
+    protected String insertIgnoreSql(String table, String keyColumn, boolean expiring) {
+        return expiring
+                ? "INSERT IGNORE INTO " + table + " (UUID, " + keyColumn + ", Value, Type, ExpiresAt) VALUES (?, ?, ?, ?, ?)"
+                : "INSERT IGNORE INTO " + table + " (UUID, " + keyColumn + ", Value, Type) VALUES (?, ?, ?, ?)";
+    }
+
+    @Override
+    protected String[] replaceTableSql(String table, String replacement) {
+        // RENAME TABLE swaps both tables atomically, DDL is not transactional in MySQL
+        return new String[] {
+                "RENAME TABLE " + table + " TO " + table + REPLACED_SUFFIX + ", " + replacement + " TO " + table,
+                "DROP TABLE " + table + REPLACED_SUFFIX
+        };
+    }
+
+    @Override
+    protected String valueIndexName(String table, String key) {
+        return "idx_values";
+    }
+
+    @Override
+    protected String valueIndexSql(String table, String index, String keyColumn, String keyLiteral) {
+        // One index for all keys, TEXT columns can only be indexed by a prefix
+        return "CREATE INDEX " + index + " ON " + table + " (" + keyColumn + ", Value(191))";
+    }
+
+    @Override
+    protected String wideValueSql(String pathLiteral) {
+        return "JSON_UNQUOTE(JSON_EXTRACT(Data, " + pathLiteral + "))";
+    }
+
+    @Override
+    protected String wideValueIndexSql(String table, String index, String expression) {
+        return null;
+    }
+
+    @Override
+    protected boolean upsertRepeatsValues() {
+        return true;
+    }
+}
@@ -0,0 +1,450 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The second tier of the {@link ValueCache}, holding encoded values in direct {@link ByteBuffer}s outside
+ * of the Java heap. Keeps large sets of rarely read values, e.g. of offline players for leaderboards,
+ * without growing the heap or the work of the garbage collector: the heap only holds the slab buffers
+ * and a few arrays per size class, however many values are cached.
+ * <p>
+ * Values are stored in chunks of fixed size classes, carved from slabs of {@value #SLAB_SIZE} bytes as
+ * in memcached. Each size class has its own LRU list, linked through the chunk headers. When no free
+ * chunk of a class is left and no further slab may be allocated, the least recently used value of that
+ * class is evicted. Slabs keep the class they were first assigned to.
+ * <p>
+ * The index is an open-addressed hash table with linear probing, also off-heap. Slots are placed by
+ * the UUID of the player only, so all values of a player lie in one run of slots and can be removed
+ * together without scanning the table. Deleted slots are closed by shifting later slots back.
+ * <p>
+ * Not thread-safe, used under the lock of the {@link ValueCache}.
+ */
+final class OffHeapCache {
+    static final int SLAB_SIZE = 1 << 20;
+    private static final int OFFSET_BITS = 20;
+    /** Slab numbers must fit into a positive int reference together with the offset. */
+    private static final int MAX_SLABS = (1 << (31 - OFFSET_BITS)) - 1;
+    private static final int SMALLEST_CHUNK = 96;
+    private static final double GROWTH_FACTOR = 1.25;
+
+    // Chunk header: LRU links, the owner of the value and the record
+    private static final int PREV = 0;
+    private static final int NEXT = 4;
+    private static final int MSB = 8;
+    private static final int LSB = 16;
+    private static final int FINGERPRINT = 24;
+    private static final int EXPIRES_AT = 28;
+    private static final int VERSION = 36;
+    private static final int TABLE_LENGTH = 44;
+    private static final int KEY_LENGTH = 46;
+    private static final int TYPE_LENGTH = 48;
+    private static final int VALUE_LENGTH = 52;
+    private static final int DATA = 56;
+
+    // Index slot: UUID, fingerprint of table and key, and the chunk reference, 0 if the slot is empty
+    private static final int SLOT_SIZE = 24;
+    private static final int MAX_SLOTS = 1 << 26;
+
+    private final int[] chunkSizes;
+    private final int[] freeChunks;
+    private final int[] lruHead;
+    private final int[] lruTail;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final int[] slabClasses;
+    private final int maxSlabs;
+    private final ByteBuffer index;
+    private final int mask;
+    private final int maxEntries;
+    private int count;
+    private long evictions;
+
+    /**
+     * @param maxBytes The memory for values, rounded down to whole slabs and at most about 2 GB.
+     * @param maxEntries The maximum number of values, at most about 47 million. The index takes
+     *                   {@value #SLOT_SIZE} bytes per slot, with about 1.5 slots per entry.
+     */
+    OffHeapCache(long maxBytes, int maxEntries) {
+        this.maxSlabs = (int) Math.max(1, Math.min(MAX_SLABS, maxBytes / SLAB_SIZE));
+        this.slabClasses = new int[maxSlabs];
+        int slots = Integer.highestOneBit((int) Math.max(16, Math.min(MAX_SLOTS, maxEntries * 10L / 7)) * 2 - 1);
+        // The probe loops need empty slots, so the index is never filled beyond 70 %
+        this.maxEntries = (int) Math.max(1, Math.min(maxEntries, slots * 7L / 10));
+        this.index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        this.mask = slots - 1;
+
+        List<Integer> sizes = new ArrayList<>();
+        for (double size = SMALLEST_CHUNK; size < SLAB_SIZE; size *= GROWTH_FACTOR) {
+            sizes.add(((int) size + 7) & ~7);
+        }
+        sizes.add(SLAB_SIZE);
+        this.chunkSizes = sizes.stream().mapToInt(Integer::intValue).distinct().toArray();
+        this.freeChunks = new int[chunkSizes.length];
+        this.lruHead = new int[chunkSizes.length];
+        this.lruTail = new int[chunkSizes.length];
+    }
+
+    /**
+     * @return The cached value, or null if the key is not cached.
+     */
+    StoredValue get(EntryKey key) {
+        int slot = find(key);
+        if (slot < 0) return null;
+        int ref = index.getInt(slot * SLOT_SIZE + 20);
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        int tableLength = Short.toUnsignedInt(slab.getShort(base + TABLE_LENGTH));
+        int keyLength = Short.toUnsignedInt(slab.getShort(base + KEY_LENGTH));
+        int position = base + DATA + tableLength + keyLength;
+        String type = readString(slab, position, slab.getInt(base + TYPE_LENGTH));
+        position += Math.max(0, slab.getInt(base + TYPE_LENGTH));
+        String value = readString(slab, position, slab.getInt(base + VALUE_LENGTH));
+        touch(ref);
+        return new StoredValue(value, type, slab.getLong(base + EXPIRES_AT), slab.getLong(base + VERSION));
+    }
+
+    /**
+     * Caches a value, replacing a cached one. Values larger than a slab are not cached.
+     * @return false if the value was not cached.
+     */
+    boolean put(EntryKey key, StoredValue value) {
+        remove(key);
+        byte[] table = key.table.getBytes(StandardCharsets.UTF_8);
+        byte[] name = key.key.getBytes(StandardCharsets.UTF_8);
+        byte[] type = value.getType() != null ? value.getType().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] data = value.getValue() != null ? value.getValue().getBytes(StandardCharsets.UTF_8) : null;
+        if (table.length > 0xFFFF || name.length > 0xFFFF) return false;
+        long size = (long) DATA + table.length + name.length + (type != null ? type.length : 0) + (data != null ? data.length : 0);
+        int sizeClass = sizeClass(size);
+        if (sizeClass < 0) return false;
+        if (count >= maxEntries && !evictAny()) return false;
+        int ref = allocate(sizeClass);
+        if (ref == 0) return false;
+
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        int fingerprint = fingerprint(key);
+        slab.putLong(base + MSB, key.uuid.getMostSignificantBits());
+        slab.putLong(base + LSB, key.uuid.getLeastSignificantBits());
+        slab.putInt(base + FINGERPRINT, fingerprint);
+        slab.putLong(base + EXPIRES_AT, value.getExpiresAt());
+        slab.putLong(base + VERSION, value.getVersion());
+        slab.putShort(base + TABLE_LENGTH, (short) table.length);
+        slab.putShort(base + KEY_LENGTH, (short) name.length);
+        slab.putInt(base + TYPE_LENGTH, type != null ? type.length : -1);
+        slab.putInt(base + VALUE_LENGTH, data != null ? data.length : -1);
+        int position = base + DATA;
+        slab.put(position, table);
+        position += table.length;
+        slab.put(position, name);
+        position += name.length;
+        if (type != null) {
+            slab.put(position, type);
+            position += type.length;
+        }
+        if (data != null) slab.put(position, data);
+        linkHead(sizeClass, ref);
+
+        int slot = home(key.uuid.getMostSignificantBits(), key.uuid.getLeastSignificantBits());
+        while (index.getInt(slot * SLOT_SIZE + 20) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        int slotPosition = slot * SLOT_SIZE;
+        index.putLong(slotPosition, key.uuid.getMostSignificantBits());
+        index.putLong(slotPosition + 8, key.uuid.getLeastSignificantBits());
+        index.putInt(slotPosition + 16, fingerprint);
+        index.putInt(slotPosition + 20, ref);
+        count++;
+        return true;
+    }
+
+    /**
+     * Removes a key from the cache.
+     */
+    void remove(EntryKey key) {
+        int slot = find(key);
+        if (slot >= 0) removeSlot(slot);
+    }
+
+    /**
+     * Removes all keys of a player.
+     * @param table Only keys of this table, or null for all tables.
+     */
+    void removePlayer(UUID uuid, String table) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        byte[] tableBytes = table != null ? table.getBytes(StandardCharsets.UTF_8) : null;
+        // All values of the player are in the run of slots starting at its home slot
+        int slot = home(msb, lsb);
+        while (true) {
+            int position = slot * SLOT_SIZE;
+            int ref = index.getInt(position + 20);
+            if (ref == 0) return;
+            if (index.getLong(position) == msb && index.getLong(position + 8) == lsb
+                    && (tableBytes == null || tableMatches(ref, tableBytes))) {
+                // A later slot may have been shifted into this one, so it is looked at again
+                removeSlot(slot);
+                continue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes all keys. The slabs stay allocated.
+     */
+    void clear() {
+        for (int slot = 0; slot <= mask; slot++) {
+            index.putInt(slot * SLOT_SIZE + 20, 0);
+        }
+        Arrays.fill(freeChunks, 0);
+        Arrays.fill(lruHead, 0);
+        Arrays.fill(lruTail, 0);
+        for (int slab = 0; slab < slabs.size(); slab++) {
+            carve(slab);
+        }
+        count = 0;
+    }
+
+    /**
+     * @return The number of cached values.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return The number of values evicted to make room for others.
+     */
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The bytes allocated outside of the heap, for slabs and the index.
+     */
+    long allocatedBytes() {
+        return (long) slabs.size() * SLAB_SIZE + index.capacity();
+    }
+
+    private int find(EntryKey key) {
+        long msb = key.uuid.getMostSignificantBits();
+        long lsb = key.uuid.getLeastSignificantBits();
+        int fingerprint = fingerprint(key);
+        byte[] table = null;
+        byte[] name = null;
+        int slot = home(msb, lsb);
+        while (true) {
+            int position = slot * SLOT_SIZE;
+            int ref = index.getInt(position + 20);
+            if (ref == 0) return -1;
+            if (index.getInt(position + 16) == fingerprint && index.getLong(position) == msb && index.getLong(position + 8) == lsb) {
+                // The fingerprint may collide, so table and key are compared as well
+                if (table == null) {
+                    table = key.table.getBytes(StandardCharsets.UTF_8);
+                    name = key.key.getBytes(StandardCharsets.UTF_8);
+                }
+                if (tableMatches(ref, table) && keyMatches(ref, table.length, name)) return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Frees the chunk of a slot and closes the gap in the run of slots.
+     */
+    private void removeSlot(int slot) {
+        int ref = index.getInt(slot * SLOT_SIZE + 20);
+        free(ref);
+        count--;
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int position = next * SLOT_SIZE;
+            if (index.getInt(position + 20) == 0) break;
+            int home = home(index.getLong(position), index.getLong(position + 8));
+            // Slots whose home lies cyclically in (gap, next] must stay where they are
+            boolean stays = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+            if (stays) continue;
+            copySlot(next, gap);
+            gap = next;
+        }
+        index.putInt(gap * SLOT_SIZE + 20, 0);
+    }
+
+    private void copySlot(int from, int to) {
+        int source = from * SLOT_SIZE;
+        int target = to * SLOT_SIZE;
+        index.putLong(target, index.getLong(source));
+        index.putLong(target + 8, index.getLong(source + 8));
+        index.putInt(target + 16, index.getInt(source + 16));
+        index.putInt(target + 20, index.getInt(source + 20));
+    }
+
+    /**
+     * Removes the slot that points to a chunk, found through the owner stored in the chunk.
+     */
+    private void removeChunk(int ref) {
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        int slot = home(slab.getLong(base + MSB), slab.getLong(base + LSB));
+        while (index.getInt(slot * SLOT_SIZE + 20) != ref) {
+            slot = (slot + 1) & mask;
+        }
+        removeSlot(slot);
+    }
+
+    /**
+     * @return A chunk of the size class, or 0 if none can be allocated or evicted.
+     */
+    private int allocate(int sizeClass) {
+        if (freeChunks[sizeClass] == 0 && slabs.size() < maxSlabs) {
+            slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE));
+            slabClasses[slabs.size() - 1] = sizeClass;
+            carve(slabs.size() - 1);
+        }
+        if (freeChunks[sizeClass] == 0) {
+            int eldest = lruTail[sizeClass];
+            if (eldest == 0) return 0;
+            removeChunk(eldest);
+            evictions++;
+        }
+        int ref = freeChunks[sizeClass];
+        freeChunks[sizeClass] = slab(ref).getInt(offset(ref) + NEXT);
+        return ref;
+    }
+
+    /**
+     * Evicts the least recently used value of the smallest size class in use, to make room in the index.
+     * @return false if nothing can be evicted.
+     */
+    private boolean evictAny() {
+        for (int sizeClass = 0; sizeClass < chunkSizes.length; sizeClass++) {
+            if (lruTail[sizeClass] != 0) {
+                removeChunk(lruTail[sizeClass]);
+                evictions++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds all chunks of a slab to the free list of its size class.
+     */
+    private void carve(int slab) {
+        int sizeClass = slabClasses[slab];
+        int chunkSize = chunkSizes[sizeClass];
+        ByteBuffer buffer = slabs.get(slab);
+        for (int offset = (SLAB_SIZE / chunkSize - 1) * chunkSize; offset >= 0; offset -= chunkSize) {
+            int ref = ((slab + 1) << OFFSET_BITS) | offset;
+            buffer.putInt(offset + NEXT, freeChunks[sizeClass]);
+            freeChunks[sizeClass] = ref;
+        }
+    }
+
+    private void free(int ref) {
+        int sizeClass = slabClasses[(ref >>> OFFSET_BITS) - 1];
+        unlink(sizeClass, ref);
+        slab(ref).putInt(offset(ref) + NEXT, freeChunks[sizeClass]);
+        freeChunks[sizeClass] = ref;
+    }
+
+    private void touch(int ref) {
+        int sizeClass = slabClasses[(ref >>> OFFSET_BITS) - 1];
+        if (lruHead[sizeClass] == ref) return;
+        unlink(sizeClass, ref);
+        linkHead(sizeClass, ref);
+    }
+
+    private void linkHead(int sizeClass, int ref) {
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        int head = lruHead[sizeClass];
+        slab.putInt(base + PREV, 0);
+        slab.putInt(base + NEXT, head);
+        if (head != 0) {
+            slab(head).putInt(offset(head) + PREV, ref);
+        } else {
+            lruTail[sizeClass] = ref;
+        }
+        lruHead[sizeClass] = ref;
+    }
+
+    private void unlink(int sizeClass, int ref) {
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        int prev = slab.getInt(base + PREV);
+        int next = slab.getInt(base + NEXT);
+        if (prev != 0) {
+            slab(prev).putInt(offset(prev) + NEXT, next);
+        } else {
+            lruHead[sizeClass] = next;
+        }
+        if (next != 0) {
+            slab(next).putInt(offset(next) + PREV, prev);
+        } else {
+            lruTail[sizeClass] = prev;
+        }
+    }
+
+    private boolean tableMatches(int ref, byte[] table) {
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        return Short.toUnsignedInt(slab.getShort(base + TABLE_LENGTH)) == table.length
+                && bytesMatch(slab, base + DATA, table);
+    }
+
+    private boolean keyMatches(int ref, int tableLength, byte[] key) {
+        ByteBuffer slab = slab(ref);
+        int base = offset(ref);
+        return Short.toUnsignedInt(slab.getShort(base + KEY_LENGTH)) == key.length
+                && bytesMatch(slab, base + DATA + tableLength, key);
+    }
+
+    private static boolean bytesMatch(ByteBuffer slab, int position, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (slab.get(position + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer slab, int position, int length) {
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        slab.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The smallest size class holding the given number of bytes, or -1 if none does.
+     */
+    private int sizeClass(long size) {
+        for (int sizeClass = 0; sizeClass < chunkSizes.length; sizeClass++) {
+            if (chunkSizes[sizeClass] >= size) return sizeClass;
+        }
+        return -1;
+    }
+
+    private ByteBuffer slab(int ref) {
+        return slabs.get((ref >>> OFFSET_BITS) - 1);
+    }
+
+    private static int offset(int ref) {
+        return ref & ((1 << OFFSET_BITS) - 1);
+    }
+
+    private int home(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int fingerprint(EntryKey key) {
+        return key.table.hashCode() * 31 + key.key.hashCode();
+    }
+}
@@ -0,0 +1,93 @@
+package com.trynocs.tryLibs.utils.database;
+
+/**
+ * A snapshot of the metrics of one database operation, either for one table or for one calling plugin.
+ * All latencies are in microseconds.
+ */
+public class OperationStats {
+    private final String operation;
+    private final String scope;
+    private final long count;
+    private final long errors;
+    private final int inFlight;
+    private final double mean;
+    private final long p50;
+    private final long p99;
+    private final long max;
+
+    OperationStats(String operation, String scope, long count, long errors, int inFlight,
+                   double mean, long p50, long p99, long max) {
+        this.operation = operation;
+        this.scope = scope;
+        this.count = count;
+        this.errors = errors;
+        this.inFlight = inFlight;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * @return The operation, e.g. {@code save} or {@code load}.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return The table name, or the plugin name for per-plugin statistics.
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * @return The number of completed calls.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of failed calls.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return The number of calls currently running.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return The mean latency.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The median latency.
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * @return The 99th percentile latency.
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * @return The highest latency.
+     */
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,243 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares the database between the plugins that use the {@link DatabaseHandler}, so one plugin cannot
+ * crowd out the others.
+ * <p>
+ * Each plugin has a quota of concurrent database calls and of calls per second. The total number of
+ * concurrent calls is limited as well. When calls have to wait, free slots go to the waiting plugins in
+ * weighted round-robin: each plugin gets up to its weight of calls per turn, in the order of its calls.
+ * A call that waits longer than the maximum wait is rejected. Writes queued on the worker thread take a slot
+ * as well, but their call was already counted against the calls per second and they are never rejected.
+ * <p>
+ * Calls made while the thread already holds a slot, e.g. a load within an update, are not counted again.
+ * Thread-safe.
+ */
+final class PluginScheduler {
+
+    /**
+     * The limits of one plugin.
+     */
+    static final class Quota {
+        final int maxConcurrent;
+        final double opsPerSecond;
+        final int weight;
+
+        /**
+         * @param maxConcurrent The maximum number of concurrent calls.
+         * @param opsPerSecond The maximum calls per second, or 0 for no limit. Up to one second of calls may
+         *                     run at once after an idle time.
+         * @param weight The calls per round-robin turn.
+         */
+        Quota(int maxConcurrent, double opsPerSecond, int weight) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.opsPerSecond = Math.max(0, opsPerSecond);
+            this.weight = Math.max(1, weight);
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition granted;
+        private final boolean token;
+        private boolean admitted;
+
+        /**
+         * @param token Whether the call is counted against the calls per second.
+         */
+        private Waiter(Condition granted, boolean token) {
+            this.granted = granted;
+            this.token = token;
+        }
+    }
+
+    private static final class PluginState {
+        private final Quota quota;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private int running;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private int credit;
+        private boolean queued;
+
+        private PluginState(Quota quota) {
+            this.quota = quota;
+            this.tokens = Math.max(1, quota.opsPerSecond);
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, PluginState> plugins = new HashMap<>();
+    // Plugins with waiting calls, in round-robin order. The head is the plugin whose turn it is.
+    private final Deque<PluginState> turns = new ArrayDeque<>();
+    private final ThreadLocal<PluginState> holding = new ThreadLocal<>();
+    private final int maxConcurrent;
+    private final long maxWaitNanos;
+    private final Quota defaultQuota;
+    private final Map<String, Quota> quotas;
+    private int running;
+
+    /**
+     * @param maxConcurrent The maximum number of concurrent calls of all plugins.
+     * @param maxWaitMillis The maximum time a call waits for a slot.
+     * @param defaultQuota The quota of plugins without their own.
+     * @param quotas The quotas by plugin name.
+     */
+    PluginScheduler(int maxConcurrent, long maxWaitMillis, Quota defaultQuota, Map<String, Quota> quotas) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.defaultQuota = defaultQuota;
+        this.quotas = new HashMap<>(quotas);
+    }
+
+    /**
+     * Waits for a slot of a plugin.
+     * @param plugin The name of the calling plugin.
+     * @return The task that frees the slot, or null if the thread already holds one.
+     * @throws RejectedExecutionException if no slot was free within the maximum wait or the thread was interrupted.
+     */
+    Runnable acquire(String plugin) {
+        return acquire(plugin, true);
+    }
+
+    /**
+     * Waits for a concurrency slot of a plugin for a write it queued on the worker thread. The write is not
+     * counted against the calls per second again and waits without limit.
+     * @param plugin The name of the plugin that queued the write.
+     * @return The task that frees the slot, or null if the thread already holds one.
+     * @throws RejectedExecutionException if the thread was interrupted.
+     */
+    Runnable acquireSlot(String plugin) {
+        return acquire(plugin, false);
+    }
+
+    private Runnable acquire(String plugin, boolean token) {
+        if (holding.get() != null) return null;
+        lock.lock();
+        try {
+            PluginState state = plugins.computeIfAbsent(plugin, name -> new PluginState(quotas.getOrDefault(name, defaultQuota)));
+            if (state.waiters.isEmpty() && canRun(state, token)) {
+                admit(state, token);
+            } else {
+                await(plugin, state, token);
+            }
+            holding.set(state);
+            return () -> release(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await(String plugin, PluginState state, boolean token) {
+        Waiter waiter = new Waiter(lock.newCondition(), token);
+        state.waiters.addLast(waiter);
+        if (!state.queued) {
+            state.queued = true;
+            turns.addLast(state);
+        }
+        long deadline = token ? System.nanoTime() + maxWaitNanos : Long.MAX_VALUE;
+        try {
+            while (!waiter.admitted) {
+                long remaining = token ? deadline - System.nanoTime() : Long.MAX_VALUE;
+                if (remaining <= 0) {
+                    throw new RejectedExecutionException("Datenbank-Kontingent von Plugin '" + plugin + "' ausgeschöpft, Zugriff nach "
+                            + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms Wartezeit abgelehnt");
+                }
+                // Nobody signals when new tokens are due, so the wait ends in time to take them
+                waiter.granted.awaitNanos(Math.min(remaining, nanosUntilToken(state)));
+                if (!waiter.admitted) dispatch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!waiter.admitted) {
+                throw new RejectedExecutionException("Warten auf das Datenbank-Kontingent von Plugin '" + plugin + "' unterbrochen", e);
+            }
+        } finally {
+            if (!waiter.admitted) {
+                state.waiters.remove(waiter);
+                if (state.waiters.isEmpty() && state.queued) {
+                    state.queued = false;
+                    state.credit = 0;
+                    turns.remove(state);
+                }
+            }
+        }
+    }
+
+    private void release(PluginState state) {
+        holding.remove();
+        lock.lock();
+        try {
+            state.running--;
+            running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admits waiting calls while slots are free. A plugin keeps its turn until it has used its weight, has no
+     * more waiting calls or reached its own limits. If all slots are taken, the turn continues with the next free one.
+     */
+    private void dispatch() {
+        int skipped = 0;
+        while (running < maxConcurrent && !turns.isEmpty() && skipped < turns.size()) {
+            PluginState state = turns.peekFirst();
+            if (state.credit == 0) state.credit = state.quota.weight;
+            boolean admitted = false;
+            while (state.credit > 0 && !state.waiters.isEmpty() && running < maxConcurrent
+                    && canRun(state, state.waiters.peekFirst().token)) {
+                Waiter waiter = state.waiters.pollFirst();
+                waiter.admitted = true;
+                admit(state, waiter.token);
+                state.credit--;
+                waiter.granted.signal();
+                admitted = true;
+            }
+            if (state.waiters.isEmpty()) {
+                turns.pollFirst();
+                state.queued = false;
+                state.credit = 0;
+            } else if (running >= maxConcurrent && state.credit > 0) {
+                return;
+            } else {
+                turns.addLast(turns.pollFirst());
+                state.credit = 0;
+            }
+            skipped = admitted ? 0 : skipped + 1;
+        }
+    }
+
+    /**
+     * @param token Whether the call needs a token of the calls per second.
+     */
+    private boolean canRun(PluginState state, boolean token) {
+        if (running >= maxConcurrent || state.running >= state.quota.maxConcurrent) return false;
+        if (!token || state.quota.opsPerSecond == 0) return true;
+        long now = System.nanoTime();
+        state.tokens = Math.min(Math.max(1, state.quota.opsPerSecond),
+                state.tokens + (now - state.refilledAt) * state.quota.opsPerSecond / 1e9);
+        state.refilledAt = now;
+        return state.tokens >= 1;
+    }
+
+    private void admit(PluginState state, boolean token) {
+        state.running++;
+        running++;
+        if (token && state.quota.opsPerSecond > 0) state.tokens--;
+    }
+
+    private static long nanosUntilToken(PluginState state) {
+        if (state.quota.opsPerSecond == 0 || state.tokens >= 1) return Long.MAX_VALUE;
+        return Math.max(1, (long) ((1 - state.tokens) * 1e9 / state.quota.opsPerSecond));
+    }
+}
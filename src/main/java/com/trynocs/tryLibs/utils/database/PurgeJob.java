@@ -0,0 +1,98 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running deletion of players started by {@link DatabaseHandler#purgePlayers(java.util.Collection)}.
+ * The players are deleted in batches on a background thread, with a pause between batches so
+ * the database keeps serving the server. Thread-safe.
+ * <p>
+ * Beispiel:
+ * <pre>
+ *   PurgeJob job = handler.purgePlayers(inactivePlayers);
+ *   job.getCompletion().thenAccept(rows -&gt; getLogger().info(rows + " Zeilen gelöscht"));
+ * </pre>
+ */
+public final class PurgeJob {
+    private final int total;
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicLong deletedRows = new AtomicLong();
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    private volatile boolean cancelled;
+
+    PurgeJob(int total) {
+        this.total = total;
+    }
+
+    /**
+     * @return The number of players to delete.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The number of players deleted so far.
+     */
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return The number of rows deleted so far, over all tables.
+     */
+    public long getDeletedRows() {
+        return deletedRows.get();
+    }
+
+    /**
+     * @return The deleted share of the players, from 0 to 1.
+     */
+    public double getProgress() {
+        return total == 0 ? 1.0 : (double) processed.get() / total;
+    }
+
+    /**
+     * @return true if the job has finished, failed or was cancelled.
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Stops the job after the running batch. Deleted players stay deleted, and
+     * {@link #getCompletion()} completes with the rows deleted until then.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if {@link #cancel()} was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return A future with the number of deleted rows, completed exceptionally if a batch failed.
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+
+    void addBatch(int players, long rows) {
+        processed.addAndGet(players);
+        deletedRows.addAndGet(rows);
+    }
+
+    void complete() {
+        completion.complete(deletedRows.get());
+    }
+
+    void fail(Throwable cause) {
+        completion.completeExceptionally(cause);
+    }
+}
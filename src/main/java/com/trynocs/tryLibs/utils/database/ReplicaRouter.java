@@ -0,0 +1,167 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Chooses the MySQL replica for a read of the {@link MysqlBackend}.
+ * <p>
+ * Reads are spread round-robin over the replicas that are reachable and at most {@code maxLagMillis}
+ * behind the primary. A background thread checks the lag of every replica each {@code checkIntervalMillis}.
+ * Players written by this server within the last {@code readYourWritesMillis} are read from the primary,
+ * so a server always sees its own writes. Without a usable replica, reads go to the primary.
+ */
+final class ReplicaRouter {
+    private static final class Replica {
+        final String name;
+        final MysqlBackend backend;
+        volatile boolean available;
+
+        Replica(String name, MysqlBackend backend) {
+            this.name = name;
+            this.backend = backend;
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long readYourWritesMillis;
+    private final long checkIntervalMillis;
+    private final Logger logger;
+    private final AtomicInteger next = new AtomicInteger();
+    // Table and UUID -> time until which reads of the player go to the primary
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+    private ScheduledExecutorService checker;
+
+    /**
+     * @param replicas The replicas by name, e.g. {@code host:port}.
+     * @param readYourWritesMillis Raised to at least {@code maxLagMillis + checkIntervalMillis}, because a replica
+     *                             may fall that far behind before it is taken out.
+     */
+    ReplicaRouter(Map<String, MysqlBackend> replicas, long maxLagMillis, long readYourWritesMillis,
+                  long checkIntervalMillis, Logger logger) {
+        for (Map.Entry<String, MysqlBackend> replica : replicas.entrySet()) {
+            this.replicas.add(new Replica(replica.getKey(), replica.getValue()));
+        }
+        this.maxLagMillis = maxLagMillis;
+        this.checkIntervalMillis = Math.max(100, checkIntervalMillis);
+        this.readYourWritesMillis = Math.max(readYourWritesMillis, maxLagMillis + this.checkIntervalMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * Starts checking the replicas. Until the first check, reads go to the primary.
+     */
+    synchronized void start() {
+        if (checker != null) return;
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TryLibs-Database-Replicas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops checking and closes the connections to the replicas.
+     */
+    synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+        for (Replica replica : replicas) {
+            replica.available = false;
+            closeQuietly(replica);
+        }
+    }
+
+    /**
+     * @return The replica to read a player from, or null to read from the primary.
+     */
+    MysqlBackend choose(String table, UUID uuid, long now) {
+        String player = player(table, uuid);
+        Long until = recentWrites.get(player);
+        if (until != null) {
+            if (until > now) return null;
+            recentWrites.remove(player, until);
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.available) return replica.backend;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the player from the primary until the write has reached the replicas.
+     */
+    void recordWrite(String table, UUID uuid, long now) {
+        recentWrites.put(player(table, uuid), now + readYourWritesMillis);
+    }
+
+    /**
+     * Takes a replica out until the next successful check, after a read from it failed.
+     */
+    void failed(MysqlBackend backend, SQLException e) {
+        for (Replica replica : replicas) {
+            if (replica.backend != backend) continue;
+            if (replica.available) {
+                replica.available = false;
+                logger.warning("Replikat " + replica.name + " nicht erreichbar, Lesezugriffe gehen an den Primärserver: " + e.getMessage());
+            }
+            closeQuietly(replica);
+        }
+    }
+
+    private void checkAll() {
+        long now = System.currentTimeMillis();
+        recentWrites.values().removeIf(until -> until <= now);
+        for (Replica replica : replicas) {
+            check(replica);
+        }
+    }
+
+    private void check(Replica replica) {
+        try {
+            Long lagSeconds = replica.backend.readReplicationLag();
+            boolean usable = lagSeconds != null && lagSeconds * 1000 <= maxLagMillis;
+            if (usable && !replica.available) {
+                logger.info("Replikat " + replica.name + " wird für Lesezugriffe verwendet.");
+            } else if (!usable && replica.available) {
+                logger.warning("Replikat " + replica.name + (lagSeconds == null ? " repliziert nicht" : " liegt " + lagSeconds + " s zurück")
+                        + ", Lesezugriffe gehen an den Primärserver.");
+            }
+            replica.available = usable;
+        } catch (SQLException e) {
+            if (replica.available) {
+                logger.warning("Replikat " + replica.name + " nicht erreichbar, Lesezugriffe gehen an den Primärserver: " + e.getMessage());
+            }
+            replica.available = false;
+            closeQuietly(replica);
+        }
+    }
+
+    private static void closeQuietly(Replica replica) {
+        try {
+            replica.backend.close();
+        } catch (SQLException ignored) {
+            // Reconnected by the next check
+        }
+    }
+
+    private static String player(String table, UUID uuid) {
+        return table + '\u0000' + uuid;
+    }
+}
@@ -0,0 +1,127 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The versioned schema changes of one plugin, applied by {@link DatabaseHandler#migrate(SchemaMigrations)}.
+ * <p>
+ * Each migration runs once per database: applied versions are recorded in the {@code trylibs_schema}
+ * table, and a lock keeps two servers from running the same migration. Once all versions are applied,
+ * {@code migrate} only reads the recorded versions, so plugins no longer need to repeat
+ * {@code CREATE TABLE IF NOT EXISTS} on every start. Versions are applied in ascending order.
+ * A migration that fails is run again by the next {@code migrate}, so it should tolerate a partly
+ * applied previous attempt, as DDL cannot be rolled back on MySQL.
+ * <p>
+ * Beispiel:
+ * <pre>
+ *   handler.migrate(new SchemaMigrations("economy")
+ *           .add(1, "Tabelle accounts", schema -&gt; schema.createTable("accounts"))
+ *           .add(2, "Tabelle banks", schema -&gt; schema.createWideTable("banks")));
+ * </pre>
+ */
+public final class SchemaMigrations {
+    /**
+     * One schema change.
+     */
+    @FunctionalInterface
+    public interface Migration {
+        /**
+         * Applies the change.
+         * @param schema Access to the database.
+         * @throws SQLException if the change fails. Later versions are not applied then.
+         */
+        void migrate(Schema schema) throws SQLException;
+    }
+
+    /**
+     * The operations available to a {@link Migration}.
+     */
+    public interface Schema {
+        /**
+         * Creates a key-value table as {@link DatabaseHandler#createTable(String)} does.
+         */
+        void createTable(String name) throws SQLException;
+
+        /**
+         * Creates a table with one row per player as {@link DatabaseHandler#createWideTable(String)} does.
+         */
+        void createWideTable(String name) throws SQLException;
+
+        /**
+         * Checks whether a table exists.
+         */
+        boolean tableExists(String name) throws SQLException;
+
+        /**
+         * Runs an SQL statement. Not supported by the {@code memory} and {@code local} databases.
+         */
+        void execute(String sql) throws SQLException;
+
+        /**
+         * @return The configured database type, e.g. {@code "sqlite"} or {@code "mysql"}, for dialect-specific statements.
+         */
+        String getDatabaseType();
+    }
+
+    /**
+     * A migration with its description.
+     */
+    static final class Step {
+        final String description;
+        final Migration migration;
+
+        Step(String description, Migration migration) {
+            this.description = description;
+            this.migration = migration;
+        }
+    }
+
+    private final String name;
+    private final TreeMap<Integer, Step> steps = new TreeMap<>();
+
+    /**
+     * @param name The name the versions are recorded under, usually the plugin name. Must not change between releases.
+     */
+    public SchemaMigrations(String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("Der Name darf nicht leer sein");
+        this.name = name;
+    }
+
+    /**
+     * Adds a migration.
+     * @param version The version, at least 1 and unique within these migrations.
+     * @param description A short description for the log.
+     * @param migration The change.
+     * @return These migrations.
+     */
+    public SchemaMigrations add(int version, String description, Migration migration) {
+        if (version < 1) throw new IllegalArgumentException("Die Version muss mindestens 1 sein: " + version);
+        if (steps.containsKey(version)) throw new IllegalArgumentException("Version " + version + " ist bereits vorhanden");
+        steps.put(version, new Step(description, migration));
+        return this;
+    }
+
+    /**
+     * @return The name the versions are recorded under.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The highest version, or 0 if no migration was added.
+     */
+    public int getLatestVersion() {
+        return steps.isEmpty() ? 0 : steps.lastKey();
+    }
+
+    /**
+     * @return The migrations by version in ascending order.
+     */
+    Map<Integer, Step> getSteps() {
+        return Collections.unmodifiableMap(steps);
+    }
+}
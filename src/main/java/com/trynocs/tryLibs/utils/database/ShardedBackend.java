@@ -0,0 +1,544 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the players of every table over several backends by consistent hashing of their UUID.
+ * <p>
+ * Each shard is placed on a hash ring at {@code virtualNodes} positions derived from its name,
+ * and a player belongs to the first shard after the hash of the UUID. Adding a shard therefore
+ * only moves the players that now belong to it; {@link #rebalance(String, int)} moves their rows.
+ * <p>
+ * The shards the data was laid out for are stored on the first shard. When they change, a marker is stored
+ * there as well, and until {@link #finishRebalance()} removes it, every server also looks for players on
+ * the other shards and deletes them on all shards, so players that were not moved yet are not missing.
+ * <p>
+ * Operations on one player go to its shard. Schema changes, expiry sweeps and scans over all players
+ * run on all shards in parallel, and scan pages are merged in UUID order. Compression dictionaries
+ * are kept on the first shard, so their ids are unique.
+ */
+class ShardedBackend implements StorageBackend {
+    private static final String STATE_TABLE = "trylibs_shards";
+    private static final UUID STATE_ID = new UUID(0L, 0L);
+    private static final String LAYOUT_KEY = "layout";
+    private static final String MOVING_KEY = "moving";
+    private static final long MOVING_CHECK_MILLIS = 60000;
+
+    private static final class Shard {
+        final String name;
+        final StorageBackend backend;
+
+        Shard(String name, StorageBackend backend) {
+            this.name = name;
+            this.backend = backend;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardFunction<T> {
+        T apply(StorageBackend backend) throws SQLException;
+    }
+
+    private final List<Shard> shards = new ArrayList<>();
+    // Hash -> shard, with virtualNodes entries per shard
+    private final NavigableMap<Long, Shard> ring = new TreeMap<>();
+    private final ExecutorService executor;
+    // The shard names and ring positions, stored to detect added shards
+    private final String layout;
+    // Number of running rebalances. While one runs, players may still be on their old shard.
+    private final AtomicInteger rebalancing = new AtomicInteger();
+    // Whether players may still be on their old shard, until the stored marker is known to be gone
+    private volatile boolean moving = true;
+    private volatile long movingCheckedAt;
+
+    /**
+     * @param shards The backends by name. The names place the shards on the ring and must not change.
+     * @param virtualNodes The positions of each shard on the ring. More positions spread players more evenly.
+     */
+    ShardedBackend(Map<String, StorageBackend> shards, int virtualNodes) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("Mindestens ein Shard wird benötigt");
+        for (Map.Entry<String, StorageBackend> entry : shards.entrySet()) {
+            Shard shard = new Shard(entry.getKey(), entry.getValue());
+            this.shards.add(shard);
+            for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+                ring.put(hash(shard.name + '#' + i), shard);
+            }
+        }
+        this.layout = new TreeSet<>(shards.keySet()) + "#" + Math.max(1, virtualNodes);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "TryLibs-Database-Shard-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static long hash(String name) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(name.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long hash(UUID uuid) {
+        // Random UUIDs are already uniform, the mix spreads other versions as well
+        long h = uuid.getMostSignificantBits() ^ Long.rotateLeft(uuid.getLeastSignificantBits(), 32);
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private Shard shardFor(UUID uuid) {
+        Map.Entry<Long, Shard> entry = ring.ceilingEntry(hash(uuid));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * @return The name of the shard a player belongs to.
+     */
+    String shardName(UUID uuid) {
+        return shardFor(uuid).name;
+    }
+
+    private StorageBackend owner(UUID uuid) {
+        return shardFor(uuid).backend;
+    }
+
+    private StorageBackend home() {
+        return shards.get(0).backend;
+    }
+
+    /**
+     * Runs a function on all shards in parallel.
+     * @return The results in the order of the shards.
+     * @throws SQLException the first error of a shard, after all shards have finished.
+     */
+    private <T> List<T> forAll(ShardFunction<T> function) throws SQLException {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (Shard shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return function.apply(shard.backend);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        List<T> results = new ArrayList<>();
+        SQLException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof SQLException)) throw e;
+                if (failure == null) failure = (SQLException) e.getCause();
+            }
+        }
+        if (failure != null) throw failure;
+        return results;
+    }
+
+    /**
+     * @return true if players may still be stored on another shard than the one they belong to.
+     */
+    private boolean isMoving() {
+        if (rebalancing.get() > 0) return true;
+        if (!moving) return false;
+        long now = System.currentTimeMillis();
+        if (now - movingCheckedAt >= MOVING_CHECK_MILLIS) {
+            movingCheckedAt = now;
+            try {
+                // Finished by another server
+                moving = home().read(STATE_TABLE, STATE_ID, MOVING_KEY, now) != null;
+            } catch (SQLException ignored) {
+                // Checked again later, until then all shards are searched
+            }
+        }
+        return moving;
+    }
+
+    /**
+     * Compares the shards with those the data was laid out for and stores a marker if shards were added,
+     * so all servers look for players on their old shard until they are moved.
+     */
+    private void loadLayout() throws SQLException {
+        StorageBackend home = home();
+        home.createTable(STATE_TABLE);
+        long now = System.currentTimeMillis();
+        StoredValue stored = home.read(STATE_TABLE, STATE_ID, LAYOUT_KEY, now);
+        if (stored == null ? shards.size() > 1 : !layout.equals(stored.getValue())) {
+            // Stored first, so a crash in between cannot lose the marker. Without a stored layout
+            // it is unknown where the players are.
+            home.write(STATE_TABLE, STATE_ID, MOVING_KEY, stored != null ? stored.getValue() : "", "string", 0L);
+        }
+        if (stored == null || !layout.equals(stored.getValue())) {
+            home.write(STATE_TABLE, STATE_ID, LAYOUT_KEY, layout, "string", 0L);
+        }
+        moving = home.read(STATE_TABLE, STATE_ID, MOVING_KEY, now) != null;
+        movingCheckedAt = now;
+    }
+
+    /**
+     * @return true if players have to be moved with {@link #rebalance(String, int)} since shards were added.
+     */
+    boolean needsRebalance() {
+        return isMoving();
+    }
+
+    /**
+     * Removes the marker of added shards once all tables have been rebalanced. Other servers stop looking
+     * for players on other shards within a minute.
+     * @throws SQLException if a database access error occurs.
+     */
+    void finishRebalance() throws SQLException {
+        home().delete(STATE_TABLE, STATE_ID, MOVING_KEY);
+        moving = false;
+    }
+
+    private List<StorageBackend> others(StorageBackend owner) {
+        List<StorageBackend> others = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.backend != owner) others.add(shard.backend);
+        }
+        return others;
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (Shard shard : shards) {
+            if (!shard.backend.isConnected()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean connect() throws SQLException {
+        if (!forAll(StorageBackend::connect).contains(true)) return false;
+        loadLayout();
+        return true;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (Shard shard : shards) {
+            try {
+                shard.backend.close();
+            } catch (SQLException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    @Override
+    public void executeStatement(String sql) throws SQLException {
+        forAll(backend -> {
+            backend.executeStatement(sql);
+            return null;
+        });
+    }
+
+    @Override
+    public void createTable(String table) throws SQLException {
+        forAll(backend -> {
+            backend.createTable(table);
+            return null;
+        });
+    }
+
+    @Override
+    public void createWideTable(String table) throws SQLException {
+        forAll(backend -> {
+            backend.createWideTable(table);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isWideTable(String table) throws SQLException {
+        return home().isWideTable(table);
+    }
+
+    @Override
+    public boolean tableExists(String table) throws SQLException {
+        // A table missing on a new shard is created there by createTable
+        return !forAll(backend -> backend.tableExists(table)).contains(false);
+    }
+
+    @Override
+    public boolean hasExpiryColumn(String table) throws SQLException {
+        return !forAll(backend -> backend.hasExpiryColumn(table)).contains(false);
+    }
+
+    @Override
+    public void addExpiryColumn(String table) throws SQLException {
+        forAll(backend -> {
+            if (!backend.hasExpiryColumn(table)) backend.addExpiryColumn(table);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean hasVersionColumn(String table) throws SQLException {
+        return !forAll(backend -> backend.hasVersionColumn(table)).contains(false);
+    }
+
+    @Override
+    public void addVersionColumn(String table) throws SQLException {
+        forAll(backend -> {
+            if (!backend.hasVersionColumn(table)) backend.addVersionColumn(table);
+            return null;
+        });
+    }
+
+    @Override
+    public Set<String> getExpiryTables() throws SQLException {
+        Set<String> tables = new HashSet<>();
+        for (Set<String> shardTables : forAll(StorageBackend::getExpiryTables)) {
+            tables.addAll(shardTables);
+        }
+        return tables;
+    }
+
+    @Override
+    public void write(String table, UUID uuid, String key, String value, String type, long expiresAt) throws SQLException {
+        owner(uuid).write(table, uuid, key, value, type, expiresAt);
+    }
+
+    @Override
+    public boolean writeIfVersion(String table, UUID uuid, String key, String value, String type, long expiresAt,
+                                  long expectedVersion, long now) throws SQLException {
+        return owner(uuid).writeIfVersion(table, uuid, key, value, type, expiresAt, expectedVersion, now);
+    }
+
+    @Override
+    public StoredValue read(String table, UUID uuid, String key, long now) throws SQLException {
+        StorageBackend owner = owner(uuid);
+        StoredValue stored = owner.read(table, uuid, key, now);
+        if (stored != null || !isMoving()) return stored;
+        // The player may not have been moved yet
+        for (StorageBackend other : others(owner)) {
+            stored = other.read(table, uuid, key, now);
+            if (stored != null) return stored;
+        }
+        return null;
+    }
+
+    @Override
+    public Map<String, StoredValue> readAll(String table, UUID uuid, long now) throws SQLException {
+        StorageBackend owner = owner(uuid);
+        Map<String, StoredValue> rows = owner.readAll(table, uuid, now);
+        if (!isMoving()) return rows;
+        for (StorageBackend other : others(owner)) {
+            for (Map.Entry<String, StoredValue> row : other.readAll(table, uuid, now).entrySet()) {
+                rows.putIfAbsent(row.getKey(), row.getValue());
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public List<TableEntry> scan(String table, UUID uuid, String keyPrefix, TableEntry after, int limit, long now)
+            throws SQLException {
+        if (uuid != null) return owner(uuid).scan(table, uuid, keyPrefix, after, limit, now);
+        // Every player is on one shard, so the first rows of all shards in UUID order are the first rows overall.
+        // The sort is stable and keeps the key order of the shard within each player.
+        List<TableEntry> merged = new ArrayList<>();
+        for (List<TableEntry> page : forAll(backend -> backend.scan(table, null, keyPrefix, after, limit, now))) {
+            merged.addAll(page);
+        }
+        merged.sort(Comparator.comparing(entry -> entry.getUuid().toString()));
+        int end = Math.min(limit, merged.size());
+        // Pages end with a whole player, as wide tables continue after the last player
+        while (end > 0 && end < merged.size() && merged.get(end).getUuid().equals(merged.get(end - 1).getUuid())) {
+            end++;
+        }
+        return new ArrayList<>(merged.subList(0, end));
+    }
+
+    @Override
+    public void writeAll(String table, List<TableEntry> rows) throws SQLException {
+        Map<StorageBackend, List<TableEntry>> byShard = new HashMap<>();
+        for (TableEntry row : rows) {
+            byShard.computeIfAbsent(owner(row.getUuid()), shard -> new ArrayList<>()).add(row);
+        }
+        // One transaction per shard, written in parallel
+        forAll(backend -> {
+            List<TableEntry> shardRows = byShard.get(backend);
+            if (shardRows != null) backend.writeAll(table, shardRows);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean createValueIndex(String table, String key) throws SQLException {
+        return !forAll(backend -> backend.createValueIndex(table, key)).contains(false);
+    }
+
+    @Override
+    public List<UUID> findByValue(String table, String key, String value, String type, long now) throws SQLException {
+        // A player being moved may be found on two shards
+        Set<UUID> players = new LinkedHashSet<>();
+        for (List<UUID> found : forAll(backend -> backend.findByValue(table, key, value, type, now))) {
+            players.addAll(found);
+        }
+        return new ArrayList<>(players);
+    }
+
+    @Override
+    public boolean exists(String table, UUID uuid, String key, long now) throws SQLException {
+        StorageBackend owner = owner(uuid);
+        if (owner.exists(table, uuid, key, now)) return true;
+        if (!isMoving()) return false;
+        for (StorageBackend other : others(owner)) {
+            if (other.exists(table, uuid, key, now)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(String table, UUID uuid, String key) throws SQLException {
+        // Until players are moved, an old copy must not be read or moved back after the delete
+        if (!isMoving()) return owner(uuid).delete(table, uuid, key);
+        return forAll(backend -> backend.delete(table, uuid, key)).contains(true);
+    }
+
+    @Override
+    public boolean deleteAll(String table, UUID uuid) throws SQLException {
+        if (!isMoving()) return owner(uuid).deleteAll(table, uuid);
+        return forAll(backend -> backend.deleteAll(table, uuid)).contains(true);
+    }
+
+    @Override
+    public int deletePlayers(Collection<String> tables, Collection<UUID> uuids) throws SQLException {
+        Map<StorageBackend, List<UUID>> byShard = new HashMap<>();
+        for (UUID uuid : uuids) {
+            byShard.computeIfAbsent(owner(uuid), backend -> new ArrayList<>()).add(uuid);
+        }
+        // Until players are moved, they may still be on any shard
+        boolean everywhere = isMoving();
+        int deleted = 0;
+        for (int shardDeleted : forAll(backend -> {
+            Collection<UUID> shardUuids = everywhere ? uuids : byShard.get(backend);
+            return shardUuids != null ? backend.deletePlayers(tables, shardUuids) : 0;
+        })) {
+            deleted += shardDeleted;
+        }
+        return deleted;
+    }
+
+    @Override
+    public Long readExpiry(String table, UUID uuid, String key) throws SQLException {
+        return owner(uuid).readExpiry(table, uuid, key);
+    }
+
+    @Override
+    public Map<String, Long> readExpiries(String table, UUID uuid, long now) throws SQLException {
+        return owner(uuid).readExpiries(table, uuid, now);
+    }
+
+    @Override
+    public void deleteExpired(String table, List<EntryKey> keys, long now) throws SQLException {
+        Map<StorageBackend, List<EntryKey>> byShard = new LinkedHashMap<>();
+        for (EntryKey key : keys) {
+            byShard.computeIfAbsent(owner(key.uuid), backend -> new ArrayList<>()).add(key);
+        }
+        forAll(backend -> {
+            List<EntryKey> shardKeys = byShard.get(backend);
+            if (shardKeys != null) backend.deleteExpired(table, shardKeys, now);
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteExpiredRows(String table, long now) throws SQLException {
+        int deleted = 0;
+        for (int shardDeleted : forAll(backend -> backend.deleteExpiredRows(table, now))) {
+            deleted += shardDeleted;
+        }
+        return deleted;
+    }
+
+    @Override
+    public ValueCompressor.Dictionary loadDictionary(String table, int id) throws SQLException {
+        return home().loadDictionary(table, id);
+    }
+
+    @Override
+    public void saveDictionary(String table, ValueCompressor.Dictionary dictionary) throws SQLException {
+        home().saveDictionary(table, dictionary);
+    }
+
+    /**
+     * Moves the players of a table that are stored on another shard than the one they belong to,
+     * e.g. after a shard was added. A value is only inserted if the target has no value for the key yet, so
+     * newer writes are kept, and the source row is deleted once it was copied or the target had a newer value.
+     * Versions of moved rows start again at 1. Call {@link #finishRebalance()} once all tables are moved.
+     * @param batchSize The number of rows read per page.
+     * @return The number of moved players.
+     * @throws SQLException if a database access error occurs. Players moved until then stay moved.
+     */
+    long rebalance(String table, int batchSize) throws SQLException {
+        rebalancing.incrementAndGet();
+        try {
+            long moved = 0;
+            for (Shard source : shards) {
+                TableEntry after = null;
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    List<TableEntry> page = source.backend.scan(table, null, null, after, batchSize, now);
+                    if (page.isEmpty()) break;
+                    after = page.get(page.size() - 1);
+                    Set<UUID> players = new LinkedHashSet<>();
+                    for (TableEntry entry : page) {
+                        if (shardFor(entry.getUuid()) != source) players.add(entry.getUuid());
+                    }
+                    for (UUID uuid : players) {
+                        movePlayer(table, uuid, source.backend, owner(uuid), now);
+                        moved++;
+                    }
+                }
+            }
+            return moved;
+        } finally {
+            rebalancing.decrementAndGet();
+        }
+    }
+
+    private static void movePlayer(String table, UUID uuid, StorageBackend source, StorageBackend target, long now)
+            throws SQLException {
+        for (Map.Entry<String, StoredValue> row : source.readAll(table, uuid, now).entrySet()) {
+            StoredValue stored = row.getValue();
+            // Inserted atomically only if the key is missing. Since the shard was added, all servers write to
+            // the target and read the source while it is missing there, so a value on the target is newer.
+            target.writeIfVersion(table, uuid, row.getKey(), stored.getValue(), stored.getType(), stored.getExpiresAt(), 0L, now);
+            source.delete(table, uuid, row.getKey());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only file of writes and deletes that could not reach the database, replayed in order
+ * once it is reachable again. Thread-safe.
+ * <p>
+ * The file starts with a magic number, a version and the offset of the first record not replayed yet,
+ * followed by records of the form {@code [int length][int crc32c][body]}. A record that is cut off or
+ * damaged ends the journal, so a crash during an append loses at most that record. The offset is stored
+ * after every replayed record, so after a crash only the record being replayed is applied again, still
+ * before all newer changes. The file is truncated as soon as all records have been replayed.
+ */
+final class SpillJournal {
+    static final byte WRITE = 1;
+    static final byte DELETE = 2;
+    private static final int MAGIC = 0x544C5350; // "TLSP"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 16;
+    private static final int READ_OFFSET_POSITION = 8;
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * A spilled change and its position in the file.
+     */
+    static final class Record {
+        final long offset;
+        final long end;
+        final byte op;
+        final String table;
+        final UUID uuid;
+        final String key;
+        final String value;
+        final String type;
+        final long expiresAt;
+
+        Record(long offset, long end, byte op, String table, UUID uuid, String key, String value, String type, long expiresAt) {
+            this.offset = offset;
+            this.end = end;
+            this.op = op;
+            this.table = table;
+            this.uuid = uuid;
+            this.key = key;
+            this.value = value;
+            this.type = type;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The newest spilled change of a key.
+     */
+    static final class Pending {
+        final long offset;
+        /** The value, or null if the key was deleted. */
+        final StoredValue value;
+
+        Pending(long offset, StoredValue value) {
+            this.offset = offset;
+            this.value = value;
+        }
+    }
+
+    private final Path path;
+    private final boolean sync;
+    private FileChannel channel;
+    private long writeOffset = FILE_HEADER;
+    private long readOffset = FILE_HEADER;
+    // Keys with changes that are not replayed yet, so reads see them
+    private final Map<EntryKey, Pending> pending = new HashMap<>();
+
+    private SpillJournal(Path path, boolean sync) {
+        this.path = path;
+        this.sync = sync;
+    }
+
+    /**
+     * Opens the journal and reads the records left from a previous run. The file is only created by the first append.
+     * @param sync Force every append to the disk.
+     * @throws IOException if the file cannot be read or is not a journal.
+     */
+    static SpillJournal open(Path path, boolean sync) throws IOException {
+        SpillJournal journal = new SpillJournal(path, sync);
+        if (Files.exists(path)) {
+            journal.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                journal.recover();
+            } catch (IOException | RuntimeException e) {
+                journal.channel.close();
+                throw e;
+            }
+        }
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        if (channel.size() < FILE_HEADER) {
+            // Created but never written completely
+            writeHeader();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Keine TryLibs-Auslagerungsdatei: " + path);
+        }
+        long replayed = header.getLong();
+        writeOffset = channel.size();
+        List<Record> records = read(FILE_HEADER, Integer.MAX_VALUE);
+        writeOffset = records.isEmpty() ? FILE_HEADER : records.get(records.size() - 1).end;
+        // Drops a damaged tail, so new records are not appended behind it
+        channel.truncate(writeOffset);
+        readOffset = writeOffset;
+        for (Record record : records) {
+            if (record.offset < replayed) continue;
+            if (readOffset == writeOffset) readOffset = record.offset;
+            track(record);
+        }
+        if (isEmpty()) {
+            // All records were replayed before the file could be truncated
+            writeHeader();
+        }
+    }
+
+    /**
+     * Appends a change.
+     * @param onlyIfPending Only append if older changes are waiting for replay, so the change is applied after them.
+     * @return true if the change was appended.
+     * @throws IOException if the file cannot be written.
+     */
+    synchronized boolean append(byte op, String table, UUID uuid, String key, String value, String type,
+                                long expiresAt, boolean onlyIfPending) throws IOException {
+        if (onlyIfPending && isEmpty()) return false;
+        openChannel();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(op);
+            out.writeUTF(table);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            out.writeUTF(key);
+            out.writeUTF(type != null ? type : "");
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+            out.writeLong(expiresAt);
+        }
+        byte[] body = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        long offset = writeOffset;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, writeOffset + buffer.position());
+        }
+        if (sync) channel.force(false);
+        writeOffset += RECORD_HEADER + body.length;
+        track(new Record(offset, writeOffset, op, table, uuid, key, value, type, expiresAt));
+        return true;
+    }
+
+    private void track(Record record) {
+        StoredValue value = record.op == WRITE ? new StoredValue(record.value, record.type, record.expiresAt) : null;
+        pending.put(new EntryKey(record.table, record.uuid, record.key), new Pending(record.offset, value));
+    }
+
+    /**
+     * @return The newest change of a key that is not replayed yet, or null if there is none.
+     */
+    synchronized Pending lookup(EntryKey entryKey) {
+        return pending.get(entryKey);
+    }
+
+    /**
+     * @return true if no changes are waiting for replay.
+     */
+    synchronized boolean isEmpty() {
+        return readOffset >= writeOffset;
+    }
+
+    /**
+     * @return The size of the changes waiting for replay in bytes.
+     */
+    synchronized long getBacklogBytes() {
+        return writeOffset - readOffset;
+    }
+
+    /**
+     * Reads the next records to replay without removing them.
+     * @param limit The maximum number of records.
+     * @throws IOException if the file cannot be read.
+     */
+    synchronized List<Record> readBatch(int limit) throws IOException {
+        if (isEmpty()) return new ArrayList<>();
+        openChannel();
+        return read(readOffset, limit);
+    }
+
+    /**
+     * Marks a record as replayed. Once all records are replayed, the file is truncated.
+     * @throws IOException if the file cannot be truncated.
+     */
+    synchronized void acknowledge(Record record) throws IOException {
+        readOffset = record.end;
+        EntryKey entryKey = new EntryKey(record.table, record.uuid, record.key);
+        Pending newest = pending.get(entryKey);
+        if (newest != null && newest.offset == record.offset) pending.remove(entryKey);
+        openChannel();
+        if (isEmpty()) {
+            writeHeader();
+            if (sync) channel.force(false);
+            pending.clear();
+        } else {
+            ByteBuffer offset = ByteBuffer.allocate(FILE_HEADER - READ_OFFSET_POSITION);
+            offset.putLong(readOffset).flip();
+            while (offset.hasRemaining()) {
+                channel.write(offset, READ_OFFSET_POSITION + offset.position());
+            }
+            if (sync) channel.force(false);
+        }
+    }
+
+    /**
+     * Opens the file on the first append, or again after {@link #close()}. The records in memory stay valid.
+     */
+    private void openChannel() throws IOException {
+        if (channel != null) return;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER) writeHeader();
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private List<Record> read(long from, int limit) throws IOException {
+        List<Record> records = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        CRC32C crc = new CRC32C();
+        long pos = from;
+        while (records.size() < limit && pos + RECORD_HEADER <= writeOffset) {
+            header.clear();
+            readFully(header, pos);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || length > writeOffset - pos - RECORD_HEADER) break;
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, pos + RECORD_HEADER);
+            crc.reset();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) break;
+            long end = pos + RECORD_HEADER + length;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()))) {
+                byte op = in.readByte();
+                String table = in.readUTF();
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String key = in.readUTF();
+                String type = in.readUTF();
+                int valueLength = in.readInt();
+                String value = null;
+                if (valueLength >= 0) {
+                    byte[] encoded = new byte[valueLength];
+                    in.readFully(encoded);
+                    value = new String(encoded, StandardCharsets.UTF_8);
+                }
+                records.add(new Record(pos, end, op, table, uuid, key, value, type, in.readLong()));
+            }
+            pos = end;
+        }
+        return records;
+    }
+
+    private void readFully(ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) throw new IOException("Unerwartetes Dateiende in " + path);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        // Truncated first, so a crash in between cannot leave old records behind a new header
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putLong(FILE_HEADER).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        writeOffset = FILE_HEADER;
+        readOffset = FILE_HEADER;
+    }
+}
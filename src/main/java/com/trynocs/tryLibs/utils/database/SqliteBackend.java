@@ -0,0 +1,245 @@
+package com.trynocs.tryLibs.utils.database;
+
+import org.sqlite.SQLiteConnection;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+/**
+ * Stores rows in a local SQLite file.
+ */
+class SqliteBackend extends JdbcBackend {
+    /** Milliseconds a statement waits for the lock held by another connection, e.g. of a backup. */
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private final String path;
+    private final boolean wal;
+
+    /**
+     * @param path The path of the database file.
+     * @param encodeKeys Whether new tables store key ids instead of key names.
+     * @param wal Whether to use the write-ahead log, so readers such as {@link #backup} do not block writes.
+     */
+    SqliteBackend(String path, boolean encodeKeys, boolean wal) {
+        super(false, encodeKeys);
+        this.path = path;
+        this.wal = wal;
+    }
+
+    /**
+     * @return The path of the database file.
+     */
+    String getPath() {
+        return path;
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite-Treiber nicht gefunden", e);
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            if (wal) stmt.execute("PRAGMA journal_mode = WAL");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Copies the database into a file while it stays in use. The copy is made with SQLite's backup API
+     * over a second connection, in steps of {@code pagesPerStep} pages with a pause after each step.
+     * All steps run in one read transaction, so the copy is the state at its start and is not restarted
+     * by writes. With the write-ahead log, this transaction does not block writes; without it, writes
+     * wait until the copy is done.
+     * @param target The file to write, replaced if it exists.
+     * @param pagesPerStep The pages copied per step.
+     * @param stepDelayMillis The pause after each step.
+     * @return The number of pages copied.
+     * @throws SQLException if the copy fails.
+     */
+    long backup(Path target, int pagesPerStep, long stepDelayMillis) throws SQLException {
+        try (Connection source = openConnection()) {
+            try (Statement stmt = source.createStatement()) {
+                // Moves committed pages into the database file, so the log does not grow during the copy
+                if (wal) stmt.execute("PRAGMA wal_checkpoint(PASSIVE)");
+            }
+            source.setAutoCommit(false);
+            try (Statement stmt = source.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                // Starts the read transaction all steps share
+                rs.next();
+            }
+            int[] pages = new int[1];
+            int result = source.unwrap(SQLiteConnection.class).getDatabase().backup("main", target.toString(),
+                    (remaining, total) -> {
+                        pages[0] = total;
+                        if (remaining > 0 && stepDelayMillis > 0 && !Thread.currentThread().isInterrupted()) {
+                            try {
+                                Thread.sleep(stepDelayMillis);
+                            } catch (InterruptedException e) {
+                                // The copy cannot be stopped between steps, it finishes without pauses
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }, 100, 50, Math.max(1, pagesPerStep));
+            source.rollback();
+            if (result != 0) {
+                throw new SQLException("Sicherung nach '" + target + "' fehlgeschlagen (SQLite-Fehler " + result + ")");
+            }
+            return pages[0];
+        }
+    }
+
+    @Override
+    protected String keyColumn() {
+        return "Key";
+    }
+
+    @Override
+    protected String createTableSql(String table, boolean encoded) {
+        if (encoded) {
+            return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                    "UUID TEXT," +
+                    "KeyId INTEGER," +
+                    "Value TEXT," +
+                    "Type TEXT," +
+                    "ExpiresAt INTEGER," +
+                    "PRIMARY KEY (UUID, KeyId)" +
+                    ");";
+        }
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "UUID TEXT," +
+                "Key TEXT," +
+                "Value TEXT," +
+                "Type TEXT," +
+                "ExpiresAt INTEGER," +
+                "PRIMARY KEY (UUID, Key)" +
+                ");";
+    }
+
+    @Override
+    protected String createWideTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "UUID TEXT PRIMARY KEY," +
+                "Data TEXT NOT NULL," +
+                "ExpiresAt INTEGER" +
+                ");";
+    }
+
+    @Override
+    protected String[] createIndexSql(String table) {
+        return new String[] {"CREATE INDEX IF NOT EXISTS idx_" + table + "_expires ON " + table + " (ExpiresAt)"};
+    }
+
+    @Override
+    protected String createDictionaryTableSql() {
+        return "CREATE TABLE IF NOT EXISTS " + DICTIONARY_TABLE + " (" +
+                "TableName TEXT," +
+                "DictId INTEGER," +
+                "Data TEXT," +
+                "PRIMARY KEY (TableName, DictId)" +
+                ");";
+    }
+
+    @Override
+    protected String upsertSql(String table, String keyColumn, boolean expiring, boolean versioned) {
+        if (versioned) {
+            // INSERT OR REPLACE would reset the version of the replaced row
+            return "INSERT INTO " + table + " (UUID, " + keyColumn + ", Value, Type" + (expiring ? ", ExpiresAt" : "") + ") " +
+                    "VALUES (?, ?, ?, ?" + (expiring ? ", ?" : "") + ") " +
+                    "ON CONFLICT(UUID, " + keyColumn + ") DO UPDATE SET Value = excluded.Value, Type = excluded.Type, " +
+                    (expiring ? "ExpiresAt = excluded.ExpiresAt, " : "") + "Version = Version + 1";
+        }
+        return expiring
+                ? "INSERT OR REPLACE INTO " + table + " (UUID, " + keyColumn + ", Value, Type, ExpiresAt) VALUES (?, ?, ?, ?, ?)"
+                : "INSERT OR REPLACE INTO " + table + " (UUID, " + keyColumn + ", Value, Type) VALUES (?, ?, ?, ?)";
+    }
+
+    @Override
+    protected String bulkUpsertSql(String table, String keyColumn, boolean expiring, boolean versioned, int rows) {
+        String row = expiring ? "(?, ?, ?, ?, ?)" : "(?, ?, ?, ?)";
+        String values = String.join(", ", Collections.nCopies(rows, row));
+        String columns = " (UUID, " + keyColumn + ", Value, Type" + (expiring ? ", ExpiresAt" : "") + ") VALUES ";
+        if (versioned) {
+            return "INSERT INTO " + table + columns + values + " " +
+                    "ON CONFLICT(UUID, " + keyColumn + ") DO UPDATE SET Value = excluded.Value, Type = excluded.Type, " +
+                    (expiring ? "ExpiresAt = excluded.ExpiresAt, " : "") + "Version = Version + 1";
+        }
+        return "INSERT OR REPLACE INTO " + table + columns + values;
+    }
+
+    @Override
+    protected int maxParameters() {
+        // SQLITE_MAX_VARIABLE_NUMBER since SQLite 3.32
+        return 32766;
+    }
+
+    @Override
+    protected String wideUpsertSql(String table) {
+        return "INSERT INTO " + table + " (UUID, Data, ExpiresAt) VALUES (?, json_object(?, json_array(?, ?, ?)), ?) " +
+                "ON CONFLICT(UUID) DO UPDATE SET Data = json_set(Data, ?, json_array(?, ?, ?)), " +
+                "ExpiresAt = CASE WHEN excluded.ExpiresAt IS NULL THEN ExpiresAt WHEN ExpiresAt IS NULL THEN excluded.ExpiresAt " +
+                "ELSE min(ExpiresAt, excluded.ExpiresAt) END";
+    }
+
+    @Override
+    protected String insertIgnoreSql(String table, String keyColumn, boolean expiring) {
+        return expiring
+                ? "INSERT OR IGNORE INTO " + table + " (UUID, " + keyColumn + ", Value, Type, ExpiresAt) VALUES (?, ?, ?, ?, ?)"
+                : "INSERT OR IGNORE INTO " + table + " (UUID, " + keyColumn + ", Value, Type) VALUES (?, ?, ?, ?)";
+    }
+
+    @Override
+    protected String[] replaceTableSql(String table, String replacement) {
+        return new String[] {"DROP TABLE " + table, "ALTER TABLE " + replacement + " RENAME TO " + table};
+    }
+
+    @Override
+    protected String valueIndexName(String table, String key) {
+        return "idx_" + table + "_value_" + key.replaceAll("[^A-Za-z0-9_]", "_") + "_" + Integer.toHexString(key.hashCode());
+    }
+
+    @Override
+    protected String valueIndexSql(String table, String index, String keyColumn, String keyLiteral) {
+        // A partial index per key, so it holds only the rows of that key
+        return "CREATE INDEX IF NOT EXISTS " + index + " ON " + table + " (Value) WHERE " + keyColumn + " = " + keyLiteral;
+    }
+
+    @Override
+    protected String wideValueSql(String pathLiteral) {
+        return "json_extract(Data, " + pathLiteral + ")";
+    }
+
+    @Override
+    protected String wideValueIndexSql(String table, String index, String expression) {
+        return "CREATE INDEX IF NOT EXISTS " + index + " ON " + table + " (" + expression + ")";
+    }
+
+    @Override
+    protected boolean upsertRepeatsValues() {
+        return false;
+    }
+
+    @Override
+    public boolean tableExists(String table) throws SQLException {
+        return withConnection(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "SELECT name FROM sqlite_master WHERE type='table' AND name=?;")) {
+                pstmt.setString(1, table);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,251 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The storage behind the {@link DatabaseHandler}. A backend stores rows of
+ * {@code (table, uuid, key) -> (value, type, expiresAt)} and knows nothing about caching,
+ * compression or serialization, which the handler does on top of it.
+ * <p>
+ * Implementations must be thread-safe. Errors are reported as {@link SQLException} for all
+ * backends, so the handler handles them the same way.
+ */
+interface StorageBackend {
+
+    /**
+     * @return true if the backend is connected and ready.
+     */
+    boolean isConnected();
+
+    /**
+     * Connects the backend if it is not connected.
+     * @return true if a new connection was opened.
+     * @throws SQLException if the connection cannot be established.
+     */
+    boolean connect() throws SQLException;
+
+    /**
+     * Closes the connection. The backend may be connected again later.
+     * @throws SQLException if a database access error occurs.
+     */
+    void close() throws SQLException;
+
+    /**
+     * Executes a raw SQL statement.
+     * @param sql The statement.
+     * @throws SQLException if the statement fails or the backend does not support SQL.
+     */
+    void executeStatement(String sql) throws SQLException;
+
+    /**
+     * Creates a key-value table if it does not exist.
+     * @param table The table name.
+     * @throws SQLException if a database access error occurs.
+     */
+    void createTable(String table) throws SQLException;
+
+    /**
+     * Creates a wide table if it does not exist, which stores all keys of a player in one row.
+     * Backends that keep their rows in memory may create a normal table instead.
+     * @param table The table name.
+     * @throws SQLException if a database access error occurs.
+     */
+    void createWideTable(String table) throws SQLException;
+
+    /**
+     * @param table The table name.
+     * @return true if all keys of a player are read with one row, so they should be read together.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean isWideTable(String table) throws SQLException;
+
+    /**
+     * @param table The table name.
+     * @return true if the table exists.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean tableExists(String table) throws SQLException;
+
+    /**
+     * @param table The table name.
+     * @return true if rows of the table can expire.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean hasExpiryColumn(String table) throws SQLException;
+
+    /**
+     * Adds expiry support to a table created before TTL support.
+     * @param table The table name.
+     * @throws SQLException if a database access error occurs.
+     */
+    void addExpiryColumn(String table) throws SQLException;
+
+    /**
+     * @param table The table name.
+     * @return true if rows of the table have a version, which is increased by every write.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean hasVersionColumn(String table) throws SQLException;
+
+    /**
+     * Adds versions to a table. Existing rows start at version 1.
+     * @param table The table name.
+     * @throws SQLException if a database access error occurs.
+     */
+    void addVersionColumn(String table) throws SQLException;
+
+    /**
+     * @return All tables whose rows can expire.
+     * @throws SQLException if a database access error occurs.
+     */
+    Set<String> getExpiryTables() throws SQLException;
+
+    /**
+     * Inserts or replaces a row.
+     * @param expiresAt The expiry time in milliseconds, or 0 if the row does not expire.
+     * @throws SQLException if a database access error occurs.
+     */
+    void write(String table, UUID uuid, String key, String value, String type, long expiresAt) throws SQLException;
+
+    /**
+     * Writes many rows without expiry, replacing existing ones, in one transaction if the backend has transactions.
+     * @param rows The rows with their raw values. Later rows of the same key win.
+     * @throws SQLException if a database access error occurs. No row is written then if the backend has transactions.
+     */
+    void writeAll(String table, List<TableEntry> rows) throws SQLException;
+
+    /**
+     * Inserts or replaces a row only if it still has the expected version, as one atomic operation.
+     * The written row gets the next version.
+     * @param expiresAt The expiry time in milliseconds, or 0 if the row does not expire.
+     * @param expectedVersion The version read before, or 0 if the row must not exist or must have expired.
+     * @param now The current time in milliseconds.
+     * @return false if the row has another version.
+     * @throws SQLException if a database access error occurs, or the table has no version column and
+     *                      {@code expectedVersion} is not 0.
+     */
+    boolean writeIfVersion(String table, UUID uuid, String key, String value, String type, long expiresAt,
+                           long expectedVersion, long now) throws SQLException;
+
+    /**
+     * Reads a row that has not expired.
+     * @param now The current time in milliseconds.
+     * @return The row, or null if it does not exist or has expired.
+     * @throws SQLException if a database access error occurs.
+     */
+    StoredValue read(String table, UUID uuid, String key, long now) throws SQLException;
+
+    /**
+     * Reads all rows of a player in a table that have not expired.
+     * @param now The current time in milliseconds.
+     * @return The rows by key.
+     * @throws SQLException if a database access error occurs.
+     */
+    Map<String, StoredValue> readAll(String table, UUID uuid, long now) throws SQLException;
+
+    /**
+     * Reads the next page of a scan. Rows are returned in an order defined by the backend that stays
+     * the same between pages, and each page continues after the last row of the previous one.
+     * Wide tables return whole players, so a page may contain more than {@code limit} rows.
+     * @param uuid Only rows of this player, or null for all players.
+     * @param keyPrefix Only keys starting with this prefix, or null for all keys.
+     * @param after The last row of the previous page, or null for the first page.
+     * @param limit The maximum number of rows per page.
+     * @param now The current time in milliseconds. Expired rows are skipped.
+     * @return The rows with their raw values, empty if there are no more rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    List<TableEntry> scan(String table, UUID uuid, String keyPrefix, TableEntry after, int limit, long now) throws SQLException;
+
+    /**
+     * Creates an index over the values of one key, used by {@link #findByValue}. Does nothing if it exists.
+     * @return false if the backend has no index for the table, so {@link #findByValue} reads the whole table.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean createValueIndex(String table, String key) throws SQLException;
+
+    /**
+     * Finds the players whose row of a key holds a value. Values are compared as stored, so compressed
+     * values are not found.
+     * @param type The type the value was stored with, e.g. {@code "int"}.
+     * @param now The current time in milliseconds. Expired rows are skipped.
+     * @return The players, in no particular order.
+     * @throws SQLException if a database access error occurs.
+     */
+    List<UUID> findByValue(String table, String key, String value, String type, long now) throws SQLException;
+
+    /**
+     * @param now The current time in milliseconds.
+     * @return true if a row exists and has not expired.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean exists(String table, UUID uuid, String key, long now) throws SQLException;
+
+    /**
+     * @return true if a row was deleted.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean delete(String table, UUID uuid, String key) throws SQLException;
+
+    /**
+     * Deletes all rows of a player in a table.
+     * @return true if any row was deleted.
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean deleteAll(String table, UUID uuid) throws SQLException;
+
+    /**
+     * Deletes all rows of several players in several existing tables, in one transaction if the backend has transactions.
+     * @return The number of deleted rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    int deletePlayers(Collection<String> tables, Collection<UUID> uuids) throws SQLException;
+
+    /**
+     * @return The expiry time of a row, or null if the row does not exist or does not expire.
+     * @throws SQLException if a database access error occurs.
+     */
+    Long readExpiry(String table, UUID uuid, String key) throws SQLException;
+
+    /**
+     * @param now The current time in milliseconds.
+     * @return The expiry times of all rows of a player that expire after {@code now}, by key.
+     * @throws SQLException if a database access error occurs.
+     */
+    Map<String, Long> readExpiries(String table, UUID uuid, long now) throws SQLException;
+
+    /**
+     * Deletes the given rows if they have expired, in one batch.
+     * @param now The current time in milliseconds.
+     * @throws SQLException if a database access error occurs.
+     */
+    void deleteExpired(String table, List<EntryKey> keys, long now) throws SQLException;
+
+    /**
+     * Deletes all expired rows of a table.
+     * @param now The current time in milliseconds.
+     * @return The number of deleted rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    int deleteExpiredRows(String table, long now) throws SQLException;
+
+    /**
+     * Loads a compression dictionary.
+     * @param id The id of the dictionary, or -1 for the newest one.
+     * @return The dictionary, or null if none exists.
+     * @throws SQLException if a database access error occurs.
+     */
+    ValueCompressor.Dictionary loadDictionary(String table, int id) throws SQLException;
+
+    /**
+     * Stores a compression dictionary.
+     * @throws SQLException if a database access error occurs, or if a dictionary with the id exists in a
+     *                      database shared by several servers.
+     */
+    void saveDictionary(String table, ValueCompressor.Dictionary dictionary) throws SQLException;
+}
@@ -0,0 +1,55 @@
+package com.trynocs.tryLibs.utils.database;
+
+/**
+ * A value as stored in a table row: the serialized value, its type name, its expiry time and,
+ * in tables with a version column, its version.
+ */
+final class StoredValue {
+    private final String value;
+    private final String type;
+    private final long expiresAt;
+    private final long version;
+
+    StoredValue(String value, String type) {
+        this(value, type, 0L);
+    }
+
+    StoredValue(String value, String type, long expiresAt) {
+        this(value, type, expiresAt, 0L);
+    }
+
+    StoredValue(String value, String type, long expiresAt, long version) {
+        this.value = value;
+        this.type = type;
+        this.expiresAt = expiresAt;
+        this.version = version;
+    }
+
+    /**
+     * @return The serialized value.
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The type name, e.g. {@code "int"} or {@code "string_list"}.
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * @return The expiry time in milliseconds, or 0 if the value does not expire.
+     */
+    long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return The version of the row, or 0 if the table has no version column.
+     */
+    long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,64 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * One row returned by the scans of the {@link DatabaseHandler}.
+ */
+public final class TableEntry {
+    /**
+     * The scan order of backends without an index, the same as the primary key order of SQL tables.
+     */
+    static final Comparator<TableEntry> ORDER = Comparator.comparing((TableEntry entry) -> entry.uuid.toString())
+            .thenComparing(entry -> entry.key);
+
+    private final UUID uuid;
+    private final String key;
+    private final String value;
+    private final String type;
+
+    TableEntry(UUID uuid, String key, String value, String type) {
+        this.uuid = uuid;
+        this.key = key;
+        this.value = value;
+        this.type = type;
+    }
+
+    /**
+     * @return true if a row comes after the given entry in {@link #ORDER}, or {@code after} is null.
+     */
+    static boolean isAfter(UUID uuid, String key, TableEntry after) {
+        if (after == null) return true;
+        int order = uuid.toString().compareTo(after.uuid.toString());
+        return order > 0 || (order == 0 && key.compareTo(after.key) > 0);
+    }
+
+    /**
+     * @return The UUID of the player.
+     */
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return The key of the data.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The value as stored, e.g. {@code "42"} for an integer or JSON for a string list.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The type name, e.g. {@code "int"}, {@code "string_list"} or {@code "obj:json"} for objects.
+     */
+    public String getType() {
+        return type;
+    }
+}
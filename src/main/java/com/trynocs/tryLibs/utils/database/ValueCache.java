@@ -0,0 +1,174 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A bounded LRU cache of decoded values, including cached misses.
+ * <p>
+ * With an {@link OffHeapCache}, values evicted from the heap move to the off-heap tier and back to the
+ * heap when they are read again. Cached misses are not kept off-heap.
+ * <p>
+ * Loads only fill the cache if nothing was written or invalidated since they started
+ * ({@link #epoch()}), so a slow load can never put an outdated value into the cache.
+ */
+class ValueCache {
+    /** Cached marker for keys that do not exist. */
+    static final StoredValue ABSENT = new StoredValue(null, null);
+
+    private final int maxEntries;
+    private final Map<EntryKey, StoredValue> entries;
+    private final OffHeapCache offHeap;
+    private long epoch;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries The maximum number of cached keys.
+     */
+    ValueCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * @param maxEntries The maximum number of keys cached on the heap.
+     * @param offHeap The tier for values evicted from the heap, or null to drop them.
+     */
+    ValueCache(int maxEntries, OffHeapCache offHeap) {
+        this.maxEntries = maxEntries;
+        this.offHeap = offHeap;
+        this.entries = new LinkedHashMap<EntryKey, StoredValue>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EntryKey, StoredValue> eldest) {
+                if (size() <= ValueCache.this.maxEntries) return false;
+                if (offHeap != null && eldest.getValue() != ABSENT) offHeap.put(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param key The key.
+     * @return The cached value, {@link #ABSENT} for a cached miss, or null if the key is not cached.
+     */
+    synchronized StoredValue get(EntryKey key) {
+        StoredValue value = entries.get(key);
+        if (value == null && offHeap != null) {
+            value = offHeap.get(key);
+            if (value != null) {
+                offHeap.remove(key);
+                entries.put(key, value);
+            }
+        }
+        if (value != null) hits++; else misses++;
+        return value;
+    }
+
+    /**
+     * @return The current write epoch, to be passed to {@link #putIfUnchanged}.
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Caches a loaded value unless the cache was changed since the load started.
+     * @param key The key.
+     * @param value The loaded value, or null if the key does not exist.
+     * @param loadEpoch The epoch read before the load started.
+     */
+    synchronized void putIfUnchanged(EntryKey key, StoredValue value, long loadEpoch) {
+        if (epoch == loadEpoch) {
+            entries.put(key, value != null ? value : ABSENT);
+            if (offHeap != null) offHeap.remove(key);
+        }
+    }
+
+    /**
+     * Caches values that were loaded together with another key, unless the cache was changed since
+     * the load started. Keys that are already cached keep their value.
+     * @param values The loaded values by key.
+     * @param loadEpoch The epoch read before the load started.
+     */
+    synchronized void putAllIfUnchanged(Map<EntryKey, StoredValue> values, long loadEpoch) {
+        if (epoch != loadEpoch) return;
+        for (Map.Entry<EntryKey, StoredValue> value : values.entrySet()) {
+            if (entries.putIfAbsent(value.getKey(), value.getValue()) == null && offHeap != null) {
+                offHeap.remove(value.getKey());
+            }
+        }
+    }
+
+    /**
+     * Caches a value that has just been written.
+     * @param key The key.
+     * @param value The written value, or null if the key was deleted.
+     */
+    synchronized void put(EntryKey key, StoredValue value) {
+        epoch++;
+        entries.put(key, value != null ? value : ABSENT);
+        if (offHeap != null) offHeap.remove(key);
+    }
+
+    /**
+     * Removes a key from the cache.
+     * @param key The key.
+     */
+    synchronized void invalidate(EntryKey key) {
+        epoch++;
+        entries.remove(key);
+        if (offHeap != null) offHeap.remove(key);
+    }
+
+    /**
+     * Removes all keys of a player from the cache.
+     * @param uuid The UUID of the player.
+     */
+    synchronized void invalidate(UUID uuid) {
+        epoch++;
+        entries.keySet().removeIf(key -> key.uuid.equals(uuid));
+        if (offHeap != null) offHeap.removePlayer(uuid, null);
+    }
+
+    /**
+     * Removes all keys of a player in a table from the cache.
+     * @param table The table.
+     * @param uuid The UUID of the player.
+     */
+    synchronized void invalidate(String table, UUID uuid) {
+        epoch++;
+        entries.keySet().removeIf(key -> key.uuid.equals(uuid) && key.table.equals(table));
+        if (offHeap != null) offHeap.removePlayer(uuid, table);
+    }
+
+    /**
+     * Removes all keys from the cache.
+     */
+    synchronized void clear() {
+        epoch++;
+        entries.clear();
+        if (offHeap != null) offHeap.clear();
+    }
+
+    /**
+     * @return The number of cached keys, on and off the heap.
+     */
+    synchronized int size() {
+        return entries.size() + (offHeap != null ? offHeap.size() : 0);
+    }
+
+    /**
+     * @return The number of lookups that found a cached value.
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that found nothing.
+     */
+    synchronized long misses() {
+        return misses;
+    }
+}
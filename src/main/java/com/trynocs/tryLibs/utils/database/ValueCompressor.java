@@ -0,0 +1,285 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses large values before they are written by the {@link DatabaseHandler}.
+ * <p>
+ * Compressed values are stored Base64 encoded and marked with a suffix in the {@code Type} column:
+ * {@code |z} for plain deflate and {@code |z<id>} for deflate with the preset dictionary {@code id}
+ * of the table. Dictionaries are trained from the first large values written to a table and
+ * persisted through a {@link DictionaryStore}, so every server can decompress them.
+ */
+class ValueCompressor {
+    /** Separator between the value type and the compression marker in the {@code Type} column. */
+    static final String MARKER = "|z";
+
+    private static final int SAMPLE_COUNT = 16;
+    private static final int SAMPLE_BYTES = 256 * 1024;
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+    private static final int SEGMENT_SIZE = 64;
+    private static final int GRAM_SIZE = 8;
+    private static final Dictionary NO_DICTIONARY = new Dictionary(0, null);
+
+    /**
+     * Persists trained dictionaries.
+     */
+    interface DictionaryStore {
+        /**
+         * Loads a dictionary.
+         * @param table The table the dictionary belongs to.
+         * @param id The id of the dictionary, or -1 for the newest one.
+         * @return The dictionary, or null if none exists.
+         */
+        Dictionary load(String table, int id);
+
+        /**
+         * Saves a newly trained dictionary, unless another server saved one with the same id first.
+         * @param table The table the dictionary belongs to.
+         * @param dictionary The dictionary.
+         * @return The dictionary stored under the id, which is the one of the other server after a conflict,
+         *         or null if it could not be saved.
+         */
+        Dictionary save(String table, Dictionary dictionary);
+    }
+
+    /**
+     * A preset deflate dictionary.
+     */
+    static final class Dictionary {
+        final int id;
+        final byte[] data;
+
+        Dictionary(int id, byte[] data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+
+    private final int threshold;
+    private final boolean useDictionary;
+    private final DictionaryStore store;
+    private final Map<String, Dictionary> currentDictionaries = new ConcurrentHashMap<>();
+    private final Map<String, Dictionary> dictionariesById = new ConcurrentHashMap<>();
+    private final Map<String, List<byte[]>> samples = new HashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * @param threshold Values with at least this many characters are compressed, 0 disables compression.
+     * @param useDictionary Whether per-table dictionaries are trained and used.
+     * @param store Persists dictionaries.
+     */
+    ValueCompressor(int threshold, boolean useDictionary, DictionaryStore store) {
+        this.threshold = threshold;
+        this.useDictionary = useDictionary;
+        this.store = store;
+    }
+
+    /**
+     * Checks whether a value is large enough to be compressed.
+     * @param value The serialized value.
+     * @return true if the value should be compressed.
+     */
+    boolean shouldCompress(String value) {
+        return threshold > 0 && value != null && value.length() >= threshold;
+    }
+
+    /**
+     * Checks whether a stored type carries a compression marker.
+     * @param storedType The value of the {@code Type} column.
+     * @return true if the value is compressed.
+     */
+    static boolean isCompressed(String storedType) {
+        return storedType != null && storedType.contains(MARKER);
+    }
+
+    /**
+     * Removes the compression marker from a stored type.
+     * @param storedType The value of the {@code Type} column.
+     * @return The plain type.
+     */
+    static String baseType(String storedType) {
+        int index = storedType == null ? -1 : storedType.indexOf(MARKER);
+        return index < 0 ? storedType : storedType.substring(0, index);
+    }
+
+    /**
+     * Compresses a value. Synchronized, as the deflater and the samples are shared, and compare-and-set saves
+     * and bulk imports compress on other threads than the database worker.
+     *
+     * @param table The table the value is written to.
+     * @param type The plain value type.
+     * @param value The serialized value.
+     * @return The stored value and type, uncompressed if compression does not save space.
+     */
+    synchronized StoredValue compress(String table, String type, String value) {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        Dictionary dictionary = useDictionary ? dictionaryFor(table, raw) : NO_DICTIONARY;
+
+        deflater.reset();
+        if (dictionary.data != null) {
+            deflater.setDictionary(dictionary.data);
+        }
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+
+        String encoded = Base64.getEncoder().encodeToString(out.toByteArray());
+        if (encoded.length() >= value.length() * 9L / 10) {
+            return new StoredValue(value, type);
+        }
+        String marker = dictionary.data != null ? MARKER + dictionary.id : MARKER;
+        return new StoredValue(encoded, type + marker);
+    }
+
+    /**
+     * Decompresses a value read from the database.
+     *
+     * @param table The table the value was read from.
+     * @param stored The stored value with its marked type.
+     * @return The plain value and type.
+     * @throws IllegalArgumentException if the value cannot be decompressed.
+     */
+    StoredValue decompress(String table, StoredValue stored) {
+        String storedType = stored.getType();
+        int index = storedType.indexOf(MARKER);
+        String idPart = storedType.substring(index + MARKER.length());
+        Dictionary dictionary = null;
+        if (!idPart.isEmpty()) {
+            int id = Integer.parseInt(idPart);
+            dictionary = dictionariesById.computeIfAbsent(table + ':' + id, k -> store.load(table, id));
+            if (dictionary == null) {
+                throw new IllegalArgumentException("Kompressions-Wörterbuch " + id + " für Tabelle '" + table + "' fehlt.");
+            }
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(Base64.getDecoder().decode(stored.getValue()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.getValue().length() * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary() && dictionary != null) {
+                        inflater.setDictionary(dictionary.data);
+                    } else if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new IllegalArgumentException("Komprimierter Wert ist unvollständig.");
+                    }
+                }
+                out.write(buffer, 0, count);
+            }
+            return new StoredValue(out.toString(StandardCharsets.UTF_8), storedType.substring(0, index));
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Komprimierter Wert ist beschädigt: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Dictionary dictionaryFor(String table, byte[] raw) {
+        Dictionary dictionary = currentDictionaries.computeIfAbsent(table, t -> {
+            Dictionary stored = store.load(t, -1);
+            return stored != null ? stored : NO_DICTIONARY;
+        });
+        if (dictionary.data != null) {
+            return dictionary;
+        }
+
+        List<byte[]> tableSamples = samples.computeIfAbsent(table, t -> new ArrayList<>());
+        tableSamples.add(raw);
+        long sampledBytes = tableSamples.stream().mapToLong(sample -> sample.length).sum();
+        if (tableSamples.size() < SAMPLE_COUNT && sampledBytes < SAMPLE_BYTES) {
+            return NO_DICTIONARY;
+        }
+
+        samples.remove(table);
+        byte[] data = train(tableSamples);
+        if (data.length == 0) {
+            return NO_DICTIONARY;
+        }
+        Dictionary stored = store.save(table, new Dictionary(dictionary.id + 1, data));
+        if (stored == null) {
+            // Values compressed with an unsaved dictionary could not be read by other servers or after a restart
+            return NO_DICTIONARY;
+        }
+        currentDictionaries.put(table, stored);
+        dictionariesById.put(table + ':' + stored.id, stored);
+        return stored;
+    }
+
+    /**
+     * Builds a dictionary from the segments of the samples whose byte n-grams occur in the most samples.
+     * Deflate prefers matches close to the data, so the most valuable segments are placed last.
+     */
+    static byte[] train(List<byte[]> samples) {
+        Map<Long, Integer> gramFrequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Map<Long, Boolean> seen = new HashMap<>();
+            for (int i = 0; i + GRAM_SIZE <= sample.length; i++) {
+                long gram = gram(sample, i);
+                if (seen.put(gram, Boolean.TRUE) == null) {
+                    gramFrequency.merge(gram, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<long[]> segments = new ArrayList<>(); // {sampleIndex, offset, score}
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int offset = 0; offset + SEGMENT_SIZE <= sample.length; offset += SEGMENT_SIZE) {
+                long score = 0;
+                for (int i = offset; i + GRAM_SIZE <= offset + SEGMENT_SIZE; i++) {
+                    int frequency = gramFrequency.getOrDefault(gram(sample, i), 1);
+                    if (frequency > 1) {
+                        score += frequency;
+                    }
+                }
+                if (score > 0) {
+                    segments.add(new long[]{s, offset, score});
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong((long[] segment) -> segment[2]).reversed());
+
+        int count = Math.min(segments.size(), DICTIONARY_SIZE / SEGMENT_SIZE);
+        byte[] dictionary = new byte[count * SEGMENT_SIZE];
+        for (int i = 0; i < count; i++) {
+            long[] segment = segments.get(i);
+            System.arraycopy(samples.get((int) segment[0]), (int) segment[1], dictionary,
+                    dictionary.length - (i + 1) * SEGMENT_SIZE, SEGMENT_SIZE);
+        }
+        return dictionary;
+    }
+
+    private static long gram(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < GRAM_SIZE; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Releases the native deflater.
+     */
+    void close() {
+        deflater.end();
+    }
+}
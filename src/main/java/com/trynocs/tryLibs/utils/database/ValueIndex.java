@@ -0,0 +1,94 @@
+package com.trynocs.tryLibs.utils.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An in-memory hash index of the values of one key, kept by {@link DatabaseHandler#createIndex(String, String, boolean)}
+ * for keys that are looked up often. Maps each value to the players holding it, so a lookup needs no database access.
+ * <p>
+ * The index is filled by a scan of the table while writes go on. Players changed during the scan keep the
+ * value of the change, as the scan may have read an older one. Until the scan has finished, lookups go to
+ * the database. Thread-safe.
+ */
+final class ValueIndex {
+    final String table;
+    final String key;
+    // Type and value -> players
+    private final Map<String, Set<UUID>> byValue = new HashMap<>();
+    // Player -> type and value
+    private final Map<UUID, String> byPlayer = new HashMap<>();
+    // Players changed while the scan runs, null once it has finished
+    private Set<UUID> changedDuringBuild = new HashSet<>();
+
+    ValueIndex(String table, String key) {
+        this.table = table;
+        this.key = key;
+    }
+
+    /**
+     * Records the value a player holds now.
+     */
+    synchronized void put(UUID uuid, String value, String type) {
+        if (changedDuringBuild != null) changedDuringBuild.add(uuid);
+        set(uuid, value, type);
+    }
+
+    /**
+     * Records that a player holds no value.
+     */
+    synchronized void remove(UUID uuid) {
+        if (changedDuringBuild != null) changedDuringBuild.add(uuid);
+        unset(uuid);
+    }
+
+    /**
+     * Adds a value read by the scan, unless the player was changed since the scan started.
+     */
+    synchronized void load(UUID uuid, String value, String type) {
+        if (changedDuringBuild != null && !changedDuringBuild.contains(uuid)) set(uuid, value, type);
+    }
+
+    /**
+     * Marks the scan as finished, so lookups are answered from the index.
+     */
+    synchronized void finishBuild() {
+        changedDuringBuild = null;
+    }
+
+    synchronized boolean isReady() {
+        return changedDuringBuild == null;
+    }
+
+    /**
+     * @return The players holding a value, in no particular order.
+     */
+    synchronized List<UUID> find(String value, String type) {
+        Set<UUID> players = byValue.get(entry(value, type));
+        return players != null ? new ArrayList<>(players) : new ArrayList<>();
+    }
+
+    private void set(UUID uuid, String value, String type) {
+        unset(uuid);
+        String entry = entry(value, type);
+        byPlayer.put(uuid, entry);
+        byValue.computeIfAbsent(entry, e -> new HashSet<>()).add(uuid);
+    }
+
+    private void unset(UUID uuid) {
+        String previous = byPlayer.remove(uuid);
+        if (previous == null) return;
+        Set<UUID> players = byValue.get(previous);
+        players.remove(uuid);
+        if (players.isEmpty()) byValue.remove(previous);
+    }
+
+    private static String entry(String value, String type) {
+        return type + '\u0000' + value;
+    }
+}
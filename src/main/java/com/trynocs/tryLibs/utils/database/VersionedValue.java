@@ -0,0 +1,47 @@
+package com.trynocs.tryLibs.utils.database;
+
+/**
+ * A loaded value together with the version of its row, for compare-and-retry updates.
+ * Pass {@link #getVersion()} to one of the {@code save...IfVersion} methods of the {@link DatabaseHandler};
+ * the save fails if another write changed the value in the meantime.
+ * <p>
+ * Beispiel:
+ * <pre>
+ *   for (int attempt = 0; attempt &lt; 5; attempt++) {
+ *       VersionedValue&lt;Integer&gt; coins = handler.loadIntVersioned("users", uuid, "coins", 0);
+ *       if (coins == null || handler.saveIntIfVersion("users", uuid, "coins", coins.getValue() + 10, coins.getVersion())) break;
+ *   }
+ * </pre>
+ *
+ * @param <T> The type of the value.
+ */
+public final class VersionedValue<T> {
+    private final T value;
+    private final long version;
+
+    VersionedValue(T value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    /**
+     * @return The value, or the default value if the key does not exist.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return The version of the row, or 0 if the key does not exist.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the key exists.
+     */
+    public boolean exists() {
+        return version > 0;
+    }
+}
@@ -0,0 +1,286 @@
+package com.trynocs.tryLibs.utils.database;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Reads and writes wide tables, which store all keys of a player in one row of
+ * {@code (UUID, Data, ExpiresAt)}. {@code Data} is a JSON object mapping each key to
+ * {@code [value, type, expiresAt]}, with {@code expiresAt} null for keys that do not expire.
+ * Single keys are changed in place with the JSON functions of the database, so writes of
+ * different keys do not overwrite each other.
+ * <p>
+ * {@code ExpiresAt} holds the earliest expiry of the keys in the row, or an earlier time after
+ * a key was overwritten, so the sweep only looks at rows that may contain expired keys.
+ */
+final class WideRows {
+    private static final String EMPTY_DOCUMENT = "json_object()";
+
+    private WideRows() {
+    }
+
+    /**
+     * @return The JSON path of a key.
+     * @throws SQLException if the key cannot be used in a path.
+     */
+    static String path(String key) throws SQLException {
+        if (key.indexOf('"') >= 0 || key.indexOf('\\') >= 0) {
+            throw new SQLException("Schlüssel mit \" oder \\ sind in Tabellen mit einer Zeile pro Spieler nicht erlaubt: " + key);
+        }
+        return "$.\"" + key + "\"";
+    }
+
+    /**
+     * Inserts or replaces one key of a row.
+     * @param upsertSql The statement of the dialect, see {@link JdbcBackend#wideUpsertSql(String)}.
+     * @param expiresAt The expiry time in milliseconds, or 0 if the key does not expire.
+     * @throws SQLException if a database access error occurs.
+     */
+    static void write(Connection connection, String upsertSql, UUID uuid, String key, String value, String type,
+                      long expiresAt) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(upsertSql)) {
+            bind(pstmt, uuid, key, value, type, expiresAt);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Inserts or replaces many keys without expiry as one batch. Run it in a transaction.
+     * @param upsertSql The statement of the dialect, see {@link JdbcBackend#wideUpsertSql(String)}.
+     * @throws SQLException if a database access error occurs.
+     */
+    static void writeAll(Connection connection, String upsertSql, List<TableEntry> rows) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(upsertSql)) {
+            for (TableEntry row : rows) {
+                bind(pstmt, row.getUuid(), row.getKey(), row.getValue(), row.getType(), 0L);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static void bind(PreparedStatement pstmt, UUID uuid, String key, String value, String type,
+                             long expiresAt) throws SQLException {
+        String path = path(key);
+        Long expiry = expiresAt > 0 ? expiresAt : null;
+        pstmt.setString(1, uuid.toString());
+        pstmt.setString(2, key);
+        pstmt.setString(3, value);
+        pstmt.setString(4, type);
+        pstmt.setObject(5, expiry, Types.BIGINT);
+        pstmt.setObject(6, expiry, Types.BIGINT);
+        pstmt.setString(7, path);
+        pstmt.setString(8, value);
+        pstmt.setString(9, type);
+        pstmt.setObject(10, expiry, Types.BIGINT);
+    }
+
+    /**
+     * Reads all keys of a row, including expired ones.
+     * @return The keys with their values, empty if the row does not exist.
+     * @throws SQLException if a database access error occurs or the row is not valid JSON.
+     */
+    static Map<String, StoredValue> read(Connection connection, String table, UUID uuid) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT Data FROM " + table + " WHERE UUID = ?")) {
+            pstmt.setString(1, uuid.toString());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? parse(rs.getString(1)) : new LinkedHashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the players after {@code afterUuid} in UUID order, with their keys in name order.
+     * Whole players are returned, until at least {@code limit} keys are collected.
+     * @param keyPrefix Only keys starting with this prefix, or null for all keys.
+     * @param afterUuid The last player of the previous page, or null for the first page.
+     * @param now The current time in milliseconds. Expired keys are skipped.
+     * @throws SQLException if a database access error occurs.
+     */
+    static List<TableEntry> scan(Connection connection, String table, String keyPrefix, UUID afterUuid, int limit,
+                                 long now) throws SQLException {
+        List<TableEntry> entries = new ArrayList<>();
+        String last = afterUuid != null ? afterUuid.toString() : null;
+        while (entries.isEmpty()) {
+            int rows = 0;
+            try (PreparedStatement pstmt = connection.prepareStatement("SELECT UUID, Data FROM " + table
+                    + (last != null ? " WHERE UUID > ?" : "") + " ORDER BY UUID LIMIT " + limit)) {
+                if (last != null) pstmt.setString(1, last);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (entries.size() < limit && rs.next()) {
+                        rows++;
+                        last = rs.getString(1);
+                        entries.addAll(entries(UUID.fromString(last), parse(rs.getString(2)), keyPrefix, now));
+                    }
+                }
+            }
+            // Players without matching keys are skipped until a page has rows or the table ends
+            if (rows < limit) break;
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the players whose row holds a value for a key.
+     * @param valueSql The expression reading the value of the key, see {@link JdbcBackend#wideValueSql(String)}.
+     * @param now The current time in milliseconds. Expired keys are skipped.
+     * @throws SQLException if a database access error occurs.
+     */
+    static List<UUID> findByValue(Connection connection, String table, String valueSql, String key, String value,
+                                  String type, long now) throws SQLException {
+        List<UUID> players = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT UUID, Data FROM " + table + " WHERE " + valueSql + " = ?")) {
+            pstmt.setString(1, value);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // The type and expiry are in the same document, the value is compared again as the database may ignore case
+                    StoredValue stored = parse(rs.getString(2)).get(key);
+                    if (stored == null || !value.equals(stored.getValue()) || !type.equals(stored.getType())) continue;
+                    if (stored.getExpiresAt() > 0 && stored.getExpiresAt() <= now) continue;
+                    players.add(UUID.fromString(rs.getString(1)));
+                }
+            }
+        }
+        return players;
+    }
+
+    /**
+     * @return The keys of one row as entries in name order.
+     */
+    static List<TableEntry> entries(UUID uuid, Map<String, StoredValue> fields, String keyPrefix, long now) {
+        List<TableEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, StoredValue> field : new TreeMap<>(fields).entrySet()) {
+            StoredValue stored = field.getValue();
+            if (keyPrefix != null && !field.getKey().startsWith(keyPrefix)) continue;
+            if (stored.getExpiresAt() > 0 && stored.getExpiresAt() <= now) continue;
+            entries.add(new TableEntry(uuid, field.getKey(), stored.getValue(), stored.getType()));
+        }
+        return entries;
+    }
+
+    private static Map<String, StoredValue> parse(String data) throws SQLException {
+        Map<String, StoredValue> fields = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, JsonElement> field : JsonParser.parseString(data).getAsJsonObject().entrySet()) {
+                JsonArray entry = field.getValue().getAsJsonArray();
+                String value = entry.get(0).isJsonNull() ? null : entry.get(0).getAsString();
+                long expiresAt = entry.size() > 2 && !entry.get(2).isJsonNull() ? entry.get(2).getAsLong() : 0L;
+                fields.put(field.getKey(), new StoredValue(value, entry.get(1).getAsString(), expiresAt));
+            }
+        } catch (JsonParseException | IllegalStateException | IndexOutOfBoundsException e) {
+            throw new SQLException("Ungültiges Dokument in Tabelle mit einer Zeile pro Spieler", e);
+        }
+        return fields;
+    }
+
+    /**
+     * Removes one key of a row.
+     * @return true if the key existed.
+     * @throws SQLException if a database access error occurs.
+     */
+    static boolean delete(Connection connection, String table, UUID uuid, String key) throws SQLException {
+        String path = path(key);
+        boolean deleted;
+        try (PreparedStatement pstmt = connection.prepareStatement("UPDATE " + table + " SET Data = json_remove(Data, ?)"
+                + " WHERE UUID = ? AND json_extract(Data, ?) IS NOT NULL")) {
+            pstmt.setString(1, path);
+            pstmt.setString(2, uuid.toString());
+            pstmt.setString(3, path);
+            deleted = pstmt.executeUpdate() > 0;
+        }
+        if (deleted) deleteIfEmpty(connection, table, uuid);
+        return deleted;
+    }
+
+    /**
+     * Removes the given keys of a row if they still have the expiry time they were read with,
+     * so keys written again in the meantime are kept.
+     * @param expired The keys with their expiry times.
+     * @throws SQLException if a database access error occurs.
+     */
+    static void deleteExpired(Connection connection, String table, UUID uuid, Map<String, Long> expired) throws SQLException {
+        if (expired.isEmpty()) return;
+        try (PreparedStatement pstmt = connection.prepareStatement("UPDATE " + table + " SET Data = json_remove(Data, ?)"
+                + " WHERE UUID = ? AND json_extract(Data, ?) = ?")) {
+            for (Map.Entry<String, Long> field : expired.entrySet()) {
+                String path = path(field.getKey());
+                pstmt.setString(1, path);
+                pstmt.setString(2, uuid.toString());
+                pstmt.setString(3, path + "[2]");
+                pstmt.setLong(4, field.getValue());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        deleteIfEmpty(connection, table, uuid);
+    }
+
+    /**
+     * Removes all expired keys of a table and moves {@code ExpiresAt} of the visited rows to their next expiry.
+     * A row written by another server during the sweep may keep a later {@code ExpiresAt} than its keys
+     * until it is written again. Its expired keys are still ignored by reads.
+     * @param now The current time in milliseconds.
+     * @return The number of removed keys.
+     * @throws SQLException if a database access error occurs.
+     */
+    static int deleteExpiredRows(Connection connection, String table, long now) throws SQLException {
+        List<String> uuids = new ArrayList<>();
+        List<String> documents = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT UUID, Data FROM " + table + " WHERE ExpiresAt <= ?")) {
+            pstmt.setLong(1, now);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    uuids.add(rs.getString(1));
+                    documents.add(rs.getString(2));
+                }
+            }
+        }
+        int deleted = 0;
+        for (int i = 0; i < uuids.size(); i++) {
+            UUID uuid = UUID.fromString(uuids.get(i));
+            Map<String, Long> expired = new LinkedHashMap<>();
+            long next = 0L;
+            for (Map.Entry<String, StoredValue> field : parse(documents.get(i)).entrySet()) {
+                long expiresAt = field.getValue().getExpiresAt();
+                if (expiresAt <= 0) continue;
+                if (expiresAt <= now) {
+                    expired.put(field.getKey(), expiresAt);
+                } else if (next == 0L || expiresAt < next) {
+                    next = expiresAt;
+                }
+            }
+            deleteExpired(connection, table, uuid, expired);
+            deleted += expired.size();
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE " + table + " SET ExpiresAt = ? WHERE UUID = ? AND ExpiresAt <= ?")) {
+                pstmt.setObject(1, next > 0 ? next : null, Types.BIGINT);
+                pstmt.setString(2, uuid.toString());
+                pstmt.setLong(3, now);
+                pstmt.executeUpdate();
+            }
+        }
+        return deleted;
+    }
+
+    private static void deleteIfEmpty(Connection connection, String table, UUID uuid) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "DELETE FROM " + table + " WHERE UUID = ? AND Data = " + EMPTY_DOCUMENT)) {
+            pstmt.setString(1, uuid.toString());
+            pstmt.executeUpdate();
+        }
+    }
+}
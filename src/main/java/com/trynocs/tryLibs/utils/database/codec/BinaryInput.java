@@ -0,0 +1,161 @@
+package com.trynocs.tryLibs.utils.database.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Reads the format written by {@link BinaryOutput}.
+ */
+public final class BinaryInput {
+    private final byte[] buffer;
+    private int position;
+
+    /**
+     * Creates an input over the given bytes.
+     *
+     * @param buffer The bytes to read.
+     */
+    public BinaryInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    private void require(int count) {
+        // A corrupt length may be negative or large enough to overflow the position
+        if (count < 0 || count > buffer.length - position) {
+            throw new IllegalArgumentException("Unexpected end of binary value at offset " + position);
+        }
+    }
+
+    /**
+     * Reads a single byte.
+     * @return The byte, as an unsigned value.
+     */
+    public int readByte() {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads a boolean written by {@link BinaryOutput#writeBoolean(boolean)}.
+     * @return The value.
+     */
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    /**
+     * Reads a variable-length int.
+     * @return The value.
+     */
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt is too long");
+    }
+
+    /**
+     * Reads a length or size written with {@link BinaryOutput#writeVarInt(int)}.
+     * @return The length, never negative.
+     * @throws IllegalArgumentException if the stored length is negative.
+     */
+    public int readLength() {
+        int length = readVarInt();
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length " + length + " at offset " + position);
+        }
+        return length;
+    }
+
+    /**
+     * @return The number of bytes left to read.
+     */
+    public int remaining() {
+        return buffer.length - position;
+    }
+
+    /**
+     * Reads a zig-zag encoded variable-length long.
+     * @return The value.
+     */
+    public long readVarLong() {
+        long zigZag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IllegalArgumentException("VarLong is too long");
+    }
+
+    /**
+     * Reads eight big-endian bytes as a long.
+     * @return The value.
+     */
+    public long readLong() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a double.
+     * @return The value.
+     */
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Reads a float.
+     * @return The value.
+     */
+    public float readFloat() {
+        require(4);
+        int bits = ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     * @return The string, may be null.
+     */
+    public String readString() {
+        int length = readLength();
+        if (length == 0) {
+            return readByte() == 0 ? null : "";
+        }
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads a UUID.
+     * @return The UUID.
+     */
+    public UUID readUuid() {
+        return new UUID(readLong(), readLong());
+    }
+
+    /**
+     * Checks whether all bytes have been read.
+     * @return true if there is nothing left to read.
+     */
+    public boolean isFinished() {
+        return position >= buffer.length;
+    }
+}
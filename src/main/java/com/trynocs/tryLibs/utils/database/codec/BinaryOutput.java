@@ -0,0 +1,182 @@
+package com.trynocs.tryLibs.utils.database.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A growable byte buffer used by {@link BinaryValueCodec} writers.
+ * <p>
+ * Integers are written as variable-length quantities and strings are prefixed with their
+ * encoded length, so small values take only a few bytes.
+ */
+public final class BinaryOutput {
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * Creates an empty output with a small initial capacity.
+     */
+    public BinaryOutput() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty output.
+     *
+     * @param capacity The initial capacity in bytes.
+     */
+    public BinaryOutput(int capacity) {
+        this.buffer = new byte[Math.max(16, capacity)];
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + extra));
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     * @param value The byte to write.
+     * @return This output.
+     */
+    public BinaryOutput writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Writes raw bytes without a length prefix.
+     * @param bytes The bytes to write.
+     * @return This output.
+     */
+    public BinaryOutput writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * Writes a boolean as one byte.
+     * @param value The value to write.
+     * @return This output.
+     */
+    public BinaryOutput writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non-negative int as a variable-length quantity (1-5 bytes).
+     * Negative values are written as well but always take five bytes.
+     * @param value The value to write.
+     * @return This output.
+     */
+    public BinaryOutput writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Writes a long as a zig-zag encoded variable-length quantity (1-10 bytes).
+     * @param value The value to write.
+     * @return This output.
+     */
+    public BinaryOutput writeVarLong(long value) {
+        ensureCapacity(10);
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        buffer[size++] = (byte) zigZag;
+        return this;
+    }
+
+    /**
+     * Writes a long as eight big-endian bytes.
+     * @param value The value to write.
+     * @return This output.
+     */
+    public BinaryOutput writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a double as eight bytes.
+     * @param value The value to write.
+     * @return This output.
+     */
+    public BinaryOutput writeDouble(double value) {
+        return writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes a float as four bytes.
+     * @param value The value to write.
+     * @return This output.
+     */
+    public BinaryOutput writeFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        ensureCapacity(4);
+        buffer[size++] = (byte) (bits >>> 24);
+        buffer[size++] = (byte) (bits >>> 16);
+        buffer[size++] = (byte) (bits >>> 8);
+        buffer[size++] = (byte) bits;
+        return this;
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string. {@code null} is written as length 0 followed by
+     * a null marker, so it can be told apart from the empty string.
+     * @param value The string to write, may be null.
+     * @return This output.
+     */
+    public BinaryOutput writeString(String value) {
+        if (value == null) {
+            return writeVarInt(0).writeByte(0);
+        }
+        if (value.isEmpty()) {
+            return writeVarInt(0).writeByte(1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        return writeBytes(bytes);
+    }
+
+    /**
+     * Writes a UUID as sixteen bytes.
+     * @param uuid The UUID to write.
+     * @return This output.
+     */
+    public BinaryOutput writeUuid(UUID uuid) {
+        return writeLong(uuid.getMostSignificantBits()).writeLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     * @return The size in bytes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the written bytes.
+     * @return The written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+}
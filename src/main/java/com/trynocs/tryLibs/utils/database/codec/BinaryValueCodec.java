@@ -0,0 +1,166 @@
+package com.trynocs.tryLibs.utils.database.codec;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact {@link ValueCodec} writing values with explicit {@link Writer}/{@link Reader}
+ * functions instead of reflection.
+ * <p>
+ * The bytes are written with {@link BinaryOutput} (variable-length integers and
+ * length-prefixed strings) and stored Base64 encoded, because the {@code Value} column is text.
+ * <p>
+ * Beispiel:
+ * <pre>{@code
+ * BinaryValueCodec<Home> homeCodec = BinaryValueCodec.of(
+ *     (out, home) -> out.writeString(home.world()).writeDouble(home.x()).writeDouble(home.y()).writeDouble(home.z()),
+ *     in -> new Home(in.readString(), in.readDouble(), in.readDouble(), in.readDouble()));
+ * databaseHandler.getCodecRegistry().register(Home.class, homeCodec);
+ * databaseHandler.saveObject("homes", uuid, "home.base", home, Home.class);
+ * }</pre>
+ *
+ * @param <T> The type handled by this codec.
+ */
+public final class BinaryValueCodec<T> implements ValueCodec<T> {
+    /** The id stored for values written by this codec. */
+    public static final String ID = "bin";
+
+    /** Codec for {@code List<String>}. */
+    public static final BinaryValueCodec<List<String>> STRING_LIST =
+            listOf(BinaryOutput::writeString, BinaryInput::readString);
+
+    /** Codec for {@code Map<String, Long>}, e.g. cooldown maps from name to timestamp. */
+    public static final BinaryValueCodec<Map<String, Long>> STRING_LONG_MAP =
+            mapOf(BinaryOutput::writeString, BinaryInput::readString, BinaryOutput::writeVarLong, BinaryInput::readVarLong);
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    /**
+     * Writes a value into a {@link BinaryOutput}.
+     * @param <T> The value type.
+     */
+    @FunctionalInterface
+    public interface Writer<T> {
+        /**
+         * Writes the value.
+         * @param out The output to write to.
+         * @param value The value to write.
+         */
+        void write(BinaryOutput out, T value);
+    }
+
+    /**
+     * Reads a value from a {@link BinaryInput}.
+     * @param <T> The value type.
+     */
+    @FunctionalInterface
+    public interface Reader<T> {
+        /**
+         * Reads the value.
+         * @param in The input to read from.
+         * @return The value.
+         */
+        T read(BinaryInput in);
+    }
+
+    private final Writer<T> writer;
+    private final Reader<T> reader;
+
+    private BinaryValueCodec(Writer<T> writer, Reader<T> reader) {
+        this.writer = writer;
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a binary codec from a writer and a reader.
+     *
+     * @param writer Writes a value.
+     * @param reader Reads a value written by the writer.
+     * @param <T> The value type.
+     * @return The codec.
+     */
+    public static <T> BinaryValueCodec<T> of(Writer<T> writer, Reader<T> reader) {
+        return new BinaryValueCodec<>(writer, reader);
+    }
+
+    /**
+     * Creates a codec for lists, writing the size followed by each element.
+     *
+     * @param elementWriter Writes a single element.
+     * @param elementReader Reads a single element.
+     * @param <E> The element type.
+     * @return The codec.
+     */
+    public static <E> BinaryValueCodec<List<E>> listOf(Writer<E> elementWriter, Reader<E> elementReader) {
+        return of((out, list) -> {
+            out.writeVarInt(list.size());
+            for (E element : list) {
+                elementWriter.write(out, element);
+            }
+        }, in -> {
+            int size = in.readLength();
+            // A corrupt size must not allocate more than the value can hold
+            List<E> list = new ArrayList<>(Math.min(size, in.remaining()));
+            for (int i = 0; i < size; i++) {
+                list.add(elementReader.read(in));
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Creates a codec for maps, writing the size followed by each key and value.
+     * Decoded maps keep the written order.
+     *
+     * @param keyWriter Writes a key.
+     * @param keyReader Reads a key.
+     * @param valueWriter Writes a value.
+     * @param valueReader Reads a value.
+     * @param <K> The key type.
+     * @param <V> The value type.
+     * @return The codec.
+     */
+    public static <K, V> BinaryValueCodec<Map<K, V>> mapOf(Writer<K> keyWriter, Reader<K> keyReader,
+                                                         Writer<V> valueWriter, Reader<V> valueReader) {
+        return of((out, map) -> {
+            out.writeVarInt(map.size());
+            for (Map.Entry<K, V> entry : map.entrySet()) {
+                keyWriter.write(out, entry.getKey());
+                valueWriter.write(out, entry.getValue());
+            }
+        }, in -> {
+            int size = in.readLength();
+            Map<K, V> map = new LinkedHashMap<>(Math.max(16, (int) (Math.min(size, in.remaining()) / 0.75f) + 1));
+            for (int i = 0; i < size; i++) {
+                map.put(keyReader.read(in), valueReader.read(in));
+            }
+            return map;
+        });
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String encode(T value) {
+        BinaryOutput out = new BinaryOutput();
+        writer.write(out, value);
+        return ENCODER.encodeToString(out.toByteArray());
+    }
+
+    @Override
+    public T decode(String data) {
+        BinaryInput in = new BinaryInput(DECODER.decode(data));
+        T value = reader.read(in);
+        if (!in.isFinished()) {
+            throw new IllegalArgumentException("Binary value has trailing bytes");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,120 @@
+package com.trynocs.tryLibs.utils.database.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link ValueCodec}s used by {@code saveObject}/{@code loadObject}.
+ * <p>
+ * Types without a registered codec fall back to a {@link GsonValueCodec}. Both registered and
+ * fallback codecs are created once per type and cached, so the hot path only does a map lookup.
+ */
+public class CodecRegistry {
+    /** Maximum length of a codec id, the id is stored in the {@code Type} column. */
+    public static final int MAX_ID_LENGTH = 8;
+
+    private final Gson gson;
+    private final Map<Type, ValueCodec<?>> codecs = new ConcurrentHashMap<>();
+    private final Map<Type, ValueCodec<?>> jsonCodecs = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry using the given Gson instance for the JSON fallback.
+     *
+     * @param gson The Gson instance.
+     */
+    public CodecRegistry(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * Registers a codec for a class, replacing any previous codec for it.
+     *
+     * @param type The class.
+     * @param codec The codec.
+     * @param <T> The value type.
+     */
+    public <T> void register(Class<T> type, ValueCodec<T> codec) {
+        register(TypeToken.get(type), codec);
+    }
+
+    /**
+     * Registers a codec for a (generic) type, replacing any previous codec for it.
+     *
+     * @param type The type, e.g. {@code new TypeToken<Map<String, Long>>(){}}.
+     * @param codec The codec.
+     * @param <T> The value type.
+     */
+    public <T> void register(TypeToken<T> type, ValueCodec<T> codec) {
+        String id = codec.getId();
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH || id.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Codec id must be 1-" + MAX_ID_LENGTH + " characters without '|': " + id);
+        }
+        codecs.put(type.getType(), codec);
+    }
+
+    /**
+     * Removes the codec registered for a type, so the type falls back to JSON again.
+     *
+     * @param type The type.
+     */
+    public void unregister(TypeToken<?> type) {
+        codecs.remove(type.getType());
+    }
+
+    /**
+     * Gets the codec used to write values of the given class.
+     *
+     * @param type The class.
+     * @param <T> The value type.
+     * @return The registered codec, or the cached JSON codec.
+     */
+    public <T> ValueCodec<T> getCodec(Class<T> type) {
+        return getCodec(TypeToken.get(type));
+    }
+
+    /**
+     * Gets the codec used to write values of the given type.
+     *
+     * @param type The type.
+     * @param <T> The value type.
+     * @return The registered codec, or the cached JSON codec.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ValueCodec<T> getCodec(TypeToken<T> type) {
+        ValueCodec<?> codec = codecs.get(type.getType());
+        return codec != null ? (ValueCodec<T>) codec : getJsonCodec(type);
+    }
+
+    /**
+     * Gets the codec able to read a value that was written by the codec with the given id.
+     *
+     * @param type The type.
+     * @param id The codec id stored with the value.
+     * @param <T> The value type.
+     * @return The codec, or null if the id does not match the registered codec or JSON.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ValueCodec<T> getCodec(TypeToken<T> type, String id) {
+        ValueCodec<?> codec = codecs.get(type.getType());
+        if (codec != null && codec.getId().equals(id)) {
+            return (ValueCodec<T>) codec;
+        }
+        return GsonValueCodec.ID.equals(id) ? getJsonCodec(type) : null;
+    }
+
+    /**
+     * Gets the cached JSON codec for a type, ignoring registered codecs.
+     *
+     * @param type The type.
+     * @param <T> The value type.
+     * @return The JSON codec.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ValueCodec<T> getJsonCodec(TypeToken<T> type) {
+        return (ValueCodec<T>) jsonCodecs.computeIfAbsent(type.getType(), t -> new GsonValueCodec<>(gson, type));
+    }
+}
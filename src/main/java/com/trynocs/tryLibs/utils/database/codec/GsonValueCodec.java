@@ -0,0 +1,51 @@
+package com.trynocs.tryLibs.utils.database.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+
+/**
+ * A {@link ValueCodec} storing values as Gson JSON.
+ * <p>
+ * The {@link TypeAdapter} is resolved once when the codec is created, so encoding and decoding
+ * do not look up adapters or build {@link TypeToken}s on every call.
+ *
+ * @param <T> The type handled by this codec.
+ */
+public class GsonValueCodec<T> implements ValueCodec<T> {
+    /** The id stored for values written by this codec. */
+    public static final String ID = "json";
+
+    private final TypeAdapter<T> adapter;
+
+    /**
+     * Creates a codec for the given type.
+     *
+     * @param gson The Gson instance to take the adapter from.
+     * @param type The type to encode and decode.
+     */
+    public GsonValueCodec(Gson gson, TypeToken<T> type) {
+        this.adapter = gson.getAdapter(type);
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String encode(T value) {
+        return adapter.toJson(value);
+    }
+
+    @Override
+    public T decode(String data) {
+        try {
+            return adapter.fromJson(data);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid JSON value: " + e.getMessage(), e);
+        }
+    }
+}
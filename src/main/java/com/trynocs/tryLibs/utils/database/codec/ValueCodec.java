@@ -0,0 +1,40 @@
+package com.trynocs.tryLibs.utils.database.codec;
+
+/**
+ * Converts values of a single type to and from the text stored in the {@code Value} column.
+ * <p>
+ * Codecs are registered per type in the {@link CodecRegistry} of a
+ * {@link com.trynocs.tryLibs.utils.database.DatabaseHandler}. The id of the codec is stored
+ * next to every value it wrote, so a value can still be read after the codec for its type
+ * has been changed.
+ *
+ * @param <T> The type handled by this codec.
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * Gets the short identifier of this codec, e.g. {@code "json"} or {@code "bin"}.
+     * Ids are stored in the {@code Type} column and must not be longer than
+     * {@link CodecRegistry#MAX_ID_LENGTH} characters.
+     *
+     * @return The codec id.
+     */
+    String getId();
+
+    /**
+     * Encodes a value into its stored text form.
+     *
+     * @param value The value to encode.
+     * @return The encoded text.
+     */
+    String encode(T value);
+
+    /**
+     * Decodes a value from its stored text form.
+     *
+     * @param data The stored text.
+     * @return The decoded value.
+     * @throws IllegalArgumentException if the data cannot be decoded by this codec.
+     */
+    T decode(String data);
+}
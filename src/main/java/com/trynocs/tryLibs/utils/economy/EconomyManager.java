@@ -18,8 +18,18 @@ public class EconomyManager {
      * @param databaseHandler The DatabaseHandler instance to use for data storage.
      */
     public EconomyManager(DatabaseHandler databaseHandler) {
+        this(databaseHandler, TryLibs.getPlugin().getConfig().getString("database.economytable", "economy"));
+    }
+
+    /**
+     * Constructs a new EconomyManager that stores balances in the given table.
+     *
+     * @param databaseHandler The DatabaseHandler instance to use for data storage.
+     * @param economyTable The name of the economy table.
+     */
+    public EconomyManager(DatabaseHandler databaseHandler, String economyTable) {
         this.databaseHandler = databaseHandler;
-        this.economyTable = TryLibs.getPlugin().getConfig().getString("database.economytable", "economy");
+        this.economyTable = economyTable;
         databaseHandler.createTable(this.economyTable);
     }
 